@@ -0,0 +1,126 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that the presence path allocates no more than the baseline kept in the README, by running the benchmarks the
+ * baseline was measured with under JMH's GC profiler and comparing their {@code gc.alloc.rate.norm}. Each benchmark
+ * is run in several forks and the fork that allocated least is compared, since whether the JIT compiler manages to
+ * keep an object off the heap can differ between forks, while anything a change really allocates shows up in every
+ * one. Prints every result and exits with status {@code 1} if any is over its baseline by more than a small tolerance,
+ * so it can be run as a build step. Takes no arguments
+ */
+public final class AllocationRegressionMain {
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+    private static final int FORK_COUNT = 3;
+    // bytes per operation move slightly with JIT decisions, so being a little over the baseline isn't a regression
+    private static final double TOLERANCE_RATIO = 0.02D;
+    private static final double TOLERANCE_BYTES = 8D;
+    private static final List<Baseline> BASELINES = List.of(
+        new Baseline(SessionJsonParsingBenchmark.class, "streaming", Map.of("presenceShape", "lobby"), 2_184D),
+        new Baseline(SessionJsonParsingBenchmark.class, "streaming", Map.of("presenceShape", "inMatch"), 1_272D),
+        new Baseline(
+            PresenceDispatchBenchmark.class,
+            "presenceChanged",
+            Map.of("presenceShape", "lobby", "suppressDuplicatePresences", "true", "accessSession", "false"),
+            0D
+        ),
+        new Baseline(
+            PresenceDispatchBenchmark.class,
+            "presenceChanged",
+            Map.of("presenceShape", "alternating", "suppressDuplicatePresences", "false", "accessSession", "true"),
+            1_763D
+        ),
+        new Baseline(MetricsSinkBenchmark.class, "incrementCounter", Map.of(), 0D),
+        new Baseline(MetricsSinkBenchmark.class, "recordNanos", Map.of(), 0D)
+    );
+
+    private AllocationRegressionMain() {
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        var regressionCount = 0;
+        for (final var baseline : BASELINES) {
+            final var bytesPerOperation = measure(baseline);
+            final var regressed = bytesPerOperation > baseline.bytesPerOperation * (1D + TOLERANCE_RATIO) + TOLERANCE_BYTES;
+            if (regressed)
+                regressionCount++;
+            System.out.printf(
+                "%-110s %,10.1f B/op, baseline %,10.1f B/op%s%n",
+                baseline,
+                bytesPerOperation,
+                baseline.bytesPerOperation,
+                regressed ?
+                    "  REGRESSED"
+                    : ""
+            );
+        }
+        if (regressionCount > 0) {
+            System.out.printf("%d of %d allocation baselines regressed%n", regressionCount, BASELINES.size());
+            System.exit(1);
+        }
+    }
+
+    private static double measure(final Baseline baseline) throws RunnerException {
+        final var optionsBuilder = new OptionsBuilder()
+            .include(Pattern.quote(baseline.benchmarkClass.getName() + "." + baseline.benchmarkMethodName) + "$")
+            .addProfiler(GCProfiler.class)
+            .forks(FORK_COUNT)
+            .warmupIterations(3)
+            .warmupTime(TimeValue.seconds(1L))
+            .measurementIterations(3)
+            .measurementTime(TimeValue.seconds(1L))
+            .verbosity(VerboseMode.SILENT);
+        baseline.params.forEach(optionsBuilder::param);
+        final var runResults = new Runner(optionsBuilder.build())
+            .run();
+        if (runResults.size() != 1)
+            throw new IllegalStateException(String.format("Expected one result for %s, got %d", baseline, runResults.size()));
+        var leastBytesPerOperation = Double.MAX_VALUE;
+        for (final var forkResult : runResults.iterator()
+            .next()
+            .getBenchmarkResults()) {
+            final var allocationResult = forkResult.getSecondaryResults()
+                .get(ALLOCATION_METRIC);
+            if (allocationResult == null)
+                throw new IllegalStateException(String.format("No %s for %s", ALLOCATION_METRIC, baseline));
+            leastBytesPerOperation = Math.min(leastBytesPerOperation, allocationResult.getScore());
+        }
+        return leastBytesPerOperation;
+    }
+
+    private static final class Baseline {
+
+        private final Class<?> benchmarkClass;
+        private final String benchmarkMethodName;
+        private final Map<String, String> params;
+        private final double bytesPerOperation;
+
+        private Baseline(final Class<?> benchmarkClass,
+                         final String benchmarkMethodName,
+                         final Map<String, String> params,
+                         final double bytesPerOperation) {
+            this.benchmarkClass = benchmarkClass;
+            this.benchmarkMethodName = benchmarkMethodName;
+            this.params = params;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        @Override
+        public String toString() {
+            return benchmarkClass.getSimpleName() + "." + benchmarkMethodName + (params.isEmpty() ?
+                ""
+                : " " + params);
+        }
+    }
+}
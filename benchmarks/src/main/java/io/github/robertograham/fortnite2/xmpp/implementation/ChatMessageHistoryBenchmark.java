@@ -0,0 +1,131 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.ChatMessage;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.jxmpp.jid.EntityBareJid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures appending to and reading from the chat message cache behind {@link DefaultChatResource}, kept on the heap
+ * or in memory-mapped files
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChatMessageHistoryBenchmark {
+
+    @Param({"1", "1000"})
+    public int accountCount;
+
+    @Param({"memory", "mapped"})
+    public String history;
+
+    private Path chatHistoryDirectory;
+    private ChatMessageHistory chatMessageHistory;
+    private EntityBareJid[] entityBareJids;
+    private Message[] messages;
+    private String[] accountIds;
+    private DefaultChatResource defaultChatResource;
+    private int nextIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        entityBareJids = new EntityBareJid[accountCount];
+        messages = new Message[accountCount];
+        accountIds = new String[accountCount];
+        for (var index = 0; index < accountCount; index++) {
+            entityBareJids[index] = SyntheticStanzas.entityBareJid(index);
+            messages[index] = SyntheticStanzas.chatMessage(index, "WE LOVE FORTNITE WE LOVE FORTNITE");
+            accountIds[index] = SyntheticStanzas.accountId(index);
+        }
+        if ("mapped".equals(history)) {
+            chatHistoryDirectory = Files.createTempDirectory("chat-message-history-benchmark-");
+            chatMessageHistory = MappedChatMessageHistory.newInstance(chatHistoryDirectory, Duration.ofDays(1L), 1L << 30);
+        } else
+            chatMessageHistory = InMemoryChatMessageHistory.newInstance(100, 1_000);
+        final var xmppTcpConnection = new XMPPTCPConnection(XMPPTCPConnectionConfiguration.builder()
+            .setXmppDomain(SyntheticStanzas.DOMAIN_BARE_JID)
+            .build());
+        final var outboundStanzaQueue = OutboundStanzaQueue.newInstance(xmppTcpConnection, Runnable::run, 1, NoOpMetricsSink.INSTANCE);
+        defaultChatResource = DefaultChatResource.newInstance(
+            (final var accountId, final var messageBody, final var chat) -> {
+            },
+            xmppTcpConnection,
+            null,
+            chatMessageHistory,
+            ListenerDispatchQueue.newInlineInstance(),
+            outboundStanzaQueue,
+            PresencePublisher.newInstance(xmppTcpConnection, outboundStanzaQueue, null, Duration.ZERO, SyntheticStanzas.accountId(0), NoOpMetricsSink.INSTANCE),
+            Runnable::run,
+            NoOpMetricsSink.INSTANCE
+        );
+        for (var round = 0; round < 100; round++)
+            for (var index = 0; index < accountCount; index++)
+                defaultChatResource.newIncomingMessage(entityBareJids[index], messages[index], null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        chatMessageHistory.close();
+        if (chatHistoryDirectory != null)
+            try (final var paths = Files.walk(chatHistoryDirectory)) {
+                paths.sorted(Comparator.reverseOrder())
+                    .forEach((final var path) -> {
+                        try {
+                            Files.delete(path);
+                        } catch (final IOException exception) {
+                            throw new UncheckedIOException(exception);
+                        }
+                    });
+            }
+    }
+
+    @Benchmark
+    public void append() {
+        final var index = nextIndex();
+        defaultChatResource.newIncomingMessage(entityBareJids[index], messages[index], null);
+    }
+
+    @Benchmark
+    public List<String> read() {
+        return defaultChatResource.findAllMessagesReceivedFromAccountId(accountIds[nextIndex()]);
+    }
+
+    @Benchmark
+    public List<ChatMessage> readLatest() {
+        return defaultChatResource.findLatestMessagesReceivedFromAccountId(accountIds[nextIndex()], 10);
+    }
+
+    private int nextIndex() {
+        final var index = nextIndex;
+        nextIndex = index + 1 == accountCount ?
+            0
+            : index + 1;
+        return index;
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the code lookups made for every decoded presence
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnumerationFromCodeBenchmark {
+
+    @Benchmark
+    public Optional<Platform> platformFromCode(final PlatformCodeState platformCodeState) {
+        return Platform.fromCode(platformCodeState.platformCode);
+    }
+
+    @Benchmark
+    public Optional<Application> applicationFromCode(final ApplicationCodeState applicationCodeState) {
+        return Application.fromCode(applicationCodeState.applicationCode);
+    }
+
+    @State(Scope.Thread)
+    public static class PlatformCodeState {
+
+        @Param({"XBL", "SWT", "???"})
+        public String platformCode;
+    }
+
+    @State(Scope.Thread)
+    public static class ApplicationCodeState {
+
+        @Param({"launcher", "Fortnite"})
+        public String applicationCode;
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import org.jxmpp.jid.Jid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a single friend being added to and removed from a roster of
+ * {@code rosterSize} friends, with and without a full friends list snapshot being requested
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FriendsListBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int rosterSize;
+
+    @Param({"false", "true"})
+    public boolean fullSnapshot;
+
+    private List<Jid> changedJids;
+    private DefaultFriendResource.DefaultRosterListener defaultRosterListener;
+    private Object lastEvent;
+
+    @Setup
+    public void setUp() {
+        changedJids = List.of(SyntheticStanzas.entityBareJid(rosterSize));
+        defaultRosterListener = new DefaultFriendResource.DefaultRosterListener(
+            (final var bareJid) -> null,
+            SyntheticStanzas.DOMAIN_BARE_JID,
+            fullSnapshot ?
+                (final var accountIds, final var friend) -> lastEvent = accountIds
+                : null,
+            (final var addedAccountIds, final var removedAccountIds, final var friend) -> lastEvent = addedAccountIds,
+            (final var accountId, final var status, final var sessionOptional, final var friend) -> {
+            },
+            null,
+            ListenerDispatchQueue.newInlineInstance(),
+            ListenerDispatchQueue.newInlineInstance(),
+            ListenerCoalescer.newPassThroughInstance(ListenerDispatchQueue.newInlineInstance()),
+            false,
+            FriendPresenceFilter.allowAll(),
+            null,
+            null,
+            null,
+            NoOpMetricsSink.INSTANCE
+        );
+        defaultRosterListener.entriesAdded(List.copyOf(SyntheticStanzas.bareJids(rosterSize)));
+    }
+
+    @Benchmark
+    public void entriesAddedThenDeleted(final Blackhole blackhole) {
+        defaultRosterListener.entriesAdded(changedJids);
+        blackhole.consume(lastEvent);
+        defaultRosterListener.entriesDeleted(changedJids);
+        blackhole.consume(lastEvent);
+    }
+}
@@ -0,0 +1,208 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.Jid;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a journal recorded using {@link DefaultFortniteXmpp.Builder#setStanzaJournalDirectory(Path)} straight into
+ * {@link DefaultFriendResource.DefaultRosterListener} and {@link DefaultChatResource}, with no connection, and reports
+ * how quickly they got through it. The journal is read into memory first so reading it isn't measured. Every friend a
+ * presence was recorded from is added to the friends list before replaying, and a friend's best presence is taken to
+ * be the last one they sent. Arguments are {@code --name value} pairs:
+ * <ul>
+ * <li>{@code --journal}, path of the journal to replay. Required</li>
+ * <li>{@code --speed}, {@code max} to replay as fast as possible or {@code recorded} to keep to the times the stanzas
+ * were received. Defaults to {@code max}</li>
+ * <li>{@code --repeat}, times to replay the journal, each one measured. Defaults to {@code 5}, or {@code 1} at
+ * {@code recorded} speed</li>
+ * <li>{@code --presence-lanes}, see {@link DefaultFortniteXmpp.Builder#setPresenceLaneCount(int)}. Defaults to {@code 0}</li>
+ * </ul>
+ */
+public final class JournalReplayMain {
+
+    private JournalReplayMain() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final var options = parseOptions(args);
+        final var journalPathString = options.get("journal");
+        if (journalPathString == null)
+            throw new IllegalArgumentException("--journal is required");
+        final var speed = options.getOrDefault("speed", "max");
+        if (!"max".equals(speed) && !"recorded".equals(speed))
+            throw new IllegalArgumentException(String.format("--speed must be max or recorded but was %s", speed));
+        final var recordedSpeed = "recorded".equals(speed);
+        final var repeatCount = Integer.parseInt(options.getOrDefault("repeat", recordedSpeed ?
+            "1"
+            : "5"));
+        final var presenceLaneCount = Integer.parseInt(options.getOrDefault("presence-lanes", "0"));
+        final var receivedEpochNanosList = new ArrayList<Long>();
+        final var stanzaList = new ArrayList<Stanza>();
+        try (final var reader = StanzaJournal.newReader(Path.of(journalPathString))) {
+            for (var entry = reader.next(); entry != null; entry = reader.next()) {
+                receivedEpochNanosList.add(entry.receivedEpochNanos());
+                stanzaList.add(entry.stanza());
+            }
+        }
+        final var stanzas = stanzaList.toArray(Stanza[]::new);
+        final var receivedEpochNanos = receivedEpochNanosList.stream()
+            .mapToLong(Long::longValue)
+            .toArray();
+        final var friendBareJids = new LinkedHashSet<Jid>();
+        var presenceCount = 0L;
+        var messageCount = 0L;
+        for (final var stanza : stanzas)
+            if (stanza instanceof Message)
+                messageCount++;
+            // presences the roster listener hands to lanes, which excludes the server's own
+            else if (stanza.getFrom() != null && stanza.getFrom()
+                .getLocalpartOrNull() != null) {
+                friendBareJids.add(stanza.getFrom()
+                    .asBareJid());
+                presenceCount++;
+            }
+        System.out.printf(
+            "journal=%s stanzas=%d presences=%d messages=%d friends=%d recorded-over=%dms speed=%s presence-lanes=%d%n",
+            journalPathString,
+            stanzas.length,
+            presenceCount,
+            messageCount,
+            friendBareJids.size(),
+            stanzas.length == 0 ?
+                0L
+                : TimeUnit.NANOSECONDS.toMillis(receivedEpochNanos[receivedEpochNanos.length - 1] - receivedEpochNanos[0]),
+            speed,
+            presenceLaneCount
+        );
+        for (var repeatIndex = 0; repeatIndex < repeatCount; repeatIndex++)
+            replay(stanzas, receivedEpochNanos, friendBareJids, presenceCount, recordedSpeed, presenceLaneCount);
+    }
+
+    private static void replay(final Stanza[] stanzas,
+                               final long[] receivedEpochNanos,
+                               final LinkedHashSet<Jid> friendBareJids,
+                               final long presenceCount,
+                               final boolean recordedSpeed,
+                               final int presenceLaneCount) {
+        final var recordingMetricsSink = RecordingMetricsSink.newInstance();
+        final var bareJidToPresenceMap = new ConcurrentHashMap<BareJid, Presence>();
+        final var presenceLanes = presenceLaneCount == 0 ?
+            null
+            : PresenceLanes.newInstance(presenceLaneCount, 1_024, recordingMetricsSink);
+        final var presenceListenerCallCount = new LongAdder();
+        final var joinablePresenceCount = new LongAdder();
+        final var messageListenerCallCount = new LongAdder();
+        final var defaultRosterListener = new DefaultFriendResource.DefaultRosterListener(
+            bareJidToPresenceMap::get,
+            SyntheticStanzas.DOMAIN_BARE_JID,
+            null,
+            (final var addedAccountIds, final var removedAccountIds, final var friend) -> {
+            },
+            (final var accountId, final var status, final var sessionOptional, final var friend) -> {
+                if (sessionOptional.map(Session::isJoinable)
+                    .orElse(false))
+                    joinablePresenceCount.increment();
+                presenceListenerCallCount.increment();
+            },
+            null,
+            ListenerDispatchQueue.newInlineInstance(),
+            ListenerDispatchQueue.newInlineInstance(),
+            ListenerCoalescer.newPassThroughInstance(ListenerDispatchQueue.newInlineInstance()),
+            true,
+            FriendPresenceFilter.allowAll(),
+            presenceLanes,
+            null,
+            null,
+            recordingMetricsSink
+        );
+        defaultRosterListener.entriesAdded(friendBareJids);
+        final var xmppTcpConnection = new XMPPTCPConnection(XMPPTCPConnectionConfiguration.builder()
+            .setXmppDomain(SyntheticStanzas.DOMAIN_BARE_JID)
+            .build());
+        final var chatMessageHistory = InMemoryChatMessageHistory.newInstance(100, 1_000);
+        final var outboundStanzaQueue = OutboundStanzaQueue.newInstance(xmppTcpConnection, Runnable::run, 1, recordingMetricsSink);
+        final var defaultChatResource = DefaultChatResource.newInstance(
+            (final var accountId, final var messageBody, final var chat) -> messageListenerCallCount.increment(),
+            xmppTcpConnection,
+            null,
+            chatMessageHistory,
+            ListenerDispatchQueue.newInlineInstance(),
+            outboundStanzaQueue,
+            PresencePublisher.newInstance(xmppTcpConnection, outboundStanzaQueue, null, Duration.ZERO, SyntheticStanzas.accountId(0), recordingMetricsSink),
+            Runnable::run,
+            recordingMetricsSink
+        );
+        var maxLagNanos = 0L;
+        final var startNanos = System.nanoTime();
+        for (var index = 0; index < stanzas.length; index++) {
+            if (recordedSpeed) {
+                final var deadlineNanos = startNanos + receivedEpochNanos[index] - receivedEpochNanos[0];
+                for (var nanos = System.nanoTime(); nanos < deadlineNanos; nanos = System.nanoTime())
+                    LockSupport.parkNanos(deadlineNanos - nanos);
+                maxLagNanos = Math.max(maxLagNanos, System.nanoTime() - deadlineNanos);
+            }
+            final var stanza = stanzas[index];
+            final var from = stanza.getFrom();
+            if (from == null)
+                continue;
+            if (stanza instanceof Presence) {
+                bareJidToPresenceMap.put(from.asBareJid(), (Presence) stanza);
+                defaultRosterListener.presenceChanged((Presence) stanza);
+            } else {
+                final var entityBareJid = from.asEntityBareJidIfPossible();
+                if (entityBareJid != null)
+                    defaultChatResource.newIncomingMessage(entityBareJid, (Message) stanza, null);
+            }
+        }
+        // lanes record each presence they've handled, so they've caught up once every presence is recorded
+        if (presenceLanes != null)
+            while (recordingMetricsSink.timer(MetricsTimer.FRIEND_PRESENCE_HANDLING)
+                .count() < presenceCount)
+                Thread.yield();
+        final var elapsedNanos = System.nanoTime() - startNanos;
+        if (presenceLanes != null)
+            presenceLanes.close();
+        defaultChatResource.close();
+        chatMessageHistory.close();
+        System.out.printf(
+            "replayed in %dms rate=%d stanzas/ms presence-listener-calls=%d joinable=%d message-listener-calls=%d%s%n",
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+            stanzas.length * TimeUnit.MILLISECONDS.toNanos(1L) / Math.max(1L, elapsedNanos),
+            presenceListenerCallCount.sum(),
+            joinablePresenceCount.sum(),
+            messageListenerCallCount.sum(),
+            recordedSpeed ?
+                String.format(" max-lag=%dus", TimeUnit.NANOSECONDS.toMicros(maxLagNanos))
+                : ""
+        );
+    }
+
+    private static Map<String, String> parseOptions(final String[] args) {
+        final var options = new HashMap<String, String>();
+        for (var argIndex = 0; argIndex < args.length; argIndex += 2) {
+            if (!args[argIndex].startsWith("--") || argIndex + 1 == args.length)
+                throw new IllegalArgumentException(String.format("Expected --name value but got %s", args[argIndex]));
+            options.put(args[argIndex].substring(2), args[argIndex + 1]);
+        }
+        return options;
+    }
+}
@@ -6,6 +6,10 @@ import javax.json.bind.JsonbConfig;
 import javax.json.bind.adapter.JsonbAdapter;
 import java.util.Optional;
 
+/**
+ * The Jsonb tree-building presence status decoder the library used before its streaming one, kept as the baseline
+ * {@link SessionJsonParsingBenchmark} compares against
+ */
 enum JsonToOptionalOfClassParser {
 
     INSTANCE(
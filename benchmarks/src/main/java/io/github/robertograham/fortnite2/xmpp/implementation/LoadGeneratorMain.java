@@ -0,0 +1,251 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.client.Fortnite;
+import io.github.robertograham.fortnite2.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp;
+import io.github.robertograham.fortnite2.xmpp.domain.StartupReport;
+import io.github.robertograham.fortnite2.xmpp.domain.TimerSnapshot;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsGauge;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import org.jivesoftware.smack.roster.Roster;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs clients in to a {@link StandInXmppServer} together and reports how long the first one took to start, then
+ * how long presences and chat messages take to get from the server's socket to the listeners, to size deployments
+ * without a real account.
+ * Arguments are {@code --name value} pairs:
+ * <ul>
+ * <li>{@code --clients}, accounts to log in as. Defaults to {@code 1}</li>
+ * <li>{@code --friends}, friends each account has. Defaults to {@code 1000}</li>
+ * <li>{@code --presences-per-second}, sent to each account. Defaults to {@code 1000}</li>
+ * <li>{@code --messages-per-second}, sent to each account. Defaults to {@code 10}</li>
+ * <li>{@code --listener-threads}, see {@link DefaultFortniteXmpp.Builder#setListenerThreadCount(int)}. Defaults to {@code 0}</li>
+ * <li>{@code --presence-lanes}, see {@link DefaultFortniteXmpp.Builder#setPresenceLaneCount(int)}. Defaults to {@code 0}</li>
+ * <li>{@code --compression-level}, zlib level the server compresses with, from {@code 1} to {@code 9}. Defaults to
+ * {@code 0}, which turns compression off</li>
+ * <li>{@code --tcp-no-delay}, see {@link DefaultFortniteXmpp.Builder#setTcpNoDelay(boolean)}. {@code 1} or {@code 0},
+ * defaults to {@code 1}</li>
+ * <li>{@code --receive-buffer-size}, see {@link DefaultFortniteXmpp.Builder#setSocketReceiveBufferSize(int)}.
+ * Defaults to {@code 0}</li>
+ * <li>{@code --warm-up}, see {@link DefaultFortniteXmpp.Builder#setWarmUpEnabled(boolean)}. {@code 1} or {@code 0},
+ * defaults to {@code 0}</li>
+ * <li>{@code --journal-directory}, see {@link DefaultFortniteXmpp.Builder#setStanzaJournalDirectory(Path)}, for replaying
+ * with {@link JournalReplayMain}. Defaults to not recording</li>
+ * <li>{@code --warmup-seconds}, run before measuring. Defaults to {@code 5}</li>
+ * <li>{@code --seconds}, measured. Defaults to {@code 10}</li>
+ * </ul>
+ */
+public final class LoadGeneratorMain {
+
+    /**
+     * Presences the stand-in sends while a client is still loading its roster are dropped with a warning each,
+     * which under load would cost more than handling them. Held here so the level isn't lost with the logger
+     */
+    private static final Logger ROSTER_LOGGER = Logger.getLogger(Roster.class.getName());
+    private static volatile boolean measuring;
+
+    private LoadGeneratorMain() {
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        ROSTER_LOGGER.setLevel(Level.SEVERE);
+        final var options = parseOptions(args);
+        final var clientCount = option(options, "clients", 1);
+        final var friendCount = option(options, "friends", 1_000);
+        final var presencesPerSecond = option(options, "presences-per-second", 1_000);
+        final var messagesPerSecond = option(options, "messages-per-second", 10);
+        final var listenerThreadCount = option(options, "listener-threads", 0);
+        final var presenceLaneCount = option(options, "presence-lanes", 0);
+        final var compressionLevel = option(options, "compression-level", 0);
+        final var tcpNoDelay = option(options, "tcp-no-delay", 1) != 0;
+        final var receiveBufferSize = option(options, "receive-buffer-size", 0);
+        final var warmUpEnabled = option(options, "warm-up", 0) != 0;
+        final var journalDirectoryString = options.get("journal-directory");
+        final var warmupSeconds = option(options, "warmup-seconds", 5);
+        final var seconds = option(options, "seconds", 10);
+        final var presenceLatencyHistogram = LogLinearHistogram.newInstance();
+        final var messageLatencyHistogram = LogLinearHistogram.newInstance();
+        final var undecodedPresenceCount = new LongAdder();
+        final var recordingMetricsSink = RecordingMetricsSink.newInstance();
+        System.out.printf(
+            "clients=%d friends=%d presences/s=%d messages/s=%d listener-threads=%d presence-lanes=%d compression-level=%d tcp-no-delay=%b receive-buffer-size=%d warm-up=%b%n",
+            clientCount,
+            friendCount,
+            presencesPerSecond,
+            messagesPerSecond,
+            listenerThreadCount,
+            presenceLaneCount,
+            compressionLevel,
+            tcpNoDelay,
+            receiveBufferSize,
+            warmUpEnabled
+        );
+        try (final var standInXmppServer = StandInXmppServer.newInstance(friendCount, presencesPerSecond, messagesPerSecond, compressionLevel)) {
+            final var fortniteXmpps = new ArrayList<FortniteXmpp>(clientCount);
+            final var fortniteXmppCompletableFutures = new ArrayList<CompletableFuture<FortniteXmpp>>(clientCount);
+            final var startNanos = System.nanoTime();
+            try {
+                for (var clientIndex = 0; clientIndex < clientCount; clientIndex++) {
+                    final var fortniteXmppBuilder = DefaultFortniteXmpp.Builder.newInstance(newFortnite(String.format("%032x", clientIndex)));
+                    if (journalDirectoryString != null)
+                        fortniteXmppBuilder.setStanzaJournalDirectory(Path.of(journalDirectoryString));
+                    fortniteXmppCompletableFutures.add(fortniteXmppBuilder
+                        .setXmppEndpoint(standInXmppServer.host(), standInXmppServer.port())
+                        .setListenerThreadCount(listenerThreadCount)
+                        .setPresenceLaneCount(presenceLaneCount)
+                        .setMetricsSink(recordingMetricsSink)
+                        .setStreamCompressionEnabled(compressionLevel > 0)
+                        .setTcpNoDelay(tcpNoDelay)
+                        .setSocketReceiveBufferSize(receiveBufferSize)
+                        .setWarmUpEnabled(warmUpEnabled)
+                        .setOnFriendPresenceReceivedListener((final var accountId, final var status, final var sessionOptional, final var friend) -> {
+                            if (!measuring)
+                                return;
+                            if (sessionOptional.isPresent())
+                                presenceLatencyHistogram.record(System.nanoTime() - Long.parseUnsignedLong(sessionOptional.get().id(), 16));
+                            else
+                                undecodedPresenceCount.increment();
+                        })
+                        .setOnChatMessageReceivedListener((final var accountId, final var messageBody, final var chat) -> {
+                            if (measuring)
+                                messageLatencyHistogram.record(System.nanoTime() - Long.parseLong(messageBody));
+                        })
+                        .buildAsync());
+                }
+                for (final var fortniteXmppCompletableFuture : fortniteXmppCompletableFutures)
+                    fortniteXmpps.add(fortniteXmppCompletableFuture.join());
+                System.out.printf("logged in after %dms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                TimeUnit.SECONDS.sleep(warmupSeconds);
+                report(fortniteXmpps.get(0).startupReport());
+                measuring = true;
+                TimeUnit.SECONDS.sleep(seconds);
+                measuring = false;
+                System.out.printf("listener queue depth at end: %d%n", recordingMetricsSink.gauge(MetricsGauge.LISTENER_QUEUE_DEPTH));
+            } finally {
+                for (final var fortniteXmpp : fortniteXmpps)
+                    fortniteXmpp.close();
+            }
+            report("presence", presenceLatencyHistogram.snapshot(), seconds);
+            report("chat message", messageLatencyHistogram.snapshot(), seconds);
+            // recorded by the sink from the first login, so logging in and warming up are included
+            final var elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+            report("presence listener call", recordingMetricsSink.timer(MetricsTimer.ON_FRIEND_PRESENCE_RECEIVED_LISTENER), elapsedSeconds);
+            report("session decode", recordingMetricsSink.timer(MetricsTimer.SESSION_DECODE), elapsedSeconds);
+            if (presenceLaneCount > 0)
+                report("presence handling", recordingMetricsSink.timer(MetricsTimer.FRIEND_PRESENCE_HANDLING), elapsedSeconds);
+            final var stanzasReceived = recordingMetricsSink.count(MetricsCounter.PRESENCES_RECEIVED)
+                + recordingMetricsSink.count(MetricsCounter.MESSAGES_RECEIVED)
+                + recordingMetricsSink.count(MetricsCounter.IQS_RECEIVED);
+            final var bytesReceived = recordingMetricsSink.count(MetricsCounter.BYTES_RECEIVED);
+            System.out.printf(
+                "bytes received=%d (%d/stanza) sent=%d%n",
+                bytesReceived,
+                bytesReceived / Math.max(1L, stanzasReceived),
+                recordingMetricsSink.count(MetricsCounter.BYTES_SENT)
+            );
+        }
+        if (undecodedPresenceCount.sum() > 0L)
+            System.out.printf("presences without a session: %d%n", undecodedPresenceCount.sum());
+    }
+
+    private static void report(final StartupReport startupReport) {
+        System.out.printf(
+            "first client startup    connect=%dms tls=%dms authentication=%dms roster=%s first-presence=%s warm-up=%s%n",
+            startupReport.connectDuration().toMillis(),
+            startupReport.tlsDuration().toMillis(),
+            startupReport.authenticationDuration().toMillis(),
+            millis(startupReport.rosterDuration()),
+            millis(startupReport.firstPresenceDuration()),
+            millis(startupReport.warmUpDuration())
+        );
+    }
+
+    private static String millis(final Optional<Duration> durationOptional) {
+        return durationOptional.map((final var duration) -> duration.toMillis() + "ms")
+            .orElse("-");
+    }
+
+    private static void report(final String name, final TimerSnapshot timerSnapshot, final long seconds) {
+        System.out.printf(
+            "%-24s count=%-10d rate=%-10d/s p50=%-8dus p90=%-8dus p99=%-8dus p99.9=%-8dus max=%dus%n",
+            name,
+            timerSnapshot.count(),
+            timerSnapshot.count() / Math.max(1L, seconds),
+            timerSnapshot.percentile(0.5D).toNanos() / 1_000L,
+            timerSnapshot.percentile(0.9D).toNanos() / 1_000L,
+            timerSnapshot.percentile(0.99D).toNanos() / 1_000L,
+            timerSnapshot.percentile(0.999D).toNanos() / 1_000L,
+            timerSnapshot.max().toNanos() / 1_000L
+        );
+    }
+
+    /**
+     * The stand-in server accepts any credentials, so only the session's account ID and access token are needed
+     */
+    private static Fortnite newFortnite(final String accountId) {
+        final var session = (Session) Proxy.newProxyInstance(
+            Session.class.getClassLoader(),
+            new Class<?>[]{Session.class},
+            (final var proxy, final var method, final var methodArgs) -> {
+                switch (method.getName()) {
+                    case "accountId":
+                        return accountId;
+                    case "accessToken":
+                        return "stand-in-access-token";
+                    case "toString":
+                        return "StandInSession{accountId='" + accountId + "'}";
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        );
+        return (Fortnite) Proxy.newProxyInstance(
+            Fortnite.class.getClassLoader(),
+            new Class<?>[]{Fortnite.class},
+            (final var proxy, final var method, final var methodArgs) -> {
+                switch (method.getName()) {
+                    case "session":
+                        return session;
+                    case "close":
+                        return null;
+                    case "toString":
+                        return "StandInFortnite{accountId='" + accountId + "'}";
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        );
+    }
+
+    private static Map<String, String> parseOptions(final String[] args) {
+        final var options = new HashMap<String, String>();
+        for (var argIndex = 0; argIndex < args.length; argIndex += 2) {
+            if (!args[argIndex].startsWith("--") || argIndex + 1 == args.length)
+                throw new IllegalArgumentException(String.format("Expected --name value but got %s", args[argIndex]));
+            options.put(args[argIndex].substring(2), args[argIndex + 1]);
+        }
+        return options;
+    }
+
+    private static int option(final Map<String, String> options, final String name, final int defaultValue) {
+        final var value = options.get(name);
+        return value == null ?
+            defaultValue
+            : Integer.parseInt(value);
+    }
+}
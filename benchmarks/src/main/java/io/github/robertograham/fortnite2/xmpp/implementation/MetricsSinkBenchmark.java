@@ -0,0 +1,58 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the built-in {@link RecordingMetricsSink} costs the XMPP connection's threads
+ * for every stanza and listener call. Run with {@code -t} above 1 to see contention
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsSinkBenchmark {
+
+    private RecordingMetricsSink recordingMetricsSink;
+
+    @Setup
+    public void setUp() {
+        recordingMetricsSink = RecordingMetricsSink.newInstance();
+    }
+
+    @Benchmark
+    public void incrementCounter() {
+        recordingMetricsSink.incrementCounter(MetricsCounter.PRESENCES_RECEIVED);
+    }
+
+    @Benchmark
+    public void recordNanos(final NanosState nanosState) {
+        recordingMetricsSink.recordNanos(MetricsTimer.ON_FRIEND_PRESENCE_RECEIVED_LISTENER, nanosState.nextNanos());
+    }
+
+    @State(Scope.Thread)
+    public static class NanosState {
+
+        private long nanos = 1L;
+
+        private long nextNanos() {
+            // walks every bucket rather than hitting the same one
+            nanos = nanos * 6364136223846793005L + 1442695040888963407L;
+            return nanos >>> 40;
+        }
+    }
+}
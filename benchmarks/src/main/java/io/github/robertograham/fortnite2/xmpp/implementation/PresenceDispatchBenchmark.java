@@ -0,0 +1,108 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+import org.jivesoftware.smack.packet.Presence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DefaultFriendResource.DefaultRosterListener#presenceChanged(Presence)}
+ * from stanza to listener invocation. The same presence is received repeatedly, so with
+ * {@code suppressDuplicatePresences} this measures the cost of recognising a re-broadcast.
+ * The {@code alternating} shape switches a friend between the lobby and a match on every
+ * presence, so every presence is a change.
+ * Sessions are decoded lazily, so {@code accessSession} decides whether the listener pays for decoding
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PresenceDispatchBenchmark {
+
+    @Param({"lobby", "inMatch", "offline", "alternating"})
+    public String presenceShape;
+
+    @Param({"false", "true"})
+    public boolean suppressDuplicatePresences;
+
+    @Param({"false", "true"})
+    public boolean accessSession;
+
+    private Presence[] presences;
+    private Presence presence;
+    private int presenceIndex;
+    private DefaultFriendResource.DefaultRosterListener defaultRosterListener;
+    private Status lastStatus;
+    private Optional<Session> lastSessionOptional;
+    private boolean lastJoinable;
+
+    @Setup
+    public void setUp() {
+        switch (presenceShape) {
+            case "lobby":
+                presence = SyntheticStanzas.presence(0, Presence.Type.available, SyntheticStanzas.LOBBY_PRESENCE_STATUS_JSON);
+                break;
+            case "inMatch":
+                presence = SyntheticStanzas.presence(0, Presence.Type.available, SyntheticStanzas.IN_MATCH_PRESENCE_STATUS_JSON);
+                break;
+            case "alternating":
+                presence = SyntheticStanzas.presence(0, Presence.Type.available, SyntheticStanzas.LOBBY_PRESENCE_STATUS_JSON);
+                break;
+            default:
+                presence = SyntheticStanzas.presence(0, Presence.Type.unavailable, null);
+        }
+        presences = "alternating".equals(presenceShape) ?
+            new Presence[]{presence, SyntheticStanzas.presence(0, Presence.Type.available, SyntheticStanzas.IN_MATCH_PRESENCE_STATUS_JSON)}
+            : new Presence[]{presence};
+        defaultRosterListener = new DefaultFriendResource.DefaultRosterListener(
+            (final var bareJid) -> presence,
+            SyntheticStanzas.DOMAIN_BARE_JID,
+            null,
+            (final var addedAccountIds, final var removedAccountIds, final var friend) -> {
+            },
+            (final var accountId, final var status, final var sessionOptional, final var friend) -> {
+                lastStatus = status;
+                lastSessionOptional = sessionOptional;
+                if (accessSession)
+                    lastJoinable = sessionOptional.map(Session::isJoinable)
+                        .orElse(false);
+            },
+            null,
+            ListenerDispatchQueue.newInlineInstance(),
+            ListenerDispatchQueue.newInlineInstance(),
+            ListenerCoalescer.newPassThroughInstance(ListenerDispatchQueue.newInlineInstance()),
+            suppressDuplicatePresences,
+            FriendPresenceFilter.allowAll(),
+            null,
+            null,
+            null,
+            NoOpMetricsSink.INSTANCE
+        );
+    }
+
+    @Benchmark
+    public void presenceChanged(final Blackhole blackhole) {
+        presence = presences[presenceIndex];
+        presenceIndex = (presenceIndex + 1) % presences.length;
+        defaultRosterListener.presenceChanged(presence);
+        blackhole.consume(lastStatus);
+        blackhole.consume(lastSessionOptional);
+        blackhole.consume(lastJoinable);
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+import org.jivesoftware.smack.packet.Presence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DefaultFriendResource.DefaultRosterListener#presenceChanged(Presence)} when
+ * {@link FriendPresenceFilter} rejects every presence at the given stage, against {@code none} where every presence
+ * reaches the listener. A friend switches between the lobby and a match on every presence, so every presence is a
+ * change and has a session. Run with {@code -prof gc} to see what a filtered presence allocates
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PresenceFilterBenchmark {
+
+    @Param({"none", "accountId", "status", "session"})
+    public String rejectingStage;
+
+    private Presence[] presences;
+    private Presence presence;
+    private int presenceIndex;
+    private DefaultFriendResource.DefaultRosterListener defaultRosterListener;
+    private Status lastStatus;
+
+    @Setup
+    public void setUp() {
+        presences = new Presence[]{
+            SyntheticStanzas.presence(0, Presence.Type.available, SyntheticStanzas.LOBBY_PRESENCE_STATUS_JSON),
+            SyntheticStanzas.presence(0, Presence.Type.available, SyntheticStanzas.IN_MATCH_PRESENCE_STATUS_JSON)
+        };
+        presence = presences[0];
+        defaultRosterListener = new DefaultFriendResource.DefaultRosterListener(
+            (final var bareJid) -> presence,
+            SyntheticStanzas.DOMAIN_BARE_JID,
+            null,
+            (final var addedAccountIds, final var removedAccountIds, final var friend) -> {
+            },
+            (final var accountId, final var status, final var sessionOptional, final var friend) -> lastStatus = status,
+            null,
+            ListenerDispatchQueue.newInlineInstance(),
+            ListenerDispatchQueue.newInlineInstance(),
+            ListenerCoalescer.newPassThroughInstance(ListenerDispatchQueue.newInlineInstance()),
+            true,
+            FriendPresenceFilter.newInstance(
+                "accountId".equals(rejectingStage) ?
+                    (final var accountId) -> false
+                    : null,
+                "status".equals(rejectingStage) ?
+                    (final var previousStatus, final var status) -> previousStatus != status
+                    : null,
+                "session".equals(rejectingStage) ?
+                    (final var session) -> session.status() == null
+                    : null
+            ),
+            null,
+            null,
+            null,
+            NoOpMetricsSink.INSTANCE
+        );
+    }
+
+    @Benchmark
+    public void presenceChanged(final Blackhole blackhole) {
+        presence = presences[presenceIndex];
+        presenceIndex ^= 1;
+        defaultRosterListener.presenceChanged(presence);
+        blackhole.consume(lastStatus);
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import org.jivesoftware.smack.packet.Presence;
+import org.jxmpp.jid.BareJid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how many friend presences per millisecond {@link DefaultFriendResource.DefaultRosterListener} gets through
+ * in a burst like the one after logging in, with presences handled on {@code laneCount} {@link PresenceLanes} or, for
+ * {@code 0}, on the thread that receives them. Every friend switches between the lobby and a match each burst and the
+ * listener reads every session, so each presence pays for a roster lookup, an index update and a session decode.
+ * Throughput should grow with {@code laneCount} up to the number of cores available
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PresenceLaneScalingBenchmark {
+
+    private static final int FRIEND_COUNT = 1_000;
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int laneCount;
+
+    private Presence[] lobbyPresences;
+    private Presence[] inMatchPresences;
+    private BareJid[] bareJids;
+    private Map<BareJid, Presence> bareJidToPresenceMap;
+    private PresenceLanes presenceLanes;
+    private DefaultFriendResource.DefaultRosterListener defaultRosterListener;
+    private LongAdder handledPresenceCount;
+    private LongAdder joinablePresenceCount;
+    private long dispatchedPresenceCount;
+    private boolean inMatch;
+
+    @Setup
+    public void setUp() {
+        lobbyPresences = new Presence[FRIEND_COUNT];
+        inMatchPresences = new Presence[FRIEND_COUNT];
+        bareJids = SyntheticStanzas.bareJids(FRIEND_COUNT)
+            .toArray(BareJid[]::new);
+        for (var index = 0; index < FRIEND_COUNT; index++) {
+            lobbyPresences[index] = SyntheticStanzas.presence(index, Presence.Type.available, SyntheticStanzas.LOBBY_PRESENCE_STATUS_JSON);
+            inMatchPresences[index] = SyntheticStanzas.presence(index, Presence.Type.available, SyntheticStanzas.IN_MATCH_PRESENCE_STATUS_JSON);
+        }
+        bareJidToPresenceMap = new ConcurrentHashMap<>();
+        presenceLanes = laneCount == 0 ?
+            null
+            : PresenceLanes.newInstance(laneCount, 1_024, NoOpMetricsSink.INSTANCE);
+        handledPresenceCount = new LongAdder();
+        joinablePresenceCount = new LongAdder();
+        defaultRosterListener = new DefaultFriendResource.DefaultRosterListener(
+            bareJidToPresenceMap::get,
+            SyntheticStanzas.DOMAIN_BARE_JID,
+            null,
+            (final var addedAccountIds, final var removedAccountIds, final var friend) -> {
+            },
+            (final var accountId, final var status, final var sessionOptional, final var friend) -> {
+                if (sessionOptional.map(Session::isJoinable)
+                    .orElse(false))
+                    joinablePresenceCount.increment();
+                handledPresenceCount.increment();
+            },
+            null,
+            ListenerDispatchQueue.newInlineInstance(),
+            ListenerDispatchQueue.newInlineInstance(),
+            ListenerCoalescer.newPassThroughInstance(ListenerDispatchQueue.newInlineInstance()),
+            true,
+            FriendPresenceFilter.allowAll(),
+            presenceLanes,
+            null,
+            null,
+            NoOpMetricsSink.INSTANCE
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (presenceLanes != null)
+            presenceLanes.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRIEND_COUNT)
+    public void burst() {
+        final var presences = inMatch ?
+            inMatchPresences
+            : lobbyPresences;
+        inMatch = !inMatch;
+        for (var index = 0; index < FRIEND_COUNT; index++) {
+            bareJidToPresenceMap.put(bareJids[index], presences[index]);
+            defaultRosterListener.presenceChanged(presences[index]);
+        }
+        dispatchedPresenceCount += FRIEND_COUNT;
+        while (handledPresenceCount.sum() < dispatchedPresenceCount)
+            Thread.yield();
+    }
+}
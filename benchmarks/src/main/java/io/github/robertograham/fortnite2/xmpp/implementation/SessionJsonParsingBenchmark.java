@@ -0,0 +1,52 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Jsonb tree-building presence status decoder with the streaming one
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionJsonParsingBenchmark {
+
+    @Param({"lobby", "inMatch"})
+    public String presenceShape;
+
+    private String presenceStatusJson;
+
+    @Setup
+    public void setUp() {
+        presenceStatusJson = "lobby".equals(presenceShape) ?
+            SyntheticStanzas.LOBBY_PRESENCE_STATUS_JSON
+            : SyntheticStanzas.IN_MATCH_PRESENCE_STATUS_JSON;
+        if (!jsonb().equals(streaming()))
+            throw new IllegalStateException("Streaming and Jsonb decoders disagree on " + presenceShape);
+    }
+
+    @Benchmark
+    public Optional<DefaultSession> jsonb() {
+        return JsonToOptionalOfClassParser.INSTANCE.parseJsonToOptionalOfClass(DefaultSession.class, presenceStatusJson);
+    }
+
+    @Benchmark
+    public Optional<DefaultSession> streaming() {
+        return JsonToDefaultSessionParser.INSTANCE.parseJsonToOptionalOfDefaultSession(presenceStatusJson);
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering the user's own session into presence status JSON while only the remaining player count changes
+ * between renders, as it does during a match, with the fragments cached between renders or rendered from scratch
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionJsonRenderBenchmark {
+
+    @Param({"cached", "uncached"})
+    public String renderer;
+
+    private Session[] sessions;
+    private SessionJsonRenderer sessionJsonRenderer;
+    private int nextIndex;
+
+    @Setup
+    public void setUp() {
+        final var builder = DefaultSession.Builder.newInstance("Battle Royale - 57 Left")
+            .setId("0a1b2c3d4e5f60718293a4b5c6d7e8f9")
+            .setPlaying(true)
+            .setJoinable(true)
+            .setPartyMemberCount(2)
+            .setMaxPartyMemberCount(4)
+            .setParty("00000000000000000000000000000000", "k")
+            .setPlatform(Platform.WINDOWS)
+            .setApplication(Application.FORTNITE_CLIENT);
+        sessions = new Session[]{
+            builder.setRemainingPlayerCount(57)
+                .build(),
+            builder.setRemainingPlayerCount(56)
+                .build()
+        };
+        sessionJsonRenderer = SessionJsonRenderer.newInstance(SyntheticStanzas.accountId(0));
+        for (final var session : sessions)
+            if (!JsonToDefaultSessionParser.INSTANCE.parseJsonToOptionalOfDefaultSession(render())
+                .filter(session::equals)
+                .isPresent())
+                throw new IllegalStateException("Rendered session doesn't decode back to " + session);
+    }
+
+    @Benchmark
+    public String render() {
+        final var session = sessions[nextIndex++ & 1];
+        return "cached".equals(renderer) ?
+            sessionJsonRenderer.render(session)
+            : SessionJsonRenderer.newInstance(SyntheticStanzas.accountId(0))
+            .render(session);
+    }
+}
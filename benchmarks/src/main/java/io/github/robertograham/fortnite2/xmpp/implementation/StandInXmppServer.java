@@ -0,0 +1,429 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Minimal XMPP server that stands in for Epic Games' prod XMPP service. It accepts any PLAIN login whose
+ * resource has the {@code V2:app:platform} shape, serves a synthetic roster and, once the client has asked
+ * for its roster and sent its initial presence, floods it with Fortnite-shaped presences and chat messages
+ * from its friends at a fixed rate. Every presence carries the {@link System#nanoTime()} it was written at
+ * as its session ID, and every chat message as its body, so latency can be measured in the same JVM.
+ * It can offer zlib stream compression (XEP-0138). There's no TLS, stream management or roster versioning
+ */
+final class StandInXmppServer implements AutoCloseable {
+
+    static final String DOMAIN = "prod.ol.epicgames.com";
+    private static final Logger LOGGER = Logger.getLogger(StandInXmppServer.class.getName());
+    private static final Pattern RESOURCE_PATTERN = Pattern.compile("V2:[^:]+:[^:]+");
+    private static final String FRIEND_RESOURCE = "V2:Fortnite:WIN";
+    private static final int MAX_STANZAS_PER_FLUSH = 1_024;
+    private final ServerSocket serverSocket;
+    private final int rosterSize;
+    private final int presencesPerSecond;
+    private final int messagesPerSecond;
+    private final int compressionLevel;
+    private final ExecutorService executorService;
+    private final Set<Socket> sockets;
+    private final AtomicLong streamIdSequence;
+    private volatile boolean closed;
+
+    private StandInXmppServer(final ServerSocket serverSocket,
+                              final int rosterSize,
+                              final int presencesPerSecond,
+                              final int messagesPerSecond,
+                              final int compressionLevel) {
+        this.serverSocket = serverSocket;
+        this.rosterSize = rosterSize;
+        this.presencesPerSecond = presencesPerSecond;
+        this.messagesPerSecond = messagesPerSecond;
+        this.compressionLevel = compressionLevel;
+        executorService = Executors.newCachedThreadPool(ListenerDispatcher.newDaemonThreadFactory("stand-in-xmpp-server-"));
+        sockets = ConcurrentHashMap.newKeySet();
+        streamIdSequence = new AtomicLong();
+    }
+
+    /**
+     * @param rosterSize         number of friends every account has
+     * @param presencesPerSecond presences sent to each connection per second, {@code 0} for none
+     * @param messagesPerSecond  chat messages sent to each connection per second, {@code 0} for none
+     * @param compressionLevel   zlib level to compress what's sent with, from {@code 1} to {@code 9}. {@code 0}
+     *                           doesn't offer compression
+     * @return a new {@link StandInXmppServer} listening on an ephemeral loopback port
+     */
+    static StandInXmppServer newInstance(final int rosterSize,
+                                         final int presencesPerSecond,
+                                         final int messagesPerSecond,
+                                         final int compressionLevel) throws IOException {
+        if (rosterSize < 1)
+            throw new IllegalArgumentException("rosterSize must be greater than 0");
+        if (compressionLevel < 0 || compressionLevel > 9)
+            throw new IllegalArgumentException("compressionLevel must be between 0 and 9");
+        final var standInXmppServer = new StandInXmppServer(
+            new ServerSocket(0, 256, InetAddress.getLoopbackAddress()),
+            rosterSize,
+            presencesPerSecond,
+            messagesPerSecond,
+            compressionLevel
+        );
+        standInXmppServer.executorService.execute(standInXmppServer::accept);
+        return standInXmppServer;
+    }
+
+    String host() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (final var socket : sockets)
+            socket.close();
+        executorService.shutdownNow();
+    }
+
+    private void accept() {
+        while (!closed)
+            try {
+                final var socket = serverSocket.accept();
+                sockets.add(socket);
+                executorService.execute(() -> serve(socket));
+            } catch (final IOException exception) {
+                if (!closed)
+                    LOGGER.log(Level.WARNING, "Stand-in XMPP server couldn't accept a connection", exception);
+            }
+    }
+
+    private void serve(final Socket socket) {
+        final var connection = new Connection(socket);
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            connection.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            connection.xmlPullParser = PacketParserUtils.newXmppParser(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            var stanzaDepth = -1;
+            while (true) {
+                // read through the connection each time, as the parser is replaced when compression starts
+                final var xmlPullParser = connection.xmlPullParser;
+                final var eventType = xmlPullParser.next();
+                if (eventType == XmlPullParser.END_DOCUMENT)
+                    break;
+                if (eventType == XmlPullParser.START_TAG) {
+                    // a stream is restarted by opening a new one inside the old one
+                    if ("stream".equals(xmlPullParser.getName())) {
+                        stanzaDepth = xmlPullParser.getDepth() + 1;
+                        connection.openStream();
+                    } else if (xmlPullParser.getDepth() == stanzaDepth)
+                        connection.handle(Element.read(xmlPullParser));
+                } else if (eventType == XmlPullParser.END_TAG && "stream".equals(xmlPullParser.getName())) {
+                    connection.write("</stream:stream>");
+                    break;
+                }
+            }
+        } catch (final IOException | XmlPullParserException exception) {
+            if (!closed && !socket.isClosed())
+                LOGGER.log(Level.FINE, "Stand-in XMPP connection failed", exception);
+        } finally {
+            connection.stopped = true;
+            sockets.remove(socket);
+        }
+    }
+
+    private final class Connection {
+
+        private final Socket socket;
+        private Writer writer;
+        private XmlPullParser xmlPullParser;
+        private boolean compressed;
+        private String accountId;
+        private String fullJid;
+        private boolean rosterSent;
+        private boolean initialPresenceReceived;
+        private boolean flooding;
+        private volatile boolean stopped;
+
+        private Connection(final Socket socket) {
+            this.socket = socket;
+        }
+
+        private void openStream() throws IOException {
+            final var features = accountId == null ?
+                "<mechanisms xmlns='urn:ietf:params:xml:ns:xmpp-sasl'><mechanism>PLAIN</mechanism></mechanisms>"
+                : compressionLevel == 0 || compressed ?
+                "<bind xmlns='urn:ietf:params:xml:ns:xmpp-bind'/>"
+                : "<bind xmlns='urn:ietf:params:xml:ns:xmpp-bind'/>" +
+                "<compression xmlns='http://jabber.org/features/compress'><method>zlib</method></compression>";
+            write("<?xml version='1.0' encoding='UTF-8'?>" +
+                "<stream:stream xmlns='jabber:client' xmlns:stream='http://etherx.jabber.org/streams'" +
+                " from='" + DOMAIN + "' id='stand-in-" + streamIdSequence.incrementAndGet() + "' version='1.0' xml:lang='en'>" +
+                "<stream:features>" + features + "</stream:features>");
+        }
+
+        private void handle(final Element element) throws IOException, XmlPullParserException {
+            switch (element.name) {
+                case "auth":
+                    authenticate(element);
+                    break;
+                case "compress":
+                    compress(element);
+                    break;
+                case "iq":
+                    handleIq(element);
+                    break;
+                case "presence":
+                    if (element.attributes.get("type") == null) {
+                        initialPresenceReceived = true;
+                        startFloodingIfReady();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void authenticate(final Element auth) throws IOException {
+            final var credentials = new String(Base64.getDecoder().decode(auth.text.trim()), StandardCharsets.UTF_8)
+                .split("\0", -1);
+            if (credentials.length != 3 || credentials[1].isEmpty() || credentials[2].isEmpty()) {
+                write("<failure xmlns='urn:ietf:params:xml:ns:xmpp-sasl'><not-authorized/></failure>");
+                return;
+            }
+            accountId = credentials[1];
+            write("<success xmlns='urn:ietf:params:xml:ns:xmpp-sasl'/>");
+        }
+
+        /**
+         * Acknowledges uncompressed, then both directions switch to zlib and the client restarts the stream
+         */
+        private synchronized void compress(final Element compress) throws IOException, XmlPullParserException {
+            final var method = compress.child("method");
+            if (compressionLevel == 0 || compressed || method == null || !"zlib".equals(method.text)) {
+                write("<failure xmlns='http://jabber.org/protocol/compress'><unsupported-method/></failure>");
+                return;
+            }
+            write("<compressed xmlns='http://jabber.org/protocol/compress'/>");
+            compressed = true;
+            // a sync flush on every flush, so each write reaches the client whole
+            writer = new BufferedWriter(new OutputStreamWriter(
+                new DeflaterOutputStream(socket.getOutputStream(), new Deflater(compressionLevel), true),
+                StandardCharsets.UTF_8
+            ));
+            // InflaterInputStream claims a byte is available until the end of the stream, which would leave the
+            // reader waiting to fill its buffer rather than handing over what's been inflated
+            xmlPullParser = PacketParserUtils.newXmppParser(new InputStreamReader(
+                new InflaterInputStream(socket.getInputStream()) {
+
+                    @Override
+                    public int available() throws IOException {
+                        return inf.needsInput() ?
+                            0
+                            : super.available();
+                    }
+                },
+                StandardCharsets.UTF_8
+            ));
+        }
+
+        private void handleIq(final Element iq) throws IOException {
+            final var id = iq.attributes.get("id");
+            final var type = iq.attributes.get("type");
+            if (!"get".equals(type) && !"set".equals(type))
+                return;
+            final var child = iq.children.isEmpty() ?
+                null
+                : iq.children.get(0);
+            final var namespace = child == null ?
+                ""
+                : child.namespace;
+            switch (namespace) {
+                case "urn:ietf:params:xml:ns:xmpp-bind":
+                    final var resource = child.child("resource");
+                    if (resource == null || !RESOURCE_PATTERN.matcher(resource.text).matches()) {
+                        writeIqError(id, "modify", "bad-request");
+                        return;
+                    }
+                    fullJid = accountId + '@' + DOMAIN + '/' + resource.text;
+                    write("<iq id='" + id + "' type='result'><bind xmlns='urn:ietf:params:xml:ns:xmpp-bind'><jid>" +
+                        escape(fullJid) + "</jid></bind></iq>");
+                    break;
+                case "jabber:iq:roster":
+                    if ("get".equals(type))
+                        writeRoster(id);
+                    else
+                        write("<iq id='" + id + "' type='result'/>");
+                    break;
+                case "urn:xmpp:ping":
+                    write("<iq id='" + id + "' type='result'/>");
+                    break;
+                default:
+                    writeIqError(id, "cancel", "service-unavailable");
+                    break;
+            }
+        }
+
+        private void writeRoster(final String id) throws IOException {
+            final var stringBuilder = new StringBuilder(64 + rosterSize * 96)
+                .append("<iq id='").append(id).append("' type='result' to='").append(escape(fullJid)).append("'>")
+                .append("<query xmlns='jabber:iq:roster'>");
+            for (var friendIndex = 0; friendIndex < rosterSize; friendIndex++)
+                stringBuilder.append("<item jid='").append(SyntheticStanzas.accountId(friendIndex)).append('@').append(DOMAIN)
+                    .append("' subscription='both'/>");
+            write(stringBuilder.append("</query></iq>").toString());
+            rosterSent = true;
+            startFloodingIfReady();
+        }
+
+        private void writeIqError(final String id, final String errorType, final String condition) throws IOException {
+            write("<iq id='" + id + "' type='error'><error type='" + errorType + "'><" + condition +
+                " xmlns='urn:ietf:params:xml:ns:xmpp-stanzas'/></error></iq>");
+        }
+
+        private void startFloodingIfReady() {
+            if (flooding || !rosterSent || !initialPresenceReceived || (presencesPerSecond == 0 && messagesPerSecond == 0))
+                return;
+            flooding = true;
+            executorService.execute(this::flood);
+        }
+
+        /**
+         * Keeps the number of stanzas sent in line with the time elapsed, so a client that falls behind is sent a
+         * burst once it catches up rather than the load easing off
+         */
+        private void flood() {
+            final var startNanos = System.nanoTime();
+            var presenceCount = 0L;
+            var messageCount = 0L;
+            var friendIndex = 0;
+            try {
+                while (!stopped && !closed) {
+                    final var elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+                    final var duePresenceCount = elapsedMicros * presencesPerSecond / 1_000_000L;
+                    final var dueMessageCount = elapsedMicros * messagesPerSecond / 1_000_000L;
+                    var stanzaCount = 0;
+                    synchronized (this) {
+                        for (; presenceCount < duePresenceCount && stanzaCount < MAX_STANZAS_PER_FLUSH; presenceCount++, stanzaCount++) {
+                            writer.write(presence(friendIndex));
+                            friendIndex = (friendIndex + 1) % rosterSize;
+                        }
+                        for (; messageCount < dueMessageCount && stanzaCount < MAX_STANZAS_PER_FLUSH; messageCount++, stanzaCount++) {
+                            writer.write(message(friendIndex));
+                            friendIndex = (friendIndex + 1) % rosterSize;
+                        }
+                        writer.flush();
+                    }
+                    if (stanzaCount < MAX_STANZAS_PER_FLUSH)
+                        Thread.sleep(1L);
+                }
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            } catch (final IOException exception) {
+                if (!stopped && !closed)
+                    LOGGER.log(Level.FINE, "Stand-in XMPP server couldn't flood a connection", exception);
+            }
+        }
+
+        private String presence(final int friendIndex) {
+            final var statusJson = SyntheticStanzas.LOBBY_PRESENCE_STATUS_JSON.replace(
+                "\"SessionId\":\"\"",
+                String.format("\"SessionId\":\"%032x\"", System.nanoTime())
+            );
+            return "<presence from='" + SyntheticStanzas.accountId(friendIndex) + '@' + DOMAIN + '/' + FRIEND_RESOURCE +
+                "' to='" + escape(fullJid) + "'><status>" + escape(statusJson) + "</status></presence>";
+        }
+
+        private String message(final int friendIndex) {
+            return "<message from='" + SyntheticStanzas.accountId(friendIndex) + '@' + DOMAIN + '/' + FRIEND_RESOURCE +
+                "' to='" + escape(fullJid) + "' type='chat'><body>" + System.nanoTime() + "</body></message>";
+        }
+
+        private synchronized void write(final String xml) throws IOException {
+            writer.write(xml);
+            writer.flush();
+        }
+    }
+
+    private static String escape(final String string) {
+        return string.replace("&", "&amp;")
+            .replace("<", "&lt;")
+            .replace(">", "&gt;")
+            .replace("'", "&apos;")
+            .replace("\"", "&quot;");
+    }
+
+    /**
+     * Just enough of a DOM to read what clients send
+     */
+    private static final class Element {
+
+        private final String name;
+        private final String namespace;
+        private final Map<String, String> attributes;
+        private final List<Element> children;
+        private String text;
+
+        private Element(final String name, final String namespace, final Map<String, String> attributes) {
+            this.name = name;
+            this.namespace = namespace;
+            this.attributes = attributes;
+            children = new ArrayList<>();
+            text = "";
+        }
+
+        /**
+         * Reads the element the parser is positioned at the start of, leaving it positioned at its end
+         */
+        private static Element read(final XmlPullParser xmlPullParser) throws IOException, XmlPullParserException {
+            final var attributes = new HashMap<String, String>();
+            for (var attributeIndex = 0; attributeIndex < xmlPullParser.getAttributeCount(); attributeIndex++)
+                attributes.put(xmlPullParser.getAttributeName(attributeIndex), xmlPullParser.getAttributeValue(attributeIndex));
+            final var element = new Element(xmlPullParser.getName(), xmlPullParser.getNamespace(), attributes);
+            final var textBuilder = new StringBuilder();
+            for (var eventType = xmlPullParser.next(); eventType != XmlPullParser.END_TAG; eventType = xmlPullParser.next())
+                if (eventType == XmlPullParser.START_TAG)
+                    element.children.add(read(xmlPullParser));
+                else if (eventType == XmlPullParser.TEXT)
+                    textBuilder.append(xmlPullParser.getText());
+            element.text = textBuilder.toString();
+            return element;
+        }
+
+        private Element child(final String name) {
+            for (final var child : children)
+                if (name.equals(child.name))
+                    return child;
+            return null;
+        }
+    }
+}
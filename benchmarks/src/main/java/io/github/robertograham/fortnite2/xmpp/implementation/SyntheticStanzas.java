@@ -0,0 +1,110 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.DomainBareJid;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.jid.parts.Localpart;
+import org.jxmpp.jid.parts.Resourcepart;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Fortnite-shaped stanza payloads used to drive benchmarks without a connection
+ */
+final class SyntheticStanzas {
+
+    static final String LOBBY_PRESENCE_STATUS_JSON = "{" +
+        "\"Status\":\"Battle Royale Lobby - 2 / 4\"," +
+        "\"bIsPlaying\":false," +
+        "\"bIsJoinable\":true," +
+        "\"bHasVoiceSupport\":false," +
+        "\"SessionId\":\"\"," +
+        "\"Properties\":{" +
+        "\"FortBasicInfo_j\":{\"homeBaseRating\":127}," +
+        "\"FortLFG_I\":\"0\"," +
+        "\"FortPartySize_i\":2," +
+        "\"FortSubGame_i\":1," +
+        "\"InUnjoinableMatch_b\":false," +
+        "\"FortGameplayStats_j\":{\"state\":\"\",\"playlist\":\"None\",\"numKills\":0,\"bFellToDeath\":false}," +
+        "\"party.joininfodata.286331153_j\":{" +
+        "\"sourceId\":\"0a1b2c3d4e5f60718293a4b5c6d7e8f9\"," +
+        "\"sourceDisplayName\":\"SyntheticFriend\"," +
+        "\"sourcePlatform\":\"WIN\"," +
+        "\"partyId\":\"f1e2d3c4b5a6978812345678abcdef01\"," +
+        "\"partyTypeId\":286331153," +
+        "\"key\":\"k\"," +
+        "\"appId\":\"Fortnite\"," +
+        "\"buildId\":\"1:1:\"," +
+        "\"partyFlags\":-2024557306," +
+        "\"notAcceptingReason\":0," +
+        "\"pc\":2" +
+        "}," +
+        "\"Event_PartySize_s\":\"2\"," +
+        "\"Event_PartyMaxSize_s\":\"4\"," +
+        "\"GamePlaylistName_s\":\"Playlist_DefaultDuo\"" +
+        "}" +
+        "}";
+
+    static final String IN_MATCH_PRESENCE_STATUS_JSON = "{" +
+        "\"Status\":\"Battle Royale - Duo - 37 Left\"," +
+        "\"bIsPlaying\":true," +
+        "\"bIsJoinable\":false," +
+        "\"bHasVoiceSupport\":true," +
+        "\"SessionId\":\"5f0c2a4b8d1e4f6a9b3c7d2e1f0a9b8c\"," +
+        "\"Properties\":{" +
+        "\"FortBasicInfo_j\":{\"homeBaseRating\":127}," +
+        "\"FortLFG_I\":\"0\"," +
+        "\"FortPartySize_i\":2," +
+        "\"FortSubGame_i\":1," +
+        "\"InUnjoinableMatch_b\":true," +
+        "\"FortGameplayStats_j\":{\"state\":\"Playing\",\"playlist\":\"Playlist_DefaultDuo\",\"numKills\":3,\"bFellToDeath\":false}," +
+        "\"ServerPlayerCount_i\":\"37\"," +
+        "\"GameSessionJoinKey_s\":\"4f3c9a0b7e6d5c4b\"," +
+        "\"Event_PlayersAlive_s\":\"37\"," +
+        "\"Event_PartySize_s\":\"2\"," +
+        "\"Event_PartyMaxSize_s\":\"4\"," +
+        "\"GamePlaylistName_s\":\"Playlist_DefaultDuo\"" +
+        "}" +
+        "}";
+
+    static final DomainBareJid DOMAIN_BARE_JID = JidCreate.domainBareFromOrThrowUnchecked("prod.ol.epicgames.com");
+
+    private SyntheticStanzas() {
+    }
+
+    static String accountId(final int index) {
+        return String.format("%032x", 0x5eedL * 31L + index);
+    }
+
+    static EntityBareJid entityBareJid(final int index) {
+        return JidCreate.entityBareFrom(Localpart.fromOrThrowUnchecked(accountId(index)), DOMAIN_BARE_JID);
+    }
+
+    static List<BareJid> bareJids(final int count) {
+        return IntStream.range(0, count)
+            .mapToObj(SyntheticStanzas::entityBareJid)
+            .collect(Collectors.toUnmodifiableList());
+    }
+
+    static Presence presence(final int index, final Presence.Type type, final String statusJson) {
+        final var presence = new Presence(type);
+        presence.setFrom(JidCreate.entityFullFrom(
+            entityBareJid(index),
+            Resourcepart.fromOrThrowUnchecked("V2:Fortnite:WIN")
+        ));
+        presence.setStatus(statusJson);
+        return presence;
+    }
+
+    static Message chatMessage(final int index, final String body) {
+        final var message = new Message(entityBareJid(index), Message.Type.chat);
+        message.setFrom(entityBareJid(index));
+        message.setBody(body);
+        return message;
+    }
+}
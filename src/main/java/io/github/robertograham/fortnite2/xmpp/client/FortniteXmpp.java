@@ -1,5 +1,7 @@
 package io.github.robertograham.fortnite2.xmpp.client;
 
+import io.github.robertograham.fortnite2.xmpp.domain.StartupReport;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
 import io.github.robertograham.fortnite2.xmpp.resource.ChatResource;
 import io.github.robertograham.fortnite2.xmpp.resource.FriendResource;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection;
@@ -14,6 +16,12 @@ public interface FortniteXmpp extends AutoCloseable {
     @Override
     void close();
 
+    /**
+     * @return ID of the account this client is logged in as
+     * @since 2.1.0
+     */
+    String accountId();
+
     /**
      * @return an object from which chat-related actions can be performed
      * @since 1.0.0
@@ -26,6 +34,19 @@ public interface FortniteXmpp extends AutoCloseable {
      */
     FriendResource friend();
 
+    /**
+     * @return the {@link MetricsSink} this client reports to, which ignores everything unless one was registered
+     * using {@link io.github.robertograham.fortnite2.xmpp.implementation.DefaultFortniteXmpp.Builder#setMetricsSink(MetricsSink)}
+     * @since 2.1.0
+     */
+    MetricsSink metrics();
+
+    /**
+     * @return how long each phase of starting this client took
+     * @since 2.1.0
+     */
+    StartupReport startupReport();
+
     /**
      * @return the xmpp connection used to communicate with Epic Games' prod xmpp service
      * @since 1.2.0
@@ -0,0 +1,39 @@
+package io.github.robertograham.fortnite2.xmpp.client;
+
+import io.github.robertograham.fortnite2.xmpp.domain.PoolStartupReport;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A group of {@link FortniteXmpp} clients, one per account, that share threads and
+ * are logged in and closed together
+ *
+ * @since 2.1.0
+ */
+public interface FortniteXmppPool extends AutoCloseable {
+
+    @Override
+    void close();
+
+    /**
+     * @param accountId ID of the account the client is logged in as
+     * @return an {@link Optional} of {@link FortniteXmpp} that's empty if no client in this pool
+     * is logged in as {@code accountId}
+     * @throws NullPointerException if {@code accountId} is {@code null}
+     * @since 2.1.0
+     */
+    Optional<FortniteXmpp> findOneByAccountId(final String accountId);
+
+    /**
+     * @return every client in this pool that logged in successfully
+     * @since 2.1.0
+     */
+    List<FortniteXmpp> findAll();
+
+    /**
+     * @return how long this pool took to log in and how much memory its clients use
+     * @since 2.1.0
+     */
+    PoolStartupReport startupReport();
+}
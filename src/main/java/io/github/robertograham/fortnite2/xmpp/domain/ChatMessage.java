@@ -0,0 +1,38 @@
+package io.github.robertograham.fortnite2.xmpp.domain;
+
+import java.time.Instant;
+
+/**
+ * A chat message sent to or received from an account
+ *
+ * @since 2.1.0
+ */
+public interface ChatMessage {
+
+    /**
+     * @return ID of the account this chat message was sent to or received from
+     * @since 2.1.0
+     */
+    String accountId();
+
+    /**
+     * @return the body of this chat message
+     * @since 2.1.0
+     */
+    String body();
+
+    /**
+     * @return when this chat message was sent or received, to the millisecond
+     * @since 2.1.0
+     */
+    Instant timestamp();
+
+    /**
+     * @return where this chat message is in the history. Pass it back to
+     * {@link io.github.robertograham.fortnite2.xmpp.resource.ChatResource#streamMessagesReceivedFromAccountId(String, long)}
+     * or {@link io.github.robertograham.fortnite2.xmpp.resource.ChatResource#streamMessagesSentToAccountId(String, long)}
+     * to carry on with the chat messages before this one. Cursors of later chat messages are greater
+     * @since 2.1.0
+     */
+    long cursor();
+}
@@ -0,0 +1,36 @@
+package io.github.robertograham.fortnite2.xmpp.domain;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+
+import java.util.Optional;
+
+/**
+ * A presence received from a friend, published by
+ * {@link io.github.robertograham.fortnite2.xmpp.resource.FriendResource#friendPresencePublisher()}
+ *
+ * @since 2.1.0
+ */
+public interface FriendPresence {
+
+    /**
+     * @return the ID of the friend's account
+     * @since 2.1.0
+     */
+    String accountId();
+
+    /**
+     * @return {@link Status#ONLINE} if the friend is online and available,
+     * {@link Status#AWAY} if the friend is online and unavailable,
+     * {@link Status#OFFLINE} if the friend is offline
+     * @since 2.1.0
+     */
+    Status status();
+
+    /**
+     * @return an {@link Optional} of {@link Session} that's non-empty if {@link #status()} is not
+     * {@link Status#OFFLINE}. The session is decoded the first time one of its methods is called, which
+     * throws a {@link javax.json.JsonException} if the friend's session couldn't be decoded
+     * @since 2.1.0
+     */
+    Optional<Session> session();
+}
@@ -0,0 +1,24 @@
+package io.github.robertograham.fortnite2.xmpp.domain;
+
+import java.util.Set;
+
+/**
+ * Friends added to or removed from the authenticated user's friends list, published by
+ * {@link io.github.robertograham.fortnite2.xmpp.resource.FriendResource#friendsListChangePublisher()}
+ *
+ * @since 2.1.0
+ */
+public interface FriendsListChange {
+
+    /**
+     * @return IDs of the accounts that became friends of the authenticated user
+     * @since 2.1.0
+     */
+    Set<String> addedAccountIds();
+
+    /**
+     * @return IDs of the accounts that stopped being friends of the authenticated user
+     * @since 2.1.0
+     */
+    Set<String> removedAccountIds();
+}
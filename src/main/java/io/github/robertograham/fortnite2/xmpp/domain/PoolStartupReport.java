@@ -0,0 +1,38 @@
+package io.github.robertograham.fortnite2.xmpp.domain;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Describes how long it took a pool of clients to log in and how much memory they use
+ *
+ * @since 2.1.0
+ */
+public interface PoolStartupReport {
+
+    /**
+     * @return time taken from the first login starting to the last login finishing
+     * @since 2.1.0
+     */
+    Duration totalDuration();
+
+    /**
+     * @return how long each account took to connect and log in, keyed by account ID.
+     * Only contains accounts that logged in successfully
+     * @since 2.1.0
+     */
+    Map<String, Duration> loginDurationsByAccountId();
+
+    /**
+     * @return why each account failed to log in, keyed by account ID
+     * @since 2.1.0
+     */
+    Map<String, Exception> loginFailuresByAccountId();
+
+    /**
+     * @return growth in used heap across startup divided by the number of accounts that logged in.
+     * Garbage that hadn't been collected yet is included, so treat this as an upper bound
+     * @since 2.1.0
+     */
+    long heapBytesUsedPerAccount();
+}
@@ -0,0 +1,54 @@
+package io.github.robertograham.fortnite2.xmpp.domain;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Breaks down how long a client took to start, one phase after another. The phases after logging in
+ * happen in the background, so they're empty until they have. Reconnections aren't included
+ *
+ * @since 2.1.0
+ */
+public interface StartupReport {
+
+    /**
+     * @return time taken to look the XMPP server up in DNS and open a TCP connection to it
+     * @since 2.1.0
+     */
+    Duration connectDuration();
+
+    /**
+     * @return time taken from the TCP connection opening to the XMPP stream being ready to log in on,
+     * which is mostly the TLS handshake
+     * @since 2.1.0
+     */
+    Duration tlsDuration();
+
+    /**
+     * @return time taken to log in and bind a resource
+     * @since 2.1.0
+     */
+    Duration authenticationDuration();
+
+    /**
+     * @return time taken from logging in to the friends list being received.
+     * Empty if it hasn't been received yet
+     * @since 2.1.0
+     */
+    Optional<Duration> rosterDuration();
+
+    /**
+     * @return time taken from the friends list being received, or logging in if it hasn't been, to the first
+     * presence being received from a friend. Empty if none has been received yet
+     * @since 2.1.0
+     */
+    Optional<Duration> firstPresenceDuration();
+
+    /**
+     * @return time taken to warm up decoding in the background while connecting. Empty if warming up wasn't
+     * asked for with {@link io.github.robertograham.fortnite2.xmpp.implementation.DefaultFortniteXmpp.Builder#setWarmUpEnabled(boolean)}
+     * or hasn't finished
+     * @since 2.1.0
+     */
+    Optional<Duration> warmUpDuration();
+}
@@ -0,0 +1,39 @@
+package io.github.robertograham.fortnite2.xmpp.domain;
+
+import java.time.Duration;
+
+/**
+ * Distribution of the durations recorded for a {@link io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer}
+ * up to the moment it was taken. Percentiles are accurate to within 12.5%
+ *
+ * @since 2.1.0
+ */
+public interface TimerSnapshot {
+
+    /**
+     * @return number of durations recorded
+     * @since 2.1.0
+     */
+    long count();
+
+    /**
+     * @return sum of every duration recorded
+     * @since 2.1.0
+     */
+    Duration total();
+
+    /**
+     * @return the longest duration recorded, {@link Duration#ZERO} if none were
+     * @since 2.1.0
+     */
+    Duration max();
+
+    /**
+     * @param quantile between {@code 0.0} and {@code 1.0}, such as {@code 0.99} for the 99th percentile
+     * @return the duration that {@code quantile} of the recorded durations were no longer than,
+     * {@link Duration#ZERO} if none were recorded
+     * @throws IllegalArgumentException if {@code quantile} isn't between {@code 0.0} and {@code 1.0}
+     * @since 2.1.0
+     */
+    Duration percentile(final double quantile);
+}
@@ -0,0 +1,39 @@
+package io.github.robertograham.fortnite2.xmpp.domain.enumeration;
+
+/**
+ * State of the XMPP connection of a {@link io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp} instance
+ */
+public enum ConnectionState {
+
+    /**
+     * Connected and logged in for the first time
+     */
+    CONNECTED,
+
+    /**
+     * The connection dropped unexpectedly
+     */
+    CONNECTION_LOST,
+
+    /**
+     * An attempt to re-establish a dropped connection is starting
+     */
+    RECONNECTING,
+
+    /**
+     * A dropped connection was re-established with a new session, so the friends list
+     * and friends' presences are received again
+     */
+    RECONNECTED,
+
+    /**
+     * A dropped connection was re-established and the previous session was resumed, so stanzas
+     * missed while disconnected are replayed rather than the friends list being received again
+     */
+    RESUMED,
+
+    /**
+     * The connection was closed on purpose
+     */
+    CLOSED
+}
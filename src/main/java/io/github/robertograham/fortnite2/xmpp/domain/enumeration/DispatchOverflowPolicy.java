@@ -0,0 +1,24 @@
+package io.github.robertograham.fortnite2.xmpp.domain.enumeration;
+
+/**
+ * What happens to a listener event when that listener's dispatch queue is full
+ */
+public enum DispatchOverflowPolicy {
+
+    /**
+     * The XMPP connection's event thread waits until there is room in the queue
+     */
+    BLOCK,
+
+    /**
+     * The oldest queued event is discarded to make room
+     */
+    DROP_OLDEST,
+
+    /**
+     * A queued friend presence for the same account is replaced, so only the latest one is delivered.
+     * If no presence for the same account is queued, the oldest queued one is discarded to make room.
+     * Events for other listeners, which have to see every event, are treated as {@link #BLOCK}
+     */
+    COALESCE
+}
@@ -0,0 +1,91 @@
+package io.github.robertograham.fortnite2.xmpp.domain.enumeration;
+
+/**
+ * Something a {@link io.github.robertograham.fortnite2.xmpp.listener.MetricsSink} counts occurrences of
+ */
+public enum MetricsCounter {
+
+    /**
+     * A message stanza was received
+     */
+    MESSAGES_RECEIVED,
+
+    /**
+     * A presence stanza was received
+     */
+    PRESENCES_RECEIVED,
+
+    /**
+     * An IQ stanza was received
+     */
+    IQS_RECEIVED,
+
+    /**
+     * A message stanza was written to the connection
+     */
+    MESSAGES_SENT,
+
+    /**
+     * A presence stanza was written to the connection
+     */
+    PRESENCES_SENT,
+
+    /**
+     * An IQ stanza was written to the connection
+     */
+    IQS_SENT,
+
+    /**
+     * A friend's presence was kept from the
+     * {@link io.github.robertograham.fortnite2.xmpp.listener.OnFriendPresenceReceivedListener} by the filters set on
+     * {@link io.github.robertograham.fortnite2.xmpp.implementation.DefaultFortniteXmpp.Builder}
+     */
+    FRIEND_PRESENCES_FILTERED,
+
+    /**
+     * A chat message or status update was rejected because the outbound queue was full
+     */
+    OUTBOUND_STANZAS_REJECTED,
+
+    /**
+     * A status update wasn't sent, either because it was the same as the last one sent or because a later one
+     * replaced it while it was held back by the debounce window
+     */
+    PRESENCE_UPDATES_SUPPRESSED,
+
+    /**
+     * An event was discarded because a {@link java.util.concurrent.Flow.Subscriber}'s buffer was full, as set by
+     * its {@link SubscriberOverflowPolicy}
+     */
+    SUBSCRIBER_EVENTS_DROPPED,
+
+    /**
+     * The connection dropped unexpectedly
+     */
+    CONNECTIONS_LOST,
+
+    /**
+     * An attempt to re-establish a dropped connection started
+     */
+    RECONNECTION_ATTEMPTS,
+
+    /**
+     * A dropped connection was re-established with a new session
+     */
+    RECONNECTIONS,
+
+    /**
+     * A dropped connection was re-established and the previous session was resumed
+     */
+    RESUMPTIONS,
+
+    /**
+     * Bytes were read from the connection's socket, counted after any compression and encryption
+     */
+    BYTES_RECEIVED,
+
+    /**
+     * Bytes were written to the connection's socket, counted after any compression and encryption
+     */
+    BYTES_SENT
+}
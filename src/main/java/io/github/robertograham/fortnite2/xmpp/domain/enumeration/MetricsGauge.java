@@ -0,0 +1,27 @@
+package io.github.robertograham.fortnite2.xmpp.domain.enumeration;
+
+/**
+ * A current value a {@link io.github.robertograham.fortnite2.xmpp.listener.MetricsSink} can read on demand
+ */
+public enum MetricsGauge {
+
+    /**
+     * Number of listener calls waiting to be made, across every listener type
+     */
+    LISTENER_QUEUE_DEPTH,
+
+    /**
+     * Number of friend presences waiting to be handled, across every presence lane
+     */
+    PRESENCE_LANE_QUEUE_DEPTH,
+
+    /**
+     * Number of chat messages, status updates and broadcasts waiting to be sent
+     */
+    OUTBOUND_QUEUE_DEPTH,
+
+    /**
+     * Number of accounts whose chat messages are being kept
+     */
+    CHAT_CONVERSATION_COUNT
+}
@@ -0,0 +1,50 @@
+package io.github.robertograham.fortnite2.xmpp.domain.enumeration;
+
+/**
+ * Something a {@link io.github.robertograham.fortnite2.xmpp.listener.MetricsSink} records the duration of
+ */
+public enum MetricsTimer {
+
+    /**
+     * Decoding a friend's session from their presence status JSON
+     */
+    SESSION_DECODE,
+
+    /**
+     * A call to the {@link io.github.robertograham.fortnite2.xmpp.listener.OnChatMessageReceivedListener}
+     */
+    ON_CHAT_MESSAGE_RECEIVED_LISTENER,
+
+    /**
+     * A call to the {@link io.github.robertograham.fortnite2.xmpp.listener.OnFriendsListReceivedListener}
+     */
+    ON_FRIENDS_LIST_RECEIVED_LISTENER,
+
+    /**
+     * A call to the {@link io.github.robertograham.fortnite2.xmpp.listener.OnFriendsListChangedListener}
+     */
+    ON_FRIENDS_LIST_CHANGED_LISTENER,
+
+    /**
+     * A call to the {@link io.github.robertograham.fortnite2.xmpp.listener.OnFriendPresenceReceivedListener}
+     */
+    ON_FRIEND_PRESENCE_RECEIVED_LISTENER,
+
+    /**
+     * Handling a friend's presence on a presence lane, from looking their presence up to passing the
+     * {@link io.github.robertograham.fortnite2.xmpp.listener.OnFriendPresenceReceivedListener} call on. Only recorded
+     * when {@link io.github.robertograham.fortnite2.xmpp.implementation.DefaultFortniteXmpp.Builder#setPresenceLaneCount(int)}
+     * is used
+     */
+    FRIEND_PRESENCE_HANDLING,
+
+    /**
+     * A call to the {@link io.github.robertograham.fortnite2.xmpp.listener.OnConnectionStateChangedListener}
+     */
+    ON_CONNECTION_STATE_CHANGED_LISTENER,
+
+    /**
+     * From a keep-alive ping being written to the connection to the server's reply being received
+     */
+    PING_ROUND_TRIP
+}
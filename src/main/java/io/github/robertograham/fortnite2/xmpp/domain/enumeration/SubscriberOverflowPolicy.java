@@ -0,0 +1,27 @@
+package io.github.robertograham.fortnite2.xmpp.domain.enumeration;
+
+/**
+ * What happens to an event published to a {@link java.util.concurrent.Flow.Subscriber} that has already been sent
+ * as many events as it has requested, once the events waiting for it have filled its buffer
+ *
+ * @since 2.1.0
+ */
+public enum SubscriberOverflowPolicy {
+
+    /**
+     * The subscription is cancelled and the subscriber's {@code onError} is called with an
+     * {@link IllegalStateException}. Events that were waiting for it are discarded
+     */
+    BUFFER,
+
+    /**
+     * The oldest waiting event is discarded to make room, so the subscriber is sent the latest events when it next
+     * requests some. With a buffer of {@code 1}, only the latest event is kept
+     */
+    LATEST,
+
+    /**
+     * The event is discarded and the events already waiting are kept
+     */
+    DROP
+}
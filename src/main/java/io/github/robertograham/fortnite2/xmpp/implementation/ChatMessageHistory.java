@@ -0,0 +1,78 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.ChatMessage;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Store of the chat messages sent to and received from each account, behind {@link DefaultChatResource}
+ */
+interface ChatMessageHistory extends AutoCloseable {
+
+    /**
+     * @param accountId  the account the message was sent to or received from
+     * @param direction  whether the message was sent or received
+     * @param body       the message body
+     * @param epochMilli when the message was sent or received
+     * @return the message's {@link ChatMessage#cursor()}, {@code -1} if it wasn't stored
+     */
+    long append(final String accountId, final Direction direction, final String body, final long epochMilli);
+
+    /**
+     * @return bodies of the messages remembered for {@code accountId} in {@code direction}, oldest first
+     */
+    List<String> findAllBodies(final String accountId, final Direction direction);
+
+    /**
+     * @param beforeCursor only messages with a {@link ChatMessage#cursor()} less than this are considered
+     * @return the newest message remembered for {@code accountId} in {@code direction} before
+     * {@code beforeCursor}, {@code null} if there isn't one
+     */
+    ChatMessage findNewestBefore(final String accountId, final Direction direction, final long beforeCursor);
+
+    /**
+     * Nothing is copied up front. Each message is looked up with
+     * {@link #findNewestBefore(String, Direction, long)} as the stream reaches it, so messages appended after
+     * the stream was created aren't included and it ends early if the rest are evicted while it's consumed
+     *
+     * @param beforeCursor only messages with a {@link ChatMessage#cursor()} less than this are included
+     * @return the messages remembered for {@code accountId} in {@code direction}, newest first
+     */
+    default Stream<ChatMessage> streamNewestFirst(final String accountId, final Direction direction, final long beforeCursor) {
+        return StreamSupport.stream(
+            new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+
+                private long nextBeforeCursor = beforeCursor;
+
+                @Override
+                public boolean tryAdvance(final Consumer<? super ChatMessage> action) {
+                    final var chatMessage = findNewestBefore(accountId, direction, nextBeforeCursor);
+                    if (chatMessage == null)
+                        return false;
+                    nextBeforeCursor = chatMessage.cursor();
+                    action.accept(chatMessage);
+                    return true;
+                }
+            },
+            false
+        );
+    }
+
+    /**
+     * @return number of accounts messages are remembered for
+     */
+    int accountIdCount();
+
+    @Override
+    void close();
+
+    enum Direction {
+
+        INCOMING, OUTGOING
+    }
+}
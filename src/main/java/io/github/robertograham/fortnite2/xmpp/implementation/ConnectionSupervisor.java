@@ -0,0 +1,222 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.ConnectionState;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+import io.github.robertograham.fortnite2.xmpp.listener.OnConnectionStateChangedListener;
+import org.jivesoftware.smack.ConnectionListener;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches an XMPP connection and re-establishes it when it drops. Attempts are delayed by a
+ * {@link ScheduledExecutorService} by an exponentially increasing amount with jitter, so many
+ * connections dropped at once don't reconnect at once, then made on their own {@link Executor}, so a
+ * slow attempt doesn't hold up anything else scheduled. Each attempt logs in with a fresh access
+ * token, which resumes the previous session when the server supports stream management. However an
+ * attempt fails, another is scheduled until one succeeds or this is closed
+ */
+final class ConnectionSupervisor implements ConnectionListener {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionSupervisor.class.getName());
+    private final ConnectAndLogin connectAndLogin;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final Executor reconnectionExecutor;
+    private final boolean reconnectionEnabled;
+    private final long initialReconnectionDelayNanos;
+    private final long maxReconnectionDelayNanos;
+    private final OnConnectionStateChangedListener onConnectionStateChangedListener;
+    private final ListenerDispatchQueue onConnectionStateChangedListenerDispatchQueue;
+    private final FortniteXmpp fortniteXmpp;
+    private final MetricsSink metricsSink;
+    private boolean reconnecting;
+    private long connectionLostNanos;
+    private int failedAttemptCount;
+    private boolean closed;
+
+    private ConnectionSupervisor(final ConnectAndLogin connectAndLogin,
+                                 final ScheduledExecutorService scheduledExecutorService,
+                                 final Executor reconnectionExecutor,
+                                 final boolean reconnectionEnabled,
+                                 final Duration initialReconnectionDelay,
+                                 final Duration maxReconnectionDelay,
+                                 final OnConnectionStateChangedListener onConnectionStateChangedListener,
+                                 final ListenerDispatchQueue onConnectionStateChangedListenerDispatchQueue,
+                                 final FortniteXmpp fortniteXmpp,
+                                 final MetricsSink metricsSink) {
+        this.connectAndLogin = connectAndLogin;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.reconnectionExecutor = reconnectionExecutor;
+        this.reconnectionEnabled = reconnectionEnabled;
+        initialReconnectionDelayNanos = initialReconnectionDelay.toNanos();
+        maxReconnectionDelayNanos = maxReconnectionDelay.toNanos();
+        this.onConnectionStateChangedListener = onConnectionStateChangedListener;
+        this.onConnectionStateChangedListenerDispatchQueue = onConnectionStateChangedListenerDispatchQueue;
+        this.fortniteXmpp = fortniteXmpp;
+        this.metricsSink = metricsSink;
+    }
+
+    static ConnectionSupervisor newInstance(final ConnectAndLogin connectAndLogin,
+                                            final ScheduledExecutorService scheduledExecutorService,
+                                            final Executor reconnectionExecutor,
+                                            final boolean reconnectionEnabled,
+                                            final Duration initialReconnectionDelay,
+                                            final Duration maxReconnectionDelay,
+                                            final OnConnectionStateChangedListener onConnectionStateChangedListener,
+                                            final ListenerDispatchQueue onConnectionStateChangedListenerDispatchQueue,
+                                            final FortniteXmpp fortniteXmpp,
+                                            final MetricsSink metricsSink) {
+        return new ConnectionSupervisor(
+            connectAndLogin,
+            scheduledExecutorService,
+            reconnectionExecutor,
+            reconnectionEnabled,
+            initialReconnectionDelay,
+            maxReconnectionDelay,
+            onConnectionStateChangedListener,
+            onConnectionStateChangedListenerDispatchQueue,
+            fortniteXmpp,
+            metricsSink
+        );
+    }
+
+    /**
+     * Stops any further reconnection attempts. Must be called before the connection is disconnected
+     */
+    synchronized void close() {
+        closed = true;
+        reconnecting = false;
+    }
+
+    @Override
+    public void connected(final XMPPConnection connection) {
+    }
+
+    @Override
+    public void authenticated(final XMPPConnection connection, final boolean resumed) {
+        final long connectionLostNanos;
+        synchronized (this) {
+            connectionLostNanos = this.connectionLostNanos;
+            reconnecting = false;
+            failedAttemptCount = 0;
+            this.connectionLostNanos = 0L;
+        }
+        if (connectionLostNanos == 0L)
+            notifyConnectionStateChanged(ConnectionState.CONNECTED, Duration.ZERO);
+        else {
+            metricsSink.incrementCounter(
+                resumed ?
+                    MetricsCounter.RESUMPTIONS
+                    : MetricsCounter.RECONNECTIONS
+            );
+            notifyConnectionStateChanged(
+                resumed ?
+                    ConnectionState.RESUMED
+                    : ConnectionState.RECONNECTED,
+                Duration.ofNanos(System.nanoTime() - connectionLostNanos)
+            );
+        }
+    }
+
+    @Override
+    public void connectionClosed() {
+        notifyConnectionStateChanged(ConnectionState.CLOSED, Duration.ZERO);
+    }
+
+    @Override
+    public void connectionClosedOnError(final Exception exception) {
+        synchronized (this) {
+            if (closed || reconnecting)
+                return;
+            reconnecting = reconnectionEnabled;
+            connectionLostNanos = System.nanoTime();
+        }
+        LOGGER.log(Level.WARNING, "XMPP connection lost", exception);
+        metricsSink.incrementCounter(MetricsCounter.CONNECTIONS_LOST);
+        notifyConnectionStateChanged(ConnectionState.CONNECTION_LOST, Duration.ZERO);
+        if (reconnectionEnabled)
+            scheduleReconnectionAttempt(0);
+    }
+
+    private void scheduleReconnectionAttempt(final int backoffExponent) {
+        final var maxDelayNanos = backoffExponent >= Long.numberOfLeadingZeros(initialReconnectionDelayNanos) - 1 ?
+            maxReconnectionDelayNanos
+            : Math.min(maxReconnectionDelayNanos, initialReconnectionDelayNanos << backoffExponent);
+        // "equal jitter", at least half the backoff is always waited
+        final var delayNanos = maxDelayNanos / 2L + ThreadLocalRandom.current().nextLong(maxDelayNanos / 2L + 1L);
+        try {
+            scheduledExecutorService.schedule(this::startReconnectionAttempt, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (final RejectedExecutionException exception) {
+            LOGGER.log(Level.WARNING, "Scheduler rejected XMPP reconnection attempt", exception);
+            stopReconnecting();
+        }
+    }
+
+    private void startReconnectionAttempt() {
+        try {
+            reconnectionExecutor.execute(this::attemptReconnection);
+        } catch (final RejectedExecutionException exception) {
+            LOGGER.log(Level.WARNING, "Executor rejected XMPP reconnection attempt", exception);
+            stopReconnecting();
+        }
+    }
+
+    private synchronized void stopReconnecting() {
+        reconnecting = false;
+    }
+
+    private void attemptReconnection() {
+        final long connectionLostNanos;
+        synchronized (this) {
+            if (closed || !reconnecting)
+                return;
+            connectionLostNanos = this.connectionLostNanos;
+        }
+        metricsSink.incrementCounter(MetricsCounter.RECONNECTION_ATTEMPTS);
+        notifyConnectionStateChanged(ConnectionState.RECONNECTING, Duration.ofNanos(System.nanoTime() - connectionLostNanos));
+        try {
+            connectAndLogin.connectAndLogin();
+        } catch (final Exception exception) {
+            if (exception instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            final int failedAttemptCount;
+            synchronized (this) {
+                if (closed) {
+                    reconnecting = false;
+                    return;
+                }
+                failedAttemptCount = ++this.failedAttemptCount;
+            }
+            LOGGER.log(Level.FINE, String.format("XMPP reconnection attempt %d failed", failedAttemptCount), exception);
+            scheduleReconnectionAttempt(failedAttemptCount);
+        }
+    }
+
+    private void notifyConnectionStateChanged(final ConnectionState connectionState, final Duration disconnectedFor) {
+        onConnectionStateChangedListenerDispatchQueue.dispatch(
+            connectionState,
+            () -> onConnectionStateChangedListener.onConnectionStateChanged(connectionState, disconnectedFor, fortniteXmpp)
+        );
+    }
+
+    /**
+     * Connects the XMPP connection if it isn't connected, then logs in if it isn't authenticated
+     */
+    @FunctionalInterface
+    interface ConnectAndLogin {
+
+        void connectAndLogin() throws InterruptedException, XMPPException, SmackException, IOException;
+    }
+}
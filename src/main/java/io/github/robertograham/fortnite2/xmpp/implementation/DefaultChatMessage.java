@@ -0,0 +1,79 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.ChatMessage;
+
+import java.time.Instant;
+import java.util.Objects;
+
+final class DefaultChatMessage implements ChatMessage {
+
+    private final String accountId;
+    private final String body;
+    private final long epochMilli;
+    private final long cursor;
+
+    private DefaultChatMessage(final String accountId,
+                               final String body,
+                               final long epochMilli,
+                               final long cursor) {
+        this.accountId = accountId;
+        this.body = body;
+        this.epochMilli = epochMilli;
+        this.cursor = cursor;
+    }
+
+    static DefaultChatMessage newInstance(final String accountId,
+                                          final String body,
+                                          final long epochMilli,
+                                          final long cursor) {
+        return new DefaultChatMessage(accountId, body, epochMilli, cursor);
+    }
+
+    @Override
+    public String accountId() {
+        return accountId;
+    }
+
+    @Override
+    public String body() {
+        return body;
+    }
+
+    @Override
+    public Instant timestamp() {
+        return Instant.ofEpochMilli(epochMilli);
+    }
+
+    @Override
+    public long cursor() {
+        return cursor;
+    }
+
+    @Override
+    public String toString() {
+        return "DefaultChatMessage{" +
+            "accountId='" + accountId + '\'' +
+            ", body='" + body + '\'' +
+            ", timestamp=" + timestamp() +
+            ", cursor=" + cursor +
+            '}';
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object)
+            return true;
+        if (!(object instanceof DefaultChatMessage))
+            return false;
+        final var defaultChatMessage = (DefaultChatMessage) object;
+        return epochMilli == defaultChatMessage.epochMilli &&
+            cursor == defaultChatMessage.cursor &&
+            accountId.equals(defaultChatMessage.accountId) &&
+            body.equals(defaultChatMessage.body);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(accountId, body, epochMilli, cursor);
+    }
+}
@@ -1,7 +1,11 @@
 package io.github.robertograham.fortnite2.xmpp.implementation;
 
 import io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp;
+import io.github.robertograham.fortnite2.xmpp.domain.ChatMessage;
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
 import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.SubscriberOverflowPolicy;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
 import io.github.robertograham.fortnite2.xmpp.listener.OnChatMessageReceivedListener;
 import io.github.robertograham.fortnite2.xmpp.resource.ChatResource;
 import org.jivesoftware.smack.SmackException;
@@ -10,46 +14,81 @@ import org.jivesoftware.smack.chat2.ChatManager;
 import org.jivesoftware.smack.chat2.IncomingChatMessageListener;
 import org.jivesoftware.smack.chat2.OutgoingChatMessageListener;
 import org.jivesoftware.smack.packet.Message;
-import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection;
 import org.jxmpp.jid.EntityBareJid;
 import org.jxmpp.jid.impl.JidCreate;
 import org.jxmpp.jid.parts.Localpart;
 
 import java.io.IOException;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
 
 final class DefaultChatResource implements ChatResource, AutoCloseable, IncomingChatMessageListener, OutgoingChatMessageListener {
 
-    private static final Set<Status> AVAILABLE_PRESENCE_STATUSES = Set.of(Status.ONLINE, Status.AWAY);
     private final OnChatMessageReceivedListener onChatMessageReceivedListener;
     private final XMPPTCPConnection prodServiceXmppTcpConnection;
     private final FortniteXmpp fortniteXmpp;
-    private final Map<String, List<Message>> incomingChatMessageCacheMap;
-    private final Map<String, List<Message>> outgoingChatMessageCacheMap;
+    private final ChatMessageHistory chatMessageHistory;
+    private final ListenerDispatchQueue onChatMessageReceivedListenerDispatchQueue;
+    private final OutboundStanzaQueue outboundStanzaQueue;
+    private final PresencePublisher presencePublisher;
+    private final EventPublisher<ChatMessage> chatMessageEventPublisher;
     private final ChatManager chatManager;
+    private final Map<String, Chat> accountIdToChatMap;
 
     private DefaultChatResource(final OnChatMessageReceivedListener onChatMessageReceivedListener,
                                 final XMPPTCPConnection prodServiceXmppTcpConnection,
-                                final FortniteXmpp fortniteXmpp) {
+                                final FortniteXmpp fortniteXmpp,
+                                final ChatMessageHistory chatMessageHistory,
+                                final ListenerDispatchQueue onChatMessageReceivedListenerDispatchQueue,
+                                final OutboundStanzaQueue outboundStanzaQueue,
+                                final PresencePublisher presencePublisher,
+                                final Executor subscriberExecutor,
+                                final MetricsSink metricsSink) {
         this.onChatMessageReceivedListener = onChatMessageReceivedListener;
         this.prodServiceXmppTcpConnection = prodServiceXmppTcpConnection;
         this.fortniteXmpp = fortniteXmpp;
-        incomingChatMessageCacheMap = new HashMap<>();
-        outgoingChatMessageCacheMap = new HashMap<>();
+        this.chatMessageHistory = chatMessageHistory;
+        this.onChatMessageReceivedListenerDispatchQueue = onChatMessageReceivedListenerDispatchQueue;
+        this.outboundStanzaQueue = outboundStanzaQueue;
+        this.presencePublisher = presencePublisher;
+        chatMessageEventPublisher = EventPublisher.newInstance(subscriberExecutor, metricsSink);
         chatManager = ChatManager.getInstanceFor(this.prodServiceXmppTcpConnection);
         chatManager.addIncomingListener(this);
         chatManager.addOutgoingListener(this);
+        accountIdToChatMap = new ConcurrentHashMap<>();
     }
 
     static DefaultChatResource newInstance(final OnChatMessageReceivedListener onChatMessageReceivedListener,
                                            final XMPPTCPConnection prodServiceXmppTcpConnection,
-                                           final FortniteXmpp fortniteXmpp) {
+                                           final FortniteXmpp fortniteXmpp,
+                                           final ChatMessageHistory chatMessageHistory,
+                                           final ListenerDispatchQueue onChatMessageReceivedListenerDispatchQueue,
+                                           final OutboundStanzaQueue outboundStanzaQueue,
+                                           final PresencePublisher presencePublisher,
+                                           final Executor subscriberExecutor,
+                                           final MetricsSink metricsSink) {
         return new DefaultChatResource(
             onChatMessageReceivedListener,
             prodServiceXmppTcpConnection,
-            fortniteXmpp
+            fortniteXmpp,
+            chatMessageHistory,
+            onChatMessageReceivedListenerDispatchQueue,
+            outboundStanzaQueue,
+            presencePublisher,
+            subscriberExecutor,
+            metricsSink
         );
     }
 
@@ -57,83 +96,169 @@ final class DefaultChatResource implements ChatResource, AutoCloseable, Incoming
     public void sendMessageToAccountId(final String accountId, final String messageBody) throws IOException {
         Objects.requireNonNull(accountId, "accountId cannot be null");
         Objects.requireNonNull(messageBody, "messageBody cannot be null");
+        final var message = createMessage(messageBody);
         try {
-            chatManager.chatWith(JidCreate.entityBareFrom(
-                Localpart.fromOrThrowUnchecked(accountId),
-                prodServiceXmppTcpConnection.getXMPPServiceDomain()
-            ))
-                .send(messageBody);
-        } catch (final SmackException.NotConnectedException | InterruptedException exception) {
+            await(outboundStanzaQueue.put(message, () -> chat(accountId).send(message)), "Failed to send message");
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
             throw new IOException("Failed to send message", exception);
         }
     }
 
+    @Override
+    public CompletableFuture<Void> sendMessageToAccountIdAsync(final String accountId, final String messageBody) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        Objects.requireNonNull(messageBody, "messageBody cannot be null");
+        final var message = createMessage(messageBody);
+        return outboundStanzaQueue.offer(message, () -> chat(accountId).send(message));
+    }
+
+    @Override
+    public Map<String, CompletableFuture<Void>> broadcastMessageToAccountIds(final Collection<String> accountIds, final String messageBody) {
+        Objects.requireNonNull(accountIds, "accountIds cannot be null");
+        Objects.requireNonNull(messageBody, "messageBody cannot be null");
+        final var accountIdToFutureMap = new LinkedHashMap<String, CompletableFuture<Void>>();
+        final var outboundStanzas = new ArrayList<OutboundStanzaQueue.OutboundStanza>(accountIds.size());
+        for (final var accountId : accountIds) {
+            Objects.requireNonNull(accountId, "accountIds cannot contain null");
+            if (!accountIdToFutureMap.containsKey(accountId)) {
+                final var message = createMessage(messageBody);
+                final var outboundStanza = OutboundStanzaQueue.OutboundStanza.newInstance(message, () -> chat(accountId).send(message));
+                outboundStanzas.add(outboundStanza);
+                accountIdToFutureMap.put(accountId, outboundStanza.future());
+            }
+        }
+        outboundStanzaQueue.offer(outboundStanzas);
+        return Collections.unmodifiableMap(accountIdToFutureMap);
+    }
+
+    private Message createMessage(final String messageBody) {
+        final var message = new Message();
+        message.setBody(messageBody);
+        return message;
+    }
+
+    /**
+     * Waits for a stanza to be written, so the blocking methods behave like their asynchronous counterparts
+     */
+    private void await(final CompletableFuture<Void> future, final String failureMessage) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (final ExecutionException exception) {
+            final var cause = exception.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException(failureMessage, cause);
+        }
+    }
+
+    /**
+     * {@link ChatManager} keeps every {@link Chat} it creates, so caching them here only saves
+     * looking them up again, along with building their JIDs
+     */
+    private Chat chat(final String accountId) {
+        final var chat = accountIdToChatMap.get(accountId);
+        return chat == null ?
+            accountIdToChatMap.computeIfAbsent(accountId, (final var newAccountId) -> chatManager.chatWith(JidCreate.entityBareFrom(
+                Localpart.fromOrThrowUnchecked(newAccountId),
+                prodServiceXmppTcpConnection.getXMPPServiceDomain()
+            )))
+            : chat;
+    }
+
     @Override
     public void updateStatus(final Status status) throws IOException {
         Objects.requireNonNull(status, "status cannot be null");
-        final var presence = createPresence(status);
+        putStatus(status, null);
+    }
+
+    @Override
+    public void updateStatus(final Status status, final Session session) throws IOException {
+        Objects.requireNonNull(status, "status cannot be null");
+        Objects.requireNonNull(session, "session cannot be null");
+        putStatus(status, session);
+    }
+
+    private void putStatus(final Status status, final Session session) throws IOException {
         try {
-            prodServiceXmppTcpConnection.sendStanza(presence);
-        } catch (final SmackException.NotConnectedException | InterruptedException exception) {
+            await(presencePublisher.put(status, session), "Failed to update status");
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
             throw new IOException("Failed to update status", exception);
         }
     }
 
+    @Override
+    public CompletableFuture<Void> updateStatusAsync(final Status status) {
+        Objects.requireNonNull(status, "status cannot be null");
+        return presencePublisher.offer(status, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateStatusAsync(final Status status, final Session session) {
+        Objects.requireNonNull(status, "status cannot be null");
+        Objects.requireNonNull(session, "session cannot be null");
+        return presencePublisher.offer(status, session);
+    }
+
     @Override
     public List<String> findAllMessagesSentToAccountId(final String accountId) {
         Objects.requireNonNull(accountId, "accountId cannot be null");
-        return getListOfChatMessageBodiesCachedForAccountId(outgoingChatMessageCacheMap, accountId);
+        return chatMessageHistory.findAllBodies(accountId, ChatMessageHistory.Direction.OUTGOING);
     }
 
     @Override
     public List<String> findAllMessagesReceivedFromAccountId(final String accountId) {
         Objects.requireNonNull(accountId, "accountId cannot be null");
-        return getListOfChatMessageBodiesCachedForAccountId(incomingChatMessageCacheMap, accountId);
+        return chatMessageHistory.findAllBodies(accountId, ChatMessageHistory.Direction.INCOMING);
     }
 
     @Override
-    public FortniteXmpp fortniteXmpp() {
-        return fortniteXmpp;
+    public Stream<ChatMessage> streamMessagesSentToAccountId(final String accountId, final long beforeCursor) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        return chatMessageHistory.streamNewestFirst(accountId, ChatMessageHistory.Direction.OUTGOING, beforeCursor);
     }
 
-    private List<String> getListOfChatMessageBodiesCachedForAccountId(final Map<String, List<Message>> chatMessageCacheMap,
-                                                                      final String accountId) {
-        return Optional.ofNullable(chatMessageCacheMap.get(accountId))
-            .map((final var messageList) -> messageList.stream()
-                .map(Message::getBody)
-                .collect(Collectors.toUnmodifiableList()))
-            .orElseGet(Collections::emptyList);
+    @Override
+    public Stream<ChatMessage> streamMessagesReceivedFromAccountId(final String accountId, final long beforeCursor) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        return chatMessageHistory.streamNewestFirst(accountId, ChatMessageHistory.Direction.INCOMING, beforeCursor);
     }
 
-    private Presence createPresence(final Status status) {
-        final var presenceType = AVAILABLE_PRESENCE_STATUSES.contains(status) ?
-            Presence.Type.available
-            : Presence.Type.unavailable;
-        final var presence = new Presence(presenceType);
-        if (Status.AWAY == status)
-            presence.setMode(Presence.Mode.away);
-        return presence;
+    @Override
+    public Flow.Publisher<ChatMessage> chatMessagePublisher(final SubscriberOverflowPolicy subscriberOverflowPolicy, final int bufferCapacity) {
+        return chatMessageEventPublisher.publisher(subscriberOverflowPolicy, bufferCapacity);
+    }
+
+    @Override
+    public FortniteXmpp fortniteXmpp() {
+        return fortniteXmpp;
     }
 
     @Override
     public void close() {
         chatManager.removeIncomingListener(this);
         chatManager.removeOutgoingListener(this);
+        presencePublisher.close();
+        chatMessageEventPublisher.close();
     }
 
     @Override
     public void newIncomingMessage(final EntityBareJid from, final Message message, final Chat chat) {
         if (Message.Type.chat == message.getType()) {
             final var accountIdString = getAccountIdFromEntityBareJid(from);
-            cacheChatMessage(incomingChatMessageCacheMap, accountIdString, message);
-            onChatMessageReceivedListener.onChatMessageReceived(accountIdString, message.getBody(), this);
+            cacheChatMessage(accountIdString, ChatMessageHistory.Direction.INCOMING, message);
+            final var messageBody = message.getBody();
+            onChatMessageReceivedListenerDispatchQueue.dispatch(accountIdString, () ->
+                onChatMessageReceivedListener.onChatMessageReceived(accountIdString, messageBody, this)
+            );
         }
     }
 
     @Override
     public void newOutgoingMessage(final EntityBareJid to, final Message message, final Chat chat) {
         if (Message.Type.chat == message.getType())
-            cacheChatMessage(outgoingChatMessageCacheMap, getAccountIdFromEntityBareJid(to), message);
+            cacheChatMessage(getAccountIdFromEntityBareJid(to), ChatMessageHistory.Direction.OUTGOING, message);
     }
 
     private String getAccountIdFromEntityBareJid(final EntityBareJid entityBareJid) {
@@ -141,11 +266,15 @@ final class DefaultChatResource implements ChatResource, AutoCloseable, Incoming
             .asUnescapedString();
     }
 
-    private void cacheChatMessage(final Map<String, List<Message>> chatMessageCacheMap,
-                                  final String accountId,
+    private void cacheChatMessage(final String accountId,
+                                  final ChatMessageHistory.Direction direction,
                                   final Message message) {
-        chatMessageCacheMap.putIfAbsent(accountId, new ArrayList<>());
-        chatMessageCacheMap.get(accountId)
-            .add(message);
+        final var messageBody = message.getBody();
+        if (messageBody == null)
+            return;
+        final var epochMilli = System.currentTimeMillis();
+        final var cursor = chatMessageHistory.append(accountId, direction, messageBody, epochMilli);
+        if (ChatMessageHistory.Direction.INCOMING == direction && chatMessageEventPublisher.hasSubscribers())
+            chatMessageEventPublisher.submit(DefaultChatMessage.newInstance(accountId, messageBody, epochMilli, cursor));
     }
 }
@@ -2,17 +2,32 @@ package io.github.robertograham.fortnite2.xmpp.implementation;
 
 import io.github.robertograham.fortnite2.client.Fortnite;
 import io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp;
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.StartupReport;
 import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.ConnectionState;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.DispatchOverflowPolicy;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsGauge;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
 import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
 import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
 import io.github.robertograham.fortnite2.xmpp.listener.OnChatMessageReceivedListener;
+import io.github.robertograham.fortnite2.xmpp.listener.OnConnectionStateChangedListener;
 import io.github.robertograham.fortnite2.xmpp.listener.OnFriendPresenceReceivedListener;
+import io.github.robertograham.fortnite2.xmpp.listener.OnFriendsListChangedListener;
 import io.github.robertograham.fortnite2.xmpp.listener.OnFriendsListReceivedListener;
 import io.github.robertograham.fortnite2.xmpp.resource.ChatResource;
 import io.github.robertograham.fortnite2.xmpp.resource.FriendResource;
 import org.jivesoftware.smack.SmackConfiguration;
 import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.StanzaListener;
 import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.filter.StanzaTypeFilter;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.roster.Roster;
+import org.jivesoftware.smack.roster.RosterLoadedListener;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection;
 import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
 import org.jivesoftware.smackx.ping.PingManager;
@@ -21,67 +36,372 @@ import org.jxmpp.jid.parts.Domainpart;
 import org.jxmpp.jid.parts.Resourcepart;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 
 /**
  * Default implementation of {@link FortniteXmpp} created using {@link DefaultFortniteXmpp.Builder}
  */
 public final class DefaultFortniteXmpp implements FortniteXmpp {
 
+    private static final ThreadFactory STARTUP_THREAD_FACTORY = ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-startup-");
+    private static final ThreadFactory RECONNECTION_THREAD_FACTORY = ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-reconnection-");
+
     private final Domainpart xmppDomainpart;
     private final Fortnite fortnite;
+    private final String accountId;
+    private final Resourcepart resourcepart;
     private final XMPPTCPConnection prodServiceXmppTcpConnection;
+    private final ChatMessageHistory chatMessageHistory;
     private final DefaultChatResource chatResource;
     private final DefaultFriendResource friendResource;
+    private final PresenceLanes presenceLanes;
     private final PingManager pingManager;
+    private final ListenerDispatcher listenerDispatcher;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final boolean ownsScheduledExecutorService;
+    private final ConnectionSupervisor connectionSupervisor;
+    private final ExecutorService outboundExecutorService;
+    private final boolean ownsOutboundExecutorService;
+    private final ExecutorService subscriberExecutorService;
+    private final boolean ownsSubscriberExecutorService;
+    private final OutboundStanzaQueue outboundStanzaQueue;
+    private final MetricsSink metricsSink;
+    private final StanzaMetrics stanzaMetrics;
+    private final Map<MetricsGauge, LongSupplier> gaugeToValueSupplierMap;
+    private final DefaultStartupReport startupReport;
+    private final StanzaJournal stanzaJournal;
 
     private DefaultFortniteXmpp(final Builder builder) throws InterruptedException, XMPPException, SmackException, IOException {
         fortnite = builder.fortnite;
-        SmackConfiguration.DEBUG = builder.debugXmppConnections;
+        accountId = fortnite.session().accountId();
+        if (builder.debugXmppConnections != null)
+            SmackConfiguration.DEBUG = builder.debugXmppConnections;
         xmppDomainpart = Domainpart.fromOrThrowUnchecked("prod.ol.epicgames.com");
-        prodServiceXmppTcpConnection = buildProdServiceXmppTcpConnection();
-        chatResource = DefaultChatResource.newInstance(
-            builder.onChatMessageReceivedListener,
-            prodServiceXmppTcpConnection,
-            this
-        );
-        friendResource = DefaultFriendResource.newInstance(
-            prodServiceXmppTcpConnection,
-            builder.onFriendsListReceivedListener,
-            builder.onFriendPresenceReceivedListener,
-            this
-        );
-        prodServiceXmppTcpConnection.connect()
-            .login(
-                fortnite.session().accountId(),
-                fortnite.session().accessToken(),
-                Resourcepart.from(String.format(
-                    "V2:%s:%s",
-                    builder.application.code(),
-                    builder.platform.code()
-                ))
+        resourcepart = Resourcepart.from(String.format(
+            "V2:%s:%s",
+            builder.application.code(),
+            builder.platform.code()
+        ));
+        metricsSink = builder.metricsSink;
+        startupReport = DefaultStartupReport.newInstance();
+        prodServiceXmppTcpConnection = buildProdServiceXmppTcpConnection(builder);
+        prodServiceXmppTcpConnection.setUseStreamManagement(builder.streamResumptionEnabled);
+        prodServiceXmppTcpConnection.setUseStreamManagementResumption(builder.streamResumptionEnabled);
+        prodServiceXmppTcpConnection.setReplyTimeout(builder.replyTimeout.toMillis());
+        stanzaMetrics = StanzaMetrics.newInstance(prodServiceXmppTcpConnection, metricsSink);
+        // what's been set up so far, torn down newest first if a later step fails
+        final var teardowns = new ArrayDeque<Runnable>();
+        teardowns.push(stanzaMetrics::close);
+        try {
+            stanzaJournal = builder.stanzaJournalDirectory == null ?
+                null
+                : StanzaJournal.newInstance(builder.stanzaJournalDirectory.resolve(accountId + ".journal"));
+        } catch (final IOException | RuntimeException exception) {
+            tearDown(teardowns, exception);
+            throw exception;
+        }
+        if (stanzaJournal != null) {
+            prodServiceXmppTcpConnection.addSyncStanzaListener(stanzaJournal, StanzaJournal.STANZA_FILTER);
+            teardowns.push(() -> {
+                prodServiceXmppTcpConnection.removeSyncStanzaListener(stanzaJournal);
+                stanzaJournal.close();
+            });
+        }
+        if (builder.warmUpEnabled)
+            STARTUP_THREAD_FACTORY.newThread(() -> {
+                startupReport.markWarmUpStart();
+                PresenceDecodingWarmUp.run();
+                startupReport.markWarmUpEnd();
+            })
+                .start();
+        // connecting mostly waits on DNS, TCP and TLS, so everything that doesn't need the connection is set up meanwhile
+        final var connectCompletableFuture = connectOnStartupThread();
+        try {
+            chatMessageHistory = newChatMessageHistory(builder);
+            // releases the chat history's directory, so the client can be built again
+            teardowns.push(chatMessageHistory::close);
+            listenerDispatcher = ListenerDispatcher.newInstance(
+                builder.listenerExecutor,
+                builder.listenerThreadCount,
+                builder.listenerQueueCapacity,
+                builder.listenerQueueOverflowPolicy,
+                metricsSink
+            );
+            teardowns.push(listenerDispatcher::close);
+            ownsScheduledExecutorService = builder.scheduledExecutorService == null;
+            scheduledExecutorService = ownsScheduledExecutorService ?
+                Executors.newSingleThreadScheduledExecutor(ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-scheduler-"))
+                : builder.scheduledExecutorService;
+            if (ownsScheduledExecutorService)
+                teardowns.push(scheduledExecutorService::shutdownNow);
+            if (stanzaJournal != null)
+                stanzaJournal.flushEvery(scheduledExecutorService, Duration.ofSeconds(1L));
+            ownsOutboundExecutorService = builder.outboundExecutorService == null;
+            outboundExecutorService = ownsOutboundExecutorService ?
+                Executors.newCachedThreadPool(ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-outbound-"))
+                : builder.outboundExecutorService;
+            if (ownsOutboundExecutorService)
+                teardowns.push(outboundExecutorService::shutdownNow);
+            ownsSubscriberExecutorService = builder.subscriberExecutorService == null;
+            subscriberExecutorService = ownsSubscriberExecutorService ?
+                Executors.newCachedThreadPool(ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-subscriber-"))
+                : builder.subscriberExecutorService;
+            if (ownsSubscriberExecutorService)
+                teardowns.push(subscriberExecutorService::shutdown);
+            outboundStanzaQueue = OutboundStanzaQueue.newInstance(
+                prodServiceXmppTcpConnection,
+                outboundExecutorService,
+                builder.outboundQueueCapacity,
+                metricsSink
+            );
+            teardowns.push(outboundStanzaQueue::close);
+            final var presencePublisher = PresencePublisher.newInstance(
+                prodServiceXmppTcpConnection,
+                outboundStanzaQueue,
+                scheduledExecutorService,
+                builder.statusUpdateDebounceWindow,
+                accountId,
+                metricsSink
+            );
+            teardowns.push(presencePublisher::close);
+            chatResource = DefaultChatResource.newInstance(
+                builder.onChatMessageReceivedListener,
+                prodServiceXmppTcpConnection,
+                this,
+                chatMessageHistory,
+                listenerDispatcher.newQueue(MetricsTimer.ON_CHAT_MESSAGE_RECEIVED_LISTENER),
+                outboundStanzaQueue,
+                presencePublisher,
+                subscriberExecutorService,
+                metricsSink
+            );
+            teardowns.push(chatResource::close);
+            presenceLanes = builder.presenceLaneCount == 0 ?
+                null
+                : PresenceLanes.newInstance(builder.presenceLaneCount, builder.listenerQueueCapacity, metricsSink);
+            if (presenceLanes != null)
+                teardowns.push(presenceLanes::close);
+            friendResource = DefaultFriendResource.newInstance(
+                prodServiceXmppTcpConnection,
+                builder.onFriendsListReceivedListener,
+                builder.onFriendsListChangedListener,
+                builder.onFriendPresenceReceivedListener,
+                this,
+                listenerDispatcher,
+                scheduledExecutorService,
+                builder.friendPresenceCoalescingWindow,
+                builder.suppressDuplicateFriendPresences,
+                FriendPresenceFilter.newInstance(
+                    builder.friendPresenceAccountIdFilter,
+                    builder.friendPresenceStatusFilter,
+                    builder.friendPresenceSessionFilter
+                ),
+                presenceLanes,
+                builder.rosterStoreDirectory == null ?
+                    null
+                    : FileRosterStore.newInstance(builder.rosterStoreDirectory.resolve(accountId + ".roster")),
+                subscriberExecutorService,
+                metricsSink
+            );
+            teardowns.push(friendResource::close);
+            connectionSupervisor = ConnectionSupervisor.newInstance(
+                this::connectAndLogin,
+                scheduledExecutorService,
+                // attempts are seconds apart at the least, so each gets its own thread rather than holding one between them
+                (final var runnable) -> RECONNECTION_THREAD_FACTORY.newThread(runnable)
+                    .start(),
+                builder.reconnectionEnabled,
+                builder.initialReconnectionDelay,
+                builder.maxReconnectionDelay,
+                builder.onConnectionStateChangedListener,
+                listenerDispatcher.newQueue(MetricsTimer.ON_CONNECTION_STATE_CHANGED_LISTENER),
+                this,
+                metricsSink
             );
+            prodServiceXmppTcpConnection.addConnectionListener(connectionSupervisor);
+            teardowns.push(() -> {
+                connectionSupervisor.close();
+                prodServiceXmppTcpConnection.removeConnectionListener(connectionSupervisor);
+            });
+            gaugeToValueSupplierMap = new EnumMap<>(MetricsGauge.class);
+            gaugeToValueSupplierMap.put(MetricsGauge.LISTENER_QUEUE_DEPTH, listenerDispatcher::queuedInvocationCount);
+            if (presenceLanes != null)
+                gaugeToValueSupplierMap.put(MetricsGauge.PRESENCE_LANE_QUEUE_DEPTH, presenceLanes::queuedTaskCount);
+            gaugeToValueSupplierMap.put(MetricsGauge.OUTBOUND_QUEUE_DEPTH, outboundStanzaQueue::size);
+            gaugeToValueSupplierMap.put(MetricsGauge.CHAT_CONVERSATION_COUNT, chatMessageHistory::accountIdCount);
+            teardowns.push(() -> gaugeToValueSupplierMap.forEach(metricsSink::removeGauge));
+            gaugeToValueSupplierMap.forEach(metricsSink::addGauge);
+            Roster.getInstanceFor(prodServiceXmppTcpConnection)
+                .addRosterLoadedListener(new StartupRosterLoadedListener());
+            prodServiceXmppTcpConnection.addSyncStanzaListener(new FirstPresenceStanzaListener(), StanzaTypeFilter.PRESENCE);
+            awaitConnect(connectCompletableFuture);
+            connectAndLogin();
+        } catch (final InterruptedException | XMPPException | SmackException | IOException | RuntimeException exception) {
+            abandonConnect(connectCompletableFuture);
+            tearDown(teardowns, exception);
+            throw exception;
+        }
         pingManager = PingManager.getInstanceFor(prodServiceXmppTcpConnection);
         pingManager.setPingInterval(Math.toIntExact(TimeUnit.MINUTES.toSeconds(4) + 30L));
     }
 
-    private XMPPTCPConnection buildProdServiceXmppTcpConnection() {
+    private XMPPTCPConnection buildProdServiceXmppTcpConnection(final Builder builder) {
         return new XMPPTCPConnection(XMPPTCPConnectionConfiguration.builder()
             .setXmppDomain(JidCreate.domainBareFrom(xmppDomainpart))
-            .setHost("xmpp-service-prod.ol.epicgames.com")
-            .setPort(5222)
+            .setHost(builder.xmppHost)
+            .setPort(builder.xmppPort)
+            .setCompressionEnabled(builder.streamCompressionEnabled)
+            .setSocketFactory(TransportSocketFactory.newInstance(
+                builder.socketSendBufferSize,
+                builder.socketReceiveBufferSize,
+                builder.tcpNoDelay,
+                metricsSink,
+                startupReport::markSocketConnected
+            ))
             .build());
     }
 
+    private ChatMessageHistory newChatMessageHistory(final Builder builder) throws IOException {
+        return builder.chatHistoryDirectory == null ?
+            InMemoryChatMessageHistory.newInstance(
+                builder.maxChatMessagesPerAccountId,
+                builder.maxChatAccountIds
+            )
+            : MappedChatMessageHistory.newInstance(
+                builder.chatHistoryDirectory.resolve(accountId),
+                builder.chatHistoryMaxAge,
+                builder.chatHistoryMaxBytes
+            );
+    }
+
+    /**
+     * Runs every teardown even if one throws, so nothing set up before {@code exception} is left running
+     */
+    private static void tearDown(final Deque<Runnable> teardowns, final Exception exception) {
+        while (!teardowns.isEmpty())
+            try {
+                teardowns.pop()
+                    .run();
+            } catch (final RuntimeException teardownException) {
+                exception.addSuppressed(teardownException);
+            }
+    }
+
+    private CompletableFuture<Void> connectOnStartupThread() {
+        final var connectCompletableFuture = new CompletableFuture<Void>();
+        STARTUP_THREAD_FACTORY.newThread(() -> {
+            try {
+                connect();
+                connectCompletableFuture.complete(null);
+            } catch (final Throwable throwable) {
+                connectCompletableFuture.completeExceptionally(throwable);
+            }
+        })
+            .start();
+        return connectCompletableFuture;
+    }
+
+    private void awaitConnect(final CompletableFuture<Void> connectCompletableFuture) throws InterruptedException, XMPPException, SmackException, IOException {
+        try {
+            connectCompletableFuture.get();
+        } catch (final ExecutionException exception) {
+            final var cause = exception.getCause();
+            if (cause instanceof XMPPException)
+                throw (XMPPException) cause;
+            if (cause instanceof SmackException)
+                throw (SmackException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof InterruptedException)
+                throw (InterruptedException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Waits for a connection attempt that setting up failed during to finish, so that it can't be left open
+     */
+    private void abandonConnect(final CompletableFuture<Void> connectCompletableFuture) {
+        connectCompletableFuture.handle((final var result, final var throwable) -> null)
+            .join();
+        if (prodServiceXmppTcpConnection.isConnected())
+            prodServiceXmppTcpConnection.disconnect();
+    }
+
+    private void connect() throws InterruptedException, XMPPException, SmackException, IOException {
+        startupReport.markConnectStart();
+        prodServiceXmppTcpConnection.connect();
+        startupReport.markConnected();
+    }
+
+    private void connectAndLogin() throws InterruptedException, XMPPException, SmackException, IOException {
+        if (!prodServiceXmppTcpConnection.isConnected())
+            connect();
+        if (!prodServiceXmppTcpConnection.isAuthenticated()) {
+            startupReport.markLoginStart();
+            prodServiceXmppTcpConnection.login(
+                accountId,
+                fortnite.session().accessToken(),
+                resourcepart
+            );
+            startupReport.markAuthenticated();
+        }
+    }
+
     @Override
     public void close() {
+        connectionSupervisor.close();
         chatResource.close();
+        chatMessageHistory.close();
         friendResource.close();
         pingManager.setPingInterval(-1);
         prodServiceXmppTcpConnection.disconnect();
+        prodServiceXmppTcpConnection.removeConnectionListener(connectionSupervisor);
+        if (stanzaJournal != null) {
+            prodServiceXmppTcpConnection.removeSyncStanzaListener(stanzaJournal);
+            stanzaJournal.close();
+        }
+        outboundStanzaQueue.close();
+        if (ownsOutboundExecutorService)
+            outboundExecutorService.shutdownNow();
+        // lets subscribers be sent what they've already requested and then completed
+        if (ownsSubscriberExecutorService)
+            subscriberExecutorService.shutdown();
+        stanzaMetrics.close();
+        gaugeToValueSupplierMap.forEach(metricsSink::removeGauge);
+        if (presenceLanes != null)
+            presenceLanes.close();
+        listenerDispatcher.close();
+        if (ownsScheduledExecutorService)
+            scheduledExecutorService.shutdownNow();
+    }
+
+    @Override
+    public String accountId() {
+        return accountId;
     }
 
     @Override
@@ -94,11 +414,48 @@ public final class DefaultFortniteXmpp implements FortniteXmpp {
         return friendResource;
     }
 
+    @Override
+    public MetricsSink metrics() {
+        return metricsSink;
+    }
+
+    @Override
+    public StartupReport startupReport() {
+        return startupReport;
+    }
+
     @Override
     public XMPPTCPConnection prodService() {
         return prodServiceXmppTcpConnection;
     }
 
+    private final class StartupRosterLoadedListener implements RosterLoadedListener {
+
+        @Override
+        public void onRosterLoaded(final Roster roster) {
+            startupReport.markRosterLoaded();
+        }
+
+        @Override
+        public void onRosterLoadingFailed(final Exception exception) {
+        }
+    }
+
+    /**
+     * Removes itself once a presence from anyone but another of the user's own clients has been received
+     */
+    private final class FirstPresenceStanzaListener implements StanzaListener {
+
+        @Override
+        public void processStanza(final Stanza stanza) {
+            final var from = stanza.getFrom();
+            if (from == null || accountId.equals(Objects.toString(from.getLocalpartOrNull(), null)))
+                return;
+            if (startupReport.markFirstPresence())
+                prodServiceXmppTcpConnection.removeSyncStanzaListener(this);
+        }
+    }
+
     /**
      * Used to create {@link FortniteXmpp} instances
      * Instantiated using {@link #newInstance(Fortnite)}
@@ -108,13 +465,51 @@ public final class DefaultFortniteXmpp implements FortniteXmpp {
         private final Fortnite fortnite;
         private OnChatMessageReceivedListener onChatMessageReceivedListener = (final var accountId, final var messageBody, final var chat) -> {
         };
-        private OnFriendsListReceivedListener onFriendsListReceivedListener = (final var accountIds, final var friend) -> {
+        private OnFriendsListReceivedListener onFriendsListReceivedListener = null;
+        private OnFriendsListChangedListener onFriendsListChangedListener = (final var addedAccountIds, final var removedAccountIds, final var friend) -> {
         };
         private OnFriendPresenceReceivedListener onFriendPresenceReceivedListener = (final var accountId, final var status, final var sessionOptional, final var friend) -> {
         };
-        private boolean debugXmppConnections = false;
+        private Boolean debugXmppConnections = null;
         private Application application = Application.FORTNITE_CLIENT;
         private Platform platform = Platform.WINDOWS;
+        private int maxChatMessagesPerAccountId = 100;
+        private int maxChatAccountIds = 1_000;
+        private Executor listenerExecutor = null;
+        private int listenerThreadCount = 0;
+        private int listenerQueueCapacity = 1_024;
+        private int presenceLaneCount = 0;
+        private DispatchOverflowPolicy listenerQueueOverflowPolicy = DispatchOverflowPolicy.BLOCK;
+        private boolean suppressDuplicateFriendPresences = true;
+        private Duration friendPresenceCoalescingWindow = Duration.ZERO;
+        private Duration statusUpdateDebounceWindow = Duration.ZERO;
+        private Predicate<String> friendPresenceAccountIdFilter = null;
+        private BiPredicate<Status, Status> friendPresenceStatusFilter = null;
+        private Predicate<Session> friendPresenceSessionFilter = null;
+        private OnConnectionStateChangedListener onConnectionStateChangedListener = (final var connectionState, final var disconnectedFor, final var fortniteXmpp) -> {
+        };
+        private boolean reconnectionEnabled = true;
+        private Duration initialReconnectionDelay = Duration.ofSeconds(1L);
+        private Duration maxReconnectionDelay = Duration.ofMinutes(2L);
+        private boolean streamResumptionEnabled = true;
+        private Path rosterStoreDirectory = null;
+        private Path chatHistoryDirectory = null;
+        private Duration chatHistoryMaxAge = Duration.ofDays(30L);
+        private long chatHistoryMaxBytes = 1_024L * 1_024L * 1_024L;
+        private int outboundQueueCapacity = 1_024;
+        private MetricsSink metricsSink = NoOpMetricsSink.INSTANCE;
+        private String xmppHost = "xmpp-service-prod.ol.epicgames.com";
+        private int xmppPort = 5222;
+        private boolean streamCompressionEnabled = false;
+        private int socketSendBufferSize = 0;
+        private int socketReceiveBufferSize = 0;
+        private boolean tcpNoDelay = true;
+        private Duration replyTimeout = Duration.ofSeconds(5L);
+        private ScheduledExecutorService scheduledExecutorService = null;
+        private ExecutorService outboundExecutorService = null;
+        private ExecutorService subscriberExecutorService = null;
+        private boolean warmUpEnabled = false;
+        private Path stanzaJournalDirectory = null;
 
         private Builder(final Fortnite fortnite) {
             this.fortnite = fortnite;
@@ -143,9 +538,14 @@ public final class DefaultFortniteXmpp implements FortniteXmpp {
         }
 
         /**
+         * A snapshot of the whole friends list is only built when this listener is registered, which
+         * costs time proportional to the size of the friends list on every change. Prefer
+         * {@link #setOnFriendsListChangedListener(OnFriendsListChangedListener)} for large friends lists
+         *
          * @param onFriendsListReceivedListener the {@link OnFriendsListReceivedListener} to call
          *                                      {@link OnFriendsListReceivedListener#onFriendsListReceived(Set, FriendResource)}
          *                                      on when the authenticated user's friends list is received after log in
+         *                                      and whenever it changes
          * @return the {@link Builder} instance this was called on
          * @throws NullPointerException if {@code onFriendsListReceivedListener} is {@code null}
          */
@@ -154,6 +554,19 @@ public final class DefaultFortniteXmpp implements FortniteXmpp {
             return this;
         }
 
+        /**
+         * @param onFriendsListChangedListener the {@link OnFriendsListChangedListener} to call
+         *                                     {@link OnFriendsListChangedListener#onFriendsListChanged(Set, Set, FriendResource)}
+         *                                     on with the friends added and removed when the authenticated user's
+         *                                     friends list is received after log in and whenever it changes
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code onFriendsListChangedListener} is {@code null}
+         */
+        public Builder setOnFriendsListChangedListener(final OnFriendsListChangedListener onFriendsListChangedListener) {
+            this.onFriendsListChangedListener = Objects.requireNonNull(onFriendsListChangedListener, "onFriendsListChangedListener cannot be null");
+            return this;
+        }
+
         /**
          * @param onFriendPresenceReceivedListener the {@link OnFriendPresenceReceivedListener} to call
          *                                         {@link OnFriendPresenceReceivedListener#onFriendPresenceReceived(String, Status, Optional, FriendResource)}
@@ -167,8 +580,11 @@ public final class DefaultFortniteXmpp implements FortniteXmpp {
         }
 
         /**
+         * Smack's debug setting is global, so this affects every XMPP connection in the JVM.
+         * If this isn't called, the setting is left as it is
+         *
          * @param debugXmppConnections whether or not to log XMPP connection traffic
-         *                             {@code true} to log and {@code} to not log
+         *                             {@code true} to log and {@code false} to not log
          * @return the {@link Builder} instance this was called on
          */
         public Builder setDebugXmppConnections(final boolean debugXmppConnections) {
@@ -198,6 +614,513 @@ public final class DefaultFortniteXmpp implements FortniteXmpp {
             return this;
         }
 
+        /**
+         * @param maxChatMessagesPerAccountId the number of chat messages to remember per account, across
+         *                                    both directions. Once reached, the oldest message is forgotten
+         *                                    to make room for a new one. Defaults to {@code 100}
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code maxChatMessagesPerAccountId} is less than {@code 1}
+         */
+        public Builder setMaxChatMessagesPerAccountId(final int maxChatMessagesPerAccountId) {
+            if (maxChatMessagesPerAccountId < 1)
+                throw new IllegalArgumentException("maxChatMessagesPerAccountId must be greater than 0");
+            this.maxChatMessagesPerAccountId = maxChatMessagesPerAccountId;
+            return this;
+        }
+
+        /**
+         * @param maxChatAccountIds the number of accounts to remember chat messages for. Once reached,
+         *                          the conversation that was least recently used is forgotten to make room
+         *                          for a new one. Defaults to {@code 1000}
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code maxChatAccountIds} is less than {@code 1}
+         */
+        public Builder setMaxChatAccountIds(final int maxChatAccountIds) {
+            if (maxChatAccountIds < 1)
+                throw new IllegalArgumentException("maxChatAccountIds must be greater than 0");
+            this.maxChatAccountIds = maxChatAccountIds;
+            return this;
+        }
+
+        /**
+         * By default listeners are called on the XMPP connection's event thread, so a slow listener
+         * delays the processing of every stanza that follows. Setting an executor moves listener calls
+         * onto it. Each listener type gets its own bounded queue and calls for the same account are
+         * always made in the order the stanzas were received
+         *
+         * @param listenerExecutor the {@link Executor} to call listeners on. It isn't shut down
+         *                         when the {@link FortniteXmpp} instance is closed
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code listenerExecutor} is {@code null}
+         * @see #setListenerThreadCount(int)
+         */
+        public Builder setListenerExecutor(final Executor listenerExecutor) {
+            this.listenerExecutor = Objects.requireNonNull(listenerExecutor, "listenerExecutor cannot be null");
+            return this;
+        }
+
+        /**
+         * Moves listener calls onto a pool of daemon threads owned by the {@link FortniteXmpp}
+         * instance, which is shut down when it's closed. Ignored if {@link #setListenerExecutor(Executor)}
+         * was called
+         *
+         * @param listenerThreadCount number of threads to call listeners on, {@code 0} to call them on the
+         *                            XMPP connection's event thread. Defaults to {@code 0}
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code listenerThreadCount} is less than {@code 0}
+         */
+        public Builder setListenerThreadCount(final int listenerThreadCount) {
+            if (listenerThreadCount < 0)
+                throw new IllegalArgumentException("listenerThreadCount cannot be negative");
+            this.listenerThreadCount = listenerThreadCount;
+            return this;
+        }
+
+        /**
+         * @param listenerQueueCapacity maximum number of calls queued for each listener type when listeners
+         *                              aren't called on the XMPP connection's event thread. Defaults to {@code 1024}
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code listenerQueueCapacity} is less than {@code 1}
+         */
+        public Builder setListenerQueueCapacity(final int listenerQueueCapacity) {
+            if (listenerQueueCapacity < 1)
+                throw new IllegalArgumentException("listenerQueueCapacity must be greater than 0");
+            this.listenerQueueCapacity = listenerQueueCapacity;
+            return this;
+        }
+
+        /**
+         * Handles friend presences on lanes of their own instead of the XMPP connection's event thread, so the
+         * burst of presences after logging in is spread across cores. Friends are assigned a lane by account ID:
+         * a friend's presences are handled in the order they were received, while different friends' presences are
+         * handled in parallel. Each lane holds up to {@link #setListenerQueueCapacity(int)} presences, and the event
+         * thread waits for space once one is full. If listeners are called on the event thread, the
+         * {@link OnFriendPresenceReceivedListener} is called on the lanes instead, from as many threads at once as
+         * there are lanes
+         *
+         * @param presenceLaneCount number of lanes, each with a daemon thread owned by the {@link FortniteXmpp}
+         *                          instance. {@code 0} to handle presences on the XMPP connection's event thread.
+         *                          Defaults to {@code 0}
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code presenceLaneCount} is less than {@code 0}
+         */
+        public Builder setPresenceLaneCount(final int presenceLaneCount) {
+            if (presenceLaneCount < 0)
+                throw new IllegalArgumentException("presenceLaneCount cannot be negative");
+            this.presenceLaneCount = presenceLaneCount;
+            return this;
+        }
+
+        /**
+         * @param listenerQueueOverflowPolicy what to do with a listener call when that listener's queue is full.
+         *                                    Defaults to {@link DispatchOverflowPolicy#BLOCK}
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code listenerQueueOverflowPolicy} is {@code null}
+         */
+        public Builder setListenerQueueOverflowPolicy(final DispatchOverflowPolicy listenerQueueOverflowPolicy) {
+            this.listenerQueueOverflowPolicy = Objects.requireNonNull(listenerQueueOverflowPolicy, "listenerQueueOverflowPolicy cannot be null");
+            return this;
+        }
+
+        /**
+         * @param suppressDuplicateFriendPresences whether or not to skip calling the {@link OnFriendPresenceReceivedListener}
+         *                                         when a friend's status and session are the same as they were in the
+         *                                         last presence received from them. {@code true} to skip and {@code false}
+         *                                         to call it for every presence. Defaults to {@code true}
+         * @return the {@link Builder} instance this was called on
+         */
+        public Builder setSuppressDuplicateFriendPresences(final boolean suppressDuplicateFriendPresences) {
+            this.suppressDuplicateFriendPresences = suppressDuplicateFriendPresences;
+            return this;
+        }
+
+        /**
+         * When a presence is received from a friend, the {@link OnFriendPresenceReceivedListener} is called after
+         * this window has passed with only the latest presence received from that friend during it
+         *
+         * @param friendPresenceCoalescingWindow how long to hold a friend's presence back for,
+         *                                       {@link Duration#ZERO} to deliver every presence immediately.
+         *                                       Defaults to {@link Duration#ZERO}
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException     if {@code friendPresenceCoalescingWindow} is {@code null}
+         * @throws IllegalArgumentException if {@code friendPresenceCoalescingWindow} is negative
+         */
+        public Builder setFriendPresenceCoalescingWindow(final Duration friendPresenceCoalescingWindow) {
+            Objects.requireNonNull(friendPresenceCoalescingWindow, "friendPresenceCoalescingWindow cannot be null");
+            if (friendPresenceCoalescingWindow.isNegative())
+                throw new IllegalArgumentException("friendPresenceCoalescingWindow cannot be negative");
+            this.friendPresenceCoalescingWindow = friendPresenceCoalescingWindow;
+            return this;
+        }
+
+        /**
+         * A status update made less than this window after the last one sent is held back until the window has
+         * passed and then sent, unless a later status update replaces it first, so at most one presence is sent per
+         * window however often the status is updated. Status updates that are the same as the last one sent are
+         * never sent again, whatever the window. Both are counted as {@link MetricsCounter#PRESENCE_UPDATES_SUPPRESSED}
+         *
+         * @param statusUpdateDebounceWindow least time between status updates being sent, {@link Duration#ZERO} to
+         *                                   send every change immediately. Defaults to {@link Duration#ZERO}
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException     if {@code statusUpdateDebounceWindow} is {@code null}
+         * @throws IllegalArgumentException if {@code statusUpdateDebounceWindow} is negative
+         */
+        public Builder setStatusUpdateDebounceWindow(final Duration statusUpdateDebounceWindow) {
+            Objects.requireNonNull(statusUpdateDebounceWindow, "statusUpdateDebounceWindow cannot be null");
+            if (statusUpdateDebounceWindow.isNegative())
+                throw new IllegalArgumentException("statusUpdateDebounceWindow cannot be negative");
+            this.statusUpdateDebounceWindow = statusUpdateDebounceWindow;
+            return this;
+        }
+
+        /**
+         * Friend presences are filtered in stages, each more expensive than the last: by account ID, then by status,
+         * then by session. A later stage is only tested if the earlier ones passed, and a presence filtered out
+         * before the session stage never has its session decoded. Filtered presences are still used to answer
+         * {@link FriendResource} queries and are counted as {@link MetricsCounter#FRIEND_PRESENCES_FILTERED}
+         *
+         * @param friendPresenceAccountIdFilter tested with the friend's account ID. The
+         *                                      {@link OnFriendPresenceReceivedListener} is only called if it passes
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code friendPresenceAccountIdFilter} is {@code null}
+         */
+        public Builder setFriendPresenceAccountIdFilter(final Predicate<String> friendPresenceAccountIdFilter) {
+            this.friendPresenceAccountIdFilter = Objects.requireNonNull(friendPresenceAccountIdFilter, "friendPresenceAccountIdFilter cannot be null");
+            return this;
+        }
+
+        /**
+         * Tested after the filter set with {@link #setFriendPresenceAccountIdFilter(Predicate)}, for example
+         * {@code (previousStatus, status) -> previousStatus == Status.OFFLINE || status == Status.OFFLINE} to only
+         * hear about friends coming online and going offline
+         *
+         * @param friendPresenceStatusFilter tested with the friend's previous status and their new one, which are the
+         *                                   same if only their session changed. A friend seen for the first time was
+         *                                   previously {@link Status#OFFLINE}. The
+         *                                   {@link OnFriendPresenceReceivedListener} is only called if it passes
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code friendPresenceStatusFilter} is {@code null}
+         */
+        public Builder setFriendPresenceStatusFilter(final BiPredicate<Status, Status> friendPresenceStatusFilter) {
+            this.friendPresenceStatusFilter = Objects.requireNonNull(friendPresenceStatusFilter, "friendPresenceStatusFilter cannot be null");
+            return this;
+        }
+
+        /**
+         * Tested last, and only if the friend has a session. Presences without one, such as a friend going offline,
+         * pass. Testing decodes the session, so narrow presences down with
+         * {@link #setFriendPresenceAccountIdFilter(Predicate)} and {@link #setFriendPresenceStatusFilter(BiPredicate)}
+         * first where possible
+         *
+         * @param friendPresenceSessionFilter tested with the friend's session. The
+         *                                    {@link OnFriendPresenceReceivedListener} is only called if it passes.
+         *                                    A session that can't be decoded throws a
+         *                                    {@link javax.json.JsonException} from its accessors
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code friendPresenceSessionFilter} is {@code null}
+         */
+        public Builder setFriendPresenceSessionFilter(final Predicate<Session> friendPresenceSessionFilter) {
+            this.friendPresenceSessionFilter = Objects.requireNonNull(friendPresenceSessionFilter, "friendPresenceSessionFilter cannot be null");
+            return this;
+        }
+
+        /**
+         * @param onConnectionStateChangedListener the {@link OnConnectionStateChangedListener} to call
+         *                                         {@link OnConnectionStateChangedListener#onConnectionStateChanged(ConnectionState, Duration, FortniteXmpp)}
+         *                                         on when the XMPP connection is established, lost, re-established
+         *                                         or closed
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code onConnectionStateChangedListener} is {@code null}
+         */
+        public Builder setOnConnectionStateChangedListener(final OnConnectionStateChangedListener onConnectionStateChangedListener) {
+            this.onConnectionStateChangedListener = Objects.requireNonNull(onConnectionStateChangedListener, "onConnectionStateChangedListener cannot be null");
+            return this;
+        }
+
+        /**
+         * @param reconnectionEnabled whether or not to re-establish the XMPP connection when it drops.
+         *                            {@code true} to keep retrying until the {@link FortniteXmpp} instance is
+         *                            closed and {@code false} to leave it disconnected. Defaults to {@code true}
+         * @return the {@link Builder} instance this was called on
+         * @see #setReconnectionDelay(Duration, Duration)
+         */
+        public Builder setReconnectionEnabled(final boolean reconnectionEnabled) {
+            this.reconnectionEnabled = reconnectionEnabled;
+            return this;
+        }
+
+        /**
+         * The delay before each reconnection attempt doubles after every failed attempt until it reaches
+         * {@code maxReconnectionDelay}. A random amount of up to half the delay is taken off each time, so
+         * that clients which lost their connections together don't all reconnect together
+         *
+         * @param initialReconnectionDelay delay before the first reconnection attempt. Defaults to 1 second
+         * @param maxReconnectionDelay     longest delay between reconnection attempts. Defaults to 2 minutes
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException     if {@code initialReconnectionDelay} or {@code maxReconnectionDelay} is {@code null}
+         * @throws IllegalArgumentException if {@code initialReconnectionDelay} isn't positive or
+         *                                  {@code maxReconnectionDelay} is less than it
+         */
+        public Builder setReconnectionDelay(final Duration initialReconnectionDelay, final Duration maxReconnectionDelay) {
+            Objects.requireNonNull(initialReconnectionDelay, "initialReconnectionDelay cannot be null");
+            Objects.requireNonNull(maxReconnectionDelay, "maxReconnectionDelay cannot be null");
+            if (initialReconnectionDelay.isNegative() || initialReconnectionDelay.isZero())
+                throw new IllegalArgumentException("initialReconnectionDelay must be positive");
+            if (maxReconnectionDelay.compareTo(initialReconnectionDelay) < 0)
+                throw new IllegalArgumentException("maxReconnectionDelay cannot be less than initialReconnectionDelay");
+            this.initialReconnectionDelay = initialReconnectionDelay;
+            this.maxReconnectionDelay = maxReconnectionDelay;
+            return this;
+        }
+
+        /**
+         * When enabled and the server supports XEP-0198 stream management, a re-established XMPP
+         * connection resumes the previous session. Stanzas missed while disconnected are then
+         * replayed rather than the friends list and every friend's presence being received again
+         *
+         * @param streamResumptionEnabled whether or not to resume the previous session after reconnecting.
+         *                                {@code true} to resume and {@code false} to always start a new one.
+         *                                Defaults to {@code true}
+         * @return the {@link Builder} instance this was called on
+         */
+        public Builder setStreamResumptionEnabled(final boolean streamResumptionEnabled) {
+            this.streamResumptionEnabled = streamResumptionEnabled;
+            return this;
+        }
+
+        /**
+         * Stores each account's friends list in a file named after its account ID. When the server supports
+         * roster versioning, logging in then only fetches the changes made to the friends list since it was
+         * stored instead of the whole list. The file is read on first log in and survives crashes: an
+         * incomplete change is discarded and the rest of the friends list is kept
+         *
+         * @param rosterStoreDirectory the directory to store friends lists in. Created if it doesn't exist
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code rosterStoreDirectory} is {@code null}
+         */
+        public Builder setRosterStoreDirectory(final Path rosterStoreDirectory) {
+            this.rosterStoreDirectory = Objects.requireNonNull(rosterStoreDirectory, "rosterStoreDirectory cannot be null");
+            return this;
+        }
+
+        /**
+         * Records the presences and chat messages each account receives to a journal file named after its account
+         * ID, with the time each was received, so the traffic can be replayed offline to reproduce a problem or
+         * measure throughput. Recording copies each stanza into a buffer that's written out every second or when it
+         * fills up, so a crash can lose the last second. A journal that already exists is appended to
+         *
+         * @param stanzaJournalDirectory the directory to record journals in. Created if it doesn't exist
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code stanzaJournalDirectory} is {@code null}
+         */
+        public Builder setStanzaJournalDirectory(final Path stanzaJournalDirectory) {
+            this.stanzaJournalDirectory = Objects.requireNonNull(stanzaJournalDirectory, "stanzaJournalDirectory cannot be null");
+            return this;
+        }
+
+        /**
+         * Stores chat messages in memory-mapped files in a directory named after the account ID, instead of on the
+         * heap, so they survive restarts. Only the position of each message is kept on the heap. Messages are kept
+         * until they're older than, or the files take up more than, the limits set with
+         * {@link #setChatHistoryRetention(Duration, long)}, and
+         * {@link #setMaxChatMessagesPerAccountId(int)} and {@link #setMaxChatAccountIds(int)} don't apply.
+         * The directory can only be used by one client at a time. A crash of the process loses nothing, but a crash
+         * of the operating system can lose the newest messages
+         *
+         * @param chatHistoryDirectory the directory to store chat messages in. Created if it doesn't exist
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code chatHistoryDirectory} is {@code null}
+         */
+        public Builder setChatHistoryDirectory(final Path chatHistoryDirectory) {
+            this.chatHistoryDirectory = Objects.requireNonNull(chatHistoryDirectory, "chatHistoryDirectory cannot be null");
+            return this;
+        }
+
+        /**
+         * Only applies to chat messages stored with {@link #setChatHistoryDirectory(Path)}. Messages are deleted in
+         * batches of roughly an eighth of {@code maxBytes}, oldest first
+         *
+         * @param maxAge   how long to keep messages for. Defaults to 30 days
+         * @param maxBytes how much disk space stored messages can take up. Defaults to 1 GiB
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException     if {@code maxAge} is {@code null}
+         * @throws IllegalArgumentException if {@code maxAge} or {@code maxBytes} isn't positive
+         */
+        public Builder setChatHistoryRetention(final Duration maxAge, final long maxBytes) {
+            Objects.requireNonNull(maxAge, "maxAge cannot be null");
+            if (maxAge.isNegative() || maxAge.isZero())
+                throw new IllegalArgumentException("maxAge must be positive");
+            if (maxBytes < 1L)
+                throw new IllegalArgumentException("maxBytes must be greater than 0");
+            chatHistoryMaxAge = maxAge;
+            chatHistoryMaxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Chat messages and status updates are queued and sent from a background thread. The asynchronous
+         * methods of {@link ChatResource} reject a chat message or status update when the queue is full, and the
+         * blocking ones wait for space
+         *
+         * @param outboundQueueCapacity maximum number of chat messages, status updates and broadcasts waiting to be
+         *                              sent. Defaults to {@code 1024}
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code outboundQueueCapacity} is less than {@code 1}
+         */
+        public Builder setOutboundQueueCapacity(final int outboundQueueCapacity) {
+            if (outboundQueueCapacity < 1)
+                throw new IllegalArgumentException("outboundQueueCapacity must be greater than 0");
+            this.outboundQueueCapacity = outboundQueueCapacity;
+            return this;
+        }
+
+        /**
+         * Stanza and byte counts, listener and session decoding times, queue depths and reconnections are reported to
+         * the {@link MetricsSink}. The same instance can be registered with many clients
+         *
+         * @param metricsSink the {@link MetricsSink} to report to. Defaults to one that ignores everything
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code metricsSink} is {@code null}
+         * @see RecordingMetricsSink
+         */
+        public Builder setMetricsSink(final MetricsSink metricsSink) {
+            this.metricsSink = Objects.requireNonNull(metricsSink, "metricsSink cannot be null");
+            return this;
+        }
+
+        /**
+         * Connects to another XMPP server instead of Epic Games' prod XMPP service, such as a stand-in for testing.
+         * The XMPP domain is still {@code prod.ol.epicgames.com}
+         *
+         * @param xmppHost host name or address of the XMPP server. Defaults to {@code xmpp-service-prod.ol.epicgames.com}
+         * @param xmppPort port of the XMPP server. Defaults to {@code 5222}
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException     if {@code xmppHost} is {@code null}
+         * @throws IllegalArgumentException if {@code xmppPort} isn't between {@code 1} and {@code 65535}
+         */
+        public Builder setXmppEndpoint(final String xmppHost, final int xmppPort) {
+            Objects.requireNonNull(xmppHost, "xmppHost cannot be null");
+            if (xmppPort < 1 || xmppPort > 65_535)
+                throw new IllegalArgumentException("xmppPort must be between 1 and 65535");
+            this.xmppHost = xmppHost;
+            this.xmppPort = xmppPort;
+            return this;
+        }
+
+        /**
+         * Asks the server to compress the stream with zlib (XEP-0138) after logging in, which shrinks repetitive
+         * presence JSON several times over at the cost of CPU on both ends. The connection stays uncompressed if the
+         * server doesn't offer it. Smack compresses what the client sends at zlib's default level, and the server
+         * chooses its own level for what it sends
+         *
+         * @param streamCompressionEnabled {@code true} to ask for compression. Defaults to {@code false}
+         * @return the {@link Builder} instance this was called on
+         */
+        public Builder setStreamCompressionEnabled(final boolean streamCompressionEnabled) {
+            this.streamCompressionEnabled = streamCompressionEnabled;
+            return this;
+        }
+
+        /**
+         * @param socketSendBufferSize {@code SO_SNDBUF} in bytes. Defaults to {@code 0}, which leaves it to the
+         *                             operating system
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code socketSendBufferSize} is less than {@code 0}
+         */
+        public Builder setSocketSendBufferSize(final int socketSendBufferSize) {
+            if (socketSendBufferSize < 0)
+                throw new IllegalArgumentException("socketSendBufferSize cannot be less than 0");
+            this.socketSendBufferSize = socketSendBufferSize;
+            return this;
+        }
+
+        /**
+         * A larger buffer lets the server keep sending while listeners are busy, at the cost of memory per connection
+         *
+         * @param socketReceiveBufferSize {@code SO_RCVBUF} in bytes. Defaults to {@code 0}, which leaves it to the
+         *                                operating system
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code socketReceiveBufferSize} is less than {@code 0}
+         */
+        public Builder setSocketReceiveBufferSize(final int socketReceiveBufferSize) {
+            if (socketReceiveBufferSize < 0)
+                throw new IllegalArgumentException("socketReceiveBufferSize cannot be less than 0");
+            this.socketReceiveBufferSize = socketReceiveBufferSize;
+            return this;
+        }
+
+        /**
+         * Stanzas are written whole and flushed one at a time, so holding small writes back to combine them only
+         * delays chat messages and status updates
+         *
+         * @param tcpNoDelay {@code true} to send writes straight away, {@code false} to let the operating system
+         *                   combine small writes. Defaults to {@code true}
+         * @return the {@link Builder} instance this was called on
+         */
+        public Builder setTcpNoDelay(final boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        /**
+         * @param replyTimeout how long to wait for the server to reply to a request, such as logging in or
+         *                     fetching the friends list, before giving up. Defaults to 5 seconds
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException     if {@code replyTimeout} is {@code null}
+         * @throws IllegalArgumentException if {@code replyTimeout} isn't positive
+         */
+        public Builder setReplyTimeout(final Duration replyTimeout) {
+            Objects.requireNonNull(replyTimeout, "replyTimeout cannot be null");
+            if (replyTimeout.isNegative() || replyTimeout.isZero())
+                throw new IllegalArgumentException("replyTimeout must be positive");
+            this.replyTimeout = replyTimeout;
+            return this;
+        }
+
+        /**
+         * Decodes a sample presence a couple of thousand times on a background thread while connecting, so that the
+         * presences received just after logging in are decoded by compiled code rather than the interpreter. How
+         * long it took is reported by {@link FortniteXmpp#startupReport()}
+         *
+         * @param warmUpEnabled {@code true} to warm up while connecting. Defaults to {@code false}
+         * @return the {@link Builder} instance this was called on
+         */
+        public Builder setWarmUpEnabled(final boolean warmUpEnabled) {
+            this.warmUpEnabled = warmUpEnabled;
+            return this;
+        }
+
+        /**
+         * @param scheduledExecutorService shared scheduler to use instead of creating one.
+         *                                 It isn't shut down when the {@link FortniteXmpp} instance is closed
+         * @return the {@link Builder} instance this was called on
+         */
+        Builder setScheduledExecutorService(final ScheduledExecutorService scheduledExecutorService) {
+            this.scheduledExecutorService = scheduledExecutorService;
+            return this;
+        }
+
+        /**
+         * @param outboundExecutorService shared executor to send queued stanzas from instead of creating one.
+         *                                It isn't shut down when the {@link FortniteXmpp} instance is closed
+         * @return the {@link Builder} instance this was called on
+         */
+        Builder setOutboundExecutorService(final ExecutorService outboundExecutorService) {
+            this.outboundExecutorService = outboundExecutorService;
+            return this;
+        }
+
+        /**
+         * @param subscriberExecutorService shared executor to signal {@link java.util.concurrent.Flow.Subscriber}s
+         *                                  on instead of creating one. It isn't shut down when the
+         *                                  {@link FortniteXmpp} instance is closed
+         * @return the {@link Builder} instance this was called on
+         */
+        Builder setSubscriberExecutorService(final ExecutorService subscriberExecutorService) {
+            this.subscriberExecutorService = subscriberExecutorService;
+            return this;
+        }
+
         /**
          * @return a new instance of {@link FortniteXmpp}
          * @throws IllegalStateException if there's a problem establishing any XMPP connections
@@ -209,5 +1132,31 @@ public final class DefaultFortniteXmpp implements FortniteXmpp {
                 throw new IllegalStateException("Error occurred when establishing an XMPP connection", exception);
             }
         }
+
+        /**
+         * Builds on a background thread of its own. The {@link Builder} shouldn't be changed until the
+         * {@link CompletableFuture} completes
+         *
+         * @return a {@link CompletableFuture} of a new instance of {@link FortniteXmpp}, which completes exceptionally
+         * with an {@link IllegalStateException} if there's a problem establishing any XMPP connections
+         */
+        public CompletableFuture<FortniteXmpp> buildAsync() {
+            return buildAsync((final var runnable) -> STARTUP_THREAD_FACTORY.newThread(runnable)
+                .start());
+        }
+
+        /**
+         * Builds using {@code executor}, so many clients can be started together without a thread each. The
+         * {@link Builder} shouldn't be changed until the {@link CompletableFuture} completes
+         *
+         * @param executor runs the build, which blocks until logged in
+         * @return a {@link CompletableFuture} of a new instance of {@link FortniteXmpp}, which completes exceptionally
+         * with an {@link IllegalStateException} if there's a problem establishing any XMPP connections
+         * @throws NullPointerException if {@code executor} is {@code null}
+         */
+        public CompletableFuture<FortniteXmpp> buildAsync(final Executor executor) {
+            Objects.requireNonNull(executor, "executor cannot be null");
+            return CompletableFuture.supplyAsync(this::build, executor);
+        }
     }
 }
@@ -0,0 +1,385 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.client.Fortnite;
+import io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp;
+import io.github.robertograham.fortnite2.xmpp.client.FortniteXmppPool;
+import io.github.robertograham.fortnite2.xmpp.domain.PoolStartupReport;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
+import io.github.robertograham.fortnite2.xmpp.listener.OnChatMessageReceivedListener;
+import io.github.robertograham.fortnite2.xmpp.listener.OnConnectionStateChangedListener;
+import io.github.robertograham.fortnite2.xmpp.listener.OnFriendPresenceReceivedListener;
+import io.github.robertograham.fortnite2.xmpp.listener.OnFriendsListChangedListener;
+import io.github.robertograham.fortnite2.xmpp.listener.OnFriendsListReceivedListener;
+import org.jivesoftware.smack.SmackConfiguration;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Default implementation of {@link FortniteXmppPool} created using {@link DefaultFortniteXmppPool.Builder}.
+ * Every client in the pool shares one scheduler, one executor to send stanzas from, one executor to
+ * signal subscribers on and, if listener threads are requested, one listener thread pool, rather than
+ * each creating its own
+ */
+public final class DefaultFortniteXmppPool implements FortniteXmppPool {
+
+    private final Map<String, FortniteXmpp> accountIdToFortniteXmppMap;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final ExecutorService outboundExecutorService;
+    private final ExecutorService subscriberExecutorService;
+    private final ExecutorService listenerExecutorService;
+    private final PoolStartupReport startupReport;
+
+    private DefaultFortniteXmppPool(final Builder builder) {
+        if (builder.debugXmppConnections != null)
+            SmackConfiguration.DEBUG = builder.debugXmppConnections;
+        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-pool-scheduler-"));
+        outboundExecutorService = Executors.newCachedThreadPool(ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-pool-outbound-"));
+        subscriberExecutorService = Executors.newCachedThreadPool(ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-pool-subscriber-"));
+        listenerExecutorService = builder.listenerThreadCount > 0 ?
+            Executors.newFixedThreadPool(builder.listenerThreadCount, ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-pool-listener-"))
+            : null;
+        final var loginExecutorService = Executors.newFixedThreadPool(builder.maxConcurrentLogins, ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-pool-login-"));
+        final var heapBytesUsedBefore = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        final var startNanos = System.nanoTime();
+        final var loginCompletableFutures = new ArrayList<CompletableFuture<Login>>(builder.fortnites.size());
+        // paced when each login actually starts, so logins queued behind slow ones don't all start at once
+        final var nextLoginStartNanos = new AtomicLong(startNanos);
+        for (final var fortnite : builder.fortnites)
+            loginCompletableFutures.add(CompletableFuture.supplyAsync(
+                () -> login(fortnite, builder, nextLoginStartNanos),
+                loginExecutorService
+            ));
+        final var accountIdToFortniteXmppMap = new LinkedHashMap<String, FortniteXmpp>();
+        final var loginDurationsByAccountId = new HashMap<String, Duration>();
+        final var loginFailuresByAccountId = new HashMap<String, Exception>();
+        for (final var loginCompletableFuture : loginCompletableFutures) {
+            final var login = loginCompletableFuture.join();
+            if (login.fortniteXmpp != null) {
+                accountIdToFortniteXmppMap.put(login.accountId, login.fortniteXmpp);
+                loginDurationsByAccountId.put(login.accountId, login.duration);
+            } else
+                loginFailuresByAccountId.put(login.accountId, login.exception);
+        }
+        final var totalDuration = Duration.ofNanos(System.nanoTime() - startNanos);
+        loginExecutorService.shutdown();
+        final var heapBytesUsedAfter = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        this.accountIdToFortniteXmppMap = Collections.unmodifiableMap(accountIdToFortniteXmppMap);
+        startupReport = DefaultPoolStartupReport.newInstance(
+            totalDuration,
+            loginDurationsByAccountId,
+            loginFailuresByAccountId,
+            accountIdToFortniteXmppMap.isEmpty() ?
+                0L
+                : Math.max(0L, heapBytesUsedAfter - heapBytesUsedBefore) / accountIdToFortniteXmppMap.size()
+        );
+    }
+
+    private Login login(final Fortnite fortnite, final Builder builder, final AtomicLong nextLoginStartNanos) {
+        final var accountId = fortnite.session().accountId();
+        final var loginStaggerNanos = builder.loginStagger.toNanos();
+        final var nowNanos = System.nanoTime();
+        final var loginStartNanos = nextLoginStartNanos.getAndUpdate((final var nextNanos) -> Math.max(nowNanos, nextNanos) + loginStaggerNanos);
+        try {
+            TimeUnit.NANOSECONDS.sleep(loginStartNanos - nowNanos);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return new Login(accountId, null, Duration.ZERO, exception);
+        }
+        final var fortniteXmppBuilder = DefaultFortniteXmpp.Builder.newInstance(fortnite)
+            .setApplication(builder.application)
+            .setPlatform(builder.platform);
+        builder.fortniteXmppBuilderConsumer.accept(fortniteXmppBuilder);
+        if (builder.onChatMessageReceivedListener != null)
+            fortniteXmppBuilder.setOnChatMessageReceivedListener(builder.onChatMessageReceivedListener);
+        if (builder.onFriendsListReceivedListener != null)
+            fortniteXmppBuilder.setOnFriendsListReceivedListener(builder.onFriendsListReceivedListener);
+        if (builder.onFriendsListChangedListener != null)
+            fortniteXmppBuilder.setOnFriendsListChangedListener(builder.onFriendsListChangedListener);
+        if (builder.onFriendPresenceReceivedListener != null)
+            fortniteXmppBuilder.setOnFriendPresenceReceivedListener(builder.onFriendPresenceReceivedListener);
+        if (builder.onConnectionStateChangedListener != null)
+            fortniteXmppBuilder.setOnConnectionStateChangedListener(builder.onConnectionStateChangedListener);
+        if (listenerExecutorService != null)
+            fortniteXmppBuilder.setListenerExecutor(listenerExecutorService);
+        fortniteXmppBuilder.setScheduledExecutorService(scheduledExecutorService)
+            .setOutboundExecutorService(outboundExecutorService)
+            .setSubscriberExecutorService(subscriberExecutorService);
+        final var startNanos = System.nanoTime();
+        try {
+            final var fortniteXmpp = fortniteXmppBuilder.build();
+            return new Login(accountId, fortniteXmpp, Duration.ofNanos(System.nanoTime() - startNanos), null);
+        } catch (final RuntimeException exception) {
+            return new Login(accountId, null, Duration.ofNanos(System.nanoTime() - startNanos), exception);
+        }
+    }
+
+    @Override
+    public void close() {
+        accountIdToFortniteXmppMap.values()
+            .forEach(FortniteXmpp::close);
+        scheduledExecutorService.shutdownNow();
+        outboundExecutorService.shutdownNow();
+        // lets subscribers be sent what they've already requested and then completed
+        subscriberExecutorService.shutdown();
+        if (listenerExecutorService != null)
+            listenerExecutorService.shutdown();
+    }
+
+    @Override
+    public Optional<FortniteXmpp> findOneByAccountId(final String accountId) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        return Optional.ofNullable(accountIdToFortniteXmppMap.get(accountId));
+    }
+
+    @Override
+    public List<FortniteXmpp> findAll() {
+        return List.copyOf(accountIdToFortniteXmppMap.values());
+    }
+
+    @Override
+    public PoolStartupReport startupReport() {
+        return startupReport;
+    }
+
+    private static final class Login {
+
+        private final String accountId;
+        private final FortniteXmpp fortniteXmpp;
+        private final Duration duration;
+        private final Exception exception;
+
+        private Login(final String accountId,
+                      final FortniteXmpp fortniteXmpp,
+                      final Duration duration,
+                      final Exception exception) {
+            this.accountId = accountId;
+            this.fortniteXmpp = fortniteXmpp;
+            this.duration = duration;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Used to create {@link FortniteXmppPool} instances
+     * Instantiated using {@link #newInstance(Collection)}
+     */
+    public static final class Builder {
+
+        private final List<Fortnite> fortnites;
+        private OnChatMessageReceivedListener onChatMessageReceivedListener = null;
+        private OnFriendsListReceivedListener onFriendsListReceivedListener = null;
+        private OnFriendsListChangedListener onFriendsListChangedListener = null;
+        private OnFriendPresenceReceivedListener onFriendPresenceReceivedListener = null;
+        private OnConnectionStateChangedListener onConnectionStateChangedListener = null;
+        private Consumer<DefaultFortniteXmpp.Builder> fortniteXmppBuilderConsumer = (final var fortniteXmppBuilder) -> {
+        };
+        private Boolean debugXmppConnections = null;
+        private Application application = Application.FORTNITE_CLIENT;
+        private Platform platform = Platform.WINDOWS;
+        private int maxConcurrentLogins = 4;
+        private Duration loginStagger = Duration.ofMillis(100L);
+        private int listenerThreadCount = 0;
+
+        private Builder(final List<Fortnite> fortnites) {
+            this.fortnites = fortnites;
+        }
+
+        /**
+         * @param fortnites the {@link Fortnite} instances to get authentication session details from,
+         *                  one per account to log in as
+         * @return a new {@link Builder} instance
+         * @throws NullPointerException if {@code fortnites} is {@code null} or contains {@code null}
+         */
+        public static Builder newInstance(final Collection<Fortnite> fortnites) {
+            Objects.requireNonNull(fortnites, "fortnites cannot be null");
+            return new Builder(List.copyOf(fortnites));
+        }
+
+        /**
+         * The {@link OnChatMessageReceivedListener} is shared by every client in the pool. Use
+         * {@code chat.fortniteXmpp().accountId()} to tell which account received the message
+         *
+         * @param onChatMessageReceivedListener the {@link OnChatMessageReceivedListener} to register with every client
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code onChatMessageReceivedListener} is {@code null}
+         * @see DefaultFortniteXmpp.Builder#setOnChatMessageReceivedListener(OnChatMessageReceivedListener)
+         */
+        public Builder setOnChatMessageReceivedListener(final OnChatMessageReceivedListener onChatMessageReceivedListener) {
+            this.onChatMessageReceivedListener = Objects.requireNonNull(onChatMessageReceivedListener, "onChatMessageReceivedListener cannot be null");
+            return this;
+        }
+
+        /**
+         * The {@link OnFriendsListReceivedListener} is shared by every client in the pool. Use
+         * {@code friend.fortniteXmpp().accountId()} to tell which account the friends list belongs to
+         *
+         * @param onFriendsListReceivedListener the {@link OnFriendsListReceivedListener} to register with every client
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code onFriendsListReceivedListener} is {@code null}
+         * @see DefaultFortniteXmpp.Builder#setOnFriendsListReceivedListener(OnFriendsListReceivedListener)
+         */
+        public Builder setOnFriendsListReceivedListener(final OnFriendsListReceivedListener onFriendsListReceivedListener) {
+            this.onFriendsListReceivedListener = Objects.requireNonNull(onFriendsListReceivedListener, "onFriendsListReceivedListener cannot be null");
+            return this;
+        }
+
+        /**
+         * The {@link OnFriendsListChangedListener} is shared by every client in the pool. Use
+         * {@code friend.fortniteXmpp().accountId()} to tell which account the friends list belongs to
+         *
+         * @param onFriendsListChangedListener the {@link OnFriendsListChangedListener} to register with every client
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code onFriendsListChangedListener} is {@code null}
+         * @see DefaultFortniteXmpp.Builder#setOnFriendsListChangedListener(OnFriendsListChangedListener)
+         */
+        public Builder setOnFriendsListChangedListener(final OnFriendsListChangedListener onFriendsListChangedListener) {
+            this.onFriendsListChangedListener = Objects.requireNonNull(onFriendsListChangedListener, "onFriendsListChangedListener cannot be null");
+            return this;
+        }
+
+        /**
+         * The {@link OnFriendPresenceReceivedListener} is shared by every client in the pool. Use
+         * {@code friend.fortniteXmpp().accountId()} to tell which account received the presence
+         *
+         * @param onFriendPresenceReceivedListener the {@link OnFriendPresenceReceivedListener} to register with every client
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code onFriendPresenceReceivedListener} is {@code null}
+         * @see DefaultFortniteXmpp.Builder#setOnFriendPresenceReceivedListener(OnFriendPresenceReceivedListener)
+         */
+        public Builder setOnFriendPresenceReceivedListener(final OnFriendPresenceReceivedListener onFriendPresenceReceivedListener) {
+            this.onFriendPresenceReceivedListener = Objects.requireNonNull(onFriendPresenceReceivedListener, "onFriendPresenceReceivedListener cannot be null");
+            return this;
+        }
+
+        /**
+         * The {@link OnConnectionStateChangedListener} is shared by every client in the pool. Use
+         * {@code fortniteXmpp.accountId()} to tell which account's connection changed state.
+         * The pool's shared scheduler only waits out each reconnection backoff, and every attempt is then
+         * made on a thread of its own, so one slow attempt doesn't hold up the other clients' reconnections
+         *
+         * @param onConnectionStateChangedListener the {@link OnConnectionStateChangedListener} to register with every client
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code onConnectionStateChangedListener} is {@code null}
+         * @see DefaultFortniteXmpp.Builder#setOnConnectionStateChangedListener(OnConnectionStateChangedListener)
+         */
+        public Builder setOnConnectionStateChangedListener(final OnConnectionStateChangedListener onConnectionStateChangedListener) {
+            this.onConnectionStateChangedListener = Objects.requireNonNull(onConnectionStateChangedListener, "onConnectionStateChangedListener cannot be null");
+            return this;
+        }
+
+        /**
+         * @param fortniteXmppBuilderConsumer called with the {@link DefaultFortniteXmpp.Builder} of every client
+         *                                    in the pool before it's built, to set any option this {@link Builder}
+         *                                    doesn't have. Listeners set on this {@link Builder} take precedence
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code fortniteXmppBuilderConsumer} is {@code null}
+         */
+        public Builder setFortniteXmppBuilderConsumer(final Consumer<DefaultFortniteXmpp.Builder> fortniteXmppBuilderConsumer) {
+            this.fortniteXmppBuilderConsumer = Objects.requireNonNull(fortniteXmppBuilderConsumer, "fortniteXmppBuilderConsumer cannot be null");
+            return this;
+        }
+
+        /**
+         * @param debugXmppConnections whether or not to log XMPP connection traffic
+         *                             {@code true} to log and {@code false} to not log
+         * @return the {@link Builder} instance this was called on
+         * @see DefaultFortniteXmpp.Builder#setDebugXmppConnections(boolean)
+         */
+        public Builder setDebugXmppConnections(final boolean debugXmppConnections) {
+            this.debugXmppConnections = debugXmppConnections;
+            return this;
+        }
+
+        /**
+         * @param application the application every account in the pool will appear to be using
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code application} is {@code null}
+         * @see DefaultFortniteXmpp.Builder#setApplication(Application)
+         */
+        public Builder setApplication(final Application application) {
+            this.application = Objects.requireNonNull(application, "application cannot be null");
+            return this;
+        }
+
+        /**
+         * @param platform the platform every account in the pool will appear to be using
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code platform} is {@code null}
+         * @see DefaultFortniteXmpp.Builder#setPlatform(Platform)
+         */
+        public Builder setPlatform(final Platform platform) {
+            this.platform = Objects.requireNonNull(platform, "platform cannot be null");
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentLogins maximum number of accounts connecting and logging in at the same time.
+         *                            Defaults to {@code 4}
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code maxConcurrentLogins} is less than {@code 1}
+         */
+        public Builder setMaxConcurrentLogins(final int maxConcurrentLogins) {
+            if (maxConcurrentLogins < 1)
+                throw new IllegalArgumentException("maxConcurrentLogins must be greater than 0");
+            this.maxConcurrentLogins = maxConcurrentLogins;
+            return this;
+        }
+
+        /**
+         * @param loginStagger minimum time between consecutive accounts starting to log in. Defaults to 100 milliseconds
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException     if {@code loginStagger} is {@code null}
+         * @throws IllegalArgumentException if {@code loginStagger} is negative
+         */
+        public Builder setLoginStagger(final Duration loginStagger) {
+            Objects.requireNonNull(loginStagger, "loginStagger cannot be null");
+            if (loginStagger.isNegative())
+                throw new IllegalArgumentException("loginStagger cannot be negative");
+            this.loginStagger = loginStagger;
+            return this;
+        }
+
+        /**
+         * @param listenerThreadCount size of the thread pool shared by every client in the pool to call
+         *                            listeners on, {@code 0} to call listeners on each connection's event thread.
+         *                            Defaults to {@code 0}
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code listenerThreadCount} is less than {@code 0}
+         * @see DefaultFortniteXmpp.Builder#setListenerThreadCount(int)
+         */
+        public Builder setListenerThreadCount(final int listenerThreadCount) {
+            if (listenerThreadCount < 0)
+                throw new IllegalArgumentException("listenerThreadCount cannot be negative");
+            this.listenerThreadCount = listenerThreadCount;
+            return this;
+        }
+
+        /**
+         * Blocks until every account has either logged in or failed to. Accounts that failed
+         * are listed in {@link PoolStartupReport#loginFailuresByAccountId()}
+         *
+         * @return a new instance of {@link FortniteXmppPool}
+         */
+        public FortniteXmppPool build() {
+            return new DefaultFortniteXmppPool(this);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.FriendPresence;
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+
+import java.util.Objects;
+import java.util.Optional;
+
+final class DefaultFriendPresence implements FriendPresence {
+
+    private final String accountId;
+    private final Status status;
+    private final Optional<Session> sessionOptional;
+
+    private DefaultFriendPresence(final String accountId,
+                                  final Status status,
+                                  final Optional<Session> sessionOptional) {
+        this.accountId = accountId;
+        this.status = status;
+        this.sessionOptional = sessionOptional;
+    }
+
+    static DefaultFriendPresence newInstance(final String accountId,
+                                             final Status status,
+                                             final Optional<Session> sessionOptional) {
+        return new DefaultFriendPresence(accountId, status, sessionOptional);
+    }
+
+    @Override
+    public String accountId() {
+        return accountId;
+    }
+
+    @Override
+    public Status status() {
+        return status;
+    }
+
+    @Override
+    public Optional<Session> session() {
+        return sessionOptional;
+    }
+
+    @Override
+    public String toString() {
+        return "DefaultFriendPresence{" +
+            "accountId='" + accountId + '\'' +
+            ", status=" + status +
+            ", sessionOptional=" + sessionOptional +
+            '}';
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object)
+            return true;
+        if (!(object instanceof DefaultFriendPresence))
+            return false;
+        final var defaultFriendPresence = (DefaultFriendPresence) object;
+        return accountId.equals(defaultFriendPresence.accountId) &&
+            status == defaultFriendPresence.status &&
+            sessionOptional.equals(defaultFriendPresence.sessionOptional);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(accountId, status, sessionOptional);
+    }
+}
@@ -1,16 +1,24 @@
 package io.github.robertograham.fortnite2.xmpp.implementation;
 
 import io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp;
+import io.github.robertograham.fortnite2.xmpp.domain.FriendPresence;
+import io.github.robertograham.fortnite2.xmpp.domain.FriendsListChange;
 import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
 import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.SubscriberOverflowPolicy;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
 import io.github.robertograham.fortnite2.xmpp.listener.OnFriendPresenceReceivedListener;
+import io.github.robertograham.fortnite2.xmpp.listener.OnFriendsListChangedListener;
 import io.github.robertograham.fortnite2.xmpp.listener.OnFriendsListReceivedListener;
 import io.github.robertograham.fortnite2.xmpp.resource.FriendResource;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.roster.AbstractRosterListener;
 import org.jivesoftware.smack.roster.Roster;
-import org.jivesoftware.smack.roster.RosterEntry;
-import org.jivesoftware.smack.roster.RosterListener;
+import org.jivesoftware.smack.roster.rosterstore.RosterStore;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection;
 import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.DomainBareJid;
@@ -18,55 +26,182 @@ import org.jxmpp.jid.Jid;
 import org.jxmpp.jid.impl.JidCreate;
 import org.jxmpp.jid.parts.Localpart;
 
-import javax.json.bind.JsonbException;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Function;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 final class DefaultFriendResource implements FriendResource, AutoCloseable {
 
     private final XMPPTCPConnection prodServiceXmppTcpConnection;
     private final FortniteXmpp fortniteXmpp;
     private final Roster roster;
-    private final RosterListener rosterListener;
+    private final EventPublisher<FriendPresence> friendPresenceEventPublisher;
+    private final EventPublisher<FriendsListChange> friendsListChangeEventPublisher;
+    private final DefaultRosterListener rosterListener;
 
     private DefaultFriendResource(final XMPPTCPConnection prodServiceXmppTcpConnection,
                                   final OnFriendsListReceivedListener onFriendsListReceivedListener,
+                                  final OnFriendsListChangedListener onFriendsListChangedListener,
                                   final OnFriendPresenceReceivedListener onFriendPresenceReceivedListener,
-                                  final FortniteXmpp fortniteXmpp) {
+                                  final FortniteXmpp fortniteXmpp,
+                                  final ListenerDispatcher listenerDispatcher,
+                                  final ScheduledExecutorService scheduledExecutorService,
+                                  final Duration presenceCoalescingWindow,
+                                  final boolean suppressDuplicatePresences,
+                                  final FriendPresenceFilter presenceFilter,
+                                  final PresenceLanes presenceLanes,
+                                  final RosterStore rosterStore,
+                                  final Executor subscriberExecutor,
+                                  final MetricsSink metricsSink) {
         this.prodServiceXmppTcpConnection = prodServiceXmppTcpConnection;
         this.fortniteXmpp = fortniteXmpp;
+        friendPresenceEventPublisher = EventPublisher.newInstance(subscriberExecutor, metricsSink);
+        friendsListChangeEventPublisher = EventPublisher.newInstance(subscriberExecutor, metricsSink);
         roster = Roster.getInstanceFor(this.prodServiceXmppTcpConnection);
+        if (rosterStore != null)
+            roster.setRosterStore(rosterStore);
         rosterListener = new DefaultRosterListener(
-            roster::getEntries,
             roster::getPresence,
             prodServiceXmppTcpConnection.getXMPPServiceDomain(),
             onFriendsListReceivedListener,
+            onFriendsListChangedListener,
             onFriendPresenceReceivedListener,
-            this
+            this,
+            listenerDispatcher.newQueue(MetricsTimer.ON_FRIENDS_LIST_RECEIVED_LISTENER),
+            listenerDispatcher.newQueue(MetricsTimer.ON_FRIENDS_LIST_CHANGED_LISTENER),
+            ListenerCoalescer.newInstance(
+                scheduledExecutorService,
+                presenceCoalescingWindow,
+                listenerDispatcher.newCoalescingQueue(MetricsTimer.ON_FRIEND_PRESENCE_RECEIVED_LISTENER)
+            ),
+            suppressDuplicatePresences,
+            presenceFilter,
+            presenceLanes,
+            friendPresenceEventPublisher,
+            friendsListChangeEventPublisher,
+            metricsSink
         );
         roster.addRosterListener(rosterListener);
     }
 
     static DefaultFriendResource newInstance(final XMPPTCPConnection prodServiceXmppTcpConnection,
                                              final OnFriendsListReceivedListener onFriendsListReceivedListener,
+                                             final OnFriendsListChangedListener onFriendsListChangedListener,
                                              final OnFriendPresenceReceivedListener onFriendPresenceReceivedListener,
-                                             final FortniteXmpp fortniteXmpp) {
+                                             final FortniteXmpp fortniteXmpp,
+                                             final ListenerDispatcher listenerDispatcher,
+                                             final ScheduledExecutorService scheduledExecutorService,
+                                             final Duration presenceCoalescingWindow,
+                                             final boolean suppressDuplicatePresences,
+                                             final FriendPresenceFilter presenceFilter,
+                                             final PresenceLanes presenceLanes,
+                                             final RosterStore rosterStore,
+                                             final Executor subscriberExecutor,
+                                             final MetricsSink metricsSink) {
         return new DefaultFriendResource(
             prodServiceXmppTcpConnection,
             onFriendsListReceivedListener,
+            onFriendsListChangedListener,
             onFriendPresenceReceivedListener,
-            fortniteXmpp
+            fortniteXmpp,
+            listenerDispatcher,
+            scheduledExecutorService,
+            presenceCoalescingWindow,
+            suppressDuplicatePresences,
+            presenceFilter,
+            presenceLanes,
+            rosterStore,
+            subscriberExecutor,
+            metricsSink
         );
     }
 
     @Override
     public void close() {
         roster.removeRosterListener(rosterListener);
+        friendPresenceEventPublisher.close();
+        friendsListChangeEventPublisher.close();
+    }
+
+    @Override
+    public Set<String> findAllFriendAccountIds() {
+        return rosterListener.friendAccountIds();
+    }
+
+    @Override
+    public Set<String> findAllFriendAccountIdsByStatus(final Status status, final Status... otherStatuses) {
+        Objects.requireNonNull(status, "status cannot be null");
+        for (final var otherStatus : Objects.requireNonNull(otherStatuses, "otherStatuses cannot be null"))
+            Objects.requireNonNull(otherStatus, "otherStatuses cannot contain null");
+        return rosterListener.presenceIndex()
+            .findAllAccountIdsByStatuses(status, otherStatuses);
+    }
+
+    @Override
+    public Set<String> findAllFriendAccountIdsByPlatform(final Platform platform) {
+        Objects.requireNonNull(platform, "platform cannot be null");
+        return rosterListener.presenceIndex()
+            .findAllAccountIdsByPlatform(platform);
+    }
+
+    @Override
+    public Set<String> findAllFriendAccountIdsByApplication(final Application application) {
+        Objects.requireNonNull(application, "application cannot be null");
+        return rosterListener.presenceIndex()
+            .findAllAccountIdsByApplication(application);
+    }
+
+    @Override
+    public Set<String> findAllJoinableFriendAccountIds() {
+        return rosterListener.presenceIndex()
+            .findAllJoinableAccountIds();
+    }
+
+    @Override
+    public Set<String> findAllFriendAccountIdsByPartyId(final String partyId) {
+        Objects.requireNonNull(partyId, "partyId cannot be null");
+        return rosterListener.presenceIndex()
+            .findAllAccountIdsByPartyId(partyId);
+    }
+
+    @Override
+    public Map<String, Set<String>> findAllFriendAccountIdsGroupedByPartyId() {
+        return rosterListener.presenceIndex()
+            .findAllAccountIdsGroupedByPartyId();
+    }
+
+    @Override
+    public Optional<Status> findOneStatusByAccountId(final String accountId) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        return rosterListener.presenceIndex()
+            .findOneStatusByAccountId(accountId);
+    }
+
+    @Override
+    public Optional<Session> findOneSessionByAccountId(final String accountId) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        return rosterListener.presenceIndex()
+            .findOneSessionByAccountId(accountId);
+    }
+
+    @Override
+    public Flow.Publisher<FriendPresence> friendPresencePublisher(final SubscriberOverflowPolicy subscriberOverflowPolicy, final int bufferCapacity) {
+        return friendPresenceEventPublisher.publisher(subscriberOverflowPolicy, bufferCapacity);
+    }
+
+    @Override
+    public Flow.Publisher<FriendsListChange> friendsListChangePublisher(final SubscriberOverflowPolicy subscriberOverflowPolicy, final int bufferCapacity) {
+        return friendsListChangeEventPublisher.publisher(subscriberOverflowPolicy, bufferCapacity);
     }
 
     @Override
@@ -74,83 +209,218 @@ final class DefaultFriendResource implements FriendResource, AutoCloseable {
         return fortniteXmpp;
     }
 
-    private final static class DefaultRosterListener extends AbstractRosterListener {
+    static final class DefaultRosterListener extends AbstractRosterListener {
 
-        private final Supplier<Set<RosterEntry>> rosterEntrySetSupplier;
         private final Function<BareJid, Presence> bareJidToPresenceFunction;
         private final DomainBareJid domainBareJid;
         private final OnFriendsListReceivedListener onFriendsListReceivedListener;
+        private final OnFriendsListChangedListener onFriendsListChangedListener;
         private final OnFriendPresenceReceivedListener onFriendPresenceReceivedListener;
         private final FriendResource friendResource;
+        private final ListenerDispatchQueue onFriendsListReceivedListenerDispatchQueue;
+        private final ListenerDispatchQueue onFriendsListChangedListenerDispatchQueue;
+        private final ListenerCoalescer onFriendPresenceReceivedListenerCoalescer;
+        private final boolean suppressDuplicatePresences;
+        private final FriendPresenceFilter presenceFilter;
+        private final PresenceLanes presenceLanes;
+        private final EventPublisher<FriendPresence> friendPresenceEventPublisher;
+        private final EventPublisher<FriendsListChange> friendsListChangeEventPublisher;
+        private final MetricsSink metricsSink;
+        private final PresenceIndex presenceIndex;
+        private final Set<String> friendAccountIds;
+        private final Map<Localpart, FriendAddress> localpartToFriendAddressMap;
 
-        private DefaultRosterListener(final Supplier<Set<RosterEntry>> rosterEntrySetSupplier,
-                                      final Function<BareJid, Presence> bareJidToPresenceFunction,
-                                      final DomainBareJid domainBareJid,
-                                      final OnFriendsListReceivedListener onFriendsListReceivedListener,
-                                      final OnFriendPresenceReceivedListener onFriendPresenceReceivedListener,
-                                      final FriendResource friendResource) {
-            this.rosterEntrySetSupplier = rosterEntrySetSupplier;
+        /**
+         * @param onFriendsListReceivedListener   called with a snapshot of the whole friends list after every change,
+         *                                        {@code null} if a snapshot was never asked for
+         * @param presenceLanes                   handles presences in parallel across friends, {@code null} to handle
+         *                                        them on the thread they're received on
+         * @param friendPresenceEventPublisher    publishes presences that pass the filters, {@code null} if they
+         *                                        aren't published
+         * @param friendsListChangeEventPublisher publishes changes to the friends list, {@code null} if they aren't
+         *                                        published
+         */
+        DefaultRosterListener(final Function<BareJid, Presence> bareJidToPresenceFunction,
+                              final DomainBareJid domainBareJid,
+                              final OnFriendsListReceivedListener onFriendsListReceivedListener,
+                              final OnFriendsListChangedListener onFriendsListChangedListener,
+                              final OnFriendPresenceReceivedListener onFriendPresenceReceivedListener,
+                              final FriendResource friendResource,
+                              final ListenerDispatchQueue onFriendsListReceivedListenerDispatchQueue,
+                              final ListenerDispatchQueue onFriendsListChangedListenerDispatchQueue,
+                              final ListenerCoalescer onFriendPresenceReceivedListenerCoalescer,
+                              final boolean suppressDuplicatePresences,
+                              final FriendPresenceFilter presenceFilter,
+                              final PresenceLanes presenceLanes,
+                              final EventPublisher<FriendPresence> friendPresenceEventPublisher,
+                              final EventPublisher<FriendsListChange> friendsListChangeEventPublisher,
+                              final MetricsSink metricsSink) {
             this.bareJidToPresenceFunction = bareJidToPresenceFunction;
             this.domainBareJid = domainBareJid;
             this.onFriendsListReceivedListener = onFriendsListReceivedListener;
+            this.onFriendsListChangedListener = onFriendsListChangedListener;
             this.onFriendPresenceReceivedListener = onFriendPresenceReceivedListener;
             this.friendResource = friendResource;
+            this.onFriendsListReceivedListenerDispatchQueue = onFriendsListReceivedListenerDispatchQueue;
+            this.onFriendsListChangedListenerDispatchQueue = onFriendsListChangedListenerDispatchQueue;
+            this.onFriendPresenceReceivedListenerCoalescer = onFriendPresenceReceivedListenerCoalescer;
+            this.suppressDuplicatePresences = suppressDuplicatePresences;
+            this.presenceFilter = presenceFilter;
+            this.presenceLanes = presenceLanes;
+            this.friendPresenceEventPublisher = friendPresenceEventPublisher;
+            this.friendsListChangeEventPublisher = friendsListChangeEventPublisher;
+            this.metricsSink = metricsSink;
+            presenceIndex = PresenceIndex.newInstance(metricsSink);
+            friendAccountIds = ConcurrentHashMap.newKeySet();
+            localpartToFriendAddressMap = new ConcurrentHashMap<>();
+        }
+
+        Set<String> friendAccountIds() {
+            return Set.copyOf(friendAccountIds);
+        }
+
+        PresenceIndex presenceIndex() {
+            return presenceIndex;
         }
 
         @Override
         public void entriesUpdated(final Collection<Jid> addresses) {
-            updateOnFriendsListReceivedListener();
+            entriesAdded(addresses);
         }
 
         @Override
         public void entriesAdded(final Collection<Jid> addresses) {
-            updateOnFriendsListReceivedListener();
+            final var addedAccountIds = new HashSet<String>();
+            for (final var address : addresses) {
+                final var localpart = address.getLocalpartOrNull();
+                if (localpart != null) {
+                    final var accountId = friendAddress(localpart).accountId;
+                    if (friendAccountIds.add(accountId)) {
+                        presenceIndex.add(accountId);
+                        addedAccountIds.add(accountId);
+                    }
+                }
+            }
+            if (!addedAccountIds.isEmpty())
+                onFriendsListChanged(Collections.unmodifiableSet(addedAccountIds), Collections.emptySet());
         }
 
         @Override
         public void entriesDeleted(final Collection<Jid> addresses) {
-            updateOnFriendsListReceivedListener();
+            final var removedAccountIds = new HashSet<String>();
+            for (final var address : addresses) {
+                final var localpart = address.getLocalpartOrNull();
+                if (localpart != null) {
+                    final var friendAddress = localpartToFriendAddressMap.remove(localpart);
+                    final var accountId = friendAddress == null ?
+                        localpart.asUnescapedString()
+                        : friendAddress.accountId;
+                    // after any of the friend's presences still waiting in their lane, which would index them again
+                    if (presenceLanes == null)
+                        presenceIndex.remove(accountId);
+                    else
+                        presenceLanes.dispatch(accountId, () -> presenceIndex.remove(accountId));
+                    if (friendAccountIds.remove(accountId))
+                        removedAccountIds.add(accountId);
+                }
+            }
+            if (!removedAccountIds.isEmpty())
+                onFriendsListChanged(Collections.emptySet(), Collections.unmodifiableSet(removedAccountIds));
         }
 
-        private void updateOnFriendsListReceivedListener() {
-            onFriendsListReceivedListener.onFriendsListReceived(
-                rosterEntrySetSupplier.get().stream()
-                    .map(RosterEntry::getJid)
-                    .map(BareJid::getLocalpartOrNull)
-                    .filter(Objects::nonNull)
-                    .map(Localpart::asUnescapedString)
-                    .collect(Collectors.toUnmodifiableSet()),
-                friendResource
+        private void onFriendsListChanged(final Set<String> addedAccountIds, final Set<String> removedAccountIds) {
+            if (friendsListChangeEventPublisher != null && friendsListChangeEventPublisher.hasSubscribers())
+                friendsListChangeEventPublisher.submit(DefaultFriendsListChange.newInstance(addedAccountIds, removedAccountIds));
+            onFriendsListChangedListenerDispatchQueue.dispatch(this, () ->
+                onFriendsListChangedListener.onFriendsListChanged(addedAccountIds, removedAccountIds, friendResource)
             );
+            if (onFriendsListReceivedListener != null) {
+                final var accountIds = friendAccountIds();
+                onFriendsListReceivedListenerDispatchQueue.dispatch(this, () ->
+                    onFriendsListReceivedListener.onFriendsListReceived(accountIds, friendResource)
+                );
+            }
         }
 
+        /**
+         * Handled straight away, or on the friend's lane if there are {@link PresenceLanes}
+         */
         @Override
         public void presenceChanged(final Presence presence) {
-            Optional.ofNullable(presence.getFrom().getLocalpartOrNull())
-                .ifPresent((final var localpart) -> {
-                    final var bestPresence = bareJidToPresenceFunction.apply(JidCreate.bareFrom(
-                        localpart,
-                        domainBareJid
-                    ));
-                    final var status = bestPresence.isAvailable() ?
-                        bestPresence.isAway() ?
-                            Status.AWAY
-                            : Status.ONLINE
-                        : Status.OFFLINE;
-                    var sessionOptional = Optional.<Session>empty();
-                    try {
-                        sessionOptional = JsonToOptionalOfClassParser.INSTANCE.parseJsonToOptionalOfClass(DefaultSession.class, bestPresence.getStatus())
-                            .map(Function.identity());
-                    } catch (final JsonbException exception) {
-                        exception.printStackTrace();
-                    }
-                    onFriendPresenceReceivedListener.onFriendPresenceReceived(
-                        localpart.asUnescapedString(),
-                        status,
-                        sessionOptional,
-                        friendResource
-                    );
-                });
+            final var localpart = presence.getFrom().getLocalpartOrNull();
+            if (localpart == null)
+                return;
+            final var friendAddress = friendAddress(localpart);
+            if (presenceLanes == null)
+                presenceChanged(friendAddress);
+            else
+                presenceLanes.dispatch(friendAddress.accountId, () -> presenceChanged(friendAddress));
+        }
+
+        /**
+         * The presence index is always brought up to date, then the presence goes through {@link FriendPresenceFilter}'s
+         * stages. One that's filtered out before the session stage allocates nothing here. The friend's best presence
+         * is looked up rather than the one received being used, so a lane that falls behind still ends on the latest
+         */
+        private void presenceChanged(final FriendAddress friendAddress) {
+            final var bestPresence = bareJidToPresenceFunction.apply(friendAddress.bareJid);
+            final var status = bestPresence.isAvailable() ?
+                bestPresence.isAway() ?
+                    Status.AWAY
+                    : Status.ONLINE
+                : Status.OFFLINE;
+            final var accountId = friendAddress.accountId;
+            final var changedFromStatus = presenceIndex.update(accountId, status, bestPresence.getStatus());
+            if (changedFromStatus == null && suppressDuplicatePresences)
+                return;
+            final var previousStatus = changedFromStatus == null ?
+                status
+                : changedFromStatus;
+            if (!presenceFilter.testAccountId(accountId) || !presenceFilter.testStatus(previousStatus, status)) {
+                metricsSink.incrementCounter(MetricsCounter.FRIEND_PRESENCES_FILTERED);
+                return;
+            }
+            final var sessionOptional = presenceIndex.findOneSessionByAccountId(accountId);
+            if (presenceFilter.hasSessionStage() && !presenceFilter.testSession(sessionOptional.orElse(null))) {
+                metricsSink.incrementCounter(MetricsCounter.FRIEND_PRESENCES_FILTERED);
+                return;
+            }
+            // ahead of coalescing, so subscribers decide what to keep with their own overflow policy
+            if (friendPresenceEventPublisher != null && friendPresenceEventPublisher.hasSubscribers())
+                friendPresenceEventPublisher.submit(DefaultFriendPresence.newInstance(accountId, status, sessionOptional));
+            onFriendPresenceReceivedListenerCoalescer.offer(accountId, () ->
+                onFriendPresenceReceivedListener.onFriendPresenceReceived(
+                    accountId,
+                    status,
+                    sessionOptional,
+                    friendResource
+                )
+            );
+        }
+
+        private FriendAddress friendAddress(final Localpart localpart) {
+            final var friendAddress = localpartToFriendAddressMap.get(localpart);
+            return friendAddress == null ?
+                localpartToFriendAddressMap.computeIfAbsent(localpart, (final var newLocalpart) -> new FriendAddress(
+                    StringInternPool.INSTANCE.intern(newLocalpart.asUnescapedString()),
+                    JidCreate.bareFrom(newLocalpart, domainBareJid)
+                ))
+                : friendAddress;
+        }
+
+        /**
+         * A friend's account ID and the bare JID their presences are looked up by, worked out
+         * once per friend rather than once per stanza
+         */
+        private static final class FriendAddress {
+
+            private final String accountId;
+            private final BareJid bareJid;
+
+            private FriendAddress(final String accountId, final BareJid bareJid) {
+                this.accountId = accountId;
+                this.bareJid = bareJid;
+            }
         }
     }
 }
@@ -0,0 +1,55 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.FriendsListChange;
+
+import java.util.Objects;
+import java.util.Set;
+
+final class DefaultFriendsListChange implements FriendsListChange {
+
+    private final Set<String> addedAccountIds;
+    private final Set<String> removedAccountIds;
+
+    private DefaultFriendsListChange(final Set<String> addedAccountIds, final Set<String> removedAccountIds) {
+        this.addedAccountIds = addedAccountIds;
+        this.removedAccountIds = removedAccountIds;
+    }
+
+    static DefaultFriendsListChange newInstance(final Set<String> addedAccountIds, final Set<String> removedAccountIds) {
+        return new DefaultFriendsListChange(addedAccountIds, removedAccountIds);
+    }
+
+    @Override
+    public Set<String> addedAccountIds() {
+        return addedAccountIds;
+    }
+
+    @Override
+    public Set<String> removedAccountIds() {
+        return removedAccountIds;
+    }
+
+    @Override
+    public String toString() {
+        return "DefaultFriendsListChange{" +
+            "addedAccountIds=" + addedAccountIds +
+            ", removedAccountIds=" + removedAccountIds +
+            '}';
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object)
+            return true;
+        if (!(object instanceof DefaultFriendsListChange))
+            return false;
+        final var defaultFriendsListChange = (DefaultFriendsListChange) object;
+        return addedAccountIds.equals(defaultFriendsListChange.addedAccountIds) &&
+            removedAccountIds.equals(defaultFriendsListChange.removedAccountIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(addedAccountIds, removedAccountIds);
+    }
+}
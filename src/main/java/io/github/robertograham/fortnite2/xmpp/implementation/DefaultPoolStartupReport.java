@@ -0,0 +1,72 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.PoolStartupReport;
+
+import java.time.Duration;
+import java.util.Map;
+
+final class DefaultPoolStartupReport implements PoolStartupReport {
+
+    private final Duration totalDuration;
+    private final Map<String, Duration> loginDurationsByAccountId;
+    private final Map<String, Exception> loginFailuresByAccountId;
+    private final long heapBytesUsedPerAccount;
+
+    private DefaultPoolStartupReport(final Duration totalDuration,
+                                     final Map<String, Duration> loginDurationsByAccountId,
+                                     final Map<String, Exception> loginFailuresByAccountId,
+                                     final long heapBytesUsedPerAccount) {
+        this.totalDuration = totalDuration;
+        this.loginDurationsByAccountId = loginDurationsByAccountId;
+        this.loginFailuresByAccountId = loginFailuresByAccountId;
+        this.heapBytesUsedPerAccount = heapBytesUsedPerAccount;
+    }
+
+    static DefaultPoolStartupReport newInstance(final Duration totalDuration,
+                                                final Map<String, Duration> loginDurationsByAccountId,
+                                                final Map<String, Exception> loginFailuresByAccountId,
+                                                final long heapBytesUsedPerAccount) {
+        return new DefaultPoolStartupReport(
+            totalDuration,
+            Map.copyOf(loginDurationsByAccountId),
+            Map.copyOf(loginFailuresByAccountId),
+            heapBytesUsedPerAccount
+        );
+    }
+
+    @Override
+    public Duration totalDuration() {
+        return totalDuration;
+    }
+
+    @Override
+    public Map<String, Duration> loginDurationsByAccountId() {
+        return loginDurationsByAccountId;
+    }
+
+    @Override
+    public Map<String, Exception> loginFailuresByAccountId() {
+        return loginFailuresByAccountId;
+    }
+
+    @Override
+    public long heapBytesUsedPerAccount() {
+        return heapBytesUsedPerAccount;
+    }
+
+    @Override
+    public String toString() {
+        final var loginDurationSummaryStatistics = loginDurationsByAccountId.values().stream()
+            .mapToLong(Duration::toMillis)
+            .summaryStatistics();
+        return "DefaultPoolStartupReport{" +
+            "totalDuration=" + totalDuration +
+            ", loggedInAccountCount=" + loginDurationsByAccountId.size() +
+            ", failedAccountCount=" + loginFailuresByAccountId.size() +
+            ", minLoginMillis=" + (loginDurationSummaryStatistics.getCount() == 0L ? 0L : loginDurationSummaryStatistics.getMin()) +
+            ", averageLoginMillis=" + loginDurationSummaryStatistics.getAverage() +
+            ", maxLoginMillis=" + (loginDurationSummaryStatistics.getCount() == 0L ? 0L : loginDurationSummaryStatistics.getMax()) +
+            ", heapBytesUsedPerAccount=" + heapBytesUsedPerAccount +
+            '}';
+    }
+}
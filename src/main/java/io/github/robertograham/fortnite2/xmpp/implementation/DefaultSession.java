@@ -4,51 +4,106 @@ import io.github.robertograham.fortnite2.xmpp.domain.Session;
 import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
 import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
 
+import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.bind.adapter.JsonbAdapter;
+import java.io.StringReader;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.BiFunction;
 
-final class DefaultSession implements Session {
+/**
+ * {@link Session} that stores its optional counts as primitive ints alongside a bit per count
+ * saying whether it's present, and its other optional values as nullable references, so that
+ * nothing is boxed or wrapped until an accessor is called. Use a {@link Builder} to create the
+ * session to publish with {@link io.github.robertograham.fortnite2.xmpp.resource.ChatResource#updateStatus(io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status, Session)}
+ *
+ * @since 2.1.0
+ */
+public final class DefaultSession implements Session {
 
+    static final int PARTY_MEMBER_COUNT_PRESENT = 1;
+    static final int MAX_PARTY_MEMBER_COUNT_PRESENT = 1 << 1;
+    static final int REMAINING_PLAYER_COUNT_PRESENT = 1 << 2;
     private final String id;
     private final String status;
     private final boolean playing;
     private final boolean joinable;
     private final boolean voiceSupport;
-    private final Optional<Integer> partyMemberCount;
-    private final Optional<Integer> maxPartyMemberCount;
-    private final Optional<String> partyId;
-    private final Optional<String> partyKey;
-    private final Optional<Platform> platform;
-    private final Optional<Application> application;
-    private final Optional<Integer> remainingPlayerCount;
+    private final int presentCounts;
+    private final int partyMemberCount;
+    private final int maxPartyMemberCount;
+    private final int remainingPlayerCount;
+    private final String partyId;
+    private final String partyKey;
+    private final Platform platform;
+    private final Application application;
 
     private DefaultSession(final String id,
                            final String status,
                            final boolean playing,
                            final boolean joinable,
                            final boolean voiceSupport,
-                           final Optional<Integer> partyMemberCount,
-                           final Optional<Integer> maxPartyMemberCount,
-                           final Optional<String> partyId,
-                           final Optional<String> partyKey,
-                           final Optional<Platform> platform,
-                           final Optional<Application> application,
-                           final Optional<Integer> remainingPlayerCount) {
+                           final int presentCounts,
+                           final int partyMemberCount,
+                           final int maxPartyMemberCount,
+                           final int remainingPlayerCount,
+                           final String partyId,
+                           final String partyKey,
+                           final Platform platform,
+                           final Application application) {
         this.id = id;
         this.status = status;
         this.playing = playing;
         this.joinable = joinable;
         this.voiceSupport = voiceSupport;
+        this.presentCounts = presentCounts;
         this.partyMemberCount = partyMemberCount;
         this.maxPartyMemberCount = maxPartyMemberCount;
+        this.remainingPlayerCount = remainingPlayerCount;
         this.partyId = partyId;
         this.partyKey = partyKey;
         this.platform = platform;
         this.application = application;
-        this.remainingPlayerCount = remainingPlayerCount;
+    }
+
+    /**
+     * @param presentCounts bitwise or of {@link #PARTY_MEMBER_COUNT_PRESENT},
+     *                      {@link #MAX_PARTY_MEMBER_COUNT_PRESENT} and {@link #REMAINING_PLAYER_COUNT_PRESENT}
+     *                      for each count that's present. Counts that aren't present are ignored
+     * @param partyId       {@code null} if not present
+     * @param partyKey      {@code null} if not present
+     * @param platform      {@code null} if not present
+     * @param application   {@code null} if not present
+     */
+    static DefaultSession newInstance(final String id,
+                                      final String status,
+                                      final boolean playing,
+                                      final boolean joinable,
+                                      final boolean voiceSupport,
+                                      final int presentCounts,
+                                      final int partyMemberCount,
+                                      final int maxPartyMemberCount,
+                                      final int remainingPlayerCount,
+                                      final String partyId,
+                                      final String partyKey,
+                                      final Platform platform,
+                                      final Application application) {
+        return new DefaultSession(
+            id,
+            status,
+            playing,
+            joinable,
+            voiceSupport,
+            presentCounts,
+            (presentCounts & PARTY_MEMBER_COUNT_PRESENT) == 0 ? 0 : partyMemberCount,
+            (presentCounts & MAX_PARTY_MEMBER_COUNT_PRESENT) == 0 ? 0 : maxPartyMemberCount,
+            (presentCounts & REMAINING_PLAYER_COUNT_PRESENT) == 0 ? 0 : remainingPlayerCount,
+            partyId,
+            partyKey,
+            platform,
+            application
+        );
     }
 
     @Override
@@ -78,37 +133,43 @@ final class DefaultSession implements Session {
 
     @Override
     public Optional<Integer> partyMemberCount() {
-        return partyMemberCount;
+        return optionalCount(PARTY_MEMBER_COUNT_PRESENT, partyMemberCount);
     }
 
     @Override
     public Optional<Integer> maxPartyMemberCount() {
-        return maxPartyMemberCount;
+        return optionalCount(MAX_PARTY_MEMBER_COUNT_PRESENT, maxPartyMemberCount);
     }
 
     @Override
     public Optional<String> partyId() {
-        return partyId;
+        return Optional.ofNullable(partyId);
     }
 
     @Override
     public Optional<String> partyKey() {
-        return partyKey;
+        return Optional.ofNullable(partyKey);
     }
 
     @Override
     public Optional<Platform> platform() {
-        return platform;
+        return Optional.ofNullable(platform);
     }
 
     @Override
     public Optional<Application> application() {
-        return application;
+        return Optional.ofNullable(application);
     }
 
     @Override
     public Optional<Integer> remainingPlayerCount() {
-        return remainingPlayerCount;
+        return optionalCount(REMAINING_PLAYER_COUNT_PRESENT, remainingPlayerCount);
+    }
+
+    private Optional<Integer> optionalCount(final int presentCount, final int count) {
+        return (presentCounts & presentCount) == 0 ?
+            Optional.empty()
+            : Optional.of(count);
     }
 
     @Override
@@ -119,13 +180,13 @@ final class DefaultSession implements Session {
             ", playing=" + playing +
             ", joinable=" + joinable +
             ", voiceSupport=" + voiceSupport +
-            ", partyMemberCount=" + partyMemberCount +
-            ", maxPartyMemberCount=" + maxPartyMemberCount +
-            ", partyId=" + partyId +
-            ", partyKey=" + partyKey +
-            ", platform=" + platform +
-            ", application=" + application +
-            ", remainingPlayerCount=" + remainingPlayerCount +
+            ", partyMemberCount=" + partyMemberCount() +
+            ", maxPartyMemberCount=" + maxPartyMemberCount() +
+            ", partyId=" + partyId() +
+            ", partyKey=" + partyKey() +
+            ", platform=" + platform() +
+            ", application=" + application() +
+            ", remainingPlayerCount=" + remainingPlayerCount() +
             '}';
     }
 
@@ -139,20 +200,21 @@ final class DefaultSession implements Session {
         return playing == defaultSession.playing &&
             joinable == defaultSession.joinable &&
             voiceSupport == defaultSession.voiceSupport &&
+            presentCounts == defaultSession.presentCounts &&
+            partyMemberCount == defaultSession.partyMemberCount &&
+            maxPartyMemberCount == defaultSession.maxPartyMemberCount &&
+            remainingPlayerCount == defaultSession.remainingPlayerCount &&
             id.equals(defaultSession.id) &&
             status.equals(defaultSession.status) &&
-            partyMemberCount.equals(defaultSession.partyMemberCount) &&
-            maxPartyMemberCount.equals(defaultSession.maxPartyMemberCount) &&
-            partyId.equals(defaultSession.partyId) &&
-            partyKey.equals(defaultSession.partyKey) &&
-            platform.equals(defaultSession.platform) &&
-            application.equals(defaultSession.application) &&
-            remainingPlayerCount.equals(defaultSession.remainingPlayerCount);
+            Objects.equals(partyId, defaultSession.partyId) &&
+            Objects.equals(partyKey, defaultSession.partyKey) &&
+            platform == defaultSession.platform &&
+            application == defaultSession.application;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, status, playing, joinable, voiceSupport, partyMemberCount, maxPartyMemberCount, partyId, partyKey, platform, application, remainingPlayerCount);
+        return Objects.hash(id, status, playing, joinable, voiceSupport, partyMemberCount(), maxPartyMemberCount(), partyId, partyKey, platform, application, remainingPlayerCount());
     }
 
     enum Adapter implements JsonbAdapter<DefaultSession, JsonObject> {
@@ -161,31 +223,44 @@ final class DefaultSession implements Session {
 
         @Override
         public JsonObject adaptToJson(final DefaultSession defaultSession) {
-            throw new UnsupportedOperationException();
+            try (final var jsonReader = Json.createReader(new StringReader(SessionJsonRenderer.newInstance(null)
+                .render(defaultSession)))) {
+                return jsonReader.readObject();
+            }
         }
 
         @Override
         public DefaultSession adaptFromJson(final JsonObject jsonObject) {
             final var propertiesJsonObjectOptional = Optional.ofNullable(jsonObject.getJsonObject("Properties"));
             final var partyInfoJsonObjectOptional = propertiesJsonObjectOptional.map((final var propertiesJsonObject) -> propertiesJsonObject.getJsonObject("party.joininfodata.286331153_j"));
-            return new DefaultSession(
+            final var partyMemberCountOptional = getOptionalValueFromJsonObject(propertiesJsonObjectOptional, "Event_PartySize_s", JsonObject::getString)
+                .map(Integer::parseInt);
+            final var maxPartyMemberCountOptional = getOptionalValueFromJsonObject(propertiesJsonObjectOptional, "Event_PartyMaxSize_s", JsonObject::getString)
+                .map(Integer::parseInt);
+            final var remainingPlayerCountOptional = getOptionalValueFromJsonObject(propertiesJsonObjectOptional, "Event_PlayersAlive_s", JsonObject::getString)
+                .map(Integer::parseInt);
+            return newInstance(
                 jsonObject.getString("SessionId"),
                 jsonObject.getString("Status"),
                 jsonObject.getBoolean("bIsPlaying"),
                 jsonObject.getBoolean("bIsJoinable"),
                 jsonObject.getBoolean("bHasVoiceSupport"),
-                getOptionalValueFromJsonObject(propertiesJsonObjectOptional, "Event_PartySize_s", JsonObject::getString)
-                    .map(Integer::parseInt),
-                getOptionalValueFromJsonObject(propertiesJsonObjectOptional, "Event_PartyMaxSize_s", JsonObject::getString)
-                    .map(Integer::parseInt),
-                getOptionalValueFromJsonObject(partyInfoJsonObjectOptional, "partyId", JsonObject::getString),
-                getOptionalValueFromJsonObject(partyInfoJsonObjectOptional, "key", JsonObject::getString),
+                (partyMemberCountOptional.isPresent() ? PARTY_MEMBER_COUNT_PRESENT : 0)
+                    | (maxPartyMemberCountOptional.isPresent() ? MAX_PARTY_MEMBER_COUNT_PRESENT : 0)
+                    | (remainingPlayerCountOptional.isPresent() ? REMAINING_PLAYER_COUNT_PRESENT : 0),
+                partyMemberCountOptional.orElse(0),
+                maxPartyMemberCountOptional.orElse(0),
+                remainingPlayerCountOptional.orElse(0),
+                getOptionalValueFromJsonObject(partyInfoJsonObjectOptional, "partyId", JsonObject::getString)
+                    .orElse(null),
+                getOptionalValueFromJsonObject(partyInfoJsonObjectOptional, "key", JsonObject::getString)
+                    .orElse(null),
                 getOptionalValueFromJsonObject(partyInfoJsonObjectOptional, "sourcePlatform", JsonObject::getString)
-                    .flatMap(Platform::fromCode),
+                    .flatMap(Platform::fromCode)
+                    .orElse(null),
                 getOptionalValueFromJsonObject(partyInfoJsonObjectOptional, "appId", JsonObject::getString)
-                    .flatMap(Application::fromCode),
-                getOptionalValueFromJsonObject(propertiesJsonObjectOptional, "Event_PlayersAlive_s", JsonObject::getString)
-                    .map(Integer::parseInt)
+                    .flatMap(Application::fromCode)
+                    .orElse(null)
             );
         }
 
@@ -196,4 +271,211 @@ final class DefaultSession implements Session {
                 .map((final var propertiesJsonObject) -> jsonObjectValueAccessor.apply(propertiesJsonObject, valueKey));
         }
     }
+
+    /**
+     * Builds {@link Session} instances for publishing the user's own presence
+     *
+     * @since 2.1.0
+     */
+    public static final class Builder {
+
+        private final String status;
+        private String id = "";
+        private boolean playing;
+        private boolean joinable;
+        private boolean voiceSupport;
+        private int presentCounts;
+        private int partyMemberCount;
+        private int maxPartyMemberCount;
+        private int remainingPlayerCount;
+        private String partyId;
+        private String partyKey;
+        private Platform platform;
+        private Application application;
+
+        private Builder(final String status) {
+            this.status = status;
+        }
+
+        /**
+         * @param status text friends see describing the user's party or match, e.g. {@code "Battle Royale Lobby - 1 / 4"}
+         * @return a new {@link Builder} instance for a session that isn't in a match, joinable, or in a party
+         * @throws NullPointerException if {@code status} is {@code null}
+         * @since 2.1.0
+         */
+        public static Builder newInstance(final String status) {
+            Objects.requireNonNull(status, "status cannot be null");
+            return new Builder(status);
+        }
+
+        /**
+         * @param session the session to start from
+         * @return a new {@link Builder} instance with every value taken from {@code session}
+         * @throws NullPointerException if {@code session} is {@code null}
+         * @since 2.1.0
+         */
+        public static Builder newInstance(final Session session) {
+            Objects.requireNonNull(session, "session cannot be null");
+            final var builder = newInstance(session.status())
+                .setId(session.id())
+                .setPlaying(session.isPlaying())
+                .setJoinable(session.isJoinable())
+                .setVoiceSupport(session.hasVoiceSupport());
+            session.partyMemberCount()
+                .ifPresent(builder::setPartyMemberCount);
+            session.maxPartyMemberCount()
+                .ifPresent(builder::setMaxPartyMemberCount);
+            session.remainingPlayerCount()
+                .ifPresent(builder::setRemainingPlayerCount);
+            builder.partyId = session.partyId()
+                .orElse(null);
+            builder.partyKey = session.partyKey()
+                .orElse(null);
+            builder.platform = session.platform()
+                .orElse(null);
+            builder.application = session.application()
+                .orElse(null);
+            return builder;
+        }
+
+        /**
+         * @param id the session ID of the match the user is in. Defaults to {@code ""}, not in a match
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code id} is {@code null}
+         * @since 2.1.0
+         */
+        public Builder setId(final String id) {
+            this.id = Objects.requireNonNull(id, "id cannot be null");
+            return this;
+        }
+
+        /**
+         * @param playing whether the user is in a match. Defaults to {@code false}
+         * @return the {@link Builder} instance this was called on
+         * @since 2.1.0
+         */
+        public Builder setPlaying(final boolean playing) {
+            this.playing = playing;
+            return this;
+        }
+
+        /**
+         * @param joinable whether the user's party or match can be joined. Defaults to {@code false}
+         * @return the {@link Builder} instance this was called on
+         * @since 2.1.0
+         */
+        public Builder setJoinable(final boolean joinable) {
+            this.joinable = joinable;
+            return this;
+        }
+
+        /**
+         * @param voiceSupport whether the user's party or match has voice support. Defaults to {@code false}
+         * @return the {@link Builder} instance this was called on
+         * @since 2.1.0
+         */
+        public Builder setVoiceSupport(final boolean voiceSupport) {
+            this.voiceSupport = voiceSupport;
+            return this;
+        }
+
+        /**
+         * @param partyMemberCount number of members in the user's party. Not sent unless set
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code partyMemberCount} is less than 0
+         * @since 2.1.0
+         */
+        public Builder setPartyMemberCount(final int partyMemberCount) {
+            if (partyMemberCount < 0)
+                throw new IllegalArgumentException("partyMemberCount cannot be less than 0");
+            this.partyMemberCount = partyMemberCount;
+            presentCounts |= PARTY_MEMBER_COUNT_PRESENT;
+            return this;
+        }
+
+        /**
+         * @param maxPartyMemberCount most members the user's party can have. Not sent unless set
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code maxPartyMemberCount} is less than 0
+         * @since 2.1.0
+         */
+        public Builder setMaxPartyMemberCount(final int maxPartyMemberCount) {
+            if (maxPartyMemberCount < 0)
+                throw new IllegalArgumentException("maxPartyMemberCount cannot be less than 0");
+            this.maxPartyMemberCount = maxPartyMemberCount;
+            presentCounts |= MAX_PARTY_MEMBER_COUNT_PRESENT;
+            return this;
+        }
+
+        /**
+         * @param remainingPlayerCount players left in the user's match. Not sent unless set
+         * @return the {@link Builder} instance this was called on
+         * @throws IllegalArgumentException if {@code remainingPlayerCount} is less than 0
+         * @since 2.1.0
+         */
+        public Builder setRemainingPlayerCount(final int remainingPlayerCount) {
+            if (remainingPlayerCount < 0)
+                throw new IllegalArgumentException("remainingPlayerCount cannot be less than 0");
+            this.remainingPlayerCount = remainingPlayerCount;
+            presentCounts |= REMAINING_PLAYER_COUNT_PRESENT;
+            return this;
+        }
+
+        /**
+         * @param partyId  ID of the user's party
+         * @param partyKey key friends need to join the user's party
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code partyId} or {@code partyKey} is {@code null}
+         * @since 2.1.0
+         */
+        public Builder setParty(final String partyId, final String partyKey) {
+            this.partyId = Objects.requireNonNull(partyId, "partyId cannot be null");
+            this.partyKey = Objects.requireNonNull(partyKey, "partyKey cannot be null");
+            return this;
+        }
+
+        /**
+         * @param platform the platform the user is playing on. Not sent unless set
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code platform} is {@code null}
+         * @since 2.1.0
+         */
+        public Builder setPlatform(final Platform platform) {
+            this.platform = Objects.requireNonNull(platform, "platform cannot be null");
+            return this;
+        }
+
+        /**
+         * @param application the application the user is playing in. Not sent unless set
+         * @return the {@link Builder} instance this was called on
+         * @throws NullPointerException if {@code application} is {@code null}
+         * @since 2.1.0
+         */
+        public Builder setApplication(final Application application) {
+            this.application = Objects.requireNonNull(application, "application cannot be null");
+            return this;
+        }
+
+        /**
+         * @return a new {@link Session} instance with the values set on this {@link Builder}
+         * @since 2.1.0
+         */
+        public Session build() {
+            return DefaultSession.newInstance(
+                id,
+                status,
+                playing,
+                joinable,
+                voiceSupport,
+                presentCounts,
+                partyMemberCount,
+                maxPartyMemberCount,
+                remainingPlayerCount,
+                partyId,
+                partyKey,
+                platform,
+                application
+            );
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.StartupReport;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * {@link StartupReport} filled in as startup goes on. Each phase is marked with {@link System#nanoTime()} the first
+ * time it ends, so reconnections don't overwrite it
+ */
+final class DefaultStartupReport implements StartupReport {
+
+    private long connectStartNanos;
+    private long socketConnectedNanos;
+    private long connectedNanos;
+    private long loginStartNanos;
+    private long authenticatedNanos;
+    private long rosterLoadedNanos;
+    private long firstPresenceNanos;
+    private long warmUpStartNanos;
+    private long warmUpEndNanos;
+
+    private DefaultStartupReport() {
+    }
+
+    static DefaultStartupReport newInstance() {
+        return new DefaultStartupReport();
+    }
+
+    synchronized void markConnectStart() {
+        if (connectStartNanos == 0L)
+            connectStartNanos = System.nanoTime();
+    }
+
+    synchronized void markSocketConnected() {
+        if (socketConnectedNanos == 0L)
+            socketConnectedNanos = System.nanoTime();
+    }
+
+    synchronized void markConnected() {
+        if (connectedNanos == 0L)
+            connectedNanos = System.nanoTime();
+    }
+
+    synchronized void markLoginStart() {
+        if (loginStartNanos == 0L)
+            loginStartNanos = System.nanoTime();
+    }
+
+    synchronized void markAuthenticated() {
+        if (authenticatedNanos == 0L)
+            authenticatedNanos = System.nanoTime();
+    }
+
+    synchronized void markRosterLoaded() {
+        if (rosterLoadedNanos == 0L)
+            rosterLoadedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return whether this was the first presence
+     */
+    synchronized boolean markFirstPresence() {
+        if (firstPresenceNanos != 0L)
+            return false;
+        firstPresenceNanos = System.nanoTime();
+        return true;
+    }
+
+    synchronized void markWarmUpStart() {
+        warmUpStartNanos = System.nanoTime();
+    }
+
+    synchronized void markWarmUpEnd() {
+        warmUpEndNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized Duration connectDuration() {
+        return between(connectStartNanos, socketConnectedNanos)
+            .orElse(Duration.ZERO);
+    }
+
+    @Override
+    public synchronized Duration tlsDuration() {
+        return between(socketConnectedNanos, connectedNanos)
+            .orElse(Duration.ZERO);
+    }
+
+    @Override
+    public synchronized Duration authenticationDuration() {
+        return between(loginStartNanos, authenticatedNanos)
+            .orElse(Duration.ZERO);
+    }
+
+    @Override
+    public synchronized Optional<Duration> rosterDuration() {
+        return between(authenticatedNanos, rosterLoadedNanos);
+    }
+
+    @Override
+    public synchronized Optional<Duration> firstPresenceDuration() {
+        return between(
+            rosterLoadedNanos == 0L || rosterLoadedNanos > firstPresenceNanos ?
+                authenticatedNanos
+                : rosterLoadedNanos,
+            firstPresenceNanos
+        );
+    }
+
+    @Override
+    public synchronized Optional<Duration> warmUpDuration() {
+        return between(warmUpStartNanos, warmUpEndNanos);
+    }
+
+    private static Optional<Duration> between(final long startNanos, final long endNanos) {
+        return startNanos == 0L || endNanos == 0L ?
+            Optional.empty()
+            : Optional.of(Duration.ofNanos(Math.max(0L, endNanos - startNanos)));
+    }
+
+    @Override
+    public String toString() {
+        return "DefaultStartupReport{" +
+            "connectDuration=" + connectDuration() +
+            ", tlsDuration=" + tlsDuration() +
+            ", authenticationDuration=" + authenticationDuration() +
+            ", rosterDuration=" + rosterDuration() +
+            ", firstPresenceDuration=" + firstPresenceDuration() +
+            ", warmUpDuration=" + warmUpDuration() +
+            '}';
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.TimerSnapshot;
+
+import java.time.Duration;
+
+final class DefaultTimerSnapshot implements TimerSnapshot {
+
+    private final long[] bucketCounts;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    private DefaultTimerSnapshot(final long[] bucketCounts,
+                                 final long count,
+                                 final long totalNanos,
+                                 final long maxNanos) {
+        this.bucketCounts = bucketCounts;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    static DefaultTimerSnapshot newInstance(final long[] bucketCounts,
+                                            final long totalNanos,
+                                            final long maxNanos) {
+        var count = 0L;
+        for (final var bucketCount : bucketCounts)
+            count += bucketCount;
+        return new DefaultTimerSnapshot(bucketCounts, count, totalNanos, maxNanos);
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public Duration total() {
+        return Duration.ofNanos(totalNanos);
+    }
+
+    @Override
+    public Duration max() {
+        return Duration.ofNanos(maxNanos);
+    }
+
+    @Override
+    public Duration percentile(final double quantile) {
+        if (!(quantile >= 0D && quantile <= 1D))
+            throw new IllegalArgumentException("quantile must be between 0.0 and 1.0");
+        if (count == 0L)
+            return Duration.ZERO;
+        final var rank = Math.max(1L, (long) Math.ceil(quantile * count));
+        var cumulativeCount = 0L;
+        for (var bucketIndex = 0; bucketIndex < bucketCounts.length; bucketIndex++) {
+            cumulativeCount += bucketCounts[bucketIndex];
+            if (cumulativeCount >= rank)
+                return Duration.ofNanos(Math.min(maxNanos, LogLinearHistogram.bucketUpperBound(bucketIndex)));
+        }
+        return Duration.ofNanos(maxNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "DefaultTimerSnapshot{" +
+            "count=" + count +
+            ", totalNanos=" + totalNanos +
+            ", maxNanos=" + maxNanos +
+            '}';
+    }
+}
@@ -0,0 +1,273 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.SubscriberOverflowPolicy;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes events to any number of {@link Flow.Subscriber}s. Each subscriber has its own buffer of events it hasn't
+ * requested yet, and what happens when it's full is decided per subscriber by a {@link SubscriberOverflowPolicy}, so
+ * a slow subscriber never holds up the thread events are submitted on or the other subscribers. Subscribers are
+ * signalled on the {@link Executor}, one thread at a time each, in the order events were submitted
+ *
+ * @param <T> the type of event published
+ */
+final class EventPublisher<T> implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(EventPublisher.class.getName());
+    private final Executor executor;
+    private final MetricsSink metricsSink;
+    private final List<EventSubscription> eventSubscriptions;
+    private volatile boolean closed;
+
+    private EventPublisher(final Executor executor, final MetricsSink metricsSink) {
+        this.executor = executor;
+        this.metricsSink = metricsSink;
+        eventSubscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * @param executor    signals subscribers
+     * @param metricsSink counts events that didn't fit in a subscriber's buffer as
+     *                    {@link MetricsCounter#SUBSCRIBER_EVENTS_DROPPED}
+     * @return a new {@link EventPublisher} instance with no subscribers
+     */
+    static <T> EventPublisher<T> newInstance(final Executor executor, final MetricsSink metricsSink) {
+        return new EventPublisher<>(executor, metricsSink);
+    }
+
+    /**
+     * @param subscriberOverflowPolicy what happens to events when a subscriber's buffer is full
+     * @param bufferCapacity           the most events held for each subscriber that it hasn't requested yet
+     * @return a {@link Flow.Publisher} that subscribes each subscriber to this with its own buffer
+     * @throws NullPointerException     if {@code subscriberOverflowPolicy} is {@code null}
+     * @throws IllegalArgumentException if {@code bufferCapacity} is less than 1
+     */
+    Flow.Publisher<T> publisher(final SubscriberOverflowPolicy subscriberOverflowPolicy, final int bufferCapacity) {
+        Objects.requireNonNull(subscriberOverflowPolicy, "subscriberOverflowPolicy cannot be null");
+        if (bufferCapacity < 1)
+            throw new IllegalArgumentException("bufferCapacity must be greater than 0");
+        return (final var subscriber) -> subscribe(subscriber, subscriberOverflowPolicy, bufferCapacity);
+    }
+
+    /**
+     * @return {@code true} if anything is subscribed, so an event is only created if it will be published
+     */
+    boolean hasSubscribers() {
+        return !eventSubscriptions.isEmpty();
+    }
+
+    /**
+     * Never waits
+     *
+     * @param event added to the buffer of every subscriber
+     */
+    void submit(final T event) {
+        for (final var eventSubscription : eventSubscriptions)
+            eventSubscription.offer(event);
+    }
+
+    private void subscribe(final Flow.Subscriber<? super T> subscriber,
+                           final SubscriberOverflowPolicy subscriberOverflowPolicy,
+                           final int bufferCapacity) {
+        Objects.requireNonNull(subscriber, "subscriber cannot be null");
+        final var eventSubscription = new EventSubscription(subscriber, subscriberOverflowPolicy, bufferCapacity);
+        eventSubscriptions.add(eventSubscription);
+        // checked after adding, so the subscriber is completed whether or not close saw it
+        if (closed)
+            eventSubscription.complete();
+        eventSubscription.drainLater();
+    }
+
+    /**
+     * Completes every subscriber once it has been sent the events already in its buffer. Subscribers that subscribe
+     * afterwards are completed straight away
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (final var eventSubscription : eventSubscriptions)
+            eventSubscription.complete();
+    }
+
+    /**
+     * State guarded by the subscription's monitor, except for what only the draining thread touches. Draining is
+     * requested by incrementing {@link #drainRequestCount}, and whoever increments it from zero drains until it's
+     * back to zero, so signals to the subscriber never overlap and a request made from inside
+     * {@link Flow.Subscriber#onNext(Object)} doesn't recurse
+     */
+    private final class EventSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super T> subscriber;
+        private final SubscriberOverflowPolicy subscriberOverflowPolicy;
+        private final int bufferCapacity;
+        private final ArrayDeque<T> events;
+        private final AtomicInteger drainRequestCount;
+        private long demand;
+        private boolean completed;
+        private Throwable error;
+        private boolean cancelled;
+        private boolean subscribed;
+        private boolean terminated;
+
+        private EventSubscription(final Flow.Subscriber<? super T> subscriber,
+                                  final SubscriberOverflowPolicy subscriberOverflowPolicy,
+                                  final int bufferCapacity) {
+            this.subscriber = subscriber;
+            this.subscriberOverflowPolicy = subscriberOverflowPolicy;
+            this.bufferCapacity = bufferCapacity;
+            events = new ArrayDeque<>(Math.min(bufferCapacity, 16));
+            drainRequestCount = new AtomicInteger();
+        }
+
+        private void offer(final T event) {
+            final boolean drain;
+            synchronized (this) {
+                if (cancelled || completed || error != null)
+                    return;
+                if (events.size() == bufferCapacity)
+                    switch (subscriberOverflowPolicy) {
+                        case BUFFER:
+                            metricsSink.incrementCounter(MetricsCounter.SUBSCRIBER_EVENTS_DROPPED, events.size() + 1L);
+                            events.clear();
+                            error = new IllegalStateException(String.format("Subscriber fell more than %d events behind", bufferCapacity));
+                            break;
+                        case LATEST:
+                            metricsSink.incrementCounter(MetricsCounter.SUBSCRIBER_EVENTS_DROPPED);
+                            events.poll();
+                            events.add(event);
+                            break;
+                        default:
+                            metricsSink.incrementCounter(MetricsCounter.SUBSCRIBER_EVENTS_DROPPED);
+                            return;
+                    }
+                else
+                    events.add(event);
+                drain = demand > 0L || error != null;
+            }
+            if (drain)
+                drainLater();
+        }
+
+        private void complete() {
+            synchronized (this) {
+                completed = true;
+            }
+            drainLater();
+        }
+
+        @Override
+        public void request(final long n) {
+            synchronized (this) {
+                if (cancelled)
+                    return;
+                if (n < 1L) {
+                    events.clear();
+                    if (error == null)
+                        error = new IllegalArgumentException("n must be greater than 0");
+                } else
+                    demand = Long.MAX_VALUE - demand < n ?
+                        Long.MAX_VALUE
+                        : demand + n;
+            }
+            drainLater();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                events.clear();
+            }
+            eventSubscriptions.remove(this);
+        }
+
+        /**
+         * Drains on the caller's thread if the executor has been shut down, so a subscriber still gets what it
+         * requests after the client is closed
+         */
+        private void drainLater() {
+            if (drainRequestCount.getAndIncrement() == 0)
+                try {
+                    executor.execute(this);
+                } catch (final RejectedExecutionException exception) {
+                    run();
+                }
+        }
+
+        @Override
+        public void run() {
+            var drainRequests = drainRequestCount.get();
+            do {
+                drain();
+                drainRequests = drainRequestCount.addAndGet(-drainRequests);
+            } while (drainRequests != 0);
+        }
+
+        private void drain() {
+            if (terminated)
+                return;
+            if (!subscribed) {
+                subscribed = true;
+                if (!signal(() -> subscriber.onSubscribe(this)))
+                    return;
+            }
+            while (true) {
+                T event = null;
+                final Throwable terminalError;
+                synchronized (this) {
+                    if (cancelled) {
+                        terminated = true;
+                        return;
+                    }
+                    terminalError = error;
+                    if (terminalError == null) {
+                        if (demand > 0L && !events.isEmpty()) {
+                            event = events.poll();
+                            if (demand != Long.MAX_VALUE)
+                                demand--;
+                        } else if (!completed || !events.isEmpty())
+                            return;
+                    }
+                }
+                if (event == null) {
+                    cancel();
+                    terminated = true;
+                    signal(terminalError == null ?
+                        subscriber::onComplete
+                        : () -> subscriber.onError(terminalError));
+                    return;
+                }
+                final var nextEvent = event;
+                if (!signal(() -> subscriber.onNext(nextEvent)))
+                    return;
+            }
+        }
+
+        /**
+         * @return {@code false} if the subscriber threw, in which case it's cancelled
+         */
+        private boolean signal(final Runnable signal) {
+            try {
+                signal.run();
+                return true;
+            } catch (final RuntimeException exception) {
+                LOGGER.log(Level.WARNING, "Subscriber threw an exception", exception);
+                cancel();
+                terminated = true;
+                return false;
+            }
+        }
+    }
+}
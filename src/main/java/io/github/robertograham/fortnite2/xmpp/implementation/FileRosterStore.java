@@ -0,0 +1,334 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import org.jivesoftware.smack.roster.packet.RosterPacket;
+import org.jivesoftware.smack.roster.rosterstore.RosterStore;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * {@link RosterStore} backed by an append-only file, which lets a login only fetch the roster
+ * changes made since the stored version when the server supports roster versioning. Each change
+ * is appended as a length-prefixed, checksummed record and forced to disk before the store reports
+ * success. The file is only read the first time the store is used. A record that was cut short or
+ * corrupted by a crash is cut off along with everything after it, leaving the roster as it was at
+ * the last good record. Once superseded records outnumber live ones, the file is compacted by
+ * writing a snapshot alongside it and moving it into place
+ */
+final class FileRosterStore implements RosterStore {
+
+    private static final Logger LOGGER = Logger.getLogger(FileRosterStore.class.getName());
+    private static final int MAGIC = 0x464E5253;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 2 * Integer.BYTES;
+    private static final int RECORD_HEADER_LENGTH = 2 * Integer.BYTES;
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 64;
+    private static final byte ADD_RECORD = 1;
+    private static final byte REMOVE_RECORD = 2;
+    private static final byte RESET_RECORD = 3;
+    private final Path path;
+    private Map<BareJid, RosterPacket.Item> bareJidToItemMap;
+    private String rosterVersion;
+    private int recordCount;
+
+    private FileRosterStore(final Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @param path the file to store the roster in. Created if it doesn't exist
+     * @return a new {@link FileRosterStore} instance that hasn't read {@code path} yet
+     */
+    static FileRosterStore newInstance(final Path path) {
+        return new FileRosterStore(path);
+    }
+
+    @Override
+    public synchronized List<RosterPacket.Item> getEntries() {
+        load();
+        return new ArrayList<>(bareJidToItemMap.values());
+    }
+
+    @Override
+    public synchronized RosterPacket.Item getEntry(final Jid jid) {
+        load();
+        return bareJidToItemMap.get(jid.asBareJid());
+    }
+
+    @Override
+    public synchronized String getRosterVersion() {
+        load();
+        return rosterVersion;
+    }
+
+    @Override
+    public synchronized boolean addEntry(final RosterPacket.Item item, final String version) {
+        load();
+        try {
+            append(encodeRecord(ADD_RECORD, version, List.of(item)));
+        } catch (final IOException exception) {
+            LOGGER.log(Level.WARNING, String.format("Couldn't store roster entry in %s", path), exception);
+            return false;
+        }
+        bareJidToItemMap.put(item.getJid(), item);
+        rosterVersion = version;
+        compactIfWasteful();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeEntry(final Jid jid, final String version) {
+        load();
+        final var bareJid = jid.asBareJid();
+        try {
+            append(encodeRecord(REMOVE_RECORD, version, List.of(new RosterPacket.Item(bareJid, null))));
+        } catch (final IOException exception) {
+            LOGGER.log(Level.WARNING, String.format("Couldn't remove roster entry from %s", path), exception);
+            return false;
+        }
+        bareJidToItemMap.remove(bareJid);
+        rosterVersion = version;
+        compactIfWasteful();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean resetEntries(final Collection<RosterPacket.Item> items, final String version) {
+        try {
+            writeSnapshot(items, version);
+        } catch (final IOException exception) {
+            LOGGER.log(Level.WARNING, String.format("Couldn't store roster in %s", path), exception);
+            return false;
+        }
+        bareJidToItemMap = new LinkedHashMap<>();
+        for (final var item : items)
+            bareJidToItemMap.put(item.getJid(), item);
+        rosterVersion = version;
+        recordCount = 1;
+        return true;
+    }
+
+    @Override
+    public synchronized void resetStore() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException exception) {
+            LOGGER.log(Level.WARNING, String.format("Couldn't delete %s", path), exception);
+        }
+        bareJidToItemMap = new LinkedHashMap<>();
+        rosterVersion = null;
+        recordCount = 0;
+    }
+
+    private void load() {
+        if (bareJidToItemMap != null)
+            return;
+        bareJidToItemMap = new LinkedHashMap<>();
+        rosterVersion = null;
+        recordCount = 0;
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (final NoSuchFileException exception) {
+            return;
+        } catch (final IOException exception) {
+            LOGGER.log(Level.WARNING, String.format("Couldn't read %s, the roster will be fetched in full", path), exception);
+            return;
+        }
+        final var byteBuffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_LENGTH || byteBuffer.getInt() != MAGIC || byteBuffer.getInt() != FORMAT_VERSION) {
+            LOGGER.warning(String.format("%s isn't a roster store, the roster will be fetched in full", path));
+            resetStore();
+            return;
+        }
+        var lastGoodOffset = byteBuffer.position();
+        while (byteBuffer.remaining() >= RECORD_HEADER_LENGTH) {
+            final var payloadLength = byteBuffer.getInt();
+            final var checksum = byteBuffer.getInt();
+            if (payloadLength < 0 || payloadLength > byteBuffer.remaining()
+                || checksum != checksum(bytes, byteBuffer.position(), payloadLength))
+                break;
+            try {
+                applyRecord(new DataInputStream(new ByteArrayInputStream(bytes, byteBuffer.position(), payloadLength)));
+            } catch (final IOException exception) {
+                break;
+            }
+            byteBuffer.position(byteBuffer.position() + payloadLength);
+            lastGoodOffset = byteBuffer.position();
+            recordCount++;
+        }
+        if (lastGoodOffset < bytes.length)
+            truncate(lastGoodOffset);
+    }
+
+    private void applyRecord(final DataInputStream dataInputStream) throws IOException {
+        final var recordType = dataInputStream.readByte();
+        final var version = readNullableString(dataInputStream);
+        final var itemCount = dataInputStream.readInt();
+        final var items = new ArrayList<RosterPacket.Item>(itemCount);
+        for (var itemIndex = 0; itemIndex < itemCount; itemIndex++)
+            items.add(readItem(dataInputStream));
+        if (RESET_RECORD == recordType)
+            bareJidToItemMap.clear();
+        for (final var item : items)
+            if (REMOVE_RECORD == recordType)
+                bareJidToItemMap.remove(item.getJid());
+            else
+                bareJidToItemMap.put(item.getJid(), item);
+        rosterVersion = version;
+    }
+
+    private void truncate(final long length) {
+        LOGGER.warning(String.format("Discarding %s past byte %d, it was left incomplete or corrupted", path, length));
+        try (final var fileChannel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            fileChannel.truncate(length);
+            fileChannel.force(true);
+        } catch (final IOException exception) {
+            LOGGER.log(Level.WARNING, String.format("Couldn't truncate %s", path), exception);
+        }
+    }
+
+    private void append(final byte[] record) throws IOException {
+        final var exists = Files.exists(path);
+        if (!exists)
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        try (final var fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (!exists || fileChannel.size() == 0L)
+                writeFully(fileChannel, header());
+            writeFully(fileChannel, ByteBuffer.wrap(record));
+            fileChannel.force(false);
+        }
+        recordCount++;
+    }
+
+    private void compactIfWasteful() {
+        if (recordCount < MIN_RECORDS_BEFORE_COMPACTION || recordCount <= 2 * bareJidToItemMap.size())
+            return;
+        try {
+            writeSnapshot(bareJidToItemMap.values(), rosterVersion);
+            recordCount = 1;
+        } catch (final IOException exception) {
+            LOGGER.log(Level.WARNING, String.format("Couldn't compact %s", path), exception);
+        }
+    }
+
+    private void writeSnapshot(final Collection<RosterPacket.Item> items, final String version) throws IOException {
+        final var absolutePath = path.toAbsolutePath();
+        Files.createDirectories(absolutePath.getParent());
+        final var temporaryPath = absolutePath.resolveSibling(absolutePath.getFileName() + ".tmp");
+        try (final var fileChannel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(fileChannel, header());
+            writeFully(fileChannel, ByteBuffer.wrap(encodeRecord(RESET_RECORD, version, items)));
+            fileChannel.force(true);
+        }
+        Files.move(temporaryPath, absolutePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_LENGTH)
+            .putInt(MAGIC)
+            .putInt(FORMAT_VERSION)
+            .flip();
+    }
+
+    private static void writeFully(final FileChannel fileChannel, final ByteBuffer byteBuffer) throws IOException {
+        while (byteBuffer.hasRemaining())
+            fileChannel.write(byteBuffer);
+    }
+
+    private static byte[] encodeRecord(final byte recordType,
+                                       final String version,
+                                       final Collection<RosterPacket.Item> items) throws IOException {
+        final var byteArrayOutputStream = new ByteArrayOutputStream();
+        final var dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+        dataOutputStream.writeInt(0);
+        dataOutputStream.writeInt(0);
+        dataOutputStream.writeByte(recordType);
+        writeNullableString(dataOutputStream, version);
+        dataOutputStream.writeInt(items.size());
+        for (final var item : items)
+            writeItem(dataOutputStream, item);
+        dataOutputStream.flush();
+        final var record = byteArrayOutputStream.toByteArray();
+        final var payloadLength = record.length - RECORD_HEADER_LENGTH;
+        ByteBuffer.wrap(record)
+            .putInt(payloadLength)
+            .putInt(checksum(record, RECORD_HEADER_LENGTH, payloadLength));
+        return record;
+    }
+
+    private static int checksum(final byte[] bytes, final int offset, final int length) {
+        final var crc32 = new CRC32();
+        crc32.update(bytes, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    private static void writeItem(final DataOutputStream dataOutputStream, final RosterPacket.Item item) throws IOException {
+        dataOutputStream.writeUTF(item.getJid().toString());
+        writeNullableString(dataOutputStream, item.getName());
+        writeNullableString(dataOutputStream, item.getItemType() == null ? null : item.getItemType().name());
+        dataOutputStream.writeBoolean(item.isSubscriptionPending());
+        dataOutputStream.writeBoolean(item.isApproved());
+        final var groupNames = item.getGroupNames();
+        dataOutputStream.writeInt(groupNames.size());
+        for (final var groupName : groupNames)
+            dataOutputStream.writeUTF(groupName);
+    }
+
+    private static RosterPacket.Item readItem(final DataInputStream dataInputStream) throws IOException {
+        final BareJid bareJid;
+        try {
+            bareJid = JidCreate.bareFrom(dataInputStream.readUTF());
+        } catch (final XmppStringprepException exception) {
+            throw new IOException(exception);
+        }
+        final var item = new RosterPacket.Item(bareJid, readNullableString(dataInputStream));
+        final var itemTypeName = readNullableString(dataInputStream);
+        if (itemTypeName != null)
+            try {
+                item.setItemType(RosterPacket.ItemType.valueOf(itemTypeName));
+            } catch (final IllegalArgumentException exception) {
+                throw new IOException(exception);
+            }
+        item.setSubscriptionPending(dataInputStream.readBoolean());
+        item.setApproved(dataInputStream.readBoolean());
+        final var groupNameCount = dataInputStream.readInt();
+        for (var groupNameIndex = 0; groupNameIndex < groupNameCount; groupNameIndex++)
+            item.addGroupName(dataInputStream.readUTF());
+        return item;
+    }
+
+    private static void writeNullableString(final DataOutputStream dataOutputStream, final String string) throws IOException {
+        dataOutputStream.writeBoolean(string != null);
+        if (string != null)
+            dataOutputStream.writeUTF(string);
+    }
+
+    private static String readNullableString(final DataInputStream dataInputStream) throws IOException {
+        return dataInputStream.readBoolean() ?
+            dataInputStream.readUTF()
+            : null;
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Decides which friend presences reach the {@link io.github.robertograham.fortnite2.xmpp.listener.OnFriendPresenceReceivedListener},
+ * in stages that get more expensive: the account ID, then the status, then the session. A stage that
+ * isn't set lets everything through, and a later stage only runs if the earlier ones passed, so a
+ * presence rejected before the session stage never has its JSON decoded
+ */
+final class FriendPresenceFilter {
+
+    private static final FriendPresenceFilter ALLOW_ALL = new FriendPresenceFilter(null, null, null);
+    private final Predicate<String> accountIdFilter;
+    private final BiPredicate<Status, Status> statusFilter;
+    private final Predicate<Session> sessionFilter;
+
+    private FriendPresenceFilter(final Predicate<String> accountIdFilter,
+                                 final BiPredicate<Status, Status> statusFilter,
+                                 final Predicate<Session> sessionFilter) {
+        this.accountIdFilter = accountIdFilter;
+        this.statusFilter = statusFilter;
+        this.sessionFilter = sessionFilter;
+    }
+
+    /**
+     * @param accountIdFilter tested with the friend's account ID, {@code null} to skip the stage
+     * @param statusFilter    tested with the friend's previous and new status, {@code null} to skip the stage
+     * @param sessionFilter   tested with the friend's session if they have one, {@code null} to skip the stage
+     * @return a {@link FriendPresenceFilter} made of the given stages
+     */
+    static FriendPresenceFilter newInstance(final Predicate<String> accountIdFilter,
+                                            final BiPredicate<Status, Status> statusFilter,
+                                            final Predicate<Session> sessionFilter) {
+        return accountIdFilter == null && statusFilter == null && sessionFilter == null ?
+            ALLOW_ALL
+            : new FriendPresenceFilter(accountIdFilter, statusFilter, sessionFilter);
+    }
+
+    /**
+     * @return a {@link FriendPresenceFilter} that lets every presence through
+     */
+    static FriendPresenceFilter allowAll() {
+        return ALLOW_ALL;
+    }
+
+    boolean testAccountId(final String accountId) {
+        return accountIdFilter == null || accountIdFilter.test(accountId);
+    }
+
+    boolean testStatus(final Status previousStatus, final Status status) {
+        return statusFilter == null || statusFilter.test(previousStatus, status);
+    }
+
+    boolean hasSessionStage() {
+        return sessionFilter != null;
+    }
+
+    /**
+     * @param session {@code null} if the friend has no session, which always passes
+     */
+    boolean testSession(final Session session) {
+        return sessionFilter == null || session == null || sessionFilter.test(session);
+    }
+}
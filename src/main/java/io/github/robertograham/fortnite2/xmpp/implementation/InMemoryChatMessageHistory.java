@@ -0,0 +1,170 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.ChatMessage;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ChatMessageHistory} kept on the heap.
+ * Each account gets a fixed-size ring buffer that only retains message bodies,
+ * timestamps, directions and cursors. Cursors are handed out from one counter for
+ * every account, so a conversation that's evicted and started again doesn't reuse them. Once {@code maxAccountIds} conversations are held,
+ * the least recently used conversation is evicted to make room for a new one.
+ * Appends only lock the conversation they're made to; the account index lock is
+ * held just long enough to look the conversation up.
+ */
+final class InMemoryChatMessageHistory implements ChatMessageHistory {
+
+    private final int maxMessagesPerAccountId;
+    private final Map<String, Conversation> accountIdToConversationMap;
+    private final AtomicLong nextCursor;
+
+    private InMemoryChatMessageHistory(final int maxMessagesPerAccountId, final int maxAccountIds) {
+        this.maxMessagesPerAccountId = maxMessagesPerAccountId;
+        accountIdToConversationMap = new LinkedHashMap<>(16, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Conversation> eldestEntry) {
+                return size() > maxAccountIds;
+            }
+        };
+        nextCursor = new AtomicLong();
+    }
+
+    static InMemoryChatMessageHistory newInstance(final int maxMessagesPerAccountId, final int maxAccountIds) {
+        if (maxMessagesPerAccountId < 1)
+            throw new IllegalArgumentException("maxMessagesPerAccountId must be greater than 0");
+        if (maxAccountIds < 1)
+            throw new IllegalArgumentException("maxAccountIds must be greater than 0");
+        return new InMemoryChatMessageHistory(maxMessagesPerAccountId, maxAccountIds);
+    }
+
+    @Override
+    public long append(final String accountId, final Direction direction, final String body, final long epochMilli) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        Objects.requireNonNull(direction, "direction cannot be null");
+        Conversation conversation;
+        synchronized (accountIdToConversationMap) {
+            conversation = accountIdToConversationMap.get(accountId);
+            if (conversation == null) {
+                conversation = new Conversation(maxMessagesPerAccountId);
+                accountIdToConversationMap.put(accountId, conversation);
+            }
+        }
+        return conversation.append(direction, body, epochMilli, nextCursor);
+    }
+
+    @Override
+    public List<String> findAllBodies(final String accountId, final Direction direction) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        Objects.requireNonNull(direction, "direction cannot be null");
+        final Conversation conversation;
+        synchronized (accountIdToConversationMap) {
+            conversation = accountIdToConversationMap.get(accountId);
+        }
+        return conversation == null ?
+            Collections.emptyList()
+            : conversation.findAllBodies(direction);
+    }
+
+    @Override
+    public ChatMessage findNewestBefore(final String accountId, final Direction direction, final long beforeCursor) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        Objects.requireNonNull(direction, "direction cannot be null");
+        final Conversation conversation;
+        synchronized (accountIdToConversationMap) {
+            conversation = accountIdToConversationMap.get(accountId);
+        }
+        return conversation == null ?
+            null
+            : conversation.findNewestBefore(accountId, direction, beforeCursor);
+    }
+
+    @Override
+    public int accountIdCount() {
+        synchronized (accountIdToConversationMap) {
+            return accountIdToConversationMap.size();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static final class Conversation {
+
+        private final String[] bodies;
+        private final long[] epochMillis;
+        private final Direction[] directions;
+        private final long[] cursors;
+        private int head;
+        private int size;
+
+        private Conversation(final int capacity) {
+            bodies = new String[capacity];
+            epochMillis = new long[capacity];
+            directions = new Direction[capacity];
+            cursors = new long[capacity];
+        }
+
+        /**
+         * @param nextCursor taken from while the conversation is locked, so cursors grow from head to tail
+         */
+        private synchronized long append(final Direction direction,
+                                         final String body,
+                                         final long epochMilli,
+                                         final AtomicLong nextCursor) {
+            final var index = (head + size) % bodies.length;
+            bodies[index] = body;
+            epochMillis[index] = epochMilli;
+            directions[index] = direction;
+            final var cursor = nextCursor.getAndIncrement();
+            cursors[index] = cursor;
+            if (size == bodies.length)
+                head = (head + 1) % bodies.length;
+            else
+                size++;
+            return cursor;
+        }
+
+        private synchronized List<String> findAllBodies(final Direction direction) {
+            var matchCount = 0;
+            for (var offset = 0; offset < size; offset++)
+                if (directions[(head + offset) % bodies.length] == direction)
+                    matchCount++;
+            final var matchingBodies = new String[matchCount];
+            var matchIndex = 0;
+            for (var offset = 0; offset < size; offset++) {
+                final var index = (head + offset) % bodies.length;
+                if (directions[index] == direction)
+                    matchingBodies[matchIndex++] = bodies[index];
+            }
+            return List.of(matchingBodies);
+        }
+
+        private synchronized ChatMessage findNewestBefore(final String accountId,
+                                                          final Direction direction,
+                                                          final long beforeCursor) {
+            var lowOffset = 0;
+            var highOffset = size;
+            while (lowOffset < highOffset) {
+                final var middleOffset = (lowOffset + highOffset) >>> 1;
+                if (cursors[(head + middleOffset) % bodies.length] < beforeCursor)
+                    lowOffset = middleOffset + 1;
+                else
+                    highOffset = middleOffset;
+            }
+            for (var offset = lowOffset - 1; offset >= 0; offset--) {
+                final var index = (head + offset) % bodies.length;
+                if (directions[index] == direction)
+                    return DefaultChatMessage.newInstance(accountId, bodies[index], epochMillis[index], cursors[index]);
+            }
+            return null;
+        }
+    }
+}
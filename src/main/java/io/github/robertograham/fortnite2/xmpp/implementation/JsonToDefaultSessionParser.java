@@ -0,0 +1,223 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import java.io.StringReader;
+import java.util.Optional;
+
+/**
+ * Decodes presence status JSON into {@link DefaultSession} instances using the
+ * streaming {@link JsonParser} API. Only the keys {@link DefaultSession} is made
+ * from are read, every other value is skipped without being materialised.
+ * Produces the same {@link DefaultSession} values as {@link DefaultSession.Adapter}.
+ * Counts are parsed straight into primitive ints and the strings sessions share, such as
+ * their IDs, status texts and party details, are swapped for their {@link StringInternPool} instances
+ */
+enum JsonToDefaultSessionParser {
+
+    INSTANCE;
+
+    private static final String PROPERTIES_KEY = "Properties";
+    private static final String PARTY_JOIN_INFO_DATA_KEY = "party.joininfodata.286331153_j";
+    private static final int ID_PRESENT = 1;
+    private static final int STATUS_PRESENT = 1 << 1;
+    private static final int PLAYING_PRESENT = 1 << 2;
+    private static final int JOINABLE_PRESENT = 1 << 3;
+    private static final int VOICE_SUPPORT_PRESENT = 1 << 4;
+    private static final int REQUIRED_FIELDS = ID_PRESENT | STATUS_PRESENT | PLAYING_PRESENT | JOINABLE_PRESENT | VOICE_SUPPORT_PRESENT;
+    private final JsonParserFactory jsonParserFactory;
+
+    JsonToDefaultSessionParser() {
+        jsonParserFactory = Json.createParserFactory(null);
+    }
+
+    /**
+     * @param jsonString presence status JSON, may be {@code null}
+     * @return an {@link Optional} of {@link DefaultSession} that's empty if {@code jsonString} is
+     * {@code null} or blank
+     * @throws JsonException if {@code jsonString} isn't valid JSON or is missing required keys
+     */
+    Optional<DefaultSession> parseJsonToOptionalOfDefaultSession(final String jsonString) {
+        if (jsonString == null || jsonString.isBlank())
+            return Optional.empty();
+        try (final var jsonParser = jsonParserFactory.createParser(new StringReader(jsonString))) {
+            return Optional.of(parseDefaultSession(jsonParser));
+        }
+    }
+
+    private DefaultSession parseDefaultSession(final JsonParser jsonParser) {
+        requireEvent(jsonParser.next(), JsonParser.Event.START_OBJECT, "session");
+        final var sessionFields = new SessionFields();
+        while (jsonParser.next() == JsonParser.Event.KEY_NAME)
+            switch (jsonParser.getString()) {
+                case "SessionId":
+                    sessionFields.id = nextInternedString(jsonParser, "SessionId");
+                    sessionFields.presentFields |= ID_PRESENT;
+                    break;
+                case "Status":
+                    sessionFields.status = nextInternedString(jsonParser, "Status");
+                    sessionFields.presentFields |= STATUS_PRESENT;
+                    break;
+                case "bIsPlaying":
+                    sessionFields.playing = nextBoolean(jsonParser, "bIsPlaying");
+                    sessionFields.presentFields |= PLAYING_PRESENT;
+                    break;
+                case "bIsJoinable":
+                    sessionFields.joinable = nextBoolean(jsonParser, "bIsJoinable");
+                    sessionFields.presentFields |= JOINABLE_PRESENT;
+                    break;
+                case "bHasVoiceSupport":
+                    sessionFields.voiceSupport = nextBoolean(jsonParser, "bHasVoiceSupport");
+                    sessionFields.presentFields |= VOICE_SUPPORT_PRESENT;
+                    break;
+                case PROPERTIES_KEY:
+                    parseProperties(jsonParser, sessionFields);
+                    break;
+                default:
+                    skipValue(jsonParser);
+            }
+        if ((sessionFields.presentFields & REQUIRED_FIELDS) != REQUIRED_FIELDS)
+            throw new JsonException(String.format("%s is missing", missingFieldKey(sessionFields.presentFields)));
+        return DefaultSession.newInstance(
+            sessionFields.id,
+            sessionFields.status,
+            sessionFields.playing,
+            sessionFields.joinable,
+            sessionFields.voiceSupport,
+            sessionFields.presentCounts,
+            sessionFields.partyMemberCount,
+            sessionFields.maxPartyMemberCount,
+            sessionFields.remainingPlayerCount,
+            sessionFields.partyId,
+            sessionFields.partyKey,
+            sessionFields.platformCode == null ?
+                null
+                : Platform.fromCode(sessionFields.platformCode)
+                .orElse(null),
+            sessionFields.applicationCode == null ?
+                null
+                : Application.fromCode(sessionFields.applicationCode)
+                .orElse(null)
+        );
+    }
+
+    private void parseProperties(final JsonParser jsonParser, final SessionFields sessionFields) {
+        requireEvent(jsonParser.next(), JsonParser.Event.START_OBJECT, PROPERTIES_KEY);
+        while (jsonParser.next() == JsonParser.Event.KEY_NAME)
+            switch (jsonParser.getString()) {
+                case "Event_PartySize_s":
+                    sessionFields.partyMemberCount = nextIntegerString(jsonParser, "Event_PartySize_s");
+                    sessionFields.presentCounts |= DefaultSession.PARTY_MEMBER_COUNT_PRESENT;
+                    break;
+                case "Event_PartyMaxSize_s":
+                    sessionFields.maxPartyMemberCount = nextIntegerString(jsonParser, "Event_PartyMaxSize_s");
+                    sessionFields.presentCounts |= DefaultSession.MAX_PARTY_MEMBER_COUNT_PRESENT;
+                    break;
+                case "Event_PlayersAlive_s":
+                    sessionFields.remainingPlayerCount = nextIntegerString(jsonParser, "Event_PlayersAlive_s");
+                    sessionFields.presentCounts |= DefaultSession.REMAINING_PLAYER_COUNT_PRESENT;
+                    break;
+                case PARTY_JOIN_INFO_DATA_KEY:
+                    parsePartyJoinInfoData(jsonParser, sessionFields);
+                    break;
+                default:
+                    skipValue(jsonParser);
+            }
+    }
+
+    private void parsePartyJoinInfoData(final JsonParser jsonParser, final SessionFields sessionFields) {
+        requireEvent(jsonParser.next(), JsonParser.Event.START_OBJECT, PARTY_JOIN_INFO_DATA_KEY);
+        while (jsonParser.next() == JsonParser.Event.KEY_NAME)
+            switch (jsonParser.getString()) {
+                case "partyId":
+                    sessionFields.partyId = nextInternedString(jsonParser, "partyId");
+                    break;
+                case "key":
+                    sessionFields.partyKey = nextInternedString(jsonParser, "key");
+                    break;
+                case "sourcePlatform":
+                    sessionFields.platformCode = nextString(jsonParser, "sourcePlatform");
+                    break;
+                case "appId":
+                    sessionFields.applicationCode = nextString(jsonParser, "appId");
+                    break;
+                default:
+                    skipValue(jsonParser);
+            }
+    }
+
+    private String nextString(final JsonParser jsonParser, final String key) {
+        requireEvent(jsonParser.next(), JsonParser.Event.VALUE_STRING, key);
+        return jsonParser.getString();
+    }
+
+    private String nextInternedString(final JsonParser jsonParser, final String key) {
+        return StringInternPool.INSTANCE.intern(nextString(jsonParser, key));
+    }
+
+    private int nextIntegerString(final JsonParser jsonParser, final String key) {
+        final var string = nextString(jsonParser, key);
+        try {
+            return Integer.parseInt(string);
+        } catch (final NumberFormatException exception) {
+            throw new JsonException(String.format("%s is not an integer: %s", key, string), exception);
+        }
+    }
+
+    private boolean nextBoolean(final JsonParser jsonParser, final String key) {
+        final var event = jsonParser.next();
+        if (JsonParser.Event.VALUE_TRUE == event)
+            return true;
+        if (JsonParser.Event.VALUE_FALSE == event)
+            return false;
+        throw new JsonException(String.format("%s must be a boolean but was %s", key, event));
+    }
+
+    private void skipValue(final JsonParser jsonParser) {
+        final var event = jsonParser.next();
+        if (JsonParser.Event.START_OBJECT == event)
+            jsonParser.skipObject();
+        else if (JsonParser.Event.START_ARRAY == event)
+            jsonParser.skipArray();
+    }
+
+    private void requireEvent(final JsonParser.Event actualEvent, final JsonParser.Event expectedEvent, final String key) {
+        if (expectedEvent != actualEvent)
+            throw new JsonException(String.format("%s must be %s but was %s", key, expectedEvent, actualEvent));
+    }
+
+    private String missingFieldKey(final int presentFields) {
+        if ((presentFields & ID_PRESENT) == 0)
+            return "SessionId";
+        if ((presentFields & STATUS_PRESENT) == 0)
+            return "Status";
+        if ((presentFields & PLAYING_PRESENT) == 0)
+            return "bIsPlaying";
+        if ((presentFields & JOINABLE_PRESENT) == 0)
+            return "bIsJoinable";
+        return "bHasVoiceSupport";
+    }
+
+    private static final class SessionFields {
+
+        private int presentFields;
+        private String id;
+        private String status;
+        private boolean playing;
+        private boolean joinable;
+        private boolean voiceSupport;
+        private int presentCounts;
+        private int partyMemberCount;
+        private int maxPartyMemberCount;
+        private int remainingPlayerCount;
+        private String partyId;
+        private String partyKey;
+        private String platformCode;
+        private String applicationCode;
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+
+import javax.json.JsonException;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * {@link Session} that keeps the presence status JSON it was made from and only decodes it
+ * the first time one of its accessors is called. Decoding happens at most once; if it fails,
+ * every accessor but {@link #toString()} throws a {@link JsonException} describing why. The time
+ * decoding takes is recorded as {@link MetricsTimer#SESSION_DECODE}.
+ * Two instances are equal if they were made from the same JSON
+ */
+final class LazySession implements Session {
+
+    private final String jsonString;
+    private final MetricsSink metricsSink;
+    private volatile DefaultSession defaultSession;
+    private volatile JsonException jsonException;
+
+    private LazySession(final String jsonString, final MetricsSink metricsSink) {
+        this.jsonString = jsonString;
+        this.metricsSink = metricsSink;
+    }
+
+    /**
+     * @param jsonString  presence status JSON, may be {@code null}
+     * @param metricsSink records how long decoding takes
+     * @return an {@link Optional} of {@link Session} that's empty if {@code jsonString} is
+     * {@code null} or blank
+     */
+    static Optional<Session> newOptionalInstance(final String jsonString, final MetricsSink metricsSink) {
+        return jsonString == null || jsonString.isBlank() ?
+            Optional.empty()
+            : Optional.of(new LazySession(jsonString, metricsSink));
+    }
+
+    private DefaultSession defaultSession() {
+        var defaultSession = this.defaultSession;
+        if (defaultSession != null)
+            return defaultSession;
+        synchronized (this) {
+            if (this.defaultSession == null && jsonException == null) {
+                final var startNanos = System.nanoTime();
+                try {
+                    this.defaultSession = JsonToDefaultSessionParser.INSTANCE.parseJsonToOptionalOfDefaultSession(jsonString)
+                        .orElseThrow();
+                } catch (final JsonException exception) {
+                    jsonException = exception;
+                }
+                metricsSink.recordNanos(MetricsTimer.SESSION_DECODE, System.nanoTime() - startNanos);
+            }
+            defaultSession = this.defaultSession;
+        }
+        if (defaultSession == null)
+            throw new JsonException(String.format("Couldn't decode session from presence status: %s", jsonString), jsonException);
+        return defaultSession;
+    }
+
+    @Override
+    public String id() {
+        return defaultSession().id();
+    }
+
+    @Override
+    public String status() {
+        return defaultSession().status();
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return defaultSession().isPlaying();
+    }
+
+    @Override
+    public boolean isJoinable() {
+        return defaultSession().isJoinable();
+    }
+
+    @Override
+    public boolean hasVoiceSupport() {
+        return defaultSession().hasVoiceSupport();
+    }
+
+    @Override
+    public Optional<Integer> partyMemberCount() {
+        return defaultSession().partyMemberCount();
+    }
+
+    @Override
+    public Optional<Integer> maxPartyMemberCount() {
+        return defaultSession().maxPartyMemberCount();
+    }
+
+    @Override
+    public Optional<String> partyId() {
+        return defaultSession().partyId();
+    }
+
+    @Override
+    public Optional<String> partyKey() {
+        return defaultSession().partyKey();
+    }
+
+    @Override
+    public Optional<Platform> platform() {
+        return defaultSession().platform();
+    }
+
+    @Override
+    public Optional<Application> application() {
+        return defaultSession().application();
+    }
+
+    @Override
+    public Optional<Integer> remainingPlayerCount() {
+        return defaultSession().remainingPlayerCount();
+    }
+
+    /**
+     * Never throws, so an undecodable session can still be logged
+     *
+     * @return the decoded session's string, or the JSON it couldn't be decoded from
+     */
+    @Override
+    public String toString() {
+        try {
+            return defaultSession().toString();
+        } catch (final JsonException exception) {
+            return "LazySession{" +
+                "undecodableJsonString='" + jsonString + '\'' +
+                '}';
+        }
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object)
+            return true;
+        if (!(object instanceof LazySession))
+            return false;
+        final var lazySession = (LazySession) object;
+        return jsonString.equals(lazySession.jsonString);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(jsonString);
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds listener calls back for a fixed window and only passes the latest call made
+ * for each key during that window on to a {@link ListenerDispatchQueue}. The window for a
+ * key opens when its first call arrives. A zero window passes every call straight through
+ */
+final class ListenerCoalescer {
+
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final long windowNanos;
+    private final ListenerDispatchQueue listenerDispatchQueue;
+    private final Map<Object, Runnable> keyToLatestInvocationMap;
+
+    private ListenerCoalescer(final ScheduledExecutorService scheduledExecutorService,
+                              final Duration window,
+                              final ListenerDispatchQueue listenerDispatchQueue) {
+        this.scheduledExecutorService = scheduledExecutorService;
+        windowNanos = window.toNanos();
+        this.listenerDispatchQueue = listenerDispatchQueue;
+        keyToLatestInvocationMap = new ConcurrentHashMap<>();
+    }
+
+    static ListenerCoalescer newInstance(final ScheduledExecutorService scheduledExecutorService,
+                                         final Duration window,
+                                         final ListenerDispatchQueue listenerDispatchQueue) {
+        return new ListenerCoalescer(scheduledExecutorService, window, listenerDispatchQueue);
+    }
+
+    static ListenerCoalescer newPassThroughInstance(final ListenerDispatchQueue listenerDispatchQueue) {
+        return new ListenerCoalescer(null, Duration.ZERO, listenerDispatchQueue);
+    }
+
+    void offer(final Object key, final Runnable invocation) {
+        if (windowNanos == 0L) {
+            listenerDispatchQueue.dispatch(key, invocation);
+            return;
+        }
+        if (keyToLatestInvocationMap.put(key, invocation) == null)
+            try {
+                scheduledExecutorService.schedule(() -> flush(key), windowNanos, TimeUnit.NANOSECONDS);
+            } catch (final RejectedExecutionException exception) {
+                keyToLatestInvocationMap.remove(key);
+            }
+    }
+
+    private void flush(final Object key) {
+        final var invocation = keyToLatestInvocationMap.remove(key);
+        if (invocation != null)
+            listenerDispatchQueue.dispatch(key, invocation);
+    }
+}
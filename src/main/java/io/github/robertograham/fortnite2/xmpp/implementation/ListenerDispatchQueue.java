@@ -0,0 +1,187 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.DispatchOverflowPolicy;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded queue of listener invocations for one listener type. Invocations are run one
+ * at a time, in the order they were dispatched, by borrowing a thread from an {@link Executor},
+ * so events for an account are never delivered out of order. Without an {@link Executor}
+ * invocations are run on the dispatching thread. Every invocation is timed with the queue's {@link MetricsTimer}
+ */
+final class ListenerDispatchQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(ListenerDispatchQueue.class.getName());
+    private static final int MAX_INVOCATIONS_PER_DRAIN = 64;
+    private final Executor executor;
+    private final int capacity;
+    private final DispatchOverflowPolicy dispatchOverflowPolicy;
+    private final MetricsTimer metricsTimer;
+    private final MetricsSink metricsSink;
+    private final ArrayDeque<Invocation> invocationQueue;
+    private final Map<Object, Invocation> keyToQueuedInvocationMap;
+    private final ReentrantLock lock;
+    private final Condition notFullCondition;
+    private boolean draining;
+
+    private ListenerDispatchQueue(final Executor executor,
+                                  final int capacity,
+                                  final DispatchOverflowPolicy dispatchOverflowPolicy,
+                                  final MetricsTimer metricsTimer,
+                                  final MetricsSink metricsSink) {
+        this.executor = executor;
+        this.capacity = capacity;
+        this.dispatchOverflowPolicy = dispatchOverflowPolicy;
+        this.metricsTimer = metricsTimer;
+        this.metricsSink = metricsSink;
+        invocationQueue = new ArrayDeque<>();
+        keyToQueuedInvocationMap = new HashMap<>();
+        lock = new ReentrantLock();
+        notFullCondition = lock.newCondition();
+    }
+
+    static ListenerDispatchQueue newInstance(final Executor executor,
+                                             final int capacity,
+                                             final DispatchOverflowPolicy dispatchOverflowPolicy,
+                                             final MetricsTimer metricsTimer,
+                                             final MetricsSink metricsSink) {
+        return new ListenerDispatchQueue(executor, capacity, dispatchOverflowPolicy, metricsTimer, metricsSink);
+    }
+
+    static ListenerDispatchQueue newInlineInstance(final MetricsTimer metricsTimer, final MetricsSink metricsSink) {
+        return new ListenerDispatchQueue(null, 0, DispatchOverflowPolicy.BLOCK, metricsTimer, metricsSink);
+    }
+
+    static ListenerDispatchQueue newInlineInstance() {
+        return newInlineInstance(null, NoOpMetricsSink.INSTANCE);
+    }
+
+    /**
+     * @param key        identifies the account the invocation concerns. Only used to coalesce, when the queue is full
+     * @param invocation the listener invocation
+     */
+    void dispatch(final Object key, final Runnable invocation) {
+        if (executor == null) {
+            final var startNanos = System.nanoTime();
+            try {
+                invocation.run();
+            } finally {
+                metricsSink.recordNanos(metricsTimer, System.nanoTime() - startNanos);
+            }
+            return;
+        }
+        final boolean startDraining;
+        lock.lock();
+        try {
+            while (invocationQueue.size() >= capacity)
+                if (DispatchOverflowPolicy.BLOCK == dispatchOverflowPolicy)
+                    notFullCondition.await();
+                else {
+                    if (DispatchOverflowPolicy.COALESCE == dispatchOverflowPolicy) {
+                        final var queuedInvocation = keyToQueuedInvocationMap.get(key);
+                        if (queuedInvocation != null) {
+                            queuedInvocation.runnable = invocation;
+                            return;
+                        }
+                    }
+                    forget(invocationQueue.poll());
+                }
+            final var queuedInvocation = new Invocation(key, invocation);
+            invocationQueue.add(queuedInvocation);
+            if (DispatchOverflowPolicy.COALESCE == dispatchOverflowPolicy)
+                keyToQueuedInvocationMap.put(key, queuedInvocation);
+            startDraining = !draining;
+            draining = true;
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            lock.unlock();
+        }
+        if (startDraining)
+            startDraining();
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return invocationQueue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startDraining() {
+        try {
+            executor.execute(this::drain);
+        } catch (final RejectedExecutionException exception) {
+            lock.lock();
+            try {
+                draining = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drain() {
+        for (var invocationCount = 0; invocationCount < MAX_INVOCATIONS_PER_DRAIN; invocationCount++) {
+            final Runnable runnable;
+            lock.lock();
+            try {
+                final var invocation = invocationQueue.poll();
+                if (invocation == null) {
+                    draining = false;
+                    return;
+                }
+                forget(invocation);
+                notFullCondition.signal();
+                runnable = invocation.runnable;
+            } finally {
+                lock.unlock();
+            }
+            final var startNanos = System.nanoTime();
+            var returned = false;
+            try {
+                runnable.run();
+                returned = true;
+            } catch (final RuntimeException exception) {
+                returned = true;
+                LOGGER.log(Level.WARNING, "Listener threw an exception", exception);
+            } finally {
+                metricsSink.recordNanos(metricsTimer, System.nanoTime() - startNanos);
+                // an Error is left to propagate, but the rest of the queue is drained on another thread
+                if (!returned)
+                    startDraining();
+            }
+        }
+        startDraining();
+    }
+
+    private void forget(final Invocation invocation) {
+        if (DispatchOverflowPolicy.COALESCE == dispatchOverflowPolicy)
+            keyToQueuedInvocationMap.remove(invocation.key, invocation);
+    }
+
+    private static final class Invocation {
+
+        private final Object key;
+        private Runnable runnable;
+
+        private Invocation(final Object key, final Runnable runnable) {
+            this.key = key;
+            this.runnable = runnable;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.DispatchOverflowPolicy;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the {@link ListenerDispatchQueue} instances listeners are invoked through
+ * and owns the thread pool they run on, if one was created for them
+ */
+final class ListenerDispatcher implements AutoCloseable {
+
+    private final Executor executor;
+    private final ExecutorService ownedExecutorService;
+    private final int queueCapacity;
+    private final DispatchOverflowPolicy dispatchOverflowPolicy;
+    private final MetricsSink metricsSink;
+    private final List<ListenerDispatchQueue> queues;
+
+    private ListenerDispatcher(final Executor executor,
+                               final ExecutorService ownedExecutorService,
+                               final int queueCapacity,
+                               final DispatchOverflowPolicy dispatchOverflowPolicy,
+                               final MetricsSink metricsSink) {
+        this.executor = executor;
+        this.ownedExecutorService = ownedExecutorService;
+        this.queueCapacity = queueCapacity;
+        this.dispatchOverflowPolicy = dispatchOverflowPolicy;
+        this.metricsSink = metricsSink;
+        queues = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * @param executor               runs listeners, {@code null} to create a pool of
+     *                               {@code threadCount} threads or run them inline
+     * @param threadCount            size of the pool to create if {@code executor} is {@code null},
+     *                               {@code 0} to run listeners inline
+     * @param queueCapacity          maximum queued invocations per listener type
+     * @param dispatchOverflowPolicy what to do when a queue is full
+     * @param metricsSink            records how long each listener invocation takes
+     * @return a new {@link ListenerDispatcher} instance
+     */
+    static ListenerDispatcher newInstance(final Executor executor,
+                                          final int threadCount,
+                                          final int queueCapacity,
+                                          final DispatchOverflowPolicy dispatchOverflowPolicy,
+                                          final MetricsSink metricsSink) {
+        if (executor != null)
+            return new ListenerDispatcher(executor, null, queueCapacity, dispatchOverflowPolicy, metricsSink);
+        if (threadCount > 0) {
+            final var executorService = Executors.newFixedThreadPool(threadCount, newDaemonThreadFactory("fortnite-2-xmpp-listener-"));
+            return new ListenerDispatcher(executorService, executorService, queueCapacity, dispatchOverflowPolicy, metricsSink);
+        }
+        return new ListenerDispatcher(null, null, queueCapacity, dispatchOverflowPolicy, metricsSink);
+    }
+
+    static ThreadFactory newDaemonThreadFactory(final String threadNamePrefix) {
+        final var threadCount = new AtomicInteger();
+        return (final var runnable) -> {
+            final var thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * For listeners that must see every event, such as chat messages and friends list changes, so a
+     * {@link DispatchOverflowPolicy#COALESCE} policy waits for room in the queue instead, as
+     * {@link DispatchOverflowPolicy#BLOCK} does
+     *
+     * @param metricsTimer what invocations made through the queue are recorded as
+     */
+    ListenerDispatchQueue newQueue(final MetricsTimer metricsTimer) {
+        return newQueue(
+            metricsTimer,
+            DispatchOverflowPolicy.COALESCE == dispatchOverflowPolicy ?
+                DispatchOverflowPolicy.BLOCK
+                : dispatchOverflowPolicy
+        );
+    }
+
+    /**
+     * For listeners that only need the latest event for each key, such as friend presences
+     *
+     * @param metricsTimer what invocations made through the queue are recorded as
+     */
+    ListenerDispatchQueue newCoalescingQueue(final MetricsTimer metricsTimer) {
+        return newQueue(metricsTimer, dispatchOverflowPolicy);
+    }
+
+    private ListenerDispatchQueue newQueue(final MetricsTimer metricsTimer, final DispatchOverflowPolicy dispatchOverflowPolicy) {
+        if (executor == null)
+            return ListenerDispatchQueue.newInlineInstance(metricsTimer, metricsSink);
+        final var queue = ListenerDispatchQueue.newInstance(executor, queueCapacity, dispatchOverflowPolicy, metricsTimer, metricsSink);
+        queues.add(queue);
+        return queue;
+    }
+
+    /**
+     * @return number of invocations waiting in every queue this created
+     */
+    long queuedInvocationCount() {
+        var queuedInvocationCount = 0L;
+        for (final var queue : queues)
+            queuedInvocationCount += queue.size();
+        return queuedInvocationCount;
+    }
+
+    @Override
+    public void close() {
+        if (ownedExecutorService != null)
+            ownedExecutorService.shutdown();
+    }
+}
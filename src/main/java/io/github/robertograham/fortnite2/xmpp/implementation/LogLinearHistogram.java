@@ -0,0 +1,67 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.TimerSnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size histogram of non-negative values. Each power of two is split into eight
+ * equal-width buckets, so a value is placed in a bucket no more than 12.5% wider than
+ * itself. Recording is a handful of atomic increments and never allocates
+ */
+final class LogLinearHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+    private final AtomicLongArray bucketCounts;
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    private LogLinearHistogram() {
+        bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+        total = new LongAdder();
+        max = new AtomicLong();
+    }
+
+    static LogLinearHistogram newInstance() {
+        return new LogLinearHistogram();
+    }
+
+    void record(final long value) {
+        final var nonNegativeValue = Math.max(0L, value);
+        bucketCounts.getAndIncrement(bucketIndex(nonNegativeValue));
+        total.add(nonNegativeValue);
+        var currentMax = max.get();
+        while (nonNegativeValue > currentMax && !max.compareAndSet(currentMax, nonNegativeValue))
+            currentMax = max.get();
+    }
+
+    TimerSnapshot snapshot() {
+        final var bucketCounts = new long[BUCKET_COUNT];
+        for (var bucketIndex = 0; bucketIndex < BUCKET_COUNT; bucketIndex++)
+            bucketCounts[bucketIndex] = this.bucketCounts.get(bucketIndex);
+        return DefaultTimerSnapshot.newInstance(bucketCounts, total.sum(), max.get());
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        final var highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final var shift = highestBit - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * @return the largest value placed in the bucket at {@code bucketIndex}
+     */
+    static long bucketUpperBound(final int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT)
+            return bucketIndex;
+        final var shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+        final var lowerBound = (long) (SUB_BUCKET_COUNT + bucketIndex % SUB_BUCKET_COUNT) << shift;
+        return lowerBound + ((1L << shift) - 1L);
+    }
+}
@@ -0,0 +1,553 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.ChatMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * {@link ChatMessageHistory} kept off the heap in append-only segment files, so it survives restarts.
+ * Each segment is a fixed-size file mapped into memory. Messages are appended to the newest segment
+ * one after another as length-prefixed, checksummed records, and a new segment is started once it's
+ * full. The heap only holds where each account's messages are, as a list of offsets per account, so
+ * reading an account's history decodes that account's messages straight from the mapped segments.
+ * A message's cursor is where it is, which stays the same when the store is opened again.
+ * Whole segments are deleted, oldest first, once their newest message is older than the retention
+ * age or the segments take up more than the retention size. The newest segment is always kept.
+ * Opening the store scans every segment to rebuild the offsets, and deletes segment files without a
+ * readable header, which a crash while creating one can leave behind. A record that was cut short or
+ * corrupted by a crash ends its segment, and the newest segment is zeroed from there so appends
+ * carry on after the last good record. Appends aren't forced to disk, so a crash of the process
+ * loses nothing but a crash of the operating system can lose the newest messages
+ */
+final class MappedChatMessageHistory implements ChatMessageHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(MappedChatMessageHistory.class.getName());
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int MAGIC = 0x464E4348;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 2 * Integer.BYTES;
+    private static final int RECORD_HEADER_LENGTH = 2 * Integer.BYTES;
+    // epoch milli, direction and account ID length precede the account ID and body
+    private static final int FIXED_PAYLOAD_LENGTH = Long.BYTES + Byte.BYTES + Short.BYTES;
+    private static final int MIN_SEGMENT_SIZE = 64 * 1_024;
+    private static final int MAX_SEGMENT_SIZE = 64 * 1_024 * 1_024;
+    private static final long RETENTION_CHECK_INTERVAL_MILLIS = 60_000L;
+    private static final Pattern SEGMENT_FILE_NAME_PATTERN = Pattern.compile("(\\d{10})\\.chat");
+    private static final String LOCK_FILE_NAME = "lock";
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxAgeMillis;
+    private final long maxBytes;
+    private final FileChannel lockFileChannel;
+    private final ReentrantReadWriteLock readWriteLock;
+    private final NavigableMap<Integer, Segment> segmentIdToSegmentMap;
+    private final Map<String, Offsets> accountIdToOffsetsMap;
+    private final CRC32 crc32;
+    private Segment activeSegment;
+    private long segmentBytes;
+    private long nextRetentionCheckMillis;
+    private boolean closed;
+
+    private MappedChatMessageHistory(final Path directory,
+                                     final int segmentSize,
+                                     final long maxAgeMillis,
+                                     final long maxBytes,
+                                     final FileChannel lockFileChannel) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxBytes = maxBytes;
+        this.lockFileChannel = lockFileChannel;
+        readWriteLock = new ReentrantReadWriteLock();
+        segmentIdToSegmentMap = new TreeMap<>();
+        accountIdToOffsetsMap = new HashMap<>();
+        crc32 = new CRC32();
+    }
+
+    /**
+     * Segments are an eighth of {@code maxBytes}, between 64 KiB and 64 MiB, so retention by size
+     * deletes roughly an eighth of the history at a time
+     *
+     * @param directory the directory to keep segments in. Created if it doesn't exist, and locked
+     *                  against other instances until closed
+     * @param maxAge    how long messages are kept for
+     * @param maxBytes  how much disk space segments can take up
+     * @return a new {@link MappedChatMessageHistory} instance holding the messages already in {@code directory}
+     * @throws IOException if {@code directory} can't be created or locked, or a segment can't be mapped
+     */
+    static MappedChatMessageHistory newInstance(final Path directory,
+                                                final Duration maxAge,
+                                                final long maxBytes) throws IOException {
+        return newInstance(
+            directory,
+            (int) Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, maxBytes / 8L)),
+            maxAge,
+            maxBytes
+        );
+    }
+
+    /**
+     * @param segmentSize size of each segment file in bytes
+     * @see #newInstance(Path, Duration, long)
+     */
+    static MappedChatMessageHistory newInstance(final Path directory,
+                                                final int segmentSize,
+                                                final Duration maxAge,
+                                                final long maxBytes) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE)
+            throw new IllegalArgumentException(String.format("segmentSize must be at least %d", MIN_SEGMENT_SIZE));
+        if (maxAge.isNegative() || maxAge.isZero())
+            throw new IllegalArgumentException("maxAge must be positive");
+        if (maxBytes < 1L)
+            throw new IllegalArgumentException("maxBytes must be greater than 0");
+        Files.createDirectories(directory);
+        final var lockFileChannel = FileChannel.open(
+            directory.resolve(LOCK_FILE_NAME),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE
+        );
+        try {
+            final FileLock fileLock;
+            try {
+                fileLock = lockFileChannel.tryLock();
+            } catch (final OverlappingFileLockException exception) {
+                throw new IOException(String.format("Chat history in %s is already open", directory), exception);
+            }
+            if (fileLock == null)
+                throw new IOException(String.format("Chat history in %s is already open in another process", directory));
+            final var mappedChatMessageHistory = new MappedChatMessageHistory(
+                directory,
+                segmentSize,
+                maxAge.toMillis(),
+                maxBytes,
+                lockFileChannel
+            );
+            mappedChatMessageHistory.recover();
+            return mappedChatMessageHistory;
+        } catch (final IOException | RuntimeException exception) {
+            lockFileChannel.close();
+            throw exception;
+        }
+    }
+
+    @Override
+    public long append(final String accountId, final Direction direction, final String body, final long epochMilli) {
+        final var accountIdBytes = accountId.getBytes(StandardCharsets.UTF_8);
+        final var bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        final var payloadLength = FIXED_PAYLOAD_LENGTH + accountIdBytes.length + bodyBytes.length;
+        if (accountIdBytes.length > 0xFFFF || RECORD_HEADER_LENGTH + payloadLength > segmentSize - HEADER_LENGTH) {
+            LOGGER.warning(String.format("Couldn't store a %d byte chat message in %s, it's too long", bodyBytes.length, directory));
+            return -1L;
+        }
+        readWriteLock.writeLock().lock();
+        try {
+            if (closed)
+                return -1L;
+            if (activeSegment.writeOffset + RECORD_HEADER_LENGTH + payloadLength > activeSegment.capacity())
+                try {
+                    roll(epochMilli);
+                } catch (final IOException exception) {
+                    LOGGER.log(Level.WARNING, String.format("Couldn't start a new chat history segment in %s", directory), exception);
+                    return -1L;
+                }
+            final var segment = activeSegment;
+            final var mappedByteBuffer = segment.mappedByteBuffer;
+            final var recordOffset = segment.writeOffset;
+            final var payloadOffset = recordOffset + RECORD_HEADER_LENGTH;
+            mappedByteBuffer.putLong(payloadOffset, epochMilli);
+            mappedByteBuffer.put(payloadOffset + Long.BYTES, (byte) direction.ordinal());
+            mappedByteBuffer.putShort(payloadOffset + Long.BYTES + Byte.BYTES, (short) accountIdBytes.length);
+            mappedByteBuffer.position(payloadOffset + FIXED_PAYLOAD_LENGTH);
+            mappedByteBuffer.put(accountIdBytes);
+            mappedByteBuffer.put(bodyBytes);
+            mappedByteBuffer.putInt(recordOffset + Integer.BYTES, checksum(mappedByteBuffer, payloadOffset, payloadLength));
+            // written last, a record isn't there until its length is
+            mappedByteBuffer.putInt(recordOffset, payloadLength);
+            segment.writeOffset = payloadOffset + payloadLength;
+            segment.lastEpochMilli = Math.max(segment.lastEpochMilli, epochMilli);
+            final var position = position(segment.id, direction, recordOffset);
+            accountIdToOffsetsMap.computeIfAbsent(accountId, (final var newAccountId) -> new Offsets())
+                .add(position);
+            if (epochMilli >= nextRetentionCheckMillis)
+                enforceRetention(epochMilli);
+            return position;
+        } finally {
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> findAllBodies(final String accountId, final Direction direction) {
+        readWriteLock.readLock().lock();
+        try {
+            final var offsets = accountIdToOffsetsMap.get(accountId);
+            if (offsets == null)
+                return List.of();
+            var matchCount = 0;
+            for (var index = offsets.head; index < offsets.tail; index++)
+                if (directionOf(offsets.positions[index]) == direction)
+                    matchCount++;
+            final var bodies = new String[matchCount];
+            var bodyIndex = 0;
+            Segment segment = null;
+            ByteBuffer slice = null;
+            for (var index = offsets.head; index < offsets.tail; index++) {
+                final var position = offsets.positions[index];
+                if (directionOf(position) != direction)
+                    continue;
+                final var segmentId = segmentIdOf(position);
+                if (segment == null || segment.id != segmentId) {
+                    segment = segmentIdToSegmentMap.get(segmentId);
+                    // a view of its own, so concurrent readers don't move each other's position
+                    slice = segment.mappedByteBuffer.duplicate();
+                }
+                bodies[bodyIndex++] = readBody(slice, recordOffsetOf(position));
+            }
+            return List.of(bodies);
+        } finally {
+            readWriteLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ChatMessage findNewestBefore(final String accountId, final Direction direction, final long beforeCursor) {
+        readWriteLock.readLock().lock();
+        try {
+            final var offsets = accountIdToOffsetsMap.get(accountId);
+            if (offsets == null)
+                return null;
+            for (var index = offsets.indexOf(beforeCursor) - 1; index >= offsets.head; index--) {
+                final var position = offsets.positions[index];
+                if (directionOf(position) != direction)
+                    continue;
+                final var slice = segmentIdToSegmentMap.get(segmentIdOf(position)).mappedByteBuffer.duplicate();
+                final var recordOffset = recordOffsetOf(position);
+                return DefaultChatMessage.newInstance(
+                    accountId,
+                    readBody(slice, recordOffset),
+                    slice.getLong(recordOffset + RECORD_HEADER_LENGTH),
+                    position
+                );
+            }
+            return null;
+        } finally {
+            readWriteLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int accountIdCount() {
+        readWriteLock.readLock().lock();
+        try {
+            return accountIdToOffsetsMap.size();
+        } finally {
+            readWriteLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the newest segment to disk and releases the directory's lock. Messages appended afterwards are ignored
+     */
+    @Override
+    public void close() {
+        readWriteLock.writeLock().lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            activeSegment.mappedByteBuffer.force();
+            try {
+                lockFileChannel.close();
+            } catch (final IOException exception) {
+                LOGGER.log(Level.WARNING, String.format("Couldn't unlock %s", directory), exception);
+            }
+        } finally {
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        final var segmentIds = new ArrayList<Integer>();
+        try (final var paths = Files.list(directory)) {
+            paths.forEach((final var path) -> {
+                final var matcher = SEGMENT_FILE_NAME_PATTERN.matcher(path.getFileName().toString());
+                if (matcher.matches())
+                    segmentIds.add(Integer.valueOf(matcher.group(1)));
+            });
+        }
+        segmentIds.sort(null);
+        final var segments = new ArrayList<Segment>(segmentIds.size());
+        for (final var segmentId : segmentIds) {
+            final var path = segmentPath(segmentId);
+            MappedByteBuffer mappedByteBuffer = null;
+            try (final var fileChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final var size = fileChannel.size();
+                if (size <= Integer.MAX_VALUE && hasHeader(fileChannel))
+                    mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+            }
+            // most likely left half created by a crash, and in the way of the segment that will be created with its ID
+            if (mappedByteBuffer == null) {
+                LOGGER.warning(String.format("%s isn't a chat history segment, deleting it", path));
+                Files.delete(path);
+                continue;
+            }
+            segments.add(new Segment(segmentId, mappedByteBuffer));
+        }
+        for (var segmentIndex = 0; segmentIndex < segments.size(); segmentIndex++) {
+            final var segment = segments.get(segmentIndex);
+            scan(segment, segmentIndex == segments.size() - 1);
+            segmentIdToSegmentMap.put(segment.id, segment);
+            segmentBytes += segment.capacity();
+        }
+        activeSegment = segmentIdToSegmentMap.isEmpty() ?
+            createSegment(0)
+            : segmentIdToSegmentMap.lastEntry().getValue();
+        enforceRetention(System.currentTimeMillis());
+    }
+
+    /**
+     * Read rather than mapped, so a file without one can be deleted on any platform
+     *
+     * @return {@code true} if the file starts with a segment header this version understands
+     */
+    private static boolean hasHeader(final FileChannel fileChannel) throws IOException {
+        final var header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (header.hasRemaining())
+            if (fileChannel.read(header, header.position()) < 0)
+                return false;
+        return header.getInt(0) == MAGIC && header.getInt(Integer.BYTES) == FORMAT_VERSION;
+    }
+
+    /**
+     * Indexes every good record in {@code segment} and leaves its write offset after the last one
+     *
+     * @param newest whether {@code segment} is the one appends carry on in, in which case anything after the
+     *               last good record is zeroed
+     */
+    private void scan(final Segment segment, final boolean newest) {
+        final var mappedByteBuffer = segment.mappedByteBuffer;
+        final var capacity = segment.capacity();
+        var recordOffset = HEADER_LENGTH;
+        var corrupted = false;
+        while (recordOffset + RECORD_HEADER_LENGTH <= capacity) {
+            final var payloadLength = mappedByteBuffer.getInt(recordOffset);
+            if (payloadLength == 0)
+                break;
+            final var payloadOffset = recordOffset + RECORD_HEADER_LENGTH;
+            if (payloadLength < FIXED_PAYLOAD_LENGTH || payloadLength > capacity - payloadOffset
+                || mappedByteBuffer.getInt(recordOffset + Integer.BYTES) != checksum(mappedByteBuffer, payloadOffset, payloadLength)) {
+                corrupted = true;
+                break;
+            }
+            final var epochMilli = mappedByteBuffer.getLong(payloadOffset);
+            final var directionOrdinal = mappedByteBuffer.get(payloadOffset + Long.BYTES);
+            final var accountIdLength = Short.toUnsignedInt(mappedByteBuffer.getShort(payloadOffset + Long.BYTES + Byte.BYTES));
+            if (directionOrdinal < 0 || directionOrdinal >= DIRECTIONS.length
+                || accountIdLength > payloadLength - FIXED_PAYLOAD_LENGTH) {
+                corrupted = true;
+                break;
+            }
+            final var accountIdBytes = new byte[accountIdLength];
+            mappedByteBuffer.position(payloadOffset + FIXED_PAYLOAD_LENGTH);
+            mappedByteBuffer.get(accountIdBytes);
+            accountIdToOffsetsMap.computeIfAbsent(new String(accountIdBytes, StandardCharsets.UTF_8), (final var newAccountId) -> new Offsets())
+                .add(position(segment.id, DIRECTIONS[directionOrdinal], recordOffset));
+            segment.lastEpochMilli = Math.max(segment.lastEpochMilli, epochMilli);
+            recordOffset = payloadOffset + payloadLength;
+        }
+        segment.writeOffset = recordOffset;
+        if (corrupted) {
+            LOGGER.warning(String.format(
+                "Discarding %s past byte %d, it was left incomplete or corrupted",
+                segmentPath(segment.id),
+                recordOffset
+            ));
+            if (newest) {
+                final var zeroes = new byte[Math.min(8_192, capacity - recordOffset)];
+                mappedByteBuffer.position(recordOffset);
+                while (mappedByteBuffer.hasRemaining())
+                    mappedByteBuffer.put(zeroes, 0, Math.min(zeroes.length, mappedByteBuffer.remaining()));
+                mappedByteBuffer.force();
+            }
+        }
+    }
+
+    private void roll(final long epochMilli) throws IOException {
+        activeSegment.mappedByteBuffer.force();
+        activeSegment = createSegment(activeSegment.id + 1);
+        enforceRetention(epochMilli);
+    }
+
+    private Segment createSegment(final int segmentId) throws IOException {
+        final MappedByteBuffer mappedByteBuffer;
+        try (final var fileChannel = FileChannel.open(
+            segmentPath(segmentId),
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        )) {
+            mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0L, segmentSize);
+        }
+        mappedByteBuffer.putInt(0, MAGIC);
+        mappedByteBuffer.putInt(Integer.BYTES, FORMAT_VERSION);
+        final var segment = new Segment(segmentId, mappedByteBuffer);
+        segment.writeOffset = HEADER_LENGTH;
+        segmentIdToSegmentMap.put(segmentId, segment);
+        segmentBytes += segment.capacity();
+        return segment;
+    }
+
+    private void enforceRetention(final long epochMilli) {
+        nextRetentionCheckMillis = epochMilli + RETENTION_CHECK_INTERVAL_MILLIS;
+        var deleted = false;
+        while (segmentIdToSegmentMap.size() > 1) {
+            final var oldestSegment = segmentIdToSegmentMap.firstEntry().getValue();
+            if (segmentBytes <= maxBytes && oldestSegment.lastEpochMilli >= epochMilli - maxAgeMillis)
+                break;
+            segmentIdToSegmentMap.remove(oldestSegment.id);
+            segmentBytes -= oldestSegment.capacity();
+            deleted = true;
+            // still mapped until the buffer is collected, which most operating systems allow
+            try {
+                Files.deleteIfExists(segmentPath(oldestSegment.id));
+            } catch (final IOException exception) {
+                LOGGER.log(Level.WARNING, String.format("Couldn't delete %s", segmentPath(oldestSegment.id)), exception);
+            }
+        }
+        if (!deleted)
+            return;
+        final var oldestSegmentId = segmentIdToSegmentMap.firstKey();
+        accountIdToOffsetsMap.values()
+            .removeIf((final var offsets) -> {
+                offsets.removeBefore(oldestSegmentId);
+                return offsets.isEmpty();
+            });
+    }
+
+    private Path segmentPath(final int segmentId) {
+        return directory.resolve(String.format("%010d.chat", segmentId));
+    }
+
+    private int checksum(final ByteBuffer byteBuffer, final int offset, final int length) {
+        crc32.reset();
+        crc32.update(byteBuffer.duplicate()
+            .position(offset)
+            .limit(offset + length));
+        return (int) crc32.getValue();
+    }
+
+    private static String readBody(final ByteBuffer slice, final int recordOffset) {
+        final var payloadOffset = recordOffset + RECORD_HEADER_LENGTH;
+        final var accountIdLength = Short.toUnsignedInt(slice.getShort(payloadOffset + Long.BYTES + Byte.BYTES));
+        final var bodyBytes = new byte[slice.getInt(recordOffset) - FIXED_PAYLOAD_LENGTH - accountIdLength];
+        slice.position(payloadOffset + FIXED_PAYLOAD_LENGTH + accountIdLength);
+        slice.get(bodyBytes);
+        return new String(bodyBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Packs where a record is into a {@code long}: the segment ID in the high half, then the record's offset
+     * in the segment and a bit for the direction. Positions grow in the order records are appended
+     */
+    private static long position(final int segmentId, final Direction direction, final int recordOffset) {
+        return (long) segmentId << 32
+            | (long) recordOffset << 1
+            | direction.ordinal();
+    }
+
+    private static int segmentIdOf(final long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static Direction directionOf(final long position) {
+        return DIRECTIONS[(int) position & 1];
+    }
+
+    private static int recordOffsetOf(final long position) {
+        return (int) position >>> 1;
+    }
+
+    private static final class Segment {
+
+        private final int id;
+        private final MappedByteBuffer mappedByteBuffer;
+        private int writeOffset;
+        private long lastEpochMilli;
+
+        private Segment(final int id, final MappedByteBuffer mappedByteBuffer) {
+            this.id = id;
+            this.mappedByteBuffer = mappedByteBuffer;
+        }
+
+        private int capacity() {
+            return mappedByteBuffer.capacity();
+        }
+    }
+
+    /**
+     * Positions of one account's records, oldest first. Deleting a segment drops the positions at the head
+     */
+    private static final class Offsets {
+
+        private long[] positions;
+        private int head;
+        private int tail;
+
+        private Offsets() {
+            positions = new long[4];
+        }
+
+        private void add(final long position) {
+            if (tail == positions.length)
+                if (head >= positions.length / 2) {
+                    System.arraycopy(positions, head, positions, 0, tail - head);
+                    tail -= head;
+                    head = 0;
+                } else
+                    positions = Arrays.copyOf(positions, positions.length * 2);
+            positions[tail++] = position;
+        }
+
+        private void removeBefore(final int segmentId) {
+            final var firstRetainedPosition = (long) segmentId << 32;
+            while (head < tail && positions[head] < firstRetainedPosition)
+                head++;
+        }
+
+        /**
+         * @return index of the first position not less than {@code position}, {@code tail} if there isn't one
+         */
+        private int indexOf(final long position) {
+            final var index = Arrays.binarySearch(positions, head, tail, position);
+            return index < 0 ?
+                -index - 1
+                : index;
+        }
+
+        private boolean isEmpty() {
+            return head == tail;
+        }
+    }
+}
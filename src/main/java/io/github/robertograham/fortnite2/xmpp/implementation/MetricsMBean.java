@@ -0,0 +1,103 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsGauge;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Read-only view of a {@link RecordingMetricsSink} with one {@code long} attribute per value.
+ * Attributes are read from the sink each time they're requested
+ */
+final class MetricsMBean implements DynamicMBean {
+
+    private final Map<String, LongSupplier> attributeNameToValueSupplierMap;
+    private final MBeanInfo mBeanInfo;
+
+    private MetricsMBean(final Map<String, LongSupplier> attributeNameToValueSupplierMap) {
+        this.attributeNameToValueSupplierMap = attributeNameToValueSupplierMap;
+        mBeanInfo = new MBeanInfo(
+            MetricsMBean.class.getName(),
+            "fortnite-2-xmpp metrics",
+            attributeNameToValueSupplierMap.keySet().stream()
+                .map((final var attributeName) -> new MBeanAttributeInfo(attributeName, "long", attributeName, true, false, false))
+                .toArray(MBeanAttributeInfo[]::new),
+            null,
+            new MBeanOperationInfo[0],
+            null
+        );
+    }
+
+    static MetricsMBean newInstance(final RecordingMetricsSink recordingMetricsSink) {
+        final var attributeNameToValueSupplierMap = new LinkedHashMap<String, LongSupplier>();
+        for (final var metricsCounter : MetricsCounter.values())
+            attributeNameToValueSupplierMap.put(metricsCounter.name(), () -> recordingMetricsSink.count(metricsCounter));
+        for (final var metricsGauge : MetricsGauge.values())
+            attributeNameToValueSupplierMap.put(metricsGauge.name(), () -> recordingMetricsSink.gauge(metricsGauge));
+        for (final var metricsTimer : MetricsTimer.values()) {
+            final var name = metricsTimer.name();
+            attributeNameToValueSupplierMap.put(name + "_COUNT", () -> recordingMetricsSink.timer(metricsTimer).count());
+            attributeNameToValueSupplierMap.put(name + "_MEAN_NANOS", () -> {
+                final var timerSnapshot = recordingMetricsSink.timer(metricsTimer);
+                return timerSnapshot.count() == 0L ?
+                    0L
+                    : timerSnapshot.total().toNanos() / timerSnapshot.count();
+            });
+            attributeNameToValueSupplierMap.put(name + "_P50_NANOS", () -> recordingMetricsSink.timer(metricsTimer).percentile(0.5D).toNanos());
+            attributeNameToValueSupplierMap.put(name + "_P99_NANOS", () -> recordingMetricsSink.timer(metricsTimer).percentile(0.99D).toNanos());
+            attributeNameToValueSupplierMap.put(name + "_MAX_NANOS", () -> recordingMetricsSink.timer(metricsTimer).max().toNanos());
+        }
+        return new MetricsMBean(Collections.unmodifiableMap(attributeNameToValueSupplierMap));
+    }
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        final var valueSupplier = attributeNameToValueSupplierMap.get(attribute);
+        if (valueSupplier == null)
+            throw new AttributeNotFoundException(attribute);
+        return valueSupplier.getAsLong();
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(String.format("%s is read-only", attribute.getName()));
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        final var attributeList = new AttributeList();
+        for (final var attribute : attributes) {
+            final var valueSupplier = attributeNameToValueSupplierMap.get(attribute);
+            if (valueSupplier != null)
+                attributeList.add(new Attribute(attribute, valueSupplier.getAsLong()));
+        }
+        return attributeList;
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return mBeanInfo;
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsGauge;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+
+import java.util.function.LongSupplier;
+
+/**
+ * {@link MetricsSink} used when none is registered, which ignores everything
+ */
+enum NoOpMetricsSink implements MetricsSink {
+
+    INSTANCE;
+
+    @Override
+    public void incrementCounter(final MetricsCounter metricsCounter) {
+    }
+
+    @Override
+    public void incrementCounter(final MetricsCounter metricsCounter, final long amount) {
+    }
+
+    @Override
+    public void recordNanos(final MetricsTimer metricsTimer, final long nanos) {
+    }
+
+    @Override
+    public void addGauge(final MetricsGauge metricsGauge, final LongSupplier valueSupplier) {
+    }
+
+    @Override
+    public void removeGauge(final MetricsGauge metricsGauge, final LongSupplier valueSupplier) {
+    }
+}
@@ -0,0 +1,318 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+import org.jivesoftware.smack.ConnectionListener;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.packet.Stanza;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of stanzas waiting to be sent over an XMPP connection. Submissions are sent one
+ * at a time, in the order they were made, by borrowing a thread from an {@link Executor}, so
+ * callers never wait for the connection's own writer queue. Each stanza's future completes once
+ * the connection has written it to its socket, which is when Smack calls its stanza sending
+ * listeners, and completes exceptionally if the connection closes before then
+ */
+final class OutboundStanzaQueue implements StanzaListener, ConnectionListener, AutoCloseable {
+
+    private static final int MAX_SUBMISSIONS_PER_DRAIN = 64;
+    private final XMPPConnection connection;
+    private final Executor executor;
+    private final int capacity;
+    private final MetricsSink metricsSink;
+    private final ArrayDeque<List<OutboundStanza>> submissionQueue;
+    private final Map<String, CompletableFuture<Void>> stanzaIdToUnwrittenFutureMap;
+    private final ReentrantLock lock;
+    private final Condition notFullCondition;
+    private boolean draining;
+    private boolean closed;
+
+    private OutboundStanzaQueue(final XMPPConnection connection,
+                                final Executor executor,
+                                final int capacity,
+                                final MetricsSink metricsSink) {
+        this.connection = connection;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.metricsSink = metricsSink;
+        submissionQueue = new ArrayDeque<>();
+        stanzaIdToUnwrittenFutureMap = new ConcurrentHashMap<>();
+        lock = new ReentrantLock();
+        notFullCondition = lock.newCondition();
+    }
+
+    /**
+     * @param connection  the connection to send stanzas over
+     * @param executor    runs the thread stanzas are sent from
+     * @param capacity    maximum number of submissions waiting to be sent
+     * @param metricsSink counts rejected submissions
+     * @return a new {@link OutboundStanzaQueue} instance listening to {@code connection}
+     */
+    static OutboundStanzaQueue newInstance(final XMPPConnection connection,
+                                           final Executor executor,
+                                           final int capacity,
+                                           final MetricsSink metricsSink) {
+        final var outboundStanzaQueue = new OutboundStanzaQueue(connection, executor, capacity, metricsSink);
+        connection.addStanzaSendingListener(
+            outboundStanzaQueue,
+            (final var stanza) -> outboundStanzaQueue.stanzaIdToUnwrittenFutureMap.containsKey(stanza.getStanzaId())
+        );
+        connection.addConnectionListener(outboundStanzaQueue);
+        return outboundStanzaQueue;
+    }
+
+    /**
+     * @param stanza the stanza to send
+     * @param send   sends {@code stanza}, called from the queue's thread
+     * @return a {@link CompletableFuture} that completes once {@code stanza} has been written to the connection's
+     * socket. Completes exceptionally with a {@link RejectedExecutionException} straight away if the queue is full
+     */
+    CompletableFuture<Void> offer(final Stanza stanza, final Send send) {
+        final var outboundStanza = new OutboundStanza(stanza.getStanzaId(), send);
+        offer(List.of(outboundStanza));
+        return outboundStanza.future;
+    }
+
+    /**
+     * Like {@link #offer(Stanza, Send)}, but waits for space in the queue rather than rejecting the stanza
+     *
+     * @throws InterruptedException if interrupted while waiting for space
+     */
+    CompletableFuture<Void> put(final Stanza stanza, final Send send) throws InterruptedException {
+        final var outboundStanza = new OutboundStanza(stanza.getStanzaId(), send);
+        final boolean startDraining;
+        lock.lockInterruptibly();
+        try {
+            while (!closed && submissionQueue.size() >= capacity)
+                notFullCondition.await();
+            startDraining = enqueue(List.of(outboundStanza));
+        } finally {
+            lock.unlock();
+        }
+        if (startDraining)
+            startDraining();
+        return outboundStanza.future;
+    }
+
+    /**
+     * Queues several stanzas as a single submission, so they take up one place in the queue and are sent back to
+     * back. If the queue is full, every future completes exceptionally with a {@link RejectedExecutionException}
+     *
+     * @param outboundStanzas the stanzas to send, in order
+     */
+    void offer(final List<OutboundStanza> outboundStanzas) {
+        final boolean startDraining;
+        lock.lock();
+        try {
+            if (!closed && submissionQueue.size() >= capacity) {
+                final var exception = new RejectedExecutionException(String.format(
+                    "Outbound stanza queue is full, %d submissions are waiting to be sent",
+                    submissionQueue.size()
+                ));
+                for (final var outboundStanza : outboundStanzas)
+                    outboundStanza.future.completeExceptionally(exception);
+                metricsSink.incrementCounter(MetricsCounter.OUTBOUND_STANZAS_REJECTED);
+                return;
+            }
+            startDraining = enqueue(outboundStanzas);
+        } finally {
+            lock.unlock();
+        }
+        if (startDraining)
+            startDraining();
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return submissionQueue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean enqueue(final List<OutboundStanza> outboundStanzas) {
+        if (closed) {
+            failAll(outboundStanzas, new IOException("Outbound stanza queue is closed"));
+            return false;
+        }
+        submissionQueue.add(outboundStanzas);
+        final var startDraining = !draining;
+        draining = true;
+        return startDraining;
+    }
+
+    private void startDraining() {
+        try {
+            executor.execute(this::drain);
+        } catch (final RejectedExecutionException exception) {
+            failQueued(new IOException("Outbound stanza queue is no longer being drained", exception));
+        }
+    }
+
+    private void drain() {
+        for (var submissionCount = 0; submissionCount < MAX_SUBMISSIONS_PER_DRAIN; submissionCount++) {
+            final List<OutboundStanza> outboundStanzas;
+            lock.lock();
+            try {
+                outboundStanzas = submissionQueue.poll();
+                if (outboundStanzas == null) {
+                    draining = false;
+                    return;
+                }
+                notFullCondition.signal();
+            } finally {
+                lock.unlock();
+            }
+            for (var outboundStanzaIndex = 0; outboundStanzaIndex < outboundStanzas.size(); outboundStanzaIndex++)
+                if (!write(outboundStanzas.get(outboundStanzaIndex))) {
+                    final var exception = new IOException("Not connected");
+                    failAll(outboundStanzas.subList(outboundStanzaIndex + 1, outboundStanzas.size()), exception);
+                    break;
+                }
+        }
+        startDraining();
+    }
+
+    /**
+     * @return {@code false} if the connection couldn't take the stanza, so none after it should be tried either
+     */
+    private boolean write(final OutboundStanza outboundStanza) {
+        final var future = outboundStanza.future;
+        if (future.isDone())
+            return true;
+        // registered first, the sending listener can be called before send returns
+        stanzaIdToUnwrittenFutureMap.put(outboundStanza.stanzaId, future);
+        try {
+            outboundStanza.send.send();
+            return true;
+        } catch (final SmackException.NotConnectedException exception) {
+            fail(outboundStanza, exception);
+            return false;
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            fail(outboundStanza, exception);
+            return false;
+        } catch (final RuntimeException exception) {
+            fail(outboundStanza, exception);
+            return true;
+        }
+    }
+
+    private void fail(final OutboundStanza outboundStanza, final Exception exception) {
+        stanzaIdToUnwrittenFutureMap.remove(outboundStanza.stanzaId, outboundStanza.future);
+        outboundStanza.future.completeExceptionally(new IOException("Failed to send stanza", exception));
+    }
+
+    private void failAll(final List<OutboundStanza> outboundStanzas, final IOException exception) {
+        for (final var outboundStanza : outboundStanzas)
+            outboundStanza.future.completeExceptionally(exception);
+    }
+
+    private void failQueued(final IOException exception) {
+        lock.lock();
+        try {
+            for (final var outboundStanzas : submissionQueue)
+                failAll(outboundStanzas, exception);
+            submissionQueue.clear();
+            draining = false;
+            notFullCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void failUnwritten(final IOException exception) {
+        for (final var stanzaId : stanzaIdToUnwrittenFutureMap.keySet()) {
+            final var future = stanzaIdToUnwrittenFutureMap.remove(stanzaId);
+            if (future != null)
+                future.completeExceptionally(exception);
+        }
+    }
+
+    @Override
+    public void processStanza(final Stanza stanza) {
+        final var future = stanzaIdToUnwrittenFutureMap.remove(stanza.getStanzaId());
+        if (future != null)
+            future.complete(null);
+    }
+
+    @Override
+    public void connected(final XMPPConnection connection) {
+    }
+
+    @Override
+    public void authenticated(final XMPPConnection connection, final boolean resumed) {
+    }
+
+    @Override
+    public void connectionClosed() {
+        failUnwritten(new IOException("Connection closed before the stanza was written"));
+    }
+
+    @Override
+    public void connectionClosedOnError(final Exception exception) {
+        failUnwritten(new IOException("Connection closed before the stanza was written", exception));
+    }
+
+    /**
+     * Fails every stanza that hasn't been written yet and rejects any submitted afterwards
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        connection.removeStanzaSendingListener(this);
+        connection.removeConnectionListener(this);
+        final var exception = new IOException("Outbound stanza queue is closed");
+        failQueued(exception);
+        failUnwritten(exception);
+    }
+
+    /**
+     * Hands a stanza to the connection, such as with {@link XMPPConnection#sendStanza(Stanza)}
+     */
+    @FunctionalInterface
+    interface Send {
+
+        void send() throws SmackException.NotConnectedException, InterruptedException;
+    }
+
+    static final class OutboundStanza {
+
+        private final String stanzaId;
+        private final Send send;
+        private final CompletableFuture<Void> future;
+
+        private OutboundStanza(final String stanzaId, final Send send) {
+            this.stanzaId = stanzaId;
+            this.send = send;
+            future = new CompletableFuture<>();
+        }
+
+        static OutboundStanza newInstance(final Stanza stanza, final Send send) {
+            return new OutboundStanza(stanza.getStanzaId(), send);
+        }
+
+        CompletableFuture<Void> future() {
+            return future;
+        }
+    }
+}
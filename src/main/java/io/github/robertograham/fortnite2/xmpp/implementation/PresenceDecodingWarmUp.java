@@ -0,0 +1,61 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.util.PacketParserUtils;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decodes a sample friend presence over and over, from its XML to its session, so that the classes involved are
+ * loaded and the JIT has compiled the decoding before the burst of presences that follows logging in. Otherwise the
+ * first few thousand presences are decoded by the interpreter while the friends list is being received
+ */
+final class PresenceDecodingWarmUp {
+
+    private static final Logger LOGGER = Logger.getLogger(PresenceDecodingWarmUp.class.getName());
+    private static final int ITERATIONS = 2_000;
+    private static final String PRESENCE_XML = "<presence" +
+        " from='0a1b2c3d4e5f60718293a4b5c6d7e8f9@prod.ol.epicgames.com/V2:Fortnite:WIN::0A1B2C3D4E5F6071'" +
+        " to='f9e8d7c6b5a4930281706f5e4d3c2b1a@prod.ol.epicgames.com/V2:Fortnite:WIN'>" +
+        "<status>{" +
+        "\"Status\":\"Battle Royale Lobby - 1 / 4\"," +
+        "\"bIsPlaying\":false," +
+        "\"bIsJoinable\":true," +
+        "\"bHasVoiceSupport\":false," +
+        "\"SessionId\":\"\"," +
+        "\"Properties\":{" +
+        "\"FortBasicInfo_j\":{\"homeBaseRating\":1}," +
+        "\"FortGameplayStats_j\":{\"state\":\"\",\"playlist\":\"None\",\"numKills\":0,\"bFellToDeath\":false}," +
+        "\"party.joininfodata.286331153_j\":{" +
+        "\"sourcePlatform\":\"WIN\"," +
+        "\"partyId\":\"00000000000000000000000000000000\"," +
+        "\"key\":\"k\"," +
+        "\"appId\":\"Fortnite\"," +
+        "\"partyFlags\":0" +
+        "}," +
+        "\"Event_PartySize_s\":\"1\"," +
+        "\"Event_PartyMaxSize_s\":\"4\"," +
+        "\"Event_PlayersAlive_s\":\"100\"" +
+        "}" +
+        "}</status>" +
+        "</presence>";
+
+    private PresenceDecodingWarmUp() {
+    }
+
+    /**
+     * Stops early and logs the failure rather than throwing if decoding fails, since warming up is only ever an
+     * optimisation
+     */
+    static void run() {
+        try {
+            for (var iteration = 0; iteration < ITERATIONS; iteration++) {
+                final Presence presence = PacketParserUtils.parseStanza(PRESENCE_XML);
+                JsonToDefaultSessionParser.INSTANCE.parseJsonToOptionalOfDefaultSession(presence.getStatus());
+            }
+        } catch (final Exception exception) {
+            LOGGER.log(Level.FINE, "Presence decoding warm-up failed", exception);
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+
+import javax.json.JsonException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The latest presence of every friend, indexed by status, platform, application, joinability
+ * and party. Each friend is given a slot number the first time they're seen, which is reused once
+ * they stop being a friend, and each index is a {@link BitSet} of slot numbers. Updates only touch
+ * the indexes a friend moves between, so a query never scans the whole friends list.
+ * Sessions are decoded lazily, so an update only stores the unparsed presence status and marks the
+ * friend's slot as dirty. A friend's {@link LazySession} is only made once their session is asked for,
+ * and the indexes derived from sessions catch up on dirty slots the next time one of them is queried. Those sessions
+ * are decoded without holding the lock, so updates aren't held up by a query, and only the index changes are made
+ * under it. A slot updated again while its session was being decoded stays dirty until the next query
+ */
+final class PresenceIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(PresenceIndex.class.getName());
+    private static final int INITIAL_CAPACITY = 64;
+    private final MetricsSink metricsSink;
+    private final ReentrantReadWriteLock readWriteLock;
+    private final Map<String, Integer> accountIdToSlotMap;
+    private final BitSet occupiedSlots;
+    private final Map<Status, BitSet> statusToSlotsMap;
+    private final Map<Platform, BitSet> platformToSlotsMap;
+    private final Map<Application, BitSet> applicationToSlotsMap;
+    private final BitSet joinableSlots;
+    private final Map<String, BitSet> partyIdToSlotsMap;
+    private final BitSet dirtySlots;
+    private String[] accountIds;
+    private Status[] statuses;
+    private String[] presenceStatuses;
+    private Session[] sessions;
+    private Platform[] indexedPlatforms;
+    private Application[] indexedApplications;
+    private String[] indexedPartyIds;
+
+    private PresenceIndex(final MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+        readWriteLock = new ReentrantReadWriteLock();
+        accountIdToSlotMap = new HashMap<>();
+        occupiedSlots = new BitSet();
+        statusToSlotsMap = new EnumMap<>(Status.class);
+        for (final var status : Status.values())
+            statusToSlotsMap.put(status, new BitSet());
+        platformToSlotsMap = new EnumMap<>(Platform.class);
+        for (final var platform : Platform.values())
+            platformToSlotsMap.put(platform, new BitSet());
+        applicationToSlotsMap = new EnumMap<>(Application.class);
+        for (final var application : Application.values())
+            applicationToSlotsMap.put(application, new BitSet());
+        joinableSlots = new BitSet();
+        partyIdToSlotsMap = new HashMap<>();
+        dirtySlots = new BitSet();
+        accountIds = new String[INITIAL_CAPACITY];
+        statuses = new Status[INITIAL_CAPACITY];
+        presenceStatuses = new String[INITIAL_CAPACITY];
+        sessions = new Session[INITIAL_CAPACITY];
+        indexedPlatforms = new Platform[INITIAL_CAPACITY];
+        indexedApplications = new Application[INITIAL_CAPACITY];
+        indexedPartyIds = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param metricsSink records how long the sessions handed out take to decode
+     */
+    static PresenceIndex newInstance(final MetricsSink metricsSink) {
+        return new PresenceIndex(metricsSink);
+    }
+
+    /**
+     * Indexes a friend as {@link Status#OFFLINE} if nothing is known about them yet
+     *
+     * @param accountId the friend's account ID
+     */
+    void add(final String accountId) {
+        readWriteLock.writeLock().lock();
+        try {
+            if (!accountIdToSlotMap.containsKey(accountId)) {
+                final var slot = occupySlot(accountId);
+                statuses[slot] = Status.OFFLINE;
+                statusToSlotsMap.get(Status.OFFLINE).set(slot);
+            }
+        } finally {
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    void remove(final String accountId) {
+        readWriteLock.writeLock().lock();
+        try {
+            final var slot = accountIdToSlotMap.remove(accountId);
+            if (slot == null)
+                return;
+            statusToSlotsMap.get(statuses[slot]).clear(slot);
+            unindexSession(slot);
+            dirtySlots.clear(slot);
+            occupiedSlots.clear(slot);
+            accountIds[slot] = null;
+            statuses[slot] = null;
+            presenceStatuses[slot] = null;
+            sessions[slot] = null;
+        } finally {
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Allocates nothing unless the friend wasn't indexed before
+     *
+     * @param presenceStatus the friend's unparsed presence status, which a {@link LazySession} is made from
+     *                       once the friend's session is asked for
+     * @return the friend's previous status if their status or unparsed presence status changed,
+     * {@link Status#OFFLINE} if they weren't indexed before. {@code null} if nothing changed
+     */
+    Status update(final String accountId,
+                  final Status status,
+                  final String presenceStatus) {
+        readWriteLock.writeLock().lock();
+        try {
+            final var existingSlot = accountIdToSlotMap.get(accountId);
+            final int slot;
+            final Status previousStatus;
+            if (existingSlot == null) {
+                slot = occupySlot(accountId);
+                previousStatus = Status.OFFLINE;
+            } else {
+                slot = existingSlot;
+                previousStatus = statuses[slot];
+                if (previousStatus == status && Objects.equals(presenceStatuses[slot], presenceStatus))
+                    return null;
+                statusToSlotsMap.get(previousStatus).clear(slot);
+            }
+            statuses[slot] = status;
+            statusToSlotsMap.get(status).set(slot);
+            presenceStatuses[slot] = presenceStatus;
+            sessions[slot] = null;
+            dirtySlots.set(slot);
+            return previousStatus;
+        } finally {
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    Set<String> findAllAccountIdsByStatuses(final Status status, final Status... otherStatuses) {
+        readWriteLock.readLock().lock();
+        try {
+            if (otherStatuses.length == 0)
+                return accountIdsOf(statusToSlotsMap.get(status));
+            final var slots = (BitSet) statusToSlotsMap.get(status).clone();
+            for (final var otherStatus : otherStatuses)
+                slots.or(statusToSlotsMap.get(otherStatus));
+            return accountIdsOf(slots);
+        } finally {
+            readWriteLock.readLock().unlock();
+        }
+    }
+
+    Set<String> findAllAccountIdsByPlatform(final Platform platform) {
+        final var lock = lockIndexes();
+        try {
+            return accountIdsOf(platformToSlotsMap.get(platform));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Set<String> findAllAccountIdsByApplication(final Application application) {
+        final var lock = lockIndexes();
+        try {
+            return accountIdsOf(applicationToSlotsMap.get(application));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Set<String> findAllJoinableAccountIds() {
+        final var lock = lockIndexes();
+        try {
+            return accountIdsOf(joinableSlots);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Set<String> findAllAccountIdsByPartyId(final String partyId) {
+        final var lock = lockIndexes();
+        try {
+            final var slots = partyIdToSlotsMap.get(partyId);
+            return slots == null ?
+                Set.of()
+                : accountIdsOf(slots);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Map<String, Set<String>> findAllAccountIdsGroupedByPartyId() {
+        final var lock = lockIndexes();
+        try {
+            final var partyIdToAccountIdsMap = new HashMap<String, Set<String>>(partyIdToSlotsMap.size() * 4 / 3 + 1);
+            partyIdToSlotsMap.forEach((final var partyId, final var slots) ->
+                partyIdToAccountIdsMap.put(partyId, accountIdsOf(slots))
+            );
+            return Map.copyOf(partyIdToAccountIdsMap);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Optional<Status> findOneStatusByAccountId(final String accountId) {
+        readWriteLock.readLock().lock();
+        try {
+            final var slot = accountIdToSlotMap.get(accountId);
+            return slot == null ?
+                Optional.empty()
+                : Optional.of(statuses[slot]);
+        } finally {
+            readWriteLock.readLock().unlock();
+        }
+    }
+
+    Optional<Session> findOneSessionByAccountId(final String accountId) {
+        readWriteLock.readLock().lock();
+        try {
+            final var slot = accountIdToSlotMap.get(accountId);
+            if (slot == null)
+                return Optional.empty();
+            final var session = sessions[slot];
+            final var presenceStatus = presenceStatuses[slot];
+            if (session != null || presenceStatus == null || presenceStatus.isBlank())
+                return Optional.ofNullable(session);
+        } finally {
+            readWriteLock.readLock().unlock();
+        }
+        // the session hasn't been made yet, which needs the write lock
+        readWriteLock.writeLock().lock();
+        try {
+            final var slot = accountIdToSlotMap.get(accountId);
+            return slot == null ?
+                Optional.empty()
+                : Optional.ofNullable(session(slot));
+        } finally {
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    private int occupySlot(final String accountId) {
+        final var slot = occupiedSlots.nextClearBit(0);
+        if (slot == accountIds.length) {
+            final var capacity = accountIds.length * 2;
+            accountIds = Arrays.copyOf(accountIds, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            presenceStatuses = Arrays.copyOf(presenceStatuses, capacity);
+            sessions = Arrays.copyOf(sessions, capacity);
+            indexedPlatforms = Arrays.copyOf(indexedPlatforms, capacity);
+            indexedApplications = Arrays.copyOf(indexedApplications, capacity);
+            indexedPartyIds = Arrays.copyOf(indexedPartyIds, capacity);
+        }
+        occupiedSlots.set(slot);
+        accountIdToSlotMap.put(accountId, slot);
+        accountIds[slot] = accountId;
+        return slot;
+    }
+
+    /**
+     * Catches the indexes derived from sessions up on dirty slots. Their sessions are decoded with no lock held, then
+     * the index changes are made under the write lock, which is downgraded to the read lock for the query
+     *
+     * @return the lock held, which the caller must unlock once it's done with the indexes
+     */
+    private Lock lockIndexes() {
+        final var readLock = readWriteLock.readLock();
+        readLock.lock();
+        if (dirtySlots.isEmpty())
+            return readLock;
+        final DirtySlot[] dirtySlotArray;
+        try {
+            dirtySlotArray = new DirtySlot[dirtySlots.cardinality()];
+            var dirtySlotIndex = 0;
+            for (var slot = dirtySlots.nextSetBit(0); slot >= 0; slot = dirtySlots.nextSetBit(slot + 1))
+                dirtySlotArray[dirtySlotIndex++] = new DirtySlot(slot, accountIds[slot], presenceStatuses[slot], sessions[slot]);
+        } finally {
+            readLock.unlock();
+        }
+        for (final var dirtySlot : dirtySlotArray)
+            dirtySlot.decode(metricsSink);
+        final var writeLock = readWriteLock.writeLock();
+        writeLock.lock();
+        try {
+            for (final var dirtySlot : dirtySlotArray)
+                indexDirtySlot(dirtySlot);
+            readLock.lock();
+        } finally {
+            writeLock.unlock();
+        }
+        return readLock;
+    }
+
+    /**
+     * Does nothing if the slot has been updated or given to another friend since it was decoded
+     */
+    private void indexDirtySlot(final DirtySlot dirtySlot) {
+        final var slot = dirtySlot.slot;
+        if (!dirtySlots.get(slot)
+            || !dirtySlot.accountId.equals(accountIds[slot])
+            || !Objects.equals(dirtySlot.presenceStatus, presenceStatuses[slot]))
+            return;
+        unindexSession(slot);
+        if (sessions[slot] == null)
+            sessions[slot] = dirtySlot.session;
+        if (dirtySlot.decoded) {
+            final var platform = dirtySlot.platform;
+            final var application = dirtySlot.application;
+            final var partyId = dirtySlot.partyId;
+            if (platform != null)
+                platformToSlotsMap.get(platform).set(slot);
+            if (application != null)
+                applicationToSlotsMap.get(application).set(slot);
+            if (dirtySlot.joinable)
+                joinableSlots.set(slot);
+            if (partyId != null)
+                partyIdToSlotsMap.computeIfAbsent(partyId, (final var newPartyId) -> new BitSet()).set(slot);
+            indexedPlatforms[slot] = platform;
+            indexedApplications[slot] = application;
+            indexedPartyIds[slot] = partyId;
+        }
+        dirtySlots.clear(slot);
+    }
+
+    /**
+     * Makes the slot's {@link LazySession} if it hasn't been made yet. Only called with the write lock held
+     *
+     * @return {@code null} if the friend's presence status is {@code null} or blank
+     */
+    private Session session(final int slot) {
+        var session = sessions[slot];
+        if (session == null && presenceStatuses[slot] != null) {
+            session = LazySession.newOptionalInstance(presenceStatuses[slot], metricsSink)
+                .orElse(null);
+            sessions[slot] = session;
+        }
+        return session;
+    }
+
+    private void unindexSession(final int slot) {
+        if (indexedPlatforms[slot] != null)
+            platformToSlotsMap.get(indexedPlatforms[slot]).clear(slot);
+        if (indexedApplications[slot] != null)
+            applicationToSlotsMap.get(indexedApplications[slot]).clear(slot);
+        joinableSlots.clear(slot);
+        final var partyId = indexedPartyIds[slot];
+        if (partyId != null) {
+            final var slots = partyIdToSlotsMap.get(partyId);
+            slots.clear(slot);
+            if (slots.isEmpty())
+                partyIdToSlotsMap.remove(partyId);
+        }
+        indexedPlatforms[slot] = null;
+        indexedApplications[slot] = null;
+        indexedPartyIds[slot] = null;
+    }
+
+    private Set<String> accountIdsOf(final BitSet slots) {
+        final var accountIdArray = new String[slots.cardinality()];
+        var accountIdIndex = 0;
+        for (var slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1))
+            accountIdArray[accountIdIndex++] = accountIds[slot];
+        return Set.of(accountIdArray);
+    }
+
+    /**
+     * What a dirty slot held when it was read, and what its session decoded to
+     */
+    private static final class DirtySlot {
+
+        private final int slot;
+        private final String accountId;
+        private final String presenceStatus;
+        private Session session;
+        private boolean decoded;
+        private Platform platform;
+        private Application application;
+        private boolean joinable;
+        private String partyId;
+
+        private DirtySlot(final int slot,
+                          final String accountId,
+                          final String presenceStatus,
+                          final Session session) {
+            this.slot = slot;
+            this.accountId = accountId;
+            this.presenceStatus = presenceStatus;
+            this.session = session;
+        }
+
+        private void decode(final MetricsSink metricsSink) {
+            if (session == null && presenceStatus != null)
+                session = LazySession.newOptionalInstance(presenceStatus, metricsSink)
+                    .orElse(null);
+            if (session == null)
+                return;
+            try {
+                platform = session.platform()
+                    .orElse(null);
+                application = session.application()
+                    .orElse(null);
+                joinable = session.isJoinable();
+                partyId = session.partyId()
+                    .orElse(null);
+                decoded = true;
+            } catch (final JsonException exception) {
+                LOGGER.log(Level.FINE, String.format("Couldn't index session of %s", accountId), exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.DispatchOverflowPolicy;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Spreads the handling of friend presences across lanes by account ID. Each lane is a
+ * {@link ListenerDispatchQueue} with a thread of its own, so a friend's presences are handled one at
+ * a time in the order they were received while different friends' presences are handled in parallel.
+ * A full lane blocks the thread dispatching to it, which holds back reading from the connection rather
+ * than dropping presences the friends list depends on
+ */
+final class PresenceLanes implements AutoCloseable {
+
+    private final ExecutorService executorService;
+    private final ListenerDispatchQueue[] lanes;
+
+    private PresenceLanes(final ExecutorService executorService, final ListenerDispatchQueue[] lanes) {
+        this.executorService = executorService;
+        this.lanes = lanes;
+    }
+
+    /**
+     * @param laneCount    number of lanes, and of threads to run them on
+     * @param laneCapacity maximum presences waiting in each lane
+     * @param metricsSink  records how long each presence takes to handle as {@link MetricsTimer#FRIEND_PRESENCE_HANDLING}
+     * @return a new {@link PresenceLanes} instance
+     */
+    static PresenceLanes newInstance(final int laneCount, final int laneCapacity, final MetricsSink metricsSink) {
+        if (laneCount < 1)
+            throw new IllegalArgumentException("laneCount must be greater than 0");
+        final var executorService = Executors.newFixedThreadPool(
+            laneCount,
+            ListenerDispatcher.newDaemonThreadFactory("fortnite-2-xmpp-presence-lane-")
+        );
+        final var lanes = new ListenerDispatchQueue[laneCount];
+        for (var laneIndex = 0; laneIndex < laneCount; laneIndex++)
+            lanes[laneIndex] = ListenerDispatchQueue.newInstance(
+                executorService,
+                laneCapacity,
+                DispatchOverflowPolicy.BLOCK,
+                MetricsTimer.FRIEND_PRESENCE_HANDLING,
+                metricsSink
+            );
+        return new PresenceLanes(executorService, lanes);
+    }
+
+    /**
+     * @param accountId picks the lane, so every task for the same account runs in the order dispatched
+     * @param task      run on the account's lane
+     */
+    void dispatch(final String accountId, final Runnable task) {
+        final var hashCode = accountId.hashCode();
+        lanes[Math.floorMod(hashCode ^ hashCode >>> 16, lanes.length)].dispatch(accountId, task);
+    }
+
+    /**
+     * @return number of tasks waiting in every lane
+     */
+    long queuedTaskCount() {
+        var queuedTaskCount = 0L;
+        for (final var lane : lanes)
+            queuedTaskCount += lane.size();
+        return queuedTaskCount;
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdown();
+    }
+}
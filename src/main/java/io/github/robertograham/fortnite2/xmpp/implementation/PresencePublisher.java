@@ -0,0 +1,398 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+import org.jivesoftware.smack.ConnectionListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.packet.Presence;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends the user's own presence through an {@link OutboundStanzaQueue}, with their session rendered by a
+ * {@link SessionJsonRenderer}. A presence that's the same as the last one queued isn't sent again. With a debounce
+ * window, a presence is sent straight away if the window since the last one has passed, and otherwise held until it
+ * has, being replaced by any that come after it, so however often the status is updated, at most one presence goes
+ * out per window and the last one always does. A held presence that doesn't fit in the outbound queue is held for
+ * another window rather than dropped. Whether to send is decided under the monitor, but presences are queued outside
+ * it, one thread at a time, so a caller waiting for space in the outbound queue never holds up the others. A presence
+ * offered meanwhile is held and queued by that thread, while one put waits for it to finish and queues its own. What
+ * was sent is forgotten when a new session is logged in, since the server then starts again from a plain available
+ * presence
+ */
+final class PresencePublisher implements ConnectionListener, AutoCloseable {
+
+    private static final Set<Status> AVAILABLE_PRESENCE_STATUSES = Set.of(Status.ONLINE, Status.AWAY);
+    private final XMPPConnection connection;
+    private final OutboundStanzaQueue outboundStanzaQueue;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final long debounceWindowNanos;
+    private final MetricsSink metricsSink;
+    private final SessionJsonRenderer sessionJsonRenderer;
+    private Presence.Type lastType;
+    private Presence.Mode lastMode;
+    private String lastStatusJson;
+    private final AtomicReference<CompletableFuture<Void>> lastFutureReference = new AtomicReference<>();
+    private long lastQueuedNanos;
+    private Presence pendingPresence;
+    private String pendingStatusJson;
+    private CompletableFuture<Void> pendingFuture;
+    private boolean flushScheduled;
+    private boolean enqueuing;
+    private boolean closed;
+
+    private PresencePublisher(final XMPPConnection connection,
+                              final OutboundStanzaQueue outboundStanzaQueue,
+                              final ScheduledExecutorService scheduledExecutorService,
+                              final Duration debounceWindow,
+                              final String accountId,
+                              final MetricsSink metricsSink) {
+        this.connection = connection;
+        this.outboundStanzaQueue = outboundStanzaQueue;
+        this.scheduledExecutorService = scheduledExecutorService;
+        debounceWindowNanos = debounceWindow.toNanos();
+        this.metricsSink = metricsSink;
+        sessionJsonRenderer = SessionJsonRenderer.newInstance(accountId);
+    }
+
+    /**
+     * @param connection               the connection presences are sent over
+     * @param outboundStanzaQueue      queues presences to be sent
+     * @param scheduledExecutorService sends held presences, only used if {@code debounceWindow} is positive
+     * @param debounceWindow           least time between presences, {@link Duration#ZERO} to send every change
+     *                                 straight away
+     * @param accountId                the user's account ID, which their party details are sent as coming from
+     * @param metricsSink              counts presences that weren't sent as {@link MetricsCounter#PRESENCE_UPDATES_SUPPRESSED}
+     * @return a new {@link PresencePublisher} instance listening to {@code connection}
+     */
+    static PresencePublisher newInstance(final XMPPConnection connection,
+                                         final OutboundStanzaQueue outboundStanzaQueue,
+                                         final ScheduledExecutorService scheduledExecutorService,
+                                         final Duration debounceWindow,
+                                         final String accountId,
+                                         final MetricsSink metricsSink) {
+        final var presencePublisher = new PresencePublisher(
+            connection,
+            outboundStanzaQueue,
+            scheduledExecutorService,
+            debounceWindow,
+            accountId,
+            metricsSink
+        );
+        connection.addConnectionListener(presencePublisher);
+        return presencePublisher;
+    }
+
+    /**
+     * @param status  how the user appears to friends
+     * @param session the user's session, {@code null} to send none
+     * @return a {@link CompletableFuture} that completes once the presence has been written, or the one it was
+     * replaced by or found to be the same as. Completes exceptionally with a {@link RejectedExecutionException} if
+     * the outbound queue is full
+     */
+    CompletableFuture<Void> offer(final Status status, final Session session) {
+        try {
+            return publish(status, session, outboundStanzaQueue::offer, false);
+        } catch (final InterruptedException exception) {
+            // offering never waits
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Like {@link #offer(Status, Session)}, but a presence sent straight away waits for space in the outbound queue.
+     * If another thread is queueing a presence, this waits for it to finish and then queues its own, rather than
+     * leaving it to be offered by that thread
+     *
+     * @throws InterruptedException if interrupted while waiting for space
+     */
+    CompletableFuture<Void> put(final Status status, final Session session) throws InterruptedException {
+        return publish(status, session, outboundStanzaQueue::put, true);
+    }
+
+    /**
+     * @param blocking whether {@code enqueue} waits for space, in which case the presence is never handed to another
+     *                 thread to queue
+     */
+    private CompletableFuture<Void> publish(final Status status,
+                                           final Session session,
+                                           final Enqueue enqueue,
+                                           final boolean blocking) throws InterruptedException {
+        final var presence = new Presence(AVAILABLE_PRESENCE_STATUSES.contains(status) ?
+            Presence.Type.available
+            : Presence.Type.unavailable);
+        if (Status.AWAY == status)
+            presence.setMode(Presence.Mode.away);
+        final Reservation reservation;
+        synchronized (this) {
+            while (blocking && enqueuing && !closed)
+                wait();
+            final var statusJson = session == null ?
+                null
+                : sessionJsonRenderer.render(session);
+            presence.setStatus(statusJson);
+            if (closed)
+                reservation = null;
+            else {
+                final var lastFuture = lastFutureReference.get();
+                if (lastFuture != null
+                    && lastType == presence.getType()
+                    && lastMode == presence.getMode()
+                    && Objects.equals(lastStatusJson, statusJson)) {
+                    // a different presence may be held, but the last one queued is what should stay
+                    if (pendingFuture != null) {
+                        pendingFuture.complete(null);
+                        clearPending();
+                    }
+                    metricsSink.incrementCounter(MetricsCounter.PRESENCE_UPDATES_SUPPRESSED);
+                    return lastFuture;
+                }
+                if (pendingFuture != null) {
+                    pendingPresence = presence;
+                    pendingStatusJson = statusJson;
+                    metricsSink.incrementCounter(MetricsCounter.PRESENCE_UPDATES_SUPPRESSED);
+                    return pendingFuture;
+                }
+                // held for the thread queueing, so presences are queued in the order they were published. Only offered
+                // presences get here, since a blocking caller has waited for that thread to finish
+                if (enqueuing)
+                    return hold(presence, statusJson);
+                final var nowNanos = System.nanoTime();
+                final var waitNanos = lastFuture == null || debounceWindowNanos == 0L ?
+                    0L
+                    : lastQueuedNanos + debounceWindowNanos - nowNanos;
+                // if the scheduler is shutting down along with the client, the presence is sent straight away
+                if (waitNanos > 0L && scheduleFlush(waitNanos))
+                    return hold(presence, statusJson);
+                reservation = reserve(presence, statusJson, nowNanos, new CompletableFuture<>());
+            }
+        }
+        if (reservation == null)
+            return enqueue.enqueue(presence, () -> connection.sendStanza(presence));
+        send(reservation, enqueue, false);
+        return reservation.future;
+    }
+
+    private void flush() {
+        final Reservation reservation;
+        synchronized (this) {
+            flushScheduled = false;
+            // a thread queueing will queue the held presence once it's done
+            if (pendingFuture == null || enqueuing)
+                return;
+            reservation = reserve(pendingPresence, pendingStatusJson, System.nanoTime(), pendingFuture);
+            clearPending();
+        }
+        try {
+            send(reservation, outboundStanzaQueue::offer, true);
+        } catch (final InterruptedException exception) {
+            // offering never waits
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Queues {@code reservation}'s presence outside the monitor, then any presence held while it was being queued
+     *
+     * @param retry whether to hold the presence again for another window if the outbound queue is full, rather than
+     *              failing it
+     */
+    private void send(final Reservation reservation, final Enqueue enqueue, final boolean retry) throws InterruptedException {
+        try {
+            forward(reservation, enqueue.enqueue(reservation.presence, () -> connection.sendStanza(reservation.presence)), retry);
+        } catch (final InterruptedException | RuntimeException exception) {
+            reservation.future.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            while (true) {
+                final Reservation heldReservation;
+                synchronized (this) {
+                    heldReservation = reserveHeld();
+                }
+                if (heldReservation == null)
+                    break;
+                forward(
+                    heldReservation,
+                    outboundStanzaQueue.offer(heldReservation.presence, () -> connection.sendStanza(heldReservation.presence)),
+                    debounceWindowNanos > 0L
+                );
+            }
+        }
+    }
+
+    private void forward(final Reservation reservation, final CompletableFuture<Void> queuedFuture, final boolean retry) {
+        queuedFuture.whenComplete((final var result, final var throwable) -> {
+            if (throwable == null)
+                reservation.future.complete(null);
+            else if (retry && throwable instanceof RejectedExecutionException)
+                retryLater(reservation, throwable);
+            else
+                reservation.future.completeExceptionally(throwable);
+        });
+    }
+
+    /**
+     * @return the presence held while another was being queued, if it can be sent now, otherwise {@code null} and
+     * the next thread to publish queues instead
+     */
+    private Reservation reserveHeld() {
+        if (closed || pendingFuture == null || flushScheduled) {
+            enqueuing = false;
+            notifyAll();
+            return null;
+        }
+        final var nowNanos = System.nanoTime();
+        final var waitNanos = lastFutureReference.get() == null || debounceWindowNanos == 0L ?
+            0L
+            : lastQueuedNanos + debounceWindowNanos - nowNanos;
+        if (waitNanos > 0L && scheduleFlush(waitNanos)) {
+            enqueuing = false;
+            notifyAll();
+            return null;
+        }
+        final var reservation = reserve(pendingPresence, pendingStatusJson, nowNanos, pendingFuture);
+        clearPending();
+        return reservation;
+    }
+
+    /**
+     * Holds a presence that didn't fit in the outbound queue for another window, unless a later one is held already,
+     * in which case it completes along with that one
+     */
+    private void retryLater(final Reservation reservation, final Throwable throwable) {
+        final CompletableFuture<Void> laterFuture;
+        synchronized (this) {
+            // it wasn't sent, so mustn't stop the same presence being sent again
+            lastFutureReference.compareAndSet(reservation.future, null);
+            if (pendingFuture == null) {
+                if (!closed && scheduleFlush(debounceWindowNanos)) {
+                    pendingPresence = reservation.presence;
+                    pendingStatusJson = reservation.statusJson;
+                    pendingFuture = reservation.future;
+                    return;
+                }
+                laterFuture = null;
+            } else
+                laterFuture = pendingFuture;
+        }
+        if (laterFuture == null)
+            reservation.future.completeExceptionally(throwable);
+        else
+            laterFuture.whenComplete((final var result, final var laterThrowable) -> {
+                if (laterThrowable == null)
+                    reservation.future.complete(null);
+                else
+                    reservation.future.completeExceptionally(laterThrowable);
+            });
+    }
+
+    private boolean scheduleFlush(final long delayNanos) {
+        try {
+            scheduledExecutorService.schedule(this::flush, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (final RejectedExecutionException exception) {
+            return false;
+        }
+        flushScheduled = true;
+        return true;
+    }
+
+    private CompletableFuture<Void> hold(final Presence presence, final String statusJson) {
+        pendingPresence = presence;
+        pendingStatusJson = statusJson;
+        pendingFuture = new CompletableFuture<>();
+        return pendingFuture;
+    }
+
+    /**
+     * Records {@code presence} as the last one queued before it actually is, so the thread doing so can queue it
+     * without holding the monitor
+     */
+    private Reservation reserve(final Presence presence,
+                                final String statusJson,
+                                final long nowNanos,
+                                final CompletableFuture<Void> future) {
+        lastType = presence.getType();
+        lastMode = presence.getMode();
+        lastStatusJson = statusJson;
+        lastQueuedNanos = nowNanos;
+        lastFutureReference.set(future);
+        enqueuing = true;
+        // a presence that wasn't sent mustn't stop the same one being sent again. Done without the lock, since the
+        // future can be completed while it's held
+        future.whenComplete((final var result, final var throwable) -> {
+            if (throwable != null)
+                lastFutureReference.compareAndSet(future, null);
+        });
+        return new Reservation(presence, statusJson, future);
+    }
+
+    private void clearPending() {
+        pendingPresence = null;
+        pendingStatusJson = null;
+        pendingFuture = null;
+    }
+
+    @Override
+    public void connected(final XMPPConnection connection) {
+    }
+
+    @Override
+    public void authenticated(final XMPPConnection connection, final boolean resumed) {
+        if (!resumed)
+            lastFutureReference.set(null);
+    }
+
+    @Override
+    public void connectionClosed() {
+    }
+
+    @Override
+    public void connectionClosedOnError(final Exception exception) {
+    }
+
+    /**
+     * Fails any presence being held. Presences published afterwards are handed straight to the outbound queue
+     */
+    @Override
+    public void close() {
+        connection.removeConnectionListener(this);
+        final CompletableFuture<Void> future;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            future = pendingFuture;
+            clearPending();
+        }
+        if (future != null)
+            future.completeExceptionally(new IOException("Presence publisher is closed"));
+    }
+
+    private static final class Reservation {
+
+        private final Presence presence;
+        private final String statusJson;
+        private final CompletableFuture<Void> future;
+
+        private Reservation(final Presence presence, final String statusJson, final CompletableFuture<Void> future) {
+            this.presence = presence;
+            this.statusJson = statusJson;
+            this.future = future;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Enqueue {
+
+        CompletableFuture<Void> enqueue(Presence presence, OutboundStanzaQueue.Send send) throws InterruptedException;
+    }
+}
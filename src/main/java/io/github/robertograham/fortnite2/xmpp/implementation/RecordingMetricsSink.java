@@ -0,0 +1,149 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.TimerSnapshot;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsGauge;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link MetricsSink} that keeps running totals in memory. Counters are {@link LongAdder}s and timers are
+ * fixed-size histograms, so recording never allocates. A gauge registered by several clients reads as the
+ * sum of their values. Create using {@link #newInstance()}, register with
+ * {@link DefaultFortniteXmpp.Builder#setMetricsSink(MetricsSink)}, then read it directly or through JMX
+ *
+ * @since 2.1.0
+ */
+public final class RecordingMetricsSink implements MetricsSink {
+
+    private final Map<MetricsCounter, LongAdder> counterToLongAdderMap;
+    private final Map<MetricsTimer, LogLinearHistogram> timerToHistogramMap;
+    private final Map<MetricsGauge, List<LongSupplier>> gaugeToValueSuppliersMap;
+
+    private RecordingMetricsSink() {
+        counterToLongAdderMap = new EnumMap<>(MetricsCounter.class);
+        for (final var metricsCounter : MetricsCounter.values())
+            counterToLongAdderMap.put(metricsCounter, new LongAdder());
+        timerToHistogramMap = new EnumMap<>(MetricsTimer.class);
+        for (final var metricsTimer : MetricsTimer.values())
+            timerToHistogramMap.put(metricsTimer, LogLinearHistogram.newInstance());
+        gaugeToValueSuppliersMap = new EnumMap<>(MetricsGauge.class);
+        for (final var metricsGauge : MetricsGauge.values())
+            gaugeToValueSuppliersMap.put(metricsGauge, new CopyOnWriteArrayList<>());
+    }
+
+    /**
+     * @return a new {@link RecordingMetricsSink} instance with nothing recorded
+     * @since 2.1.0
+     */
+    public static RecordingMetricsSink newInstance() {
+        return new RecordingMetricsSink();
+    }
+
+    @Override
+    public void incrementCounter(final MetricsCounter metricsCounter) {
+        counterToLongAdderMap.get(metricsCounter).increment();
+    }
+
+    @Override
+    public void incrementCounter(final MetricsCounter metricsCounter, final long amount) {
+        counterToLongAdderMap.get(metricsCounter).add(amount);
+    }
+
+    @Override
+    public void recordNanos(final MetricsTimer metricsTimer, final long nanos) {
+        timerToHistogramMap.get(metricsTimer).record(nanos);
+    }
+
+    @Override
+    public void addGauge(final MetricsGauge metricsGauge, final LongSupplier valueSupplier) {
+        gaugeToValueSuppliersMap.get(metricsGauge).add(valueSupplier);
+    }
+
+    @Override
+    public void removeGauge(final MetricsGauge metricsGauge, final LongSupplier valueSupplier) {
+        gaugeToValueSuppliersMap.get(metricsGauge).remove(valueSupplier);
+    }
+
+    /**
+     * @param metricsCounter the counter to read
+     * @return the total it's been incremented by
+     * @throws NullPointerException if {@code metricsCounter} is {@code null}
+     * @since 2.1.0
+     */
+    public long count(final MetricsCounter metricsCounter) {
+        Objects.requireNonNull(metricsCounter, "metricsCounter cannot be null");
+        return counterToLongAdderMap.get(metricsCounter).sum();
+    }
+
+    /**
+     * @param metricsTimer the timer to read
+     * @return a snapshot of the durations recorded so far
+     * @throws NullPointerException if {@code metricsTimer} is {@code null}
+     * @since 2.1.0
+     */
+    public TimerSnapshot timer(final MetricsTimer metricsTimer) {
+        Objects.requireNonNull(metricsTimer, "metricsTimer cannot be null");
+        return timerToHistogramMap.get(metricsTimer).snapshot();
+    }
+
+    /**
+     * @param metricsGauge the gauge to read
+     * @return the sum of the current values of every client that registered it, {@code 0} if none have
+     * @throws NullPointerException if {@code metricsGauge} is {@code null}
+     * @since 2.1.0
+     */
+    public long gauge(final MetricsGauge metricsGauge) {
+        Objects.requireNonNull(metricsGauge, "metricsGauge cannot be null");
+        var value = 0L;
+        for (final var valueSupplier : gaugeToValueSuppliersMap.get(metricsGauge))
+            value += valueSupplier.getAsLong();
+        return value;
+    }
+
+    /**
+     * Exposes every counter, gauge and timer as a read-only attribute of an MBean registered with the platform
+     * MBean server. Timers are exposed as their count, mean, 50th, 99th percentile and max in nanoseconds
+     *
+     * @param objectName name to register the MBean under
+     * @throws NullPointerException  if {@code objectName} is {@code null}
+     * @throws IllegalStateException if the MBean couldn't be registered
+     * @since 2.1.0
+     */
+    public void registerMBean(final ObjectName objectName) {
+        Objects.requireNonNull(objectName, "objectName cannot be null");
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(MetricsMBean.newInstance(this), objectName);
+        } catch (final JMException exception) {
+            throw new IllegalStateException("Error occurred when registering metrics MBean", exception);
+        }
+    }
+
+    /**
+     * @param objectName name the MBean was registered under
+     * @throws NullPointerException  if {@code objectName} is {@code null}
+     * @throws IllegalStateException if the MBean couldn't be unregistered
+     * @since 2.1.0
+     */
+    public void unregisterMBean(final ObjectName objectName) {
+        Objects.requireNonNull(objectName, "objectName cannot be null");
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .unregisterMBean(objectName);
+        } catch (final JMException exception) {
+            throw new IllegalStateException("Error occurred when unregistering metrics MBean", exception);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Renders {@link Session} instances into the presence status JSON {@link JsonToDefaultSessionParser} reads. The JSON
+ * is kept as fragments, one per field or group of fields that change together, alongside the values each was rendered
+ * from. Rendering a session only re-renders the fragments whose values changed since the last one and joins the
+ * fragments again, and a session that's the same as the last one gets back the very same {@link String}, so callers
+ * can tell nothing changed by identity. Not thread-safe
+ */
+final class SessionJsonRenderer {
+
+    private static final String[] FLAGS_FRAGMENTS = new String[8];
+    private static final int PLAYING_FLAG = 1 << 2;
+    private static final int JOINABLE_FLAG = 1 << 1;
+    private static final int VOICE_SUPPORT_FLAG = 1;
+
+    static {
+        for (var flags = 0; flags < FLAGS_FRAGMENTS.length; flags++)
+            FLAGS_FRAGMENTS[flags] = ",\"bIsPlaying\":" + ((flags & PLAYING_FLAG) != 0) +
+                ",\"bIsJoinable\":" + ((flags & JOINABLE_FLAG) != 0) +
+                ",\"bHasVoiceSupport\":" + ((flags & VOICE_SUPPORT_FLAG) != 0);
+    }
+
+    private final String sourceId;
+    private String json;
+    private String status;
+    private String statusFragment;
+    private int flags = -1;
+    private String id;
+    private String idFragment;
+    private String partyId;
+    private String partyKey;
+    private Platform platform;
+    private Application application;
+    private String partyFragment;
+    private Optional<Integer> partyMemberCount;
+    private String partyMemberCountFragment;
+    private Optional<Integer> maxPartyMemberCount;
+    private String maxPartyMemberCountFragment;
+    private Optional<Integer> remainingPlayerCount;
+    private String remainingPlayerCountFragment;
+
+    private SessionJsonRenderer(final String sourceId) {
+        this.sourceId = sourceId;
+    }
+
+    /**
+     * @param sourceId account ID the party details are said to come from, {@code null} to leave it out
+     * @return a new {@link SessionJsonRenderer} instance that hasn't rendered anything yet
+     */
+    static SessionJsonRenderer newInstance(final String sourceId) {
+        return new SessionJsonRenderer(sourceId);
+    }
+
+    /**
+     * @param session the session to render
+     * @return {@code session} as presence status JSON, the same instance as last time if nothing changed
+     */
+    String render(final Session session) {
+        var changed = json == null;
+        final var newStatus = session.status();
+        if (statusFragment == null || !Objects.equals(status, newStatus)) {
+            status = newStatus;
+            statusFragment = appendString(new StringBuilder("{\"Status\":"), newStatus).toString();
+            changed = true;
+        }
+        final var newFlags = (session.isPlaying() ? PLAYING_FLAG : 0)
+            | (session.isJoinable() ? JOINABLE_FLAG : 0)
+            | (session.hasVoiceSupport() ? VOICE_SUPPORT_FLAG : 0);
+        if (flags != newFlags) {
+            flags = newFlags;
+            changed = true;
+        }
+        final var newId = session.id();
+        if (idFragment == null || !Objects.equals(id, newId)) {
+            id = newId;
+            idFragment = appendString(new StringBuilder(",\"SessionId\":"), newId).toString();
+            changed = true;
+        }
+        final var newPartyId = session.partyId()
+            .orElse(null);
+        final var newPartyKey = session.partyKey()
+            .orElse(null);
+        final var newPlatform = session.platform()
+            .orElse(null);
+        final var newApplication = session.application()
+            .orElse(null);
+        if (json == null
+            || !Objects.equals(partyId, newPartyId)
+            || !Objects.equals(partyKey, newPartyKey)
+            || platform != newPlatform
+            || application != newApplication) {
+            partyId = newPartyId;
+            partyKey = newPartyKey;
+            platform = newPlatform;
+            application = newApplication;
+            partyFragment = renderPartyFragment();
+            changed = true;
+        }
+        final var newPartyMemberCount = session.partyMemberCount();
+        if (!newPartyMemberCount.equals(partyMemberCount)) {
+            partyMemberCount = newPartyMemberCount;
+            partyMemberCountFragment = renderCountFragment("Event_PartySize_s", newPartyMemberCount);
+            changed = true;
+        }
+        final var newMaxPartyMemberCount = session.maxPartyMemberCount();
+        if (!newMaxPartyMemberCount.equals(maxPartyMemberCount)) {
+            maxPartyMemberCount = newMaxPartyMemberCount;
+            maxPartyMemberCountFragment = renderCountFragment("Event_PartyMaxSize_s", newMaxPartyMemberCount);
+            changed = true;
+        }
+        final var newRemainingPlayerCount = session.remainingPlayerCount();
+        if (!newRemainingPlayerCount.equals(remainingPlayerCount)) {
+            remainingPlayerCount = newRemainingPlayerCount;
+            remainingPlayerCountFragment = renderCountFragment("Event_PlayersAlive_s", newRemainingPlayerCount);
+            changed = true;
+        }
+        if (changed)
+            json = join();
+        return json;
+    }
+
+    private String join() {
+        final var stringBuilder = new StringBuilder(json == null ?
+            256
+            : json.length() + 32)
+            .append(statusFragment)
+            .append(FLAGS_FRAGMENTS[flags])
+            .append(idFragment)
+            .append(",\"Properties\":{");
+        var separator = "";
+        for (final var propertyFragment : new String[]{partyFragment, partyMemberCountFragment, maxPartyMemberCountFragment, remainingPlayerCountFragment})
+            if (propertyFragment != null) {
+                stringBuilder.append(separator)
+                    .append(propertyFragment);
+                separator = ",";
+            }
+        return stringBuilder.append("}}")
+            .toString();
+    }
+
+    private String renderPartyFragment() {
+        if (partyId == null && partyKey == null && platform == null && application == null)
+            return null;
+        final var stringBuilder = new StringBuilder("\"party.joininfodata.286331153_j\":{");
+        var separator = "";
+        if (sourceId != null) {
+            appendString(stringBuilder.append("\"sourceId\":"), sourceId);
+            separator = ",";
+        }
+        if (platform != null) {
+            appendString(stringBuilder.append(separator).append("\"sourcePlatform\":"), platform.code());
+            separator = ",";
+        }
+        if (partyId != null) {
+            appendString(stringBuilder.append(separator).append("\"partyId\":"), partyId);
+            separator = ",";
+        }
+        if (partyKey != null) {
+            appendString(stringBuilder.append(separator).append("\"key\":"), partyKey);
+            separator = ",";
+        }
+        if (application != null)
+            appendString(stringBuilder.append(separator).append("\"appId\":"), application.code());
+        return stringBuilder.append('}')
+            .toString();
+    }
+
+    /**
+     * Counts are sent as strings, like the game sends them
+     */
+    private static String renderCountFragment(final String key, final Optional<Integer> countOptional) {
+        return countOptional.map((final var count) -> "\"" + key + "\":\"" + count + "\"")
+            .orElse(null);
+    }
+
+    private static StringBuilder appendString(final StringBuilder stringBuilder, final String string) {
+        if (string == null)
+            return stringBuilder.append("null");
+        stringBuilder.append('"');
+        for (var index = 0; index < string.length(); index++) {
+            final var character = string.charAt(index);
+            switch (character) {
+                case '"':
+                    stringBuilder.append("\\\"");
+                    break;
+                case '\\':
+                    stringBuilder.append("\\\\");
+                    break;
+                case '\n':
+                    stringBuilder.append("\\n");
+                    break;
+                case '\r':
+                    stringBuilder.append("\\r");
+                    break;
+                case '\t':
+                    stringBuilder.append("\\t");
+                    break;
+                default:
+                    if (character < 0x20)
+                        stringBuilder.append(String.format("\\u%04x", (int) character));
+                    else
+                        stringBuilder.append(character);
+            }
+        }
+        return stringBuilder.append('"');
+    }
+}
@@ -0,0 +1,380 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.filter.MessageTypeFilter;
+import org.jivesoftware.smack.filter.OrFilter;
+import org.jivesoftware.smack.filter.StanzaFilter;
+import org.jivesoftware.smack.filter.StanzaTypeFilter;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jxmpp.jid.impl.JidCreate;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the chat messages and presences a connection receives to an append-only file, so the traffic can be
+ * replayed later with {@link Reader}. Each stanza is appended as a length-prefixed record holding the time it was
+ * received in nanoseconds since the epoch, its kind, its type and its sender, status or body. Records are encoded
+ * into a buffer that's written out when it fills up, when {@link #flushEvery(ScheduledExecutorService, Duration)}
+ * says so and when the journal is closed, so recording costs a copy rather than a write per stanza. A journal
+ * that's reopened is appended to, after cutting off any record a crash cut short, and one a crash left shorter than
+ * its header is started again. If writing fails, recording stops and the failure is logged
+ */
+final class StanzaJournal implements StanzaListener, AutoCloseable {
+
+    /**
+     * The stanzas a journal records
+     */
+    static final StanzaFilter STANZA_FILTER = new OrFilter(StanzaTypeFilter.PRESENCE, MessageTypeFilter.CHAT);
+    private static final Logger LOGGER = Logger.getLogger(StanzaJournal.class.getName());
+    private static final int MAGIC = 0x464E534A;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 2 * Integer.BYTES;
+    private static final int RECORD_HEADER_LENGTH = Integer.BYTES + Long.BYTES + 3;
+    private static final int MIN_RECORD_LENGTH = RECORD_HEADER_LENGTH - Integer.BYTES + 2 * Integer.BYTES;
+    private static final int BUFFER_CAPACITY = 64 * 1_024;
+    private static final byte PRESENCE_RECORD = 1;
+    private static final byte MESSAGE_RECORD = 2;
+    private static final byte NO_MODE = -1;
+    private static final int NULL_STRING_LENGTH = -1;
+    private final Path path;
+    private final FileChannel fileChannel;
+    private final ByteBuffer byteBuffer;
+    private final long startEpochNanos;
+    private final long startNanos;
+    private ScheduledFuture<?> flushScheduledFuture;
+    private boolean closed;
+
+    private StanzaJournal(final Path path, final FileChannel fileChannel) {
+        this.path = path;
+        this.fileChannel = fileChannel;
+        byteBuffer = ByteBuffer.allocate(BUFFER_CAPACITY);
+        startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @param path the file to record to. Created along with its directory if it doesn't exist
+     * @return a new {@link StanzaJournal} instance appending to {@code path}
+     * @throws IOException if {@code path} can't be opened or isn't a journal
+     */
+    static StanzaJournal newInstance(final Path path) throws IOException {
+        final var parentPath = path.toAbsolutePath()
+            .getParent();
+        if (parentPath != null)
+            Files.createDirectories(parentPath);
+        final var fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final var header = ByteBuffer.allocate(HEADER_LENGTH);
+            final var size = fileChannel.size();
+            // a crash between creating the file and writing its header leaves it shorter than the header
+            if (size < HEADER_LENGTH) {
+                if (size > 0L) {
+                    LOGGER.log(Level.WARNING, String.format("%s is shorter than a stanza journal header, starting it again", path));
+                    fileChannel.truncate(0L);
+                }
+                header.putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .flip();
+                while (header.hasRemaining())
+                    fileChannel.write(header);
+            } else {
+                while (header.hasRemaining())
+                    if (fileChannel.read(header, header.position()) < 0)
+                        throw new IOException(String.format("%s isn't a stanza journal", path));
+                header.flip();
+                if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION)
+                    throw new IOException(String.format("%s isn't a stanza journal", path));
+                fileChannel.truncate(endOfLastRecord(fileChannel));
+            }
+            fileChannel.position(fileChannel.size());
+        } catch (final IOException | RuntimeException exception) {
+            fileChannel.close();
+            throw exception;
+        }
+        return new StanzaJournal(path, fileChannel);
+    }
+
+    /**
+     * Steps over the records from one length to the next, so a record cut short by a crash can be cut off rather than
+     * having records appended after it
+     */
+    private static long endOfLastRecord(final FileChannel fileChannel) throws IOException {
+        final var size = fileChannel.size();
+        final var lengthByteBuffer = ByteBuffer.allocate(Integer.BYTES);
+        var position = (long) HEADER_LENGTH;
+        while (position + Integer.BYTES <= size) {
+            lengthByteBuffer.clear();
+            while (lengthByteBuffer.hasRemaining())
+                fileChannel.read(lengthByteBuffer, position + lengthByteBuffer.position());
+            final var recordLength = lengthByteBuffer.getInt(0);
+            if (recordLength < MIN_RECORD_LENGTH || position + Integer.BYTES + recordLength > size)
+                break;
+            position += Integer.BYTES + recordLength;
+        }
+        return position;
+    }
+
+    /**
+     * @param path a file recorded to by a {@link StanzaJournal}
+     * @return a {@link Reader} of the journal at {@code path}, in the order the stanzas were received
+     * @throws IOException if {@code path} can't be opened or isn't a journal
+     */
+    static Reader newReader(final Path path) throws IOException {
+        final var dataInputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_CAPACITY));
+        try {
+            if (dataInputStream.readInt() != MAGIC || dataInputStream.readInt() != FORMAT_VERSION)
+                throw new IOException(String.format("%s isn't a stanza journal", path));
+        } catch (final IOException exception) {
+            dataInputStream.close();
+            throw exception;
+        }
+        return new Reader(dataInputStream);
+    }
+
+    /**
+     * @param scheduledExecutorService runs the flushes until the journal is closed
+     * @param interval                 most time a record spends in the buffer while the connection is quiet
+     */
+    synchronized void flushEvery(final ScheduledExecutorService scheduledExecutorService, final Duration interval) {
+        if (closed)
+            return;
+        final var intervalNanos = interval.toNanos();
+        flushScheduledFuture = scheduledExecutorService.scheduleWithFixedDelay(this::flush, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized void processStanza(final Stanza stanza) {
+        if (closed)
+            return;
+        final var receivedEpochNanos = startEpochNanos + System.nanoTime() - startNanos;
+        final byte kind;
+        final byte type;
+        final byte mode;
+        final String text;
+        if (stanza instanceof Presence) {
+            final var presence = (Presence) stanza;
+            kind = PRESENCE_RECORD;
+            type = (byte) presence.getType()
+                .ordinal();
+            mode = presence.getMode() == null ?
+                NO_MODE
+                : (byte) presence.getMode()
+                .ordinal();
+            text = presence.getStatus();
+        } else if (stanza instanceof Message) {
+            final var message = (Message) stanza;
+            kind = MESSAGE_RECORD;
+            type = (byte) message.getType()
+                .ordinal();
+            mode = NO_MODE;
+            text = message.getBody();
+        } else
+            return;
+        final var fromBytes = stanza.getFrom() == null ?
+            null
+            : stanza.getFrom()
+            .toString()
+            .getBytes(StandardCharsets.UTF_8);
+        final var textBytes = text == null ?
+            null
+            : text.getBytes(StandardCharsets.UTF_8);
+        final var recordLength = RECORD_HEADER_LENGTH + encodedLength(fromBytes) + encodedLength(textBytes);
+        try {
+            if (byteBuffer.remaining() < recordLength)
+                writeBuffer();
+            final var recordByteBuffer = recordLength > byteBuffer.capacity() ?
+                ByteBuffer.allocate(recordLength)
+                : byteBuffer;
+            recordByteBuffer.putInt(recordLength - Integer.BYTES)
+                .putLong(receivedEpochNanos)
+                .put(kind)
+                .put(type)
+                .put(mode);
+            putBytes(recordByteBuffer, fromBytes);
+            putBytes(recordByteBuffer, textBytes);
+            if (recordByteBuffer != byteBuffer) {
+                recordByteBuffer.flip();
+                while (recordByteBuffer.hasRemaining())
+                    fileChannel.write(recordByteBuffer);
+            }
+        } catch (final IOException exception) {
+            LOGGER.log(Level.WARNING, String.format("Couldn't record to %s, recording has stopped", path), exception);
+            close();
+        }
+    }
+
+    private static int encodedLength(final byte[] bytes) {
+        return Integer.BYTES + (bytes == null ?
+            0
+            : bytes.length);
+    }
+
+    private static void putBytes(final ByteBuffer byteBuffer, final byte[] bytes) {
+        if (bytes == null)
+            byteBuffer.putInt(NULL_STRING_LENGTH);
+        else
+            byteBuffer.putInt(bytes.length)
+                .put(bytes);
+    }
+
+    /**
+     * Writes out the buffered records
+     */
+    synchronized void flush() {
+        if (closed)
+            return;
+        try {
+            writeBuffer();
+        } catch (final IOException exception) {
+            LOGGER.log(Level.WARNING, String.format("Couldn't record to %s, recording has stopped", path), exception);
+            close();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        byteBuffer.flip();
+        try {
+            while (byteBuffer.hasRemaining())
+                fileChannel.write(byteBuffer);
+        } finally {
+            byteBuffer.clear();
+        }
+    }
+
+    /**
+     * Writes out the buffered records and closes the file. Stanzas received afterwards are ignored
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (flushScheduledFuture != null)
+            flushScheduledFuture.cancel(false);
+        try (fileChannel) {
+            writeBuffer();
+        } catch (final IOException exception) {
+            LOGGER.log(Level.WARNING, String.format("Couldn't finish recording to %s", path), exception);
+        }
+    }
+
+    /**
+     * Reads a journal back as the stanzas that were recorded, with only what was recorded set. A record cut short by
+     * a crash ends the journal
+     */
+    static final class Reader implements AutoCloseable {
+
+        private final DataInputStream dataInputStream;
+
+        private Reader(final DataInputStream dataInputStream) {
+            this.dataInputStream = dataInputStream;
+        }
+
+        /**
+         * @return the next record, or {@code null} at the end of the journal
+         * @throws IOException if the journal can't be read or a record is corrupt
+         */
+        Entry next() throws IOException {
+            final byte[] record;
+            try {
+                final var recordLength = dataInputStream.readInt();
+                if (recordLength < MIN_RECORD_LENGTH)
+                    throw new IOException(String.format("Record length %d is too short", recordLength));
+                record = new byte[recordLength];
+                dataInputStream.readFully(record);
+            } catch (final EOFException exception) {
+                return null;
+            }
+            final var recordByteBuffer = ByteBuffer.wrap(record);
+            try {
+                final var receivedEpochNanos = recordByteBuffer.getLong();
+                final var kind = recordByteBuffer.get();
+                final var type = recordByteBuffer.get();
+                final var mode = recordByteBuffer.get();
+                final var from = getString(recordByteBuffer);
+                final var text = getString(recordByteBuffer);
+                final Stanza stanza;
+                if (PRESENCE_RECORD == kind) {
+                    final var presence = new Presence(Presence.Type.values()[type]);
+                    if (NO_MODE != mode)
+                        presence.setMode(Presence.Mode.values()[mode]);
+                    presence.setStatus(text);
+                    stanza = presence;
+                } else if (MESSAGE_RECORD == kind) {
+                    final var message = new Message();
+                    message.setType(Message.Type.values()[type]);
+                    message.setBody(text);
+                    stanza = message;
+                } else
+                    throw new IOException(String.format("Record kind %d is unknown", kind));
+                if (from != null)
+                    stanza.setFrom(JidCreate.from(from));
+                return new Entry(receivedEpochNanos, stanza);
+            } catch (final BufferUnderflowException | IndexOutOfBoundsException exception) {
+                throw new IOException("Record is corrupt", exception);
+            }
+        }
+
+        private static String getString(final ByteBuffer byteBuffer) throws IOException {
+            final var length = byteBuffer.getInt();
+            if (NULL_STRING_LENGTH == length)
+                return null;
+            if (length < 0 || length > byteBuffer.remaining())
+                throw new IOException(String.format("String length %d is out of bounds", length));
+            final var string = new String(byteBuffer.array(), byteBuffer.position(), length, StandardCharsets.UTF_8);
+            byteBuffer.position(byteBuffer.position() + length);
+            return string;
+        }
+
+        @Override
+        public void close() throws IOException {
+            dataInputStream.close();
+        }
+    }
+
+    /**
+     * A recorded stanza and when it was received
+     */
+    static final class Entry {
+
+        private final long receivedEpochNanos;
+        private final Stanza stanza;
+
+        private Entry(final long receivedEpochNanos, final Stanza stanza) {
+            this.receivedEpochNanos = receivedEpochNanos;
+            this.stanza = stanza;
+        }
+
+        /**
+         * @return when the stanza was received, in nanoseconds since the epoch
+         */
+        long receivedEpochNanos() {
+            return receivedEpochNanos;
+        }
+
+        /**
+         * @return a {@link Presence} or {@link Message}
+         */
+        Stanza stanza() {
+            return stanza;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smackx.ping.packet.Ping;
+
+/**
+ * Counts the stanzas an XMPP connection receives and writes, and times keep-alive pings.
+ * Counting is done by the listeners' filters, which Smack calls synchronously on the reader
+ * and writer threads, and the filters never match, so Smack doesn't hand stanzas to another
+ * thread on their account. Only the latest ping is timed, as a new one is only sent after the
+ * last one was answered or timed out
+ */
+final class StanzaMetrics implements AutoCloseable {
+
+    private final XMPPConnection connection;
+    private final MetricsSink metricsSink;
+    private final StanzaListener stanzaListener;
+    private volatile String pingStanzaId;
+    private volatile long pingSentNanos;
+
+    private StanzaMetrics(final XMPPConnection connection, final MetricsSink metricsSink) {
+        this.connection = connection;
+        this.metricsSink = metricsSink;
+        stanzaListener = (final var stanza) -> {
+        };
+    }
+
+    static StanzaMetrics newInstance(final XMPPConnection connection, final MetricsSink metricsSink) {
+        final var stanzaMetrics = new StanzaMetrics(connection, metricsSink);
+        connection.addSyncStanzaListener(stanzaMetrics.stanzaListener, stanzaMetrics::received);
+        connection.addStanzaSendingListener(stanzaMetrics.stanzaListener, stanzaMetrics::sent);
+        return stanzaMetrics;
+    }
+
+    private boolean received(final Stanza stanza) {
+        if (stanza instanceof Message)
+            metricsSink.incrementCounter(MetricsCounter.MESSAGES_RECEIVED);
+        else if (stanza instanceof Presence)
+            metricsSink.incrementCounter(MetricsCounter.PRESENCES_RECEIVED);
+        else if (stanza instanceof IQ) {
+            metricsSink.incrementCounter(MetricsCounter.IQS_RECEIVED);
+            final var pingStanzaId = this.pingStanzaId;
+            if (pingStanzaId != null && pingStanzaId.equals(stanza.getStanzaId())) {
+                metricsSink.recordNanos(MetricsTimer.PING_ROUND_TRIP, System.nanoTime() - pingSentNanos);
+                this.pingStanzaId = null;
+            }
+        }
+        return false;
+    }
+
+    private boolean sent(final Stanza stanza) {
+        if (stanza instanceof Message)
+            metricsSink.incrementCounter(MetricsCounter.MESSAGES_SENT);
+        else if (stanza instanceof Presence)
+            metricsSink.incrementCounter(MetricsCounter.PRESENCES_SENT);
+        else if (stanza instanceof IQ) {
+            metricsSink.incrementCounter(MetricsCounter.IQS_SENT);
+            if (stanza instanceof Ping) {
+                pingSentNanos = System.nanoTime();
+                pingStanzaId = stanza.getStanzaId();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        connection.removeSyncStanzaListener(stanzaListener);
+        connection.removeStanzaSendingListener(stanzaListener);
+    }
+}
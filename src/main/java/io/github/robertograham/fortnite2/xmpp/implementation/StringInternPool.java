@@ -0,0 +1,37 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded pool of canonical instances of strings that are received over and over, such as
+ * account IDs, party IDs and session status texts, so that every copy retained refers to the
+ * same instance. The pool is a fixed-size table indexed by hash code: a string that collides
+ * with a different one replaces it, so memory use never grows and a lookup never allocates
+ */
+enum StringInternPool {
+
+    INSTANCE;
+
+    private static final int CAPACITY = 1 << 13;
+    private final AtomicReferenceArray<String> strings;
+
+    StringInternPool() {
+        strings = new AtomicReferenceArray<>(CAPACITY);
+    }
+
+    /**
+     * @param string the string to find the canonical instance of, may be {@code null}
+     * @return the pooled instance equal to {@code string}, or {@code string} itself after pooling it
+     */
+    String intern(final String string) {
+        if (string == null)
+            return null;
+        final var hashCode = string.hashCode();
+        final var index = (hashCode ^ (hashCode >>> 16)) & (CAPACITY - 1);
+        final var pooledString = strings.get(index);
+        if (string.equals(pooledString))
+            return pooledString;
+        strings.lazySet(index, string);
+        return string;
+    }
+}
@@ -0,0 +1,194 @@
+package io.github.robertograham.fortnite2.xmpp.implementation;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.listener.MetricsSink;
+
+import javax.net.SocketFactory;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+
+/**
+ * Creates the sockets XMPP connections are made over, with the socket options from
+ * {@link DefaultFortniteXmpp.Builder} applied before they connect. Every byte read from or written
+ * to a socket is counted, and since TLS and stream compression are layered on top of the socket,
+ * the counts are what actually crossed the wire
+ */
+final class TransportSocketFactory extends SocketFactory {
+
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+    private final boolean tcpNoDelay;
+    private final MetricsSink metricsSink;
+    private final Runnable onSocketConnected;
+
+    private TransportSocketFactory(final int sendBufferSize,
+                                   final int receiveBufferSize,
+                                   final boolean tcpNoDelay,
+                                   final MetricsSink metricsSink,
+                                   final Runnable onSocketConnected) {
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.tcpNoDelay = tcpNoDelay;
+        this.metricsSink = metricsSink;
+        this.onSocketConnected = onSocketConnected;
+    }
+
+    /**
+     * @param sendBufferSize    {@code SO_SNDBUF} in bytes, {@code 0} to leave it to the operating system
+     * @param receiveBufferSize {@code SO_RCVBUF} in bytes, {@code 0} to leave it to the operating system
+     * @param tcpNoDelay        {@code TCP_NODELAY}
+     * @param metricsSink       counts bytes read and written
+     * @param onSocketConnected run each time a socket finishes connecting, before TLS is negotiated over it
+     * @return a new {@link TransportSocketFactory} instance
+     */
+    static TransportSocketFactory newInstance(final int sendBufferSize,
+                                              final int receiveBufferSize,
+                                              final boolean tcpNoDelay,
+                                              final MetricsSink metricsSink,
+                                              final Runnable onSocketConnected) {
+        return new TransportSocketFactory(sendBufferSize, receiveBufferSize, tcpNoDelay, metricsSink, onSocketConnected);
+    }
+
+    @Override
+    public Socket createSocket() throws SocketException {
+        final var socket = new CountingSocket(metricsSink, onSocketConnected);
+        // the receive buffer has to be sized before connecting for the TCP window to be scaled to it
+        if (sendBufferSize > 0)
+            socket.setSendBufferSize(sendBufferSize);
+        if (receiveBufferSize > 0)
+            socket.setReceiveBufferSize(receiveBufferSize);
+        socket.setTcpNoDelay(tcpNoDelay);
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(final String host, final int port) throws IOException {
+        final var socket = createSocket();
+        socket.connect(new InetSocketAddress(host, port));
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(final String host,
+                               final int port,
+                               final InetAddress localAddress,
+                               final int localPort) throws IOException {
+        final var socket = createSocket();
+        socket.bind(new InetSocketAddress(localAddress, localPort));
+        socket.connect(new InetSocketAddress(host, port));
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress address, final int port) throws IOException {
+        final var socket = createSocket();
+        socket.connect(new InetSocketAddress(address, port));
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress address,
+                               final int port,
+                               final InetAddress localAddress,
+                               final int localPort) throws IOException {
+        final var socket = createSocket();
+        socket.bind(new InetSocketAddress(localAddress, localPort));
+        socket.connect(new InetSocketAddress(address, port));
+        return socket;
+    }
+
+    private static final class CountingSocket extends Socket {
+
+        private final MetricsSink metricsSink;
+        private final Runnable onConnected;
+        private InputStream inputStream;
+        private OutputStream outputStream;
+
+        private CountingSocket(final MetricsSink metricsSink, final Runnable onConnected) {
+            this.metricsSink = metricsSink;
+            this.onConnected = onConnected;
+        }
+
+        /**
+         * {@link Socket#connect(SocketAddress)} calls this too
+         */
+        @Override
+        public void connect(final SocketAddress socketAddress, final int timeout) throws IOException {
+            super.connect(socketAddress, timeout);
+            onConnected.run();
+        }
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException {
+            if (inputStream == null)
+                inputStream = new CountingInputStream(super.getInputStream(), metricsSink);
+            return inputStream;
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (outputStream == null)
+                outputStream = new CountingOutputStream(super.getOutputStream(), metricsSink);
+            return outputStream;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final MetricsSink metricsSink;
+
+        private CountingInputStream(final InputStream inputStream, final MetricsSink metricsSink) {
+            super(inputStream);
+            this.metricsSink = metricsSink;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var value = in.read();
+            if (value != -1)
+                metricsSink.incrementCounter(MetricsCounter.BYTES_RECEIVED);
+            return value;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            final var byteCount = in.read(bytes, offset, length);
+            if (byteCount > 0)
+                metricsSink.incrementCounter(MetricsCounter.BYTES_RECEIVED, byteCount);
+            return byteCount;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private final MetricsSink metricsSink;
+
+        private CountingOutputStream(final OutputStream outputStream, final MetricsSink metricsSink) {
+            super(outputStream);
+            this.metricsSink = metricsSink;
+        }
+
+        @Override
+        public void write(final int value) throws IOException {
+            out.write(value);
+            metricsSink.incrementCounter(MetricsCounter.BYTES_SENT);
+        }
+
+        /**
+         * Overridden because {@link FilterOutputStream} would write the bytes one at a time
+         */
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            out.write(bytes, offset, length);
+            metricsSink.incrementCounter(MetricsCounter.BYTES_SENT, length);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.robertograham.fortnite2.xmpp.listener;
+
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsCounter;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsGauge;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.MetricsTimer;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Registered using {@link io.github.robertograham.fortnite2.xmpp.implementation.DefaultFortniteXmpp.Builder#setMetricsSink(MetricsSink)}.
+ * The {@code incrementCounter} methods and {@link #recordNanos(MetricsTimer, long)} are called from the XMPP
+ * connection's threads as things happen, so implementations should return quickly and avoid allocating.
+ * One instance may be registered with many clients
+ *
+ * @see io.github.robertograham.fortnite2.xmpp.implementation.RecordingMetricsSink
+ * @since 2.1.0
+ */
+public interface MetricsSink {
+
+    /**
+     * @param metricsCounter what happened
+     * @since 2.1.0
+     */
+    void incrementCounter(final MetricsCounter metricsCounter);
+
+    /**
+     * @param metricsCounter what happened
+     * @param amount         how many times it happened, such as a number of bytes
+     * @since 2.1.0
+     */
+    void incrementCounter(final MetricsCounter metricsCounter, final long amount);
+
+    /**
+     * @param metricsTimer what was timed
+     * @param nanos        how long it took in nanoseconds
+     * @since 2.1.0
+     */
+    void recordNanos(final MetricsTimer metricsTimer, final long nanos);
+
+    /**
+     * Called once by every client the sink is registered with when it's built
+     *
+     * @param metricsGauge  what the value measures
+     * @param valueSupplier supplies the client's current value, safe to call from any thread
+     * @since 2.1.0
+     */
+    void addGauge(final MetricsGauge metricsGauge, final LongSupplier valueSupplier);
+
+    /**
+     * Called when a client the sink is registered with is closed
+     *
+     * @param metricsGauge  what the value measures
+     * @param valueSupplier the same instance that was passed to {@link #addGauge(MetricsGauge, LongSupplier)}
+     * @since 2.1.0
+     */
+    void removeGauge(final MetricsGauge metricsGauge, final LongSupplier valueSupplier);
+}
@@ -0,0 +1,30 @@
+package io.github.robertograham.fortnite2.xmpp.listener;
+
+import io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.ConnectionState;
+
+import java.time.Duration;
+
+/**
+ * Registered using {@link io.github.robertograham.fortnite2.xmpp.implementation.DefaultFortniteXmpp.Builder#setOnConnectionStateChangedListener(OnConnectionStateChangedListener)}
+ *
+ * @since 2.1.0
+ */
+@FunctionalInterface
+public interface OnConnectionStateChangedListener {
+
+    /**
+     * Called when the XMPP connection changes state
+     *
+     * @param connectionState the state the connection is now in
+     * @param disconnectedFor time since the connection was lost if {@code connectionState} is
+     *                        {@link ConnectionState#RECONNECTING}, {@link ConnectionState#RECONNECTED}
+     *                        or {@link ConnectionState#RESUMED}, which is the time taken to recover for the
+     *                        last two. {@link Duration#ZERO} otherwise
+     * @param fortniteXmpp    the {@link FortniteXmpp} instance whose connection changed state
+     * @since 2.1.0
+     */
+    void onConnectionStateChanged(final ConnectionState connectionState,
+                                  final Duration disconnectedFor,
+                                  final FortniteXmpp fortniteXmpp);
+}
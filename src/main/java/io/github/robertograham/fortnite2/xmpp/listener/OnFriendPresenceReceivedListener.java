@@ -23,6 +23,8 @@ public interface OnFriendPresenceReceivedListener {
      *                        {@link Status#OFFLINE}  if the friend is offline
      * @param sessionOptional an {@link Optional} of {@link Session}
      *                        that's non-empty if {@code status} is not equal to {@link Status#OFFLINE}
+     *                        The session is decoded the first time one of its methods is called, which
+     *                        throws a {@link javax.json.JsonException} if the friend's session couldn't be decoded
      * @param friend          {@link FriendResource} instance that can be used perform actions with the
      *                        {@link Session} instance
      * @since 2.0.0
@@ -0,0 +1,27 @@
+package io.github.robertograham.fortnite2.xmpp.listener;
+
+import io.github.robertograham.fortnite2.xmpp.resource.FriendResource;
+
+import java.util.Set;
+
+/**
+ * Registered using {@link io.github.robertograham.fortnite2.xmpp.implementation.DefaultFortniteXmpp.Builder#setOnFriendsListChangedListener(OnFriendsListChangedListener)}
+ *
+ * @since 2.1.0
+ */
+@FunctionalInterface
+public interface OnFriendsListChangedListener {
+
+    /**
+     * Called when friends are added to or removed from the authenticated user's friends list,
+     * including when the friends list is first received after log in
+     *
+     * @param addedAccountIds   IDs of the accounts that became friends of the authenticated user
+     * @param removedAccountIds IDs of the accounts that stopped being friends of the authenticated user
+     * @param friend            instance that can be used perform actions with the account IDs
+     * @since 2.1.0
+     */
+    void onFriendsListChanged(final Set<String> addedAccountIds,
+                              final Set<String> removedAccountIds,
+                              final FriendResource friend);
+}
@@ -2,11 +2,21 @@ package io.github.robertograham.fortnite2.xmpp.resource;
 
 import io.github.robertograham.fortnite2.domain.Account;
 import io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp;
+import io.github.robertograham.fortnite2.xmpp.domain.ChatMessage;
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
 import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.SubscriberOverflowPolicy;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * an object from which chat-related actions can be performed
@@ -29,6 +39,8 @@ public interface ChatResource {
     }
 
     /**
+     * Waits for space in the outbound queue if it's full, then for the chat message to be written to the connection
+     *
      * @param accountId   ID of the account to send this chat message to
      * @param messageBody the body of this chat message
      * @throws IOException          if an error occurs when sending the chat message
@@ -38,6 +50,75 @@ public interface ChatResource {
      */
     void sendMessageToAccountId(final String accountId, final String messageBody) throws IOException;
 
+    /**
+     * Queues a chat message without waiting for it to be sent. Chat messages and status updates are sent in the
+     * order they were queued
+     *
+     * @param account     the account to send this chat message to
+     * @param messageBody the body of this chat message
+     * @return a {@link CompletableFuture} that completes once the chat message has been written to the connection
+     * @throws NullPointerException if the {@code account} is {@code null}
+     * @throws NullPointerException if the {@code messageBody} is {@code null}
+     * @see #sendMessageToAccountIdAsync(String, String)
+     * @since 2.1.0
+     */
+    default CompletableFuture<Void> sendMessageToAccountAsync(final Account account, final String messageBody) {
+        Objects.requireNonNull(account, "account cannot be null");
+        return sendMessageToAccountIdAsync(account.accountId(), messageBody);
+    }
+
+    /**
+     * Queues a chat message without waiting for it to be sent. Chat messages and status updates are sent in the
+     * order they were queued
+     *
+     * @param accountId   ID of the account to send this chat message to
+     * @param messageBody the body of this chat message
+     * @return a {@link CompletableFuture} that completes once the chat message has been written to the connection.
+     * Completes exceptionally with a {@link java.util.concurrent.RejectedExecutionException} if the outbound queue
+     * is full, or with an {@link IOException} if the chat message couldn't be sent
+     * @throws NullPointerException if the {@code accountId} is {@code null}
+     * @throws NullPointerException if the {@code messageBody} is {@code null}
+     * @since 2.1.0
+     */
+    CompletableFuture<Void> sendMessageToAccountIdAsync(final String accountId, final String messageBody);
+
+    /**
+     * Sends the same chat message to many accounts without waiting for any of them to be sent. The chat messages
+     * take up a single place in the outbound queue and are written to the connection in iteration order
+     *
+     * @param accountIds  IDs of the accounts to send this chat message to
+     * @param messageBody the body of this chat message
+     * @return a {@link Map} from each distinct account ID to a {@link CompletableFuture} that completes once the
+     * chat message to that account has been written to the connection. Every future completes exceptionally with a
+     * {@link java.util.concurrent.RejectedExecutionException} if the outbound queue is full, and each completes
+     * exceptionally with an {@link IOException} if its chat message couldn't be sent. Cancelling a future before its
+     * chat message is sent skips that account
+     * @throws NullPointerException if {@code accountIds} is {@code null} or contains {@code null}
+     * @throws NullPointerException if the {@code messageBody} is {@code null}
+     * @since 2.1.0
+     */
+    Map<String, CompletableFuture<Void>> broadcastMessageToAccountIds(final Collection<String> accountIds, final String messageBody);
+
+    /**
+     * @param accounts    the accounts to send this chat message to
+     * @param messageBody the body of this chat message
+     * @return a {@link Map} from each distinct account ID to a {@link CompletableFuture} that completes once the
+     * chat message to that account has been written to the connection
+     * @throws NullPointerException if {@code accounts} is {@code null} or contains {@code null}
+     * @throws NullPointerException if the {@code messageBody} is {@code null}
+     * @see #broadcastMessageToAccountIds(Collection, String)
+     * @since 2.1.0
+     */
+    default Map<String, CompletableFuture<Void>> broadcastMessageToAccounts(final Collection<Account> accounts, final String messageBody) {
+        Objects.requireNonNull(accounts, "accounts cannot be null");
+        return broadcastMessageToAccountIds(
+            accounts.stream()
+                .map((final var account) -> Objects.requireNonNull(account, "accounts cannot contain null").accountId())
+                .collect(Collectors.toList()),
+            messageBody
+        );
+    }
+
     /**
      * @param status How you will appear to friends
      * @throws IOException          if an error occurs sending a presence update
@@ -46,6 +127,52 @@ public interface ChatResource {
      */
     void updateStatus(final Status status) throws IOException;
 
+    /**
+     * Queues a presence update without waiting for it to be sent. Chat messages and status updates are sent in the
+     * order they were queued
+     *
+     * @param status How you will appear to friends
+     * @return a {@link CompletableFuture} that completes once the presence update has been written to the
+     * connection. Completes exceptionally with a {@link java.util.concurrent.RejectedExecutionException} if the
+     * outbound queue is full, or with an {@link IOException} if the presence update couldn't be sent
+     * @throws NullPointerException is {@code status} is {@code null}
+     * @since 2.1.0
+     */
+    CompletableFuture<Void> updateStatusAsync(final Status status);
+
+    /**
+     * Like {@link #updateStatus(Status)}, but also shares the user's session with friends, e.g. their party and
+     * whether it can be joined. A status update that's the same as the last one sent isn't sent again, and status
+     * updates made more often than
+     * {@link io.github.robertograham.fortnite2.xmpp.implementation.DefaultFortniteXmpp.Builder#setStatusUpdateDebounceWindow(java.time.Duration)}
+     * allows are held back and replaced by later ones, in which case this returns once the one replacing it is sent
+     *
+     * @param status  How you will appear to friends
+     * @param session the session friends will see, e.g. one built with
+     *                {@link io.github.robertograham.fortnite2.xmpp.implementation.DefaultSession.Builder}
+     * @throws IOException          if an error occurs sending a presence update
+     * @throws NullPointerException is {@code status} is {@code null}
+     * @throws NullPointerException is {@code session} is {@code null}
+     * @since 2.1.0
+     */
+    void updateStatus(final Status status, final Session session) throws IOException;
+
+    /**
+     * Like {@link #updateStatusAsync(Status)}, but also shares the user's session with friends. Suppressed and
+     * debounced like {@link #updateStatus(Status, Session)}
+     *
+     * @param status  How you will appear to friends
+     * @param session the session friends will see
+     * @return a {@link CompletableFuture} that completes once the presence update, or the one that replaced it or
+     * that it was the same as, has been written to the connection. Completes exceptionally with a
+     * {@link java.util.concurrent.RejectedExecutionException} if the outbound queue is full, or with an
+     * {@link IOException} if the presence update couldn't be sent
+     * @throws NullPointerException is {@code status} is {@code null}
+     * @throws NullPointerException is {@code session} is {@code null}
+     * @since 2.1.0
+     */
+    CompletableFuture<Void> updateStatusAsync(final Status status, final Session session);
+
     /**
      * @param accountId ID of the account that the messages have been sent to
      * @return a {@link List} of the bodies of the messages sent to this user
@@ -84,6 +211,160 @@ public interface ChatResource {
         return findAllMessagesReceivedFromAccountId(account.accountId());
     }
 
+    /**
+     * Nothing is copied up front, each chat message is read from the history as the stream reaches it.
+     * Chat messages sent after the stream was created aren't included, and the stream ends early if the rest
+     * are forgotten while it's being consumed
+     *
+     * @param accountId    ID of the account that the messages have been sent to
+     * @param beforeCursor only chat messages with a {@link ChatMessage#cursor()} less than this are included
+     * @return a lazy {@link Stream} of the chat messages sent to this user, newest first
+     * @throws NullPointerException if {@code accountId} is {@code null}
+     * @since 2.1.0
+     */
+    Stream<ChatMessage> streamMessagesSentToAccountId(final String accountId, final long beforeCursor);
+
+    /**
+     * @param accountId ID of the account that the messages have been sent to
+     * @return a lazy {@link Stream} of every chat message sent to this user, newest first
+     * @throws NullPointerException if {@code accountId} is {@code null}
+     * @see #streamMessagesSentToAccountId(String, long)
+     * @since 2.1.0
+     */
+    default Stream<ChatMessage> streamMessagesSentToAccountId(final String accountId) {
+        return streamMessagesSentToAccountId(accountId, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param account the account that the messages have been sent to
+     * @return a lazy {@link Stream} of every chat message sent to this user, newest first
+     * @throws NullPointerException if {@code account} is {@code null}
+     * @see #streamMessagesSentToAccountId(String, long)
+     * @since 2.1.0
+     */
+    default Stream<ChatMessage> streamMessagesSentToAccount(final Account account) {
+        Objects.requireNonNull(account, "account cannot be null");
+        return streamMessagesSentToAccountId(account.accountId());
+    }
+
+    /**
+     * @param accountId ID of the account that the messages have been sent to
+     * @param limit     the most chat messages to return
+     * @return a {@link List} of the {@code limit} newest chat messages sent to this user, newest first
+     * @throws NullPointerException     if {@code accountId} is {@code null}
+     * @throws IllegalArgumentException if {@code limit} is negative
+     * @since 2.1.0
+     */
+    default List<ChatMessage> findLatestMessagesSentToAccountId(final String accountId, final int limit) {
+        return streamMessagesSentToAccountId(accountId)
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @param accountId ID of the account that the messages have been sent to
+     * @param since     only chat messages sent at or after this are included
+     * @return a {@link List} of the chat messages sent to this user since {@code since}, newest first
+     * @throws NullPointerException if {@code accountId} is {@code null}
+     * @throws NullPointerException if {@code since} is {@code null}
+     * @since 2.1.0
+     */
+    default List<ChatMessage> findMessagesSentToAccountIdSince(final String accountId, final Instant since) {
+        Objects.requireNonNull(since, "since cannot be null");
+        return streamMessagesSentToAccountId(accountId)
+            .takeWhile((final var chatMessage) -> !chatMessage.timestamp().isBefore(since))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Nothing is copied up front, each chat message is read from the history as the stream reaches it.
+     * Chat messages received after the stream was created aren't included, and the stream ends early if the
+     * rest are forgotten while it's being consumed
+     *
+     * @param accountId    ID of the account that the messages have received from
+     * @param beforeCursor only chat messages with a {@link ChatMessage#cursor()} less than this are included
+     * @return a lazy {@link Stream} of the chat messages received from this user, newest first
+     * @throws NullPointerException if {@code accountId} is {@code null}
+     * @since 2.1.0
+     */
+    Stream<ChatMessage> streamMessagesReceivedFromAccountId(final String accountId, final long beforeCursor);
+
+    /**
+     * @param accountId ID of the account that the messages have received from
+     * @return a lazy {@link Stream} of every chat message received from this user, newest first
+     * @throws NullPointerException if {@code accountId} is {@code null}
+     * @see #streamMessagesReceivedFromAccountId(String, long)
+     * @since 2.1.0
+     */
+    default Stream<ChatMessage> streamMessagesReceivedFromAccountId(final String accountId) {
+        return streamMessagesReceivedFromAccountId(accountId, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param account the account that the messages have received from
+     * @return a lazy {@link Stream} of every chat message received from this user, newest first
+     * @throws NullPointerException if {@code account} is {@code null}
+     * @see #streamMessagesReceivedFromAccountId(String, long)
+     * @since 2.1.0
+     */
+    default Stream<ChatMessage> streamMessagesReceivedFromAccount(final Account account) {
+        Objects.requireNonNull(account, "account cannot be null");
+        return streamMessagesReceivedFromAccountId(account.accountId());
+    }
+
+    /**
+     * @param accountId ID of the account that the messages have received from
+     * @param limit     the most chat messages to return
+     * @return a {@link List} of the {@code limit} newest chat messages received from this user, newest first
+     * @throws NullPointerException     if {@code accountId} is {@code null}
+     * @throws IllegalArgumentException if {@code limit} is negative
+     * @since 2.1.0
+     */
+    default List<ChatMessage> findLatestMessagesReceivedFromAccountId(final String accountId, final int limit) {
+        return streamMessagesReceivedFromAccountId(accountId)
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @param accountId ID of the account that the messages have received from
+     * @param since     only chat messages received at or after this are included
+     * @return a {@link List} of the chat messages received from this user since {@code since}, newest first
+     * @throws NullPointerException if {@code accountId} is {@code null}
+     * @throws NullPointerException if {@code since} is {@code null}
+     * @since 2.1.0
+     */
+    default List<ChatMessage> findMessagesReceivedFromAccountIdSince(final String accountId, final Instant since) {
+        Objects.requireNonNull(since, "since cannot be null");
+        return streamMessagesReceivedFromAccountId(accountId)
+            .takeWhile((final var chatMessage) -> !chatMessage.timestamp().isBefore(since))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Publishes the chat messages the {@link io.github.robertograham.fortnite2.xmpp.listener.OnChatMessageReceivedListener}
+     * is called with, along with their timestamps and cursors
+     *
+     * @param subscriberOverflowPolicy what happens to chat messages that don't fit in a subscriber's buffer
+     * @param bufferCapacity           the most chat messages held for each subscriber before it requests them
+     * @return a {@link Flow.Publisher} that can be subscribed to any number of times. Each subscriber is only sent
+     * as many chat messages as it has requested and is completed when the client is closed
+     * @throws NullPointerException     if {@code subscriberOverflowPolicy} is {@code null}
+     * @throws IllegalArgumentException if {@code bufferCapacity} is less than 1
+     * @since 2.1.0
+     */
+    Flow.Publisher<ChatMessage> chatMessagePublisher(final SubscriberOverflowPolicy subscriberOverflowPolicy, final int bufferCapacity);
+
+    /**
+     * @return a {@link Flow.Publisher} whose subscribers are sent an {@link IllegalStateException} if they fall
+     * more than {@link Flow#defaultBufferSize()} chat messages behind
+     * @see #chatMessagePublisher(SubscriberOverflowPolicy, int)
+     * @since 2.1.0
+     */
+    default Flow.Publisher<ChatMessage> chatMessagePublisher() {
+        return chatMessagePublisher(SubscriberOverflowPolicy.BUFFER, Flow.defaultBufferSize());
+    }
+
     /**
      * @return the instance of {@link FortniteXmpp} this object belongs to
      * @since 2.0.0
@@ -1,6 +1,18 @@
 package io.github.robertograham.fortnite2.xmpp.resource;
 
 import io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp;
+import io.github.robertograham.fortnite2.xmpp.domain.FriendPresence;
+import io.github.robertograham.fortnite2.xmpp.domain.FriendsListChange;
+import io.github.robertograham.fortnite2.xmpp.domain.Session;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Application;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Platform;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.Status;
+import io.github.robertograham.fortnite2.xmpp.domain.enumeration.SubscriberOverflowPolicy;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Flow;
 
 /**
  * an object from which friend-related actions can be performed
@@ -9,6 +21,124 @@ import io.github.robertograham.fortnite2.xmpp.client.FortniteXmpp;
  */
 public interface FriendResource {
 
+    /**
+     * @return a snapshot of the IDs of the accounts that the authenticated user is friends with
+     * @since 2.1.0
+     */
+    Set<String> findAllFriendAccountIds();
+
+    /**
+     * @param status        a {@link Status} to look for
+     * @param otherStatuses more {@link Status} values to look for
+     * @return a snapshot of the IDs of the friends whose latest presence has any of the given statuses.
+     * Friends no presence has been received from are {@link Status#OFFLINE}
+     * @throws NullPointerException if {@code status} or any of {@code otherStatuses} is {@code null}
+     * @since 2.1.0
+     */
+    Set<String> findAllFriendAccountIdsByStatus(Status status, Status... otherStatuses);
+
+    /**
+     * @param platform the {@link Platform} to look for
+     * @return a snapshot of the IDs of the friends whose latest session is on {@code platform}
+     * @throws NullPointerException if {@code platform} is {@code null}
+     * @since 2.1.0
+     */
+    Set<String> findAllFriendAccountIdsByPlatform(Platform platform);
+
+    /**
+     * @param application the {@link Application} to look for
+     * @return a snapshot of the IDs of the friends whose latest session is in {@code application}
+     * @throws NullPointerException if {@code application} is {@code null}
+     * @since 2.1.0
+     */
+    Set<String> findAllFriendAccountIdsByApplication(Application application);
+
+    /**
+     * @return a snapshot of the IDs of the friends whose latest session can be joined
+     * @since 2.1.0
+     */
+    Set<String> findAllJoinableFriendAccountIds();
+
+    /**
+     * @param partyId the ID of the party to look for
+     * @return a snapshot of the IDs of the friends whose latest session is in the party
+     * @throws NullPointerException if {@code partyId} is {@code null}
+     * @since 2.1.0
+     */
+    Set<String> findAllFriendAccountIdsByPartyId(String partyId);
+
+    /**
+     * @return a snapshot of the IDs of the friends whose latest session is in a party, keyed by party ID
+     * @since 2.1.0
+     */
+    Map<String, Set<String>> findAllFriendAccountIdsGroupedByPartyId();
+
+    /**
+     * @param accountId the ID of a friend's account
+     * @return an {@link Optional} of {@link Status} that's empty if {@code accountId} isn't a friend
+     * @throws NullPointerException if {@code accountId} is {@code null}
+     * @since 2.1.0
+     */
+    Optional<Status> findOneStatusByAccountId(String accountId);
+
+    /**
+     * @param accountId the ID of a friend's account
+     * @return an {@link Optional} of {@link Session} that's empty if {@code accountId} isn't a friend
+     * or their latest presence has no session
+     * @throws NullPointerException if {@code accountId} is {@code null}
+     * @since 2.1.0
+     */
+    Optional<Session> findOneSessionByAccountId(String accountId);
+
+    /**
+     * Publishes the same friend presences the
+     * {@link io.github.robertograham.fortnite2.xmpp.listener.OnFriendPresenceReceivedListener} is called with,
+     * after filtering but without coalescing
+     *
+     * @param subscriberOverflowPolicy what happens to presences that don't fit in a subscriber's buffer
+     * @param bufferCapacity           the most presences held for each subscriber before it requests them
+     * @return a {@link Flow.Publisher} that can be subscribed to any number of times. Each subscriber is only sent
+     * as many presences as it has requested and is completed when the client is closed
+     * @throws NullPointerException     if {@code subscriberOverflowPolicy} is {@code null}
+     * @throws IllegalArgumentException if {@code bufferCapacity} is less than 1
+     * @since 2.1.0
+     */
+    Flow.Publisher<FriendPresence> friendPresencePublisher(SubscriberOverflowPolicy subscriberOverflowPolicy, int bufferCapacity);
+
+    /**
+     * @return a {@link Flow.Publisher} whose subscribers are sent an {@link IllegalStateException} if they fall
+     * more than {@link Flow#defaultBufferSize()} presences behind
+     * @see #friendPresencePublisher(SubscriberOverflowPolicy, int)
+     * @since 2.1.0
+     */
+    default Flow.Publisher<FriendPresence> friendPresencePublisher() {
+        return friendPresencePublisher(SubscriberOverflowPolicy.BUFFER, Flow.defaultBufferSize());
+    }
+
+    /**
+     * Publishes the same changes to the friends list the
+     * {@link io.github.robertograham.fortnite2.xmpp.listener.OnFriendsListChangedListener} is called with
+     *
+     * @param subscriberOverflowPolicy what happens to changes that don't fit in a subscriber's buffer
+     * @param bufferCapacity           the most changes held for each subscriber before it requests them
+     * @return a {@link Flow.Publisher} that can be subscribed to any number of times. Each subscriber is only sent
+     * as many changes as it has requested and is completed when the client is closed
+     * @throws NullPointerException     if {@code subscriberOverflowPolicy} is {@code null}
+     * @throws IllegalArgumentException if {@code bufferCapacity} is less than 1
+     * @since 2.1.0
+     */
+    Flow.Publisher<FriendsListChange> friendsListChangePublisher(SubscriberOverflowPolicy subscriberOverflowPolicy, int bufferCapacity);
+
+    /**
+     * @return a {@link Flow.Publisher} whose subscribers are sent an {@link IllegalStateException} if they fall
+     * more than {@link Flow#defaultBufferSize()} changes behind
+     * @see #friendsListChangePublisher(SubscriberOverflowPolicy, int)
+     * @since 2.1.0
+     */
+    default Flow.Publisher<FriendsListChange> friendsListChangePublisher() {
+        return friendsListChangePublisher(SubscriberOverflowPolicy.BUFFER, Flow.defaultBufferSize());
+    }
+
     /**
      * @return the instance of {@link FortniteXmpp} this object belongs to
      * @since 2.0.0